@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.pay.server.impl.PurchaseVerifieriOSApple;
+import com.badlogic.gdx.pay.server.util.Base64Codec;
+
+/** Reading the status via {@link PurchaseVerifieriOSApple#parseResponse(InputStream)} from verifyReceipt responses: the bare error response and
+ * responses listing a growing number of in-app purchases (auto-renewable subscriptions accumulate one entry per renewal). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppleStatusBenchmark {
+
+	/** Number of in-app purchases in the response (0 = error response without receipt). */
+	@Param({"0", "10", "100"})
+	public int purchases;
+
+	private StatusVerifier verifier;
+	private byte[] response;
+
+	@Setup
+	public void setup () throws Exception {
+		verifier = new StatusVerifier();
+		response = createResponse(purchases).getBytes("UTF-8");
+	}
+
+	@Benchmark
+	public int extractStatus () {
+		return verifier.status(new ByteArrayInputStream(response));
+	}
+
+	static String createResponse (int purchases) {
+		if (purchases == 0) {
+			return "{\"status\":21004}";
+		}
+		StringBuilder purchaseList = new StringBuilder();
+		for (int i = 0; i < purchases; i++) {
+			if (i > 0) {
+				purchaseList.append(',');
+			}
+			long purchaseDate = 1545215011000L + i * 2592000000L;
+			purchaseList.append("{\"quantity\":\"1\",\"product_id\":\"com.badlogic.gdx.pay.benchmarks.monthly\",")
+				.append("\"transaction_id\":\"").append(1000000480000000L + i).append("\",")
+				.append("\"original_transaction_id\":\"1000000480000000\",")
+				.append("\"purchase_date\":\"2018-12-19 10:23:31 Etc/GMT\",")
+				.append("\"purchase_date_ms\":\"").append(purchaseDate).append("\",")
+				.append("\"purchase_date_pst\":\"2018-12-19 02:23:31 America/Los_Angeles\",")
+				.append("\"expires_date_ms\":\"").append(purchaseDate + 2592000000L).append("\",")
+				.append("\"web_order_line_item_id\":\"").append(1000000041000000L + i).append("\",")
+				.append("\"is_trial_period\":\"false\",\"is_in_intro_offer_period\":\"false\"}");
+		}
+		// the receipt itself is echoed back (Base64) and usually dominates the response size
+		byte[] receipt = new byte[2048 + purchases * 300];
+		new Random(42).nextBytes(receipt);
+		return "{\"status\":0,\"environment\":\"Production\",\"receipt\":{\"receipt_type\":\"Production\","
+			+ "\"bundle_id\":\"com.badlogic.gdx.pay.benchmarks\",\"application_version\":\"1\",\"in_app\":[" + purchaseList
+			+ "]},\"latest_receipt_info\":[" + purchaseList + "],\"latest_receipt\":\"" + Base64Codec.STANDARD.encode(receipt)
+			+ "\"}";
+	}
+
+	/** Exposes the protected response parsing; no requests are sent. */
+	static class StatusVerifier extends PurchaseVerifieriOSApple {
+		StatusVerifier () {
+			super(false, null);
+		}
+
+		int status (InputStream inputStream) {
+			try {
+				return parseResponse(inputStream).getStatus();
+			} catch (IOException e) {
+				return -1;
+			}
+		}
+	}
+}
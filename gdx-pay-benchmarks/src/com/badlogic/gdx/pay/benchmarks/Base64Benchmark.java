@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.pay.server.util.Base64Codec;
+import com.badlogic.gdx.pay.server.util.Base64Util;
+
+/** Base64 encoding and decoding with {@link Base64Util} and, for comparison, {@link Base64Codec}. Sizes cover signatures (256
+ * bytes) up to App Store receipts (several KB). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64Benchmark {
+
+	/** Number of raw bytes. */
+	@Param({"32", "256", "4096", "65536"})
+	public int size;
+
+	private byte[] data;
+	private String encodedUtil;
+	private String encodedStandard;
+	private byte[] decodeBuffer;
+
+	@Setup
+	public void setup () {
+		data = new byte[size];
+		new Random(42).nextBytes(data);
+		encodedUtil = Base64Util.toBase64(data);
+		encodedStandard = Base64Codec.STANDARD.encode(data);
+		decodeBuffer = new byte[size];
+	}
+
+	@Benchmark
+	public String utilEncode () {
+		return Base64Util.toBase64(data);
+	}
+
+	@Benchmark
+	public byte[] utilDecode () {
+		return Base64Util.fromBase64(encodedUtil);
+	}
+
+	@Benchmark
+	public String codecEncode () {
+		return Base64Codec.STANDARD.encode(data);
+	}
+
+	@Benchmark
+	public byte[] codecDecode () {
+		return Base64Codec.STANDARD.decode(encodedStandard);
+	}
+
+	@Benchmark
+	public int codecDecodeInto () {
+		return Base64Codec.STANDARD.decode(encodedStandard, decodeBuffer, 0);
+	}
+}
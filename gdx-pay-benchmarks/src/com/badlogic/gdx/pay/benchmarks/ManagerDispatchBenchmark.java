@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.PurchaseVerifier;
+import com.badlogic.gdx.pay.server.PurchaseVerifierManager;
+
+/** Dispatch overhead of {@link PurchaseVerifierManager#isValid(Transaction)}: the verifiers answer immediately, so only the
+ * store lookup and call are measured, single-threaded and contended. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ManagerDispatchBenchmark {
+
+	/** Number of registered stores. */
+	@Param({"1", "4", "16"})
+	public int stores;
+
+	private PurchaseVerifierManager manager;
+	private Transaction[] transactions;
+	private Transaction unknownStore;
+
+	@Setup
+	public void setup () {
+		manager = new PurchaseVerifierManager(false);
+		transactions = new Transaction[stores];
+		for (int i = 0; i < stores; i++) {
+			String storeName = "Store" + i;
+			manager.addVerifier(new ConstantVerifier(storeName));
+			transactions[i] = new Transaction();
+			transactions[i].setStoreName(storeName);
+			transactions[i].setIdentifier("com.badlogic.gdx.pay.benchmarks.coins");
+			transactions[i].setOrderId("order-" + i);
+		}
+		unknownStore = new Transaction();
+		unknownStore.setStoreName("UnknownStore");
+	}
+
+	@Benchmark
+	public int dispatch () {
+		int valid = 0;
+		for (int i = 0; i < transactions.length; i++) {
+			if (manager.isValid(transactions[i])) {
+				valid++;
+			}
+		}
+		return valid;
+	}
+
+	@Benchmark
+	@Threads(8)
+	public int dispatchContended () {
+		return dispatch();
+	}
+
+	@Benchmark
+	public boolean dispatchUnknownStore () {
+		return manager.isValid(unknownStore);
+	}
+
+	/** Accepts everything without doing any work. */
+	static class ConstantVerifier implements PurchaseVerifier {
+		private final String storeName;
+
+		ConstantVerifier (String storeName) {
+			this.storeName = storeName;
+		}
+
+		@Override
+		public String storeName () {
+			return storeName;
+		}
+
+		@Override
+		public boolean isValid (Transaction transaction) {
+			return transaction.getOrderId() != null;
+		}
+	}
+}
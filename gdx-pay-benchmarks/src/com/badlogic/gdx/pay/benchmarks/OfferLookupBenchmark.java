@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.pay.Offer;
+import com.badlogic.gdx.pay.OfferType;
+import com.badlogic.gdx.pay.PurchaseManagerConfig;
+
+/** Offer lookups in {@link PurchaseManagerConfig} by identifier and by store identifier, for catalogs of 10 to 10,000 offers.
+ * Lookups hit the first, middle and last offer and miss entirely. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OfferLookupBenchmark {
+
+	/** Number of offers in the catalog. */
+	@Param({"10", "100", "1000", "10000"})
+	public int catalogSize;
+
+	private PurchaseManagerConfig config;
+	private String firstIdentifier;
+	private String middleIdentifier;
+	private String lastIdentifier;
+	private String lastStoreIdentifier;
+
+	@Setup
+	public void setup () {
+		config = new PurchaseManagerConfig();
+		for (int i = 0; i < catalogSize; i++) {
+			// fresh strings, so lookups can't take the identity shortcut in String.equals
+			config.addOffer(new Offer().setType(OfferType.CONSUMABLE).setIdentifier(identifier(i))
+				.putIdentifierForStore(PurchaseManagerConfig.STORE_NAME_IOS_APPLE, "ios." + identifier(i)));
+		}
+		firstIdentifier = identifier(0);
+		middleIdentifier = identifier(catalogSize / 2);
+		lastIdentifier = identifier(catalogSize - 1);
+		lastStoreIdentifier = "ios." + identifier(catalogSize - 1);
+	}
+
+	private static String identifier (int index) {
+		return new StringBuilder("com.badlogic.gdx.pay.benchmarks.offer").append(index).toString();
+	}
+
+	@Benchmark
+	public Offer getOfferFirst () {
+		return config.getOffer(firstIdentifier);
+	}
+
+	@Benchmark
+	public Offer getOfferMiddle () {
+		return config.getOffer(middleIdentifier);
+	}
+
+	@Benchmark
+	public Offer getOfferLast () {
+		return config.getOffer(lastIdentifier);
+	}
+
+	@Benchmark
+	public Offer getOfferMissing () {
+		return config.getOffer("com.badlogic.gdx.pay.benchmarks.missing");
+	}
+
+	@Benchmark
+	public Offer getOfferForStoreLast () {
+		return config.getOfferForStore(PurchaseManagerConfig.STORE_NAME_IOS_APPLE, lastStoreIdentifier);
+	}
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.benchmarks;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.pay.server.impl.Security;
+import com.badlogic.gdx.pay.server.util.Base64Codec;
+
+/** {@link Security#verify(PublicKey, String, String)} for Google Play style purchase data (SHA1withRSA, Base64 signature). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityVerifyBenchmark {
+
+	/** RSA modulus size in bits. */
+	@Param({"1024", "2048"})
+	public int keySize;
+
+	/** Rejections are logged; keep console output out of the measurement. */
+	private static final Security.SecurityLogger SILENT = new Security.SecurityLogger() {
+		@Override
+		public void log (String message) {
+		}
+	};
+
+	private PublicKey publicKey;
+	private String encodedPublicKey;
+	private String signedData;
+	private String signature;
+	private String forgedSignature;
+
+	@Setup
+	public void setup () throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(keySize);
+		KeyPair keyPair = generator.generateKeyPair();
+		publicKey = keyPair.getPublic();
+		encodedPublicKey = Base64Codec.STANDARD.encode(publicKey.getEncoded());
+
+		signedData = "{\"orderId\":\"GPA.1234-5678-9012-34567\",\"packageName\":\"com.badlogic.gdx.pay.benchmarks\","
+			+ "\"productId\":\"com.badlogic.gdx.pay.benchmarks.coins\",\"purchaseTime\":1545215011000,\"purchaseState\":0,"
+			+ "\"purchaseToken\":\"opaque-token-up-to-150-characters\"}";
+		Signature signer = Signature.getInstance("SHA1withRSA");
+		signer.initSign(keyPair.getPrivate());
+		signer.update(signedData.getBytes("UTF-8"));
+		byte[] signatureBytes = signer.sign();
+		signature = Base64Codec.STANDARD.encode(signatureBytes);
+		signatureBytes[signatureBytes.length / 2] ^= 1;
+		forgedSignature = Base64Codec.STANDARD.encode(signatureBytes);
+	}
+
+	@Benchmark
+	public boolean verifyValid () {
+		return Security.verify(publicKey, signedData, signature);
+	}
+
+	@Benchmark
+	public boolean verifyForged () {
+		return Security.verify(publicKey, signedData, forgedSignature, SILENT);
+	}
+
+	@Benchmark
+	public PublicKey generatePublicKey () {
+		return Security.generatePublicKey(encodedPublicKey);
+	}
+}
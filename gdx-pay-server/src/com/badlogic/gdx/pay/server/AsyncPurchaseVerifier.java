@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server;
+
+import com.badlogic.gdx.pay.Transaction;
+
+/** A purchase verifier that can verify without blocking the calling thread. Synchronous verifiers are adapted via
+ * {@link PurchaseVerifierAsyncAdapter}; {@link PurchaseVerifierManager} does that automatically for verifiers that don't
+ * implement this interface. */
+public interface AsyncPurchaseVerifier extends PurchaseVerifier {
+
+	/** Starts verifying the transaction and returns immediately.
+	 *
+	 * @param transaction The transaction to verify.
+	 * @param callback Notified once the verification completes (may be null).
+	 * @return The pending result; never null. */
+	VerificationFuture verifyAsync (Transaction transaction, VerificationCallback callback);
+}
@@ -0,0 +1,557 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.util.JsonReader;
+import com.badlogic.gdx.pay.server.util.TransactionJson;
+
+/** Re-verifies a file of stored transactions, e.g. after a key rotation or a fraud incident. The input holds one transaction per
+ * line as JSON object (see {@link TransactionJson}); for every line, one result line is appended to the output in input order:
+ * 
+ * <pre>
+ * {"line":1,"storeName":"AppleiOS","orderId":"1000000123","valid":true}
+ * {"line":2,"storeName":"GooglePlay","orderId":"GPA.1234","error":"unavailable"}
+ * {"line":3,"error":"malformed: ..."}
+ * {"line":4,"storeName":"AppleiOS","orderId":null,"valid":false}
+ * </pre>
+ * 
+ * Every store gets its own worker threads ({@link PurchaseVerifierManager#getStoreParallelism(String)} of them), so a slow
+ * store doesn't hold up the others, while no store is asked more often in parallel than configured. At most
+ * {@link #setMaxPending(int)} lines are read ahead of the output.
+ * <p>
+ * Every {@link #setCheckpointMillis(long) few seconds} the output is synced and a checkpoint file records how far the input has
+ * been processed. If the run is interrupted or the process dies, calling {@link #run(File, File, File)} with the same files
+ * resumes after the last checkpoint: the output is cut back to the checkpoint and the lines after it are verified again. */
+public class BulkVerifier {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** Receives the live progress of a run. Called on the thread running {@link BulkVerifier#run(File, File, File)}. */
+	public interface ProgressListener {
+
+		void progress (Progress progress);
+	}
+
+	/** Counts of a run, including the lines verified before a resumed checkpoint. */
+	public static class Progress {
+
+		private final long lines;
+		private final long valid;
+		private final long invalid;
+		private final long errors;
+		private final long elapsedMillis;
+		private final double linesPerSecond;
+
+		Progress (long lines, long valid, long invalid, long errors, long elapsedMillis, double linesPerSecond) {
+			this.lines = lines;
+			this.valid = valid;
+			this.invalid = invalid;
+			this.errors = errors;
+			this.elapsedMillis = elapsedMillis;
+			this.linesPerSecond = linesPerSecond;
+		}
+
+		/** The number of transactions written to the output. */
+		public long getLines () {
+			return lines;
+		}
+
+		public long getValid () {
+			return valid;
+		}
+
+		public long getInvalid () {
+			return invalid;
+		}
+
+		/** Lines that are malformed or whose store could not be asked. */
+		public long getErrors () {
+			return errors;
+		}
+
+		/** Time spent in this run (not counting runs before a resume). */
+		public long getElapsedMillis () {
+			return elapsedMillis;
+		}
+
+		/** Throughput since the previous progress report (or over the whole run for the final report). */
+		public double getLinesPerSecond () {
+			return linesPerSecond;
+		}
+
+		@Override
+		public String toString () {
+			return "Progress{" + "lines=" + lines + ", valid=" + valid + ", invalid=" + invalid + ", errors=" + errors
+				+ ", elapsedMillis=" + elapsedMillis + ", linesPerSecond=" + Math.round(linesPerSecond) + '}';
+		}
+	}
+
+	/** Logs the progress to the console. */
+	public static final ProgressListener CONSOLE = new ProgressListener() {
+		@Override
+		public void progress (Progress progress) {
+			System.out.println("Bulk verification: " + progress);
+		}
+	};
+
+	private final PurchaseVerifierManager manager;
+
+	private int maxPending = 10000;
+	private long checkpointMillis = 10000;
+	private long progressMillis = 5000;
+	private ProgressListener listener = CONSOLE;
+
+	public BulkVerifier (PurchaseVerifierManager manager) {
+		this.manager = manager;
+	}
+
+	/** Sets how many lines may be read ahead of the output (default 10000). A line of a slow store holds back the output of the
+	 * lines after it, so this should be a multiple of the total store parallelism. */
+	public void setMaxPending (int maxPending) {
+		if (maxPending < 1) throw new IllegalArgumentException("maxPending must be at least 1: " + maxPending);
+		this.maxPending = maxPending;
+	}
+
+	/** Sets the interval between checkpoints (default 10 seconds). */
+	public void setCheckpointMillis (long checkpointMillis) {
+		if (checkpointMillis < 0) throw new IllegalArgumentException("checkpointMillis must be >= 0: " + checkpointMillis);
+		this.checkpointMillis = checkpointMillis;
+	}
+
+	/** Sets the interval between progress reports (default 5 seconds). */
+	public void setProgressMillis (long progressMillis) {
+		if (progressMillis < 0) throw new IllegalArgumentException("progressMillis must be >= 0: " + progressMillis);
+		this.progressMillis = progressMillis;
+	}
+
+	/** Sets the listener for progress reports (default {@link #CONSOLE}, null for none). */
+	public void setProgressListener (ProgressListener listener) {
+		this.listener = listener;
+	}
+
+	/** Verifies all lines of the input, resuming from the checkpoint if there is one. The checkpoint is deleted once the input is
+	 * done.
+	 * 
+	 * @param input Transactions, one JSON object per line (empty lines are skipped).
+	 * @param output Receives one result line per transaction.
+	 * @param checkpoint The checkpoint file (null to always start from the beginning).
+	 * @return The final counts.
+	 * @throws InterruptedException If the calling thread is interrupted; the output up to the last checkpoint can be resumed. */
+	public Progress run (File input, File output, File checkpoint) throws IOException, InterruptedException {
+		Run run = new Run();
+		if (checkpoint != null && checkpoint.exists()) {
+			run.resume(checkpoint);
+		}
+
+		RandomAccessFile outputFile = new RandomAccessFile(output, "rw");
+		FileOutputStream outputStream = null;
+		InputStream inputStream = null;
+		try {
+			if (outputFile.length() < run.outputLength) {
+				throw new IOException("Output is shorter than the checkpoint: " + output);
+			}
+			outputFile.setLength(run.outputLength);
+			outputFile.close();
+			outputFile = null;
+			outputStream = new FileOutputStream(output, true);
+			run.out = new BufferedOutputStream(outputStream, 65536);
+			run.sync = outputStream;
+
+			FileInputStream in = new FileInputStream(input);
+			inputStream = in;
+			in.getChannel().position(run.inputOffset);
+			run.process(new LineReader(in, run.inputOffset, run.inputLine), checkpoint);
+		} finally {
+			run.stopWorkers();
+			if (outputFile != null) {
+				outputFile.close();
+			}
+			if (run.out != null) {
+				run.out.close();
+			} else if (outputStream != null) {
+				outputStream.close();
+			}
+			if (inputStream != null) {
+				inputStream.close();
+			}
+		}
+		if (checkpoint != null) {
+			checkpoint.delete();
+		}
+		long elapsed = System.currentTimeMillis() - run.start;
+		Progress progress = run.progress(run.lines - run.startLines, elapsed);
+		if (listener != null) {
+			listener.progress(progress);
+		}
+		return progress;
+	}
+
+	/** A line read ahead, waiting for its verdict. */
+	private static class Item {
+		final long line;
+		final long endOffset;
+		final Transaction transaction;
+		final CountDownLatch done = new CountDownLatch(1);
+		/** The members of the result line after the line number (without braces), or null while pending. */
+		volatile String result;
+		volatile int outcome;
+
+		Item (long line, long endOffset, Transaction transaction) {
+			this.line = line;
+			this.endOffset = endOffset;
+			this.transaction = transaction;
+		}
+
+		void finish (String result, int outcome) {
+			this.outcome = outcome;
+			this.result = result;
+			done.countDown();
+		}
+	}
+
+	private static final int VALID = 0, INVALID = 1, ERROR = 2;
+
+	/** A sentinel telling a store worker to quit. */
+	private static final Item STOP = new Item(-1, -1, null);
+
+	/** The state of one call to {@link BulkVerifier#run(File, File, File)}. */
+	private class Run {
+		long inputOffset;
+		long inputLine;
+		long outputLength;
+		long lines, valid, invalid, errors;
+
+		final long start = System.currentTimeMillis();
+		long startLines;
+
+		OutputStream out;
+		FileOutputStream sync;
+
+		final ArrayDeque<Item> pending = new ArrayDeque<Item>();
+		final Map<String, BlockingQueue<Item>> queues = new HashMap<String, BlockingQueue<Item>>();
+		final Map<String, Thread[]> workers = new HashMap<String, Thread[]>();
+
+		long lastCheckpoint = start;
+		long lastProgress = start;
+		long lastProgressLines;
+
+		void resume (File checkpoint) throws IOException {
+			Properties properties = new Properties();
+			InputStream in = new FileInputStream(checkpoint);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+			try {
+				inputOffset = Long.parseLong(properties.getProperty("inputOffset"));
+				inputLine = Long.parseLong(properties.getProperty("inputLine"));
+				outputLength = Long.parseLong(properties.getProperty("outputLength"));
+				lines = Long.parseLong(properties.getProperty("lines"));
+				valid = Long.parseLong(properties.getProperty("valid"));
+				invalid = Long.parseLong(properties.getProperty("invalid"));
+				errors = Long.parseLong(properties.getProperty("errors"));
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed checkpoint " + checkpoint + ": " + e.getMessage());
+			}
+			startLines = lines;
+			lastProgressLines = lines;
+		}
+
+		void process (LineReader reader, File checkpoint) throws IOException, InterruptedException {
+			byte[] bytes;
+			while ((bytes = reader.next()) != null) {
+				long line = reader.lineNumber();
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				while (pending.size() >= maxPending) {
+					write(pending.peekFirst(), checkpoint, true);
+				}
+				Item item;
+				try {
+					Transaction transaction = TransactionJson.read(new JsonReader(new StringReader(new String(bytes, 0,
+						reader.length(), UTF_8))));
+					item = new Item(line, reader.offset(), transaction);
+					queue(transaction.getStoreName()).put(item);
+				} catch (IOException e) {
+					item = new Item(line, reader.offset(), null);
+					item.finish("\"error\":" + TransactionJson.quote("malformed: " + e.getMessage()), ERROR);
+				} catch (RuntimeException e) {
+					item = new Item(line, reader.offset(), null);
+					item.finish("\"error\":" + TransactionJson.quote("malformed: " + e), ERROR);
+				}
+				pending.addLast(item);
+				while (!pending.isEmpty() && pending.peekFirst().result != null) {
+					write(pending.peekFirst(), checkpoint, false);
+				}
+			}
+			while (!pending.isEmpty()) {
+				write(pending.peekFirst(), checkpoint, true);
+			}
+			out.flush();
+			sync.getFD().sync();
+		}
+
+		/** Writes the oldest pending line once its verdict is in, and checkpoints/reports if it is time. */
+		private void write (Item item, File checkpoint, boolean wait) throws IOException, InterruptedException {
+			if (wait) {
+				item.done.await();
+			}
+			pending.removeFirst();
+			StringBuilder builder = new StringBuilder(96);
+			builder.append("{\"line\":").append(item.line);
+			if (item.transaction != null) {
+				builder.append(",\"storeName\":").append(TransactionJson.quote(item.transaction.getStoreName()));
+				builder.append(",\"orderId\":").append(TransactionJson.quote(item.transaction.getOrderId()));
+			}
+			builder.append(',').append(item.result).append("}\n");
+			byte[] bytes = builder.toString().getBytes(UTF_8);
+			out.write(bytes);
+			outputLength += bytes.length;
+			inputOffset = item.endOffset;
+			inputLine = item.line;
+			lines++;
+			switch (item.outcome) {
+			case VALID:
+				valid++;
+				break;
+			case INVALID:
+				invalid++;
+				break;
+			default:
+				errors++;
+				break;
+			}
+
+			long now = System.currentTimeMillis();
+			if (checkpoint != null && now - lastCheckpoint >= checkpointMillis) {
+				checkpoint(checkpoint);
+				lastCheckpoint = now;
+			}
+			if (listener != null && now - lastProgress >= progressMillis) {
+				long elapsed = now - lastProgress;
+				listener.progress(progress(lines - lastProgressLines, elapsed, now - start));
+				lastProgress = now;
+				lastProgressLines = lines;
+			}
+		}
+
+		/** Syncs the output, then atomically replaces the checkpoint. */
+		private void checkpoint (File checkpoint) throws IOException {
+			out.flush();
+			sync.getFD().sync();
+
+			Properties properties = new Properties();
+			properties.setProperty("inputOffset", Long.toString(inputOffset));
+			properties.setProperty("inputLine", Long.toString(inputLine));
+			properties.setProperty("outputLength", Long.toString(outputLength));
+			properties.setProperty("lines", Long.toString(lines));
+			properties.setProperty("valid", Long.toString(valid));
+			properties.setProperty("invalid", Long.toString(invalid));
+			properties.setProperty("errors", Long.toString(errors));
+			File temp = new File(checkpoint.getPath() + ".tmp");
+			FileOutputStream stream = new FileOutputStream(temp);
+			try {
+				properties.store(stream, "gdx-pay bulk verification");
+				stream.getFD().sync();
+			} finally {
+				stream.close();
+			}
+			if (!temp.renameTo(checkpoint)) {
+				// some platforms don't rename over an existing file
+				checkpoint.delete();
+				if (!temp.renameTo(checkpoint)) {
+					throw new IOException("Cannot write checkpoint: " + checkpoint);
+				}
+			}
+		}
+
+		Progress progress (long intervalLines, long elapsed) {
+			return progress(intervalLines, elapsed, elapsed);
+		}
+
+		Progress progress (long intervalLines, long intervalMillis, long elapsed) {
+			double perSecond = intervalMillis > 0 ? intervalLines * 1000.0 / intervalMillis : 0;
+			return new Progress(lines, valid, invalid, errors, elapsed, perSecond);
+		}
+
+		/** Returns the queue of the store's workers, starting them on first use. */
+		private BlockingQueue<Item> queue (String storeName) {
+			String key = storeName != null ? storeName : "";
+			BlockingQueue<Item> queue = queues.get(key);
+			if (queue == null) {
+				queue = new LinkedBlockingQueue<Item>();
+				queues.put(key, queue);
+				Thread[] threads = new Thread[manager.getStoreParallelism(storeName)];
+				for (int i = 0; i < threads.length; i++) {
+					threads[i] = new Thread(new Worker(queue), "gdx-pay-bulk-" + key + "-" + (i + 1));
+					threads[i].setDaemon(true);
+					threads[i].start();
+				}
+				workers.put(key, threads);
+			}
+			return queue;
+		}
+
+		void stopWorkers () {
+			for (Map.Entry<String, Thread[]> entry : workers.entrySet()) {
+				BlockingQueue<Item> queue = queues.get(entry.getKey());
+				// lines still queued (e.g. after an interrupt) are dropped; they come after the last checkpoint
+				queue.clear();
+				for (int i = 0; i < entry.getValue().length; i++) {
+					queue.offer(STOP);
+				}
+			}
+			workers.clear();
+			queues.clear();
+		}
+	}
+
+	/** Verifies the lines of one store. */
+	private class Worker implements Runnable {
+		private final BlockingQueue<Item> queue;
+
+		Worker (BlockingQueue<Item> queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public void run () {
+			try {
+				Item item;
+				while ((item = queue.take()) != STOP) {
+					try {
+						boolean valid = manager.isValid(item.transaction);
+						item.finish("\"valid\":" + valid, valid ? VALID : INVALID);
+					} catch (VerifierUnavailableException e) {
+						item.finish("\"error\":\"unavailable\",\"store\":" + TransactionJson.quote(e.getStoreName()), ERROR);
+					} catch (Throwable e) {
+						// the item must be finished whatever happens, or the run waits for it forever; the worker goes on
+						item.finish("\"error\":" + TransactionJson.quote(String.valueOf(e)), ERROR);
+					}
+				}
+			} catch (InterruptedException e) {
+				// quit
+			}
+		}
+	}
+
+	/** Reads lines as UTF-8 bytes and keeps track of the file offset after each line. */
+	private static class LineReader {
+		private final InputStream in;
+		private final byte[] buffer = new byte[65536];
+		private int position, limit;
+		private long offset;
+		private long lineNumber;
+
+		private byte[] line = new byte[1024];
+		private int length;
+
+		LineReader (InputStream in, long offset, long lineNumber) {
+			this.in = in;
+			this.offset = offset;
+			this.lineNumber = lineNumber;
+		}
+
+		/** Returns the next non-empty line (valid up to {@link #length()}), or null at the end of the input. */
+		byte[] next () throws IOException {
+			while (true) {
+				length = 0;
+				boolean eol = false;
+				while (!eol) {
+					if (position == limit) {
+						limit = in.read(buffer);
+						position = 0;
+						if (limit <= 0) {
+							limit = 0;
+							break;
+						}
+					}
+					int start = position;
+					while (position < limit && buffer[position] != '\n') {
+						position++;
+					}
+					append(start, position - start);
+					if (position < limit) {
+						position++; // '\n'
+						offset++;
+						lineNumber++;
+						eol = true;
+					}
+				}
+				if (!eol && length == 0) {
+					return null;
+				}
+				if (!eol) {
+					// last line without '\n'
+					lineNumber++;
+				}
+				if (length > 0 && line[length - 1] == '\r') {
+					length--;
+				}
+				if (length > 0) {
+					return line;
+				}
+			}
+		}
+
+		private void append (int start, int count) {
+			if (length + count > line.length) {
+				line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+			}
+			System.arraycopy(buffer, start, line, length, count);
+			length += count;
+			offset += count;
+		}
+
+		int length () {
+			return length;
+		}
+
+		/** The 1-based number of the current line in the input. */
+		long lineNumber () {
+			return lineNumber;
+		}
+
+		/** The file offset after the current line. */
+		long offset () {
+			return offset;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Limits the number of concurrent verifications for one store, so a store that stops answering ties up at most that many
+ * threads. Callers beyond the limit wait for a free slot for a limited time; if too many are waiting already, they are rejected
+ * immediately. See {@link PurchaseVerifierManager#setBulkhead(String, Bulkhead)}. */
+public class Bulkhead {
+
+	private final int maxConcurrentCalls;
+	private final int maxWaitingCalls;
+	private final long maxWaitNanos;
+
+	private final Semaphore permits;
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	/** @param maxConcurrentCalls The number of verifications that may run at the same time.
+	 * @param maxWaitingCalls The number of callers that may wait for a free slot (0 to reject right away).
+	 * @param maxWaitMillis How long a caller waits for a free slot before it is rejected. */
+	public Bulkhead (int maxConcurrentCalls, int maxWaitingCalls, long maxWaitMillis) {
+		if (maxConcurrentCalls < 1) throw new IllegalArgumentException("maxConcurrentCalls must be at least 1: " + maxConcurrentCalls);
+		if (maxWaitingCalls < 0) throw new IllegalArgumentException("maxWaitingCalls must not be negative: " + maxWaitingCalls);
+		this.maxConcurrentCalls = maxConcurrentCalls;
+		this.maxWaitingCalls = maxWaitingCalls;
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+		this.permits = new Semaphore(maxConcurrentCalls);
+	}
+
+	/** Takes a slot, waiting for one if allowed. Returns false if the caller is rejected; otherwise {@link #release()} must be
+	 * called once the verification finished. */
+	public boolean acquire () {
+		if (permits.tryAcquire()) {
+			return true;
+		}
+		if (maxWaitingCalls == 0 || maxWaitNanos <= 0) {
+			return false;
+		}
+		if (waiting.incrementAndGet() > maxWaitingCalls) {
+			waiting.decrementAndGet();
+			return false;
+		}
+		try {
+			return permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			waiting.decrementAndGet();
+		}
+	}
+
+	/** Takes a slot if one is free right now. Used for asynchronous verifications, which must not block. */
+	public boolean tryAcquire () {
+		return permits.tryAcquire();
+	}
+
+	/** Returns a slot taken by {@link #acquire()} or {@link #tryAcquire()}. */
+	public void release () {
+		permits.release();
+	}
+
+	public int getMaxConcurrentCalls () {
+		return maxConcurrentCalls;
+	}
+
+	/** The number of verifications running right now. */
+	public int getActiveCalls () {
+		return maxConcurrentCalls - permits.availablePermits();
+	}
+
+	/** The number of callers waiting for a slot right now. */
+	public int getWaitingCalls () {
+		return waiting.get();
+	}
+
+	@Override
+	public String toString () {
+		return "Bulkhead{" +
+				"maxConcurrentCalls=" + maxConcurrentCalls +
+				", maxWaitingCalls=" + maxWaitingCalls +
+				", activeCalls=" + getActiveCalls() +
+				", waitingCalls=" + getWaitingCalls() +
+				'}';
+	}
+}
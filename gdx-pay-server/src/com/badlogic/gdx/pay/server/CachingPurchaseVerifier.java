@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.metrics.StripedCounter;
+import com.badlogic.gdx.pay.server.metrics.VerifierMetrics;
+
+/** Decorator that remembers verification results, so transactions that are sent again (e.g. after every purchaseRestore())
+ * don't hit the store again. Use it in place of the verifier it wraps:
+ * 
+ * <pre>
+ * // remember up to 100000 results: valid ones for a day, invalid ones for 5 minutes
+ * manager.addVerifier(new CachingPurchaseVerifier(new PurchaseVerifieriOSApple(), 100000, 24 * 60 * 60 * 1000L, 5 * 60 * 1000L));
+ * </pre>
+ * 
+ * Results are keyed on store name plus order id, or on a hash of the receipt if there is no order id. Every entry also holds a
+ * SHA-256 fingerprint of the product, user id, transaction data and signature, and only a transaction with the same fingerprint
+ * gets the cached result: a forged receipt reusing a valid order id, or a valid receipt claimed for another product or user, is
+ * verified again. The cache is split into segments, each evicting its least
+ * recently used entries once full. */
+public class CachingPurchaseVerifier implements PurchaseVerifier {
+
+	private static final int SEGMENTS = 16;
+
+	private final PurchaseVerifier verifier;
+	private final long validTtlNanos;
+	private final long invalidTtlNanos;
+	private final Segment[] segments;
+
+	private final StripedCounter hits = new StripedCounter();
+	private final StripedCounter misses = new StripedCounter();
+	/** Where hits and misses are recorded as well, null for nowhere. */
+	private volatile VerifierMetrics metrics = VerifierMetrics.getDefault();
+
+	/** @param verifier The verifier to cache results for.
+	 * @param maxEntries The maximum number of results to remember.
+	 * @param validTtlMillis How long to remember that a transaction is valid (0 to not cache valid results).
+	 * @param invalidTtlMillis How long to remember that a transaction is invalid (0 to not cache invalid results). Keep it short:
+	 *           some verifiers also report "invalid" if the store could not be reached (a {@link VerifierUnavailableException}
+	 *           is never cached). */
+	public CachingPurchaseVerifier (PurchaseVerifier verifier, int maxEntries, long validTtlMillis, long invalidTtlMillis) {
+		if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be at least 1: " + maxEntries);
+		this.verifier = verifier;
+		this.validTtlNanos = validTtlMillis * 1000000L;
+		this.invalidTtlNanos = invalidTtlMillis * 1000000L;
+		int count = Math.min(SEGMENTS, Integer.highestOneBit(maxEntries));
+		int segmentSize = maxEntries / count;
+		this.segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/** The verifier whose results are cached. */
+	public PurchaseVerifier getVerifier () {
+		return verifier;
+	}
+
+	/** Sets where hits and misses of the store are recorded in addition to {@link #getHits()} and {@link #getMisses()} (default:
+	 * {@link VerifierMetrics#getDefault()}). Null turns recording off. */
+	public void setMetrics (VerifierMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public String storeName () {
+		return verifier.storeName();
+	}
+
+	@Override
+	public boolean isValid (Transaction transaction) {
+		String key = TransactionKeys.key(transaction);
+		byte[] fingerprint = TransactionKeys.fingerprint(transaction);
+		Segment segment = segment(key);
+		long now = System.nanoTime();
+
+		CachedResult entry;
+		synchronized (segment) {
+			entry = segment.get(key);
+		}
+		if (entry != null && entry.expires - now > 0 && Arrays.equals(entry.fingerprint, fingerprint)) {
+			hits.increment();
+			VerifierMetrics metrics = this.metrics;
+			if (metrics != null) {
+				metrics.store(storeName()).recordCacheHit();
+			}
+			return entry.valid;
+		}
+		misses.increment();
+		VerifierMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.store(storeName()).recordCacheMiss();
+		}
+
+		boolean valid = verifier.isValid(transaction);
+		long ttl = valid ? validTtlNanos : invalidTtlNanos;
+		if (ttl > 0) {
+			synchronized (segment) {
+				segment.put(key, new CachedResult(fingerprint, valid, System.nanoTime() + ttl));
+			}
+		}
+		return valid;
+	}
+
+	/** Forgets the cached result for a transaction, e.g. after it was refunded. */
+	public void invalidate (Transaction transaction) {
+		String key = TransactionKeys.key(transaction);
+		Segment segment = segment(key);
+		synchronized (segment) {
+			segment.remove(key);
+		}
+	}
+
+	/** Forgets all cached results. */
+	public void clear () {
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				segments[i].clear();
+			}
+		}
+	}
+
+	/** Returns the number of cached results (including expired ones not evicted yet). */
+	public int size () {
+		int size = 0;
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				size += segments[i].size();
+			}
+		}
+		return size;
+	}
+
+	/** The number of verifications answered from the cache. */
+	public long getHits () {
+		return hits.sum();
+	}
+
+	/** The number of verifications passed on to the verifier. */
+	public long getMisses () {
+		return misses.sum();
+	}
+
+	/** Resets the hit and miss counters. */
+	public void resetStatistics () {
+		hits.reset();
+		misses.reset();
+	}
+
+	private Segment segment (String key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[hash & (segments.length - 1)];
+	}
+
+	private static final class CachedResult {
+		final byte[] fingerprint;
+		final boolean valid;
+		final long expires;
+
+		CachedResult (byte[] fingerprint, boolean valid, long expires) {
+			this.fingerprint = fingerprint;
+			this.valid = valid;
+			this.expires = expires;
+		}
+	}
+
+	/** A LRU map; guarded by its own monitor. */
+	private static final class Segment extends LinkedHashMap<String, CachedResult> {
+		private static final long serialVersionUID = 1L;
+
+		private final int maxEntries;
+
+		Segment (int maxEntries) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<String, CachedResult> eldest) {
+			return size() > maxEntries;
+		}
+	}
+}
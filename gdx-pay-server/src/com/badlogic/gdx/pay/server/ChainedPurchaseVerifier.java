@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.badlogic.gdx.pay.Transaction;
+
+/** Several verifiers for the same store, asked in order until one accepts the transaction. Used by
+ * {@link PurchaseVerifierManager#chainVerifier(PurchaseVerifier)} to run an old and a new configuration side by side, e.g. while
+ * a key is rotated: chain the verifier with the new key, and remove the old one once it no longer accepts anything.
+ * <p>
+ * Instances are immutable; {@link #with(PurchaseVerifier)} and {@link #without(PurchaseVerifier)} return new chains. */
+public final class ChainedPurchaseVerifier implements PurchaseVerifier {
+
+	private final PurchaseVerifier[] verifiers;
+
+	public ChainedPurchaseVerifier (PurchaseVerifier... verifiers) {
+		if (verifiers.length == 0) throw new IllegalArgumentException("verifiers must not be empty");
+		String storeName = verifiers[0].storeName();
+		for (int i = 1; i < verifiers.length; i++) {
+			if (storeName == null ? verifiers[i].storeName() != null : !storeName.equals(verifiers[i].storeName()))
+				throw new IllegalArgumentException("verifiers must be for the same store: " + verifiers[i].storeName());
+		}
+		this.verifiers = verifiers.clone();
+	}
+
+	/** Returns a chain with the verifier appended (asked last). */
+	public ChainedPurchaseVerifier with (PurchaseVerifier verifier) {
+		PurchaseVerifier[] chain = Arrays.copyOf(verifiers, verifiers.length + 1);
+		chain[verifiers.length] = verifier;
+		return new ChainedPurchaseVerifier(chain);
+	}
+
+	/** Returns the remaining verifier(s) without the given one: this chain if it isn't part of it, a single verifier if only one
+	 * remains, or null if none does. */
+	public PurchaseVerifier without (PurchaseVerifier verifier) {
+		for (int i = 0; i < verifiers.length; i++) {
+			if (verifiers[i] == verifier) {
+				if (verifiers.length == 1) {
+					return null;
+				}
+				if (verifiers.length == 2) {
+					return verifiers[1 - i];
+				}
+				PurchaseVerifier[] chain = new PurchaseVerifier[verifiers.length - 1];
+				System.arraycopy(verifiers, 0, chain, 0, i);
+				System.arraycopy(verifiers, i + 1, chain, i, verifiers.length - i - 1);
+				return new ChainedPurchaseVerifier(chain);
+			}
+		}
+		return this;
+	}
+
+	/** Returns true if the verifier is part of this chain. */
+	public boolean contains (PurchaseVerifier verifier) {
+		for (int i = 0; i < verifiers.length; i++) {
+			if (verifiers[i] == verifier) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** The verifiers in the order they are asked. */
+	public List<PurchaseVerifier> getVerifiers () {
+		return Collections.unmodifiableList(Arrays.asList(verifiers));
+	}
+
+	@Override
+	public String storeName () {
+		return verifiers[0].storeName();
+	}
+
+	/** Returns true as soon as one verifier accepts the transaction. If a verifier could not reach the store, the next one is
+	 * asked; if none accepts and one could not reach the store, the transaction is neither valid nor invalid.
+	 * 
+	 * @throws VerifierUnavailableException the first failure if no verifier accepted the transaction and one failed. */
+	@Override
+	public boolean isValid (Transaction transaction) {
+		VerifierUnavailableException unavailable = null;
+		for (int i = 0; i < verifiers.length; i++) {
+			try {
+				if (verifiers[i].isValid(transaction)) {
+					return true;
+				}
+			} catch (VerifierUnavailableException e) {
+				if (unavailable == null) {
+					unavailable = e;
+				}
+			}
+		}
+		if (unavailable != null) {
+			throw unavailable;
+		}
+		return false;
+	}
+
+	@Override
+	public String toString () {
+		return "ChainedPurchaseVerifier{" + "verifiers=" + Arrays.toString(verifiers) + '}';
+	}
+}
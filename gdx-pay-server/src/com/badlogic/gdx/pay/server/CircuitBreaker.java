@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server;
+
+import java.util.concurrent.TimeUnit;
+
+/** Stops calling a store that fails or answers too slowly. The breaker looks at the outcomes of the last calls; once enough of
+ * them failed (threw) or took longer than the slow call threshold, it opens and callers are rejected right away. After a while it
+ * lets a few probe calls through: if they all succeed it closes again, otherwise it stays open for another period. See
+ * {@link PurchaseVerifierManager#setCircuitBreaker(String, CircuitBreaker)}.
+ * 
+ * <pre>
+ * // open if half of the last 50 calls failed or took more than 5 seconds, probe again after 30 seconds
+ * manager.setCircuitBreaker(PurchaseManagerConfig.STORE_NAME_IOS_APPLE, new CircuitBreaker(50, 10, 0.5f, 5000, 30000, 3));
+ * </pre> */
+public class CircuitBreaker {
+
+	public enum State {
+		/** Calls go through. */
+		CLOSED,
+		/** Calls are rejected. */
+		OPEN,
+		/** A few probe calls go through to test whether the store recovered. */
+		HALF_OPEN
+	}
+
+	private static final byte SUCCESS = 0;
+	private static final byte FAILURE = 1;
+
+	private final int minimumCalls;
+	private final float failureRateThreshold;
+	private final long slowCallNanos;
+	private final long openNanos;
+	private final int probeCalls;
+
+	/** Outcomes of the last calls (ring buffer), guarded by this. */
+	private final byte[] window;
+	private int windowPosition;
+	private int windowCalls;
+	private int windowFailures;
+
+	private State state = State.CLOSED;
+	/** When the breaker opened (nanoTime), if open. */
+	private long openedAt;
+	/** Probe calls handed out / succeeded while half open. */
+	private int probesStarted;
+	private int probesSucceeded;
+
+	/** @param windowSize The number of recent calls to look at.
+	 * @param minimumCalls The number of calls needed before the breaker may open.
+	 * @param failureRateThreshold The fraction of failed or slow calls at which the breaker opens (e.g. 0.5).
+	 * @param slowCallMillis Calls that take longer count as failed, even if they return a verdict.
+	 * @param openMillis How long calls are rejected before probing the store again.
+	 * @param probeCalls The number of calls that must succeed to close the breaker again. */
+	public CircuitBreaker (int windowSize, int minimumCalls, float failureRateThreshold, long slowCallMillis, long openMillis,
+		int probeCalls) {
+		if (windowSize < 1) throw new IllegalArgumentException("windowSize must be at least 1: " + windowSize);
+		if (minimumCalls < 1 || minimumCalls > windowSize)
+			throw new IllegalArgumentException("minimumCalls must be in [1, windowSize]: " + minimumCalls);
+		if (failureRateThreshold <= 0 || failureRateThreshold > 1)
+			throw new IllegalArgumentException("failureRateThreshold must be in (0, 1]: " + failureRateThreshold);
+		if (probeCalls < 1) throw new IllegalArgumentException("probeCalls must be at least 1: " + probeCalls);
+		this.window = new byte[windowSize];
+		this.minimumCalls = minimumCalls;
+		this.failureRateThreshold = failureRateThreshold;
+		this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+		this.probeCalls = probeCalls;
+	}
+
+	/** Returns true if a call may go through. The caller must then report the outcome via {@link #onSuccess(long)},
+	 * {@link #onFailure(long)} or, if it did not make the call after all, {@link #onCancel()}. */
+	public synchronized boolean tryAcquire () {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		if (state == State.OPEN) {
+			if (System.nanoTime() - openedAt < openNanos) {
+				return false;
+			}
+			state = State.HALF_OPEN;
+			probesStarted = 0;
+			probesSucceeded = 0;
+		}
+		if (probesStarted >= probeCalls) {
+			return false;
+		}
+		probesStarted++;
+		return true;
+	}
+
+	/** Reports a call that returned a verdict after the given time. Counts as failure if it was slow. */
+	public synchronized void onSuccess (long nanos) {
+		if (nanos > slowCallNanos) {
+			record(FAILURE);
+		} else {
+			record(SUCCESS);
+		}
+	}
+
+	/** Reports a call that threw after the given time. */
+	public synchronized void onFailure (long nanos) {
+		record(FAILURE);
+	}
+
+	/** Reports that a permitted call was not made, e.g. because the bulkhead was full. */
+	public synchronized void onCancel () {
+		if (state == State.HALF_OPEN && probesStarted > 0) {
+			probesStarted--;
+		}
+	}
+
+	private void record (byte outcome) {
+		if (state == State.HALF_OPEN) {
+			if (outcome == FAILURE) {
+				open();
+			} else if (++probesSucceeded >= probeCalls) {
+				close();
+			}
+			return;
+		}
+		if (state == State.OPEN) {
+			// a call that started before the breaker opened
+			return;
+		}
+
+		if (windowCalls == window.length) {
+			windowFailures -= window[windowPosition];
+		} else {
+			windowCalls++;
+		}
+		window[windowPosition] = outcome;
+		windowFailures += outcome;
+		windowPosition = (windowPosition + 1) % window.length;
+
+		if (windowCalls >= minimumCalls && windowFailures >= failureRateThreshold * windowCalls) {
+			open();
+		}
+	}
+
+	private void open () {
+		state = State.OPEN;
+		openedAt = System.nanoTime();
+	}
+
+	private void close () {
+		state = State.CLOSED;
+		windowPosition = 0;
+		windowCalls = 0;
+		windowFailures = 0;
+	}
+
+	public synchronized State getState () {
+		if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+			// will let probes through on the next call
+			return State.HALF_OPEN;
+		}
+		return state;
+	}
+
+	/** Returns the fraction of failed or slow calls among the recent calls (0 while half open or open). */
+	public synchronized float getFailureRate () {
+		return state == State.CLOSED && windowCalls > 0 ? windowFailures / (float)windowCalls : 0;
+	}
+
+	/** Closes the breaker and forgets all recorded calls. */
+	public synchronized void reset () {
+		close();
+	}
+
+	@Override
+	public synchronized String toString () {
+		return "CircuitBreaker{" +
+				"state=" + getState() +
+				", failureRate=" + getFailureRate() +
+				", windowCalls=" + windowCalls +
+				'}';
+	}
+}
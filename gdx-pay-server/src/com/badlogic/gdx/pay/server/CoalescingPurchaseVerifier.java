@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.metrics.StripedCounter;
+import com.badlogic.gdx.pay.server.metrics.VerifierMetrics;
+
+/** Decorator that lets concurrent verifications of the same purchase share one call to the store ("single flight"), e.g. when a
+ * client retries or several devices of one account restore at the same moment. The first caller verifies; callers arriving
+ * while it is in flight wait for its result, and also get its {@link VerifierUnavailableException} or other failure.
+ * 
+ * <pre>
+ * manager.addVerifier(new CoalescingPurchaseVerifier(new PurchaseVerifieriOSApple()));
+ * </pre>
+ * 
+ * Verifications are identical if they are for the same store and order id (or receipt, if there is no order id), product and
+ * user id, with the same transaction data and signature (as for {@link CachingPurchaseVerifier}): a forged receipt reusing an
+ * order id in flight is verified on its own. Nothing is
+ * remembered once a verification completes, combine with {@link CachingPurchaseVerifier} for that. */
+public class CoalescingPurchaseVerifier implements PurchaseVerifier {
+
+	private final PurchaseVerifier verifier;
+	private final ConcurrentHashMap<String, VerificationFuture> inFlight = new ConcurrentHashMap<String, VerificationFuture>();
+
+	private final StripedCounter coalesced = new StripedCounter();
+	/** Where coalesced verifications are recorded as well, null for nowhere. */
+	private volatile VerifierMetrics metrics = VerifierMetrics.getDefault();
+
+	public CoalescingPurchaseVerifier (PurchaseVerifier verifier) {
+		this.verifier = verifier;
+	}
+
+	/** The verifier whose calls are shared. */
+	public PurchaseVerifier getVerifier () {
+		return verifier;
+	}
+
+	/** Sets where coalesced verifications are recorded in addition to {@link #getCoalesced()} (default:
+	 * {@link VerifierMetrics#getDefault()}). Null turns recording off. */
+	public void setMetrics (VerifierMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public String storeName () {
+		return verifier.storeName();
+	}
+
+	/** @throws VerifierUnavailableException if the shared verification could not ask the store, or if the thread was
+	 *            interrupted while waiting for it (the interrupt flag is set again). */
+	@Override
+	public boolean isValid (Transaction transaction) {
+		// the same key and fingerprint that CachingPurchaseVerifier shares results by
+		String key = TransactionKeys.key(transaction) + '|' + TransactionKeys.hex(TransactionKeys.fingerprint(transaction));
+		VerificationFuture flight = new VerificationFuture(transaction);
+		VerificationFuture existing = inFlight.putIfAbsent(key, flight);
+		if (existing != null) {
+			coalesced.increment();
+			VerifierMetrics metrics = this.metrics;
+			if (metrics != null) {
+				metrics.store(storeName()).recordCoalesced();
+			}
+			return await(existing);
+		}
+
+		try {
+			boolean valid = verifier.isValid(transaction);
+			flight.complete(valid);
+			return valid;
+		} catch (RuntimeException e) {
+			flight.fail(e);
+			throw e;
+		} catch (Error e) {
+			flight.fail(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, flight);
+		}
+	}
+
+	private boolean await (VerificationFuture flight) {
+		try {
+			return flight.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new VerifierUnavailableException(storeName(), "Interrupted while waiting for verification in flight", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/** Returns the number of verifications in flight. */
+	public int getInFlight () {
+		return inFlight.size();
+	}
+
+	/** The number of verifications that shared the result of one in flight instead of calling the verifier. */
+	public long getCoalesced () {
+		return coalesced.sum();
+	}
+
+	/** Resets the coalesced counter. */
+	public void resetStatistics () {
+		coalesced.reset();
+	}
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.badlogic.gdx.pay.Transaction;
+
+/** Runs a synchronous {@link PurchaseVerifier} on an executor so it can be used asynchronously. The executor should be bounded
+ * (see {@link #newBoundedExecutor(int, int)}): the blocking work then happens on a fixed number of threads while callers can
+ * submit as many verifications as the queue holds. If the executor rejects a verification, the returned future fails with a
+ * {@link RejectedExecutionException}. */
+public class PurchaseVerifierAsyncAdapter implements AsyncPurchaseVerifier {
+
+	private final PurchaseVerifier verifier;
+	private final Executor executor;
+
+	public PurchaseVerifierAsyncAdapter (PurchaseVerifier verifier, Executor executor) {
+		this.verifier = verifier;
+		this.executor = executor;
+	}
+
+	/** Returns an adapter for the verifier, or the verifier itself if it is asynchronous already. */
+	public static AsyncPurchaseVerifier adapt (PurchaseVerifier verifier, Executor executor) {
+		if (verifier instanceof AsyncPurchaseVerifier) {
+			return (AsyncPurchaseVerifier)verifier;
+		}
+		return new PurchaseVerifierAsyncAdapter(verifier, executor);
+	}
+
+	/** Creates an executor with a fixed number of daemon threads and a bounded queue for pending verifications.
+	 *
+	 * @param threads The number of verification threads (= maximum number of concurrently blocking verifications).
+	 * @param queueCapacity The maximum number of verifications waiting for a thread. */
+	public static ExecutorService newBoundedExecutor (int threads, int queueCapacity) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(queueCapacity), new VerifierThreadFactory());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/** The verifier being adapted. */
+	public PurchaseVerifier getVerifier () {
+		return verifier;
+	}
+
+	@Override
+	public String storeName () {
+		return verifier.storeName();
+	}
+
+	@Override
+	public boolean isValid (Transaction transaction) {
+		return verifier.isValid(transaction);
+	}
+
+	@Override
+	public VerificationFuture verifyAsync (final Transaction transaction, VerificationCallback callback) {
+		final VerificationFuture future = new VerificationFuture(transaction);
+		future.addCallback(callback);
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run () {
+					if (future.isDone()) {
+						// cancelled while queued
+						return;
+					}
+					try {
+						future.complete(verifier.isValid(transaction));
+					} catch (RuntimeException e) {
+						future.fail(e);
+					} catch (Error e) {
+						future.fail(e);
+						throw e;
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.fail(e);
+		}
+		return future;
+	}
+
+	private static class VerifierThreadFactory implements ThreadFactory {
+		private static final AtomicInteger poolCount = new AtomicInteger();
+		private final AtomicInteger threadCount = new AtomicInteger();
+		private final int pool = poolCount.incrementAndGet();
+
+		@Override
+		public Thread newThread (Runnable runnable) {
+			Thread thread = new Thread(runnable, "gdx-pay-verifier-" + pool + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
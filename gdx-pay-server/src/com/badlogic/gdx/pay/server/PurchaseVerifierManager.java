@@ -16,10 +16,23 @@
 
 package com.badlogic.gdx.pay.server;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.metrics.VerifierMetrics;
 
 /** Verifies if a purchase is valid by e.g. doing a post-back validation on a server.
  * 
@@ -42,6 +55,32 @@ import com.badlogic.gdx.pay.Transaction;
  *   // transaction appears bogus
  *   ... punish user ...
  * }
+ * 
+ * // verify a whole batch, e.g. from PurchaseObserver.handleRestore(...), in parallel per store
+ * VerificationOutcome[] outcomes = verifier.verifyAll(Arrays.asList(transactions));
+ * // an outcome is VALID, INVALID, UNAVAILABLE (store not reachable, try again later) or FAILED
+ * 
+ * // ...or verify without blocking the calling thread
+ * verifier.verifyAsync(transaction, new VerificationCallback() {
+ *   public void verified (Transaction transaction, boolean valid) { ... }
+ *   public void failed (Transaction transaction, Throwable cause) { ... }
+ * });
+ * 
+ * // keep a slow store from tying up all threads: at most 20 concurrent Apple calls, stop calling after repeated failures
+ * verifier.setBulkhead(PurchaseManagerConfig.STORE_NAME_IOS_APPLE, new Bulkhead(20, 50, 2000));
+ * verifier.setCircuitBreaker(PurchaseManagerConfig.STORE_NAME_IOS_APPLE, new CircuitBreaker(50, 10, 0.5f, 5000, 30000, 3));
+ * try {
+ *   verifier.isValid(transaction);
+ * } catch (VerifierUnavailableException e) {
+ *   // store unavailable: neither valid nor invalid, try again later
+ * }
+ * 
+ * // reconfigure a store under load: run the new verifier next to the old one, then drop the old one
+ * verifier.chainVerifier(newGoogleVerifier);
+ * verifier.removeVerifier(oldGoogleVerifier);
+ * 
+ * // calls, verdicts and latencies per store are recorded in VerifierMetrics
+ * VerifierMetrics.getDefault().registerMBeans();
  * </pre>
  * 
  * IMPORTANT: this code runs on your SERVER! Don't use on your client-application (not secure).
@@ -49,11 +88,36 @@ import com.badlogic.gdx.pay.Transaction;
  * @author noblemaster */
 public class PurchaseVerifierManager {
 
+	/** Default number of threads for running synchronous verifiers asynchronously. */
+	public static final int DEFAULT_ASYNC_THREADS = 32;
+	/** Default number of asynchronous verifications that can wait for a thread. */
+	public static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 10000;
+	/** Default number of concurrent verifications per store for {@link #verifyAll(Collection)}. */
+	public static final int DEFAULT_STORE_PARALLELISM = 8;
+
 	/** Default if no verifier was found for a store. */
 	private boolean defaultIfNoVerifierFound;
 
-	/** The verifier implementations. */
-	private Map<String, PurchaseVerifier> verifiers;
+	/** The verifier implementations: an immutable snapshot, replaced as a whole on change so lookups need no lock. */
+	private volatile Map<String, PurchaseVerifier> verifiers = Collections.emptyMap();
+	/** Serializes changes of the verifiers. */
+	private final Object verifiersLock = new Object();
+
+	/** Executor to run synchronous verifiers on for {@link #verifyAsync(Transaction, VerificationCallback)}. Created lazily. */
+	private ExecutorService executor;
+	/** True if we created the executor ourselves, i.e. it's ours to shut down. */
+	private boolean ownsExecutor;
+
+	/** Concurrent verifications per store for batches. */
+	private volatile int defaultStoreParallelism = DEFAULT_STORE_PARALLELISM;
+	private final Map<String, Integer> storeParallelism = new ConcurrentHashMap<String, Integer>(16);
+
+	/** Optional circuit breakers and bulkheads per store. */
+	private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>(16);
+	private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<String, Bulkhead>(16);
+
+	/** Where calls, verdicts and latencies are recorded, null for nowhere. */
+	private volatile VerifierMetrics metrics = VerifierMetrics.getDefault();
 
 	public PurchaseVerifierManager () {
 		this(false);
@@ -61,15 +125,154 @@ public class PurchaseVerifierManager {
 
 	public PurchaseVerifierManager (boolean defaultIfNoVerifierFound) {
 		this.defaultIfNoVerifierFound = defaultIfNoVerifierFound;
-		this.verifiers = new HashMap<String, PurchaseVerifier>(16);
 	}
 
+	/** Sets the executor used to run synchronous verifiers for {@link #verifyAsync(Transaction, VerificationCallback)}. The
+	 * executor should be bounded (see {@link PurchaseVerifierAsyncAdapter#newBoundedExecutor(int, int)}) and is not shut down by
+	 * {@link #shutdown()}. */
+	public synchronized void setExecutor (ExecutorService executor) {
+		if (ownsExecutor && this.executor != null) {
+			this.executor.shutdown();
+		}
+		this.executor = executor;
+		this.ownsExecutor = false;
+	}
+
+	/** Returns the executor for asynchronous verifications, creating a bounded default one if none was set. */
+	public synchronized ExecutorService getExecutor () {
+		if (executor == null) {
+			executor = PurchaseVerifierAsyncAdapter.newBoundedExecutor(DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_QUEUE_CAPACITY);
+			ownsExecutor = true;
+		}
+		return executor;
+	}
+
+	/** Shuts down the default executor if one was created. Pending verifications still complete. */
+	public synchronized void shutdown () {
+		if (ownsExecutor && executor != null) {
+			executor.shutdown();
+			executor = null;
+			ownsExecutor = false;
+		}
+	}
+
+	/** Sets how many transactions of a single store {@link #verifyAll(Collection)} verifies concurrently, unless overridden via
+	 * {@link #setStoreParallelism(String, int)}. */
+	public void setDefaultStoreParallelism (int parallelism) {
+		if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+		this.defaultStoreParallelism = parallelism;
+	}
+
+	/** Sets how many transactions of the given store {@link #verifyAll(Collection)} verifies concurrently. Use 1 for stores that
+	 * must not be called in parallel. */
+	public void setStoreParallelism (String storeName, int parallelism) {
+		if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+		storeParallelism.put(storeName, parallelism);
+	}
+
+	/** Returns the number of concurrent batch verifications for the given store. */
+	public int getStoreParallelism (String storeName) {
+		Integer parallelism = storeName != null ? storeParallelism.get(storeName) : null;
+		return parallelism != null ? parallelism : defaultStoreParallelism;
+	}
+
+	/** Sets the circuit breaker for a store (null to remove it). While it is open, verifications of the store fail right away
+	 * with a {@link VerifierUnavailableException}. */
+	public void setCircuitBreaker (String storeName, CircuitBreaker breaker) {
+		if (breaker == null) {
+			circuitBreakers.remove(storeName);
+		} else {
+			circuitBreakers.put(storeName, breaker);
+		}
+	}
+
+	/** Returns the circuit breaker of a store, null if there is none. */
+	public CircuitBreaker getCircuitBreaker (String storeName) {
+		return storeName != null ? circuitBreakers.get(storeName) : null;
+	}
+
+	/** Sets the bulkhead for a store (null to remove it). Verifications beyond its limits fail with a
+	 * {@link VerifierUnavailableException}; asynchronous verifications never wait for a slot. */
+	public void setBulkhead (String storeName, Bulkhead bulkhead) {
+		if (bulkhead == null) {
+			bulkheads.remove(storeName);
+		} else {
+			bulkheads.put(storeName, bulkhead);
+		}
+	}
+
+	/** Returns the bulkhead of a store, null if there is none. */
+	public Bulkhead getBulkhead (String storeName) {
+		return storeName != null ? bulkheads.get(storeName) : null;
+	}
+
+	/** Sets where calls, verdicts and latencies per store are recorded (default: {@link VerifierMetrics#getDefault()}). Null
+	 * turns recording off. */
+	public void setMetrics (VerifierMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/** Returns where calls are recorded, null if recording is off. */
+	public VerifierMetrics getMetrics () {
+		return metrics;
+	}
+
+	/** Sets the verifier of its store, replacing the store's verifier(s) if any. Can be called while transactions are verified:
+	 * verifications in progress complete with the verifier they started with. */
 	public void addVerifier (PurchaseVerifier verifier) {
-		verifiers.put(verifier.storeName(), verifier);
+		synchronized (verifiersLock) {
+			Map<String, PurchaseVerifier> copy = new HashMap<String, PurchaseVerifier>(verifiers);
+			copy.put(verifier.storeName(), verifier);
+			verifiers = Collections.unmodifiableMap(copy);
+		}
+	}
+
+	/** Adds a verifier to its store: if the store has a verifier already, the verifier is asked as well if that one does not
+	 * accept a transaction (see {@link ChainedPurchaseVerifier}). */
+	public void chainVerifier (PurchaseVerifier verifier) {
+		synchronized (verifiersLock) {
+			Map<String, PurchaseVerifier> copy = new HashMap<String, PurchaseVerifier>(verifiers);
+			PurchaseVerifier current = copy.get(verifier.storeName());
+			if (current == null) {
+				copy.put(verifier.storeName(), verifier);
+			} else if (current instanceof ChainedPurchaseVerifier) {
+				copy.put(verifier.storeName(), ((ChainedPurchaseVerifier)current).with(verifier));
+			} else {
+				copy.put(verifier.storeName(), new ChainedPurchaseVerifier(current, verifier));
+			}
+			verifiers = Collections.unmodifiableMap(copy);
+		}
 	}
 
+	/** Removes the verifier if it is the verifier of its store or chained with others (then only it is removed). Does nothing if
+	 * the store has another verifier. */
 	public void removeVerifier (PurchaseVerifier verifier) {
-		verifiers.remove(verifier.storeName());
+		synchronized (verifiersLock) {
+			PurchaseVerifier current = verifiers.get(verifier.storeName());
+			PurchaseVerifier remaining;
+			if (current == verifier) {
+				remaining = null;
+			} else if (current instanceof ChainedPurchaseVerifier) {
+				remaining = ((ChainedPurchaseVerifier)current).without(verifier);
+				if (remaining == current) {
+					return;
+				}
+			} else {
+				return;
+			}
+			Map<String, PurchaseVerifier> copy = new HashMap<String, PurchaseVerifier>(verifiers);
+			if (remaining != null) {
+				copy.put(verifier.storeName(), remaining);
+			} else {
+				copy.remove(verifier.storeName());
+			}
+			verifiers = Collections.unmodifiableMap(copy);
+		}
+	}
+
+	/** Returns the verifier of the store (a {@link ChainedPurchaseVerifier} if several were chained), or null. */
+	public PurchaseVerifier getVerifier (String storeName) {
+		return verifiers.get(storeName);
 	}
 
 	/** Returns true if a transaction is deemed valid.
@@ -77,14 +280,281 @@ public class PurchaseVerifierManager {
 	 * IMPORTANT: will return "defaultIfNoVerifierFound" if no verifier was found for the given transaction.
 	 * 
 	 * @param transaction The transaction to verify.
-	 * @return True for considered valid. */
+	 * @return True for considered valid.
+	 * @throws VerifierUnavailableException if the store could not be asked (see {@link #setCircuitBreaker(String, CircuitBreaker)}
+	 *            and {@link #setBulkhead(String, Bulkhead)}) or the verifier could not reach it. */
 	public boolean isValid (Transaction transaction) {
 		// find the verifier and verify via verifier if a purchase is valid
 		PurchaseVerifier verifier = verifiers.get(transaction.getStoreName());
 		if (verifier == null) {
 			return defaultIfNoVerifierFound;
 		} else {
+			return verify(verifier, transaction);
+		}
+	}
+
+	/** Calls the verifier if the store's breaker and bulkhead let it, and records the outcome. */
+	private boolean verify (PurchaseVerifier verifier, Transaction transaction) {
+		String storeName = verifier.storeName();
+		CircuitBreaker breaker = circuitBreakers.get(storeName);
+		Bulkhead bulkhead = bulkheads.get(storeName);
+		VerifierMetrics metrics = this.metrics;
+		if (breaker == null && bulkhead == null && metrics == null) {
 			return verifier.isValid(transaction);
 		}
+
+		admit(storeName, breaker, bulkhead, true);
+		long start = System.nanoTime();
+		boolean valid = false;
+		boolean returned = false;
+		try {
+			valid = verifier.isValid(transaction);
+			returned = true;
+		} finally {
+			// also for errors, so a half open breaker doesn't wait for its probe forever
+			long nanos = System.nanoTime() - start;
+			if (bulkhead != null) {
+				bulkhead.release();
+			}
+			if (returned) {
+				if (breaker != null) {
+					breaker.onSuccess(nanos);
+				}
+				if (metrics != null) {
+					metrics.store(storeName).recordVerdict(valid, nanos);
+				}
+			} else {
+				if (breaker != null) {
+					breaker.onFailure(nanos);
+				}
+				if (metrics != null) {
+					metrics.store(storeName).recordError(nanos);
+				}
+			}
+		}
+		return valid;
+	}
+
+	/** Takes the breaker's permission and a bulkhead slot for a call.
+	 * 
+	 * @param wait True to wait for a bulkhead slot if the bulkhead allows it.
+	 * @throws VerifierUnavailableException if the call must not be made. */
+	private void admit (String storeName, CircuitBreaker breaker, Bulkhead bulkhead, boolean wait) {
+		if (breaker != null && !breaker.tryAcquire()) {
+			throw unavailable(storeName, "Circuit breaker open for store: " + storeName);
+		}
+		if (bulkhead != null && !(wait ? bulkhead.acquire() : bulkhead.tryAcquire())) {
+			if (breaker != null) {
+				breaker.onCancel();
+			}
+			throw unavailable(storeName, "Too many concurrent verifications for store: " + storeName);
+		}
+	}
+
+	private VerifierUnavailableException unavailable (String storeName, String message) {
+		VerifierMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.store(storeName).recordUnavailable();
+		}
+		return new VerifierUnavailableException(storeName, message);
+	}
+
+	/** Verifies a transaction without blocking the calling thread. Verifiers implementing {@link AsyncPurchaseVerifier} are
+	 * called directly, all others are run on the executor (see {@link #setExecutor(ExecutorService)}).
+	 * <p>
+	 * IMPORTANT: completes with "defaultIfNoVerifierFound" if no verifier was found for the given transaction.
+	 * 
+	 * @param transaction The transaction to verify.
+	 * @param callback Notified once the verification completes (may be null).
+	 * @return The pending result; fails with a {@link VerifierUnavailableException} if the store could not be asked. */
+	public VerificationFuture verifyAsync (Transaction transaction, VerificationCallback callback) {
+		PurchaseVerifier verifier = verifiers.get(transaction.getStoreName());
+		if (verifier == null) {
+			VerificationFuture future = VerificationFuture.completed(transaction, defaultIfNoVerifierFound);
+			future.addCallback(callback);
+			return future;
+		}
+		AsyncPurchaseVerifier asyncVerifier = PurchaseVerifierAsyncAdapter.adapt(verifier, getExecutor());
+		final String storeName = verifier.storeName();
+		final CircuitBreaker breaker = circuitBreakers.get(storeName);
+		final Bulkhead bulkhead = bulkheads.get(storeName);
+		final VerifierMetrics metrics = this.metrics;
+		if (breaker == null && bulkhead == null && metrics == null) {
+			return asyncVerifier.verifyAsync(transaction, callback);
+		}
+
+		// the bulkhead slot is held while queued, so a slow store can't fill the executor
+		try {
+			admit(storeName, breaker, bulkhead, false);
+		} catch (VerifierUnavailableException e) {
+			VerificationFuture future = VerificationFuture.failed(transaction, e);
+			future.addCallback(callback);
+			return future;
+		}
+		// latency includes the time spent waiting for a thread
+		final long start = System.nanoTime();
+		final AtomicBoolean finished = new AtomicBoolean();
+		VerificationCallback accounting = new VerificationCallback() {
+			@Override
+			public void verified (Transaction transaction, boolean valid) {
+				if (!finished.compareAndSet(false, true)) {
+					return;
+				}
+				long nanos = System.nanoTime() - start;
+				if (bulkhead != null) {
+					bulkhead.release();
+				}
+				if (breaker != null) {
+					breaker.onSuccess(nanos);
+				}
+				if (metrics != null) {
+					metrics.store(storeName).recordVerdict(valid, nanos);
+				}
+			}
+
+			@Override
+			public void failed (Transaction transaction, Throwable cause) {
+				if (!finished.compareAndSet(false, true)) {
+					return;
+				}
+				long nanos = System.nanoTime() - start;
+				if (bulkhead != null) {
+					bulkhead.release();
+				}
+				if (breaker != null) {
+					if (cause instanceof RejectedExecutionException || cause instanceof CancellationException) {
+						// the store was not called
+						breaker.onCancel();
+					} else {
+						breaker.onFailure(nanos);
+					}
+				}
+				if (metrics != null) {
+					metrics.store(storeName).recordError(nanos);
+				}
+			}
+		};
+		VerificationFuture future;
+		try {
+			future = asyncVerifier.verifyAsync(transaction, accounting);
+		} catch (RuntimeException e) {
+			// the verifier threw instead of failing the future, the slot and probe must be given back all the same
+			accounting.failed(transaction, e);
+			future = VerificationFuture.failed(transaction, e);
+		} catch (Error e) {
+			accounting.failed(transaction, e);
+			throw e;
+		}
+		future.addCallback(callback);
+		return future;
+	}
+
+	/** Verifies a batch of transactions, e.g. all transactions restored via PurchaseObserver.handleRestore(...). Transactions are
+	 * grouped by store and every group is verified concurrently on the executor (see {@link #setStoreParallelism(String, int)}),
+	 * so the total time tracks the slowest store rather than the sum of all calls. The calling thread helps: groups no executor
+	 * thread has picked up yet are verified by the caller, so a busy executor only costs parallelism. Blocks until all
+	 * transactions were verified.
+	 * <p>
+	 * IMPORTANT: returns "defaultIfNoVerifierFound" for transactions without a verifier.
+	 * 
+	 * @param transactions The transactions to verify.
+	 * @return One outcome per transaction, in iteration order of the collection. A transaction whose store could not be asked is
+	 *         {@link VerificationOutcome#UNAVAILABLE} (those of a store whose breaker is open right away, so they don't hold up
+	 *         the other stores), one whose verifier threw another exception {@link VerificationOutcome#FAILED}. */
+	public VerificationOutcome[] verifyAll (Collection<Transaction> transactions) {
+		final Transaction[] batch = transactions.toArray(new Transaction[transactions.size()]);
+		final VerificationOutcome[] results = new VerificationOutcome[batch.length];
+
+		// group indices by store, keeping input order within every group
+		Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+		for (int i = 0; i < batch.length; i++) {
+			String storeName = batch[i].getStoreName();
+			List<Integer> group = groups.get(storeName);
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(storeName, group);
+			}
+			group.add(i);
+		}
+
+		// one lane per concurrent verification: lanes of a store share the store's group
+		Map<String, PurchaseVerifier> verifiers = this.verifiers;
+		List<Runnable> lanes = new ArrayList<Runnable>();
+		for (Map.Entry<String, List<Integer>> entry : groups.entrySet()) {
+			final PurchaseVerifier verifier = entry.getKey() != null ? verifiers.get(entry.getKey()) : null;
+			final List<Integer> group = entry.getValue();
+			if (verifier == null) {
+				for (int i = 0; i < group.size(); i++) {
+					results[group.get(i)] = VerificationOutcome.of(defaultIfNoVerifierFound);
+				}
+				continue;
+			}
+
+			final AtomicInteger next = new AtomicInteger();
+			int parallelism = Math.min(getStoreParallelism(entry.getKey()), group.size());
+			for (int lane = 0; lane < parallelism; lane++) {
+				lanes.add(new Runnable() {
+					@Override
+					public void run () {
+						int i;
+						while ((i = next.getAndIncrement()) < group.size()) {
+							int index = group.get(i);
+							try {
+								results[index] = VerificationOutcome.of(verify(verifier, batch[index]));
+							} catch (VerifierUnavailableException e) {
+								results[index] = VerificationOutcome.UNAVAILABLE;
+							} catch (RuntimeException e) {
+								results[index] = VerificationOutcome.FAILED;
+							}
+						}
+					}
+				});
+			}
+		}
+
+		// run the lanes: the calling thread takes the first lane, then every lane no executor thread has started yet, so it
+		// doesn't wait behind other work queued on the executor (or for itself, if called on an executor thread)
+		if (lanes.size() > 0) {
+			final CountDownLatch finished = new CountDownLatch(lanes.size() - 1);
+			ExecutorService executor = lanes.size() > 1 ? getExecutor() : null;
+			List<Runnable> tasks = new ArrayList<Runnable>(lanes.size() - 1);
+			for (int i = 1; i < lanes.size(); i++) {
+				final Runnable lane = lanes.get(i);
+				final AtomicBoolean claimed = new AtomicBoolean();
+				Runnable task = new Runnable() {
+					@Override
+					public void run () {
+						if (!claimed.compareAndSet(false, true)) {
+							// run by the other side already
+							return;
+						}
+						try {
+							lane.run();
+						} finally {
+							finished.countDown();
+						}
+					}
+				};
+				tasks.add(task);
+				try {
+					executor.execute(task);
+				} catch (RejectedExecutionException e) {
+					task.run();
+				}
+			}
+			lanes.get(0).run();
+			for (int i = 0; i < tasks.size(); i++) {
+				tasks.get(i).run();
+			}
+
+			try {
+				finished.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while verifying batch.", e);
+			}
+		}
+
+		return results;
 	}
 }
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** When to retry a verification that failed transiently, see {@link RetryingPurchaseVerifier}. Delays grow exponentially from
+ * the initial backoff up to the maximum backoff, and every delay is drawn at random between 0 and that bound ("full jitter"),
+ * so clients that failed together don't retry together. No retry is started that would end after the deadline. Instances are
+ * immutable and thread-safe. */
+public class RetryPolicy {
+
+	/** A policy for interactive requests: 3 attempts, 100 ms up to 1 s backoff, 5 s in total. */
+	public static final RetryPolicy DEFAULT = new RetryPolicy(3, 100, 1000, 5000);
+
+	private static final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue () {
+			return new Random();
+		}
+	};
+
+	private final int maxAttempts;
+	private final long initialBackoffNanos;
+	private final long maxBackoffNanos;
+	private final long deadlineNanos;
+
+	/** @param maxAttempts The number of calls including the first one (1 for no retries).
+	 * @param initialBackoffMillis The upper bound of the delay before the first retry.
+	 * @param maxBackoffMillis The upper bound of any delay.
+	 * @param deadlineMillis The time budget for all attempts and delays together, measured from the first call. */
+	public RetryPolicy (int maxAttempts, long initialBackoffMillis, long maxBackoffMillis, long deadlineMillis) {
+		if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+		if (initialBackoffMillis < 0 || maxBackoffMillis < initialBackoffMillis)
+			throw new IllegalArgumentException("backoff must satisfy 0 <= initial <= max: " + initialBackoffMillis + ", "
+				+ maxBackoffMillis);
+		this.maxAttempts = maxAttempts;
+		this.initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(initialBackoffMillis);
+		this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+		this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+	}
+
+	public int getMaxAttempts () {
+		return maxAttempts;
+	}
+
+	public long getDeadlineMillis () {
+		return TimeUnit.NANOSECONDS.toMillis(deadlineNanos);
+	}
+
+	/** Returns the upper bound of the delay before the given retry (1 for the first retry) in nanoseconds. */
+	public long getBackoffBoundNanos (int retry) {
+		if (retry < 1) throw new IllegalArgumentException("retry must be at least 1: " + retry);
+		long bound = initialBackoffNanos;
+		for (int i = 1; i < retry && bound < maxBackoffNanos; i++) {
+			bound <<= 1;
+		}
+		return Math.min(bound, maxBackoffNanos);
+	}
+
+	/** Returns a random delay before the given retry (1 for the first retry) in nanoseconds. */
+	public long nextBackoffNanos (int retry) {
+		long bound = getBackoffBoundNanos(retry);
+		return bound > 0 ? (long)(random.get().nextDouble() * bound) : 0;
+	}
+
+	/** Returns the delay in nanoseconds before the next attempt, or -1 if there should be none.
+	 * 
+	 * @param attempts The number of calls made so far.
+	 * @param startNanos When the first call started ({@link System#nanoTime()}). */
+	public long retryDelayNanos (int attempts, long startNanos) {
+		if (attempts >= maxAttempts) {
+			return -1;
+		}
+		long delay = nextBackoffNanos(attempts);
+		if (System.nanoTime() + delay - startNanos >= deadlineNanos) {
+			return -1;
+		}
+		return delay;
+	}
+
+	@Override
+	public String toString () {
+		return "RetryPolicy{" +
+				"maxAttempts=" + maxAttempts +
+				", initialBackoffMillis=" + TimeUnit.NANOSECONDS.toMillis(initialBackoffNanos) +
+				", maxBackoffMillis=" + TimeUnit.NANOSECONDS.toMillis(maxBackoffNanos) +
+				", deadlineMillis=" + TimeUnit.NANOSECONDS.toMillis(deadlineNanos) +
+				'}';
+	}
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server;
+
+import java.util.concurrent.TimeUnit;
+
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.metrics.VerifierMetrics;
+
+/** Decorator that verifies again when the store was temporarily unavailable, so the client doesn't have to send the purchase
+ * again. Only {@link VerifierUnavailableException}s are retried; the store verifiers decide which failures are transient, e.g.
+ * I/O errors and Apple status 21005. Valid and invalid verdicts are returned right away.
+ * 
+ * <pre>
+ * // up to 4 attempts within 10 seconds, 200 ms to 2 s between attempts
+ * manager.addVerifier(new RetryingPurchaseVerifier(new PurchaseVerifieriOSApple(), new RetryPolicy(4, 200, 2000, 10000)));
+ * </pre>
+ * 
+ * The calling thread sleeps between attempts. Put a {@link CachingPurchaseVerifier} outside and the circuit breaker (see
+ * {@link PurchaseVerifierManager#setCircuitBreaker(String, CircuitBreaker)}) sees one call per verification. */
+public class RetryingPurchaseVerifier implements PurchaseVerifier {
+
+	private final PurchaseVerifier verifier;
+	private final RetryPolicy policy;
+	/** Where retries are recorded, null for nowhere. */
+	private volatile VerifierMetrics metrics = VerifierMetrics.getDefault();
+
+	public RetryingPurchaseVerifier (PurchaseVerifier verifier, RetryPolicy policy) {
+		if (policy == null) throw new IllegalArgumentException("policy must not be null");
+		this.verifier = verifier;
+		this.policy = policy;
+	}
+
+	/** The verifier whose transient failures are retried. */
+	public PurchaseVerifier getVerifier () {
+		return verifier;
+	}
+
+	public RetryPolicy getPolicy () {
+		return policy;
+	}
+
+	/** Sets where retries are recorded (default: {@link VerifierMetrics#getDefault()}). Null turns recording off. */
+	public void setMetrics (VerifierMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public String storeName () {
+		return verifier.storeName();
+	}
+
+	/** @throws VerifierUnavailableException the last failure if all attempts failed or the deadline leaves no time for another
+	 *            one. */
+	@Override
+	public boolean isValid (Transaction transaction) {
+		long start = System.nanoTime();
+		for (int attempts = 1;; attempts++) {
+			try {
+				return verifier.isValid(transaction);
+			} catch (VerifierUnavailableException e) {
+				long delay = policy.retryDelayNanos(attempts, start);
+				if (delay < 0) {
+					throw e;
+				}
+				VerifierMetrics metrics = this.metrics;
+				if (metrics != null) {
+					metrics.store(storeName()).recordRetry();
+				}
+				try {
+					TimeUnit.NANOSECONDS.sleep(delay);
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+}
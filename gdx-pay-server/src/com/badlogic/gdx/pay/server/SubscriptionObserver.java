@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server;
+
+import com.badlogic.gdx.pay.Transaction;
+
+/** Learns the expiry of subscriptions from verifiers that ask the store, e.g. from Apple's "latest_receipt_info" or Google's
+ * expiryTimeMillis (see {@link com.badlogic.gdx.pay.server.impl.PurchaseVerifierBase#setSubscriptionObserver}). Called on the
+ * verifying thread, so implementations should return quickly. */
+public interface SubscriptionObserver {
+
+	/** Called whenever a verifier learned when the subscription of the transaction expires (or expired).
+	 * 
+	 * @param transaction The verified transaction.
+	 * @param expiryMillis The expiry in milliseconds since the epoch, possibly in the past. */
+	void subscriptionVerified (Transaction transaction, long expiryMillis);
+}
@@ -0,0 +1,419 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.badlogic.gdx.pay.Transaction;
+
+/** Keeps track of subscriptions after their first verification and re-verifies them only when they are about to lapse, instead
+ * of polling every subscriber. Register the tracker as {@link SubscriptionObserver} of the verifiers that report expiries:
+ * 
+ * <pre>
+ * SubscriptionTracker tracker = new SubscriptionTracker(manager);
+ * tracker.setListener(listener);
+ * apple.setSubscriptionObserver(tracker);
+ * google.setSubscriptionObserver(tracker);
+ * tracker.start();
+ * </pre>
+ * 
+ * Every tracked subscription gets a renewal check shortly after its expiry (see {@link #setCheckOffsetMillis(long)}). The check
+ * re-verifies the transaction via the manager; if the store reports a later expiry, the subscription was renewed and is
+ * rescheduled, otherwise it has lapsed and is dropped. Checks the store could not answer are retried. A check must reach the
+ * store, so the transaction's result is first removed from any {@link CachingPurchaseVerifier} the manager holds for the store
+ * (directly or in a {@link ChainedPurchaseVerifier}); a cache hidden inside another decorator would answer the check with the
+ * verdict from before the renewal.
+ * <p>
+ * Checks are scheduled on a hashed timing wheel: one slot per tick, covering the next <code>wheelSize</code> ticks. Checks
+ * further ahead wait in an overflow heap and move into the wheel when they come within its range. A tick therefore only
+ * touches the checks that are due in it: the cost grows with the number of renewals due, not with the number of subscribers. */
+public class SubscriptionTracker implements SubscriptionObserver {
+
+	/** Default length of a tick: one second. */
+	public static final long DEFAULT_TICK_MILLIS = 1000;
+	/** Default number of wheel slots: a bit over an hour at one tick per second. */
+	public static final int DEFAULT_WHEEL_SIZE = 4096;
+
+	/** Told about the outcome of renewal checks. Called on the verifying thread, so implementations should return quickly. */
+	public interface Listener {
+
+		/** Called when a tracked subscription was found to run until a later expiry. */
+		void renewed (Transaction transaction, long expiryMillis);
+
+		/** Called when a tracked subscription lapsed: its check found no later expiry. The subscription is no longer tracked. */
+		void expired (Transaction transaction, long expiryMillis);
+	}
+
+	private final PurchaseVerifierManager manager;
+	private final long tickMillis;
+	private final int mask;
+
+	/** Slot heads of the wheel: slot <code>tick & mask</code> holds the entries due in that tick (for ticks within range). */
+	private final Entry[] wheel;
+	/** Entries due after the wheel's range, by tick; outdated nodes are skipped. */
+	private final PriorityQueue<Overflow> overflow = new PriorityQueue<Overflow>();
+	/** All tracked subscriptions by transaction key. */
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	/** The last tick processed. */
+	private long currentTick;
+	private int checking;
+
+	private volatile long checkOffsetMillis = 600000;
+	private volatile long retryMillis = 300000;
+	private volatile int maxConcurrentChecks = 64;
+	private volatile Listener listener;
+
+	private Thread thread;
+
+	public SubscriptionTracker (PurchaseVerifierManager manager) {
+		this(manager, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+	}
+
+	/** @param tickMillis The resolution of the schedule.
+	 * @param wheelSize The number of ticks covered by the wheel (a power of two). */
+	public SubscriptionTracker (PurchaseVerifierManager manager, long tickMillis, int wheelSize) {
+		if (tickMillis < 1) throw new IllegalArgumentException("tickMillis must be at least 1: " + tickMillis);
+		if (wheelSize < 1 || (wheelSize & (wheelSize - 1)) != 0)
+			throw new IllegalArgumentException("wheelSize must be a power of two: " + wheelSize);
+		this.manager = manager;
+		this.tickMillis = tickMillis;
+		this.mask = wheelSize - 1;
+		this.wheel = new Entry[wheelSize];
+		this.currentTick = System.currentTimeMillis() / tickMillis;
+	}
+
+	/** Sets when a subscription is checked relative to its expiry (default 10 minutes after). Apple renews up to a day before the
+	 * expiry and Google at the expiry; negative values check before the expiry. */
+	public void setCheckOffsetMillis (long checkOffsetMillis) {
+		this.checkOffsetMillis = checkOffsetMillis;
+	}
+
+	/** Sets the delay before a check is repeated that the store could not answer (default 5 minutes). */
+	public void setRetryMillis (long retryMillis) {
+		if (retryMillis < 0) throw new IllegalArgumentException("retryMillis must be >= 0: " + retryMillis);
+		this.retryMillis = retryMillis;
+	}
+
+	/** Sets how many checks may run at once (default 64). Checks due beyond that wait for the next tick. */
+	public void setMaxConcurrentChecks (int maxConcurrentChecks) {
+		if (maxConcurrentChecks < 1)
+			throw new IllegalArgumentException("maxConcurrentChecks must be at least 1: " + maxConcurrentChecks);
+		this.maxConcurrentChecks = maxConcurrentChecks;
+	}
+
+	public void setListener (Listener listener) {
+		this.listener = listener;
+	}
+
+	/** Starts or reschedules tracking of a subscription; called by verifiers with the expiry reported by the store. */
+	@Override
+	public void subscriptionVerified (Transaction transaction, long expiryMillis) {
+		String key = TransactionKeys.key(transaction);
+		long previous;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry(key, transaction, expiryMillis);
+				entries.put(key, entry);
+				schedule(entry, expiryMillis + checkOffsetMillis);
+				return;
+			}
+			previous = entry.expiryMillis;
+			entry.transaction = transaction;
+			entry.expiryMillis = expiryMillis;
+			if (!entry.checking && dueTick(expiryMillis + checkOffsetMillis) != entry.tick) {
+				// e.g. verified by the application in the meantime: the check moves with the expiry
+				unschedule(entry);
+				schedule(entry, expiryMillis + checkOffsetMillis);
+			}
+		}
+		Listener listener = this.listener;
+		if (listener != null && expiryMillis > previous) {
+			listener.renewed(transaction, expiryMillis);
+		}
+	}
+
+	/** Stops tracking the subscription of the transaction. Returns false if it wasn't tracked. */
+	public synchronized boolean remove (Transaction transaction) {
+		Entry entry = entries.remove(TransactionKeys.key(transaction));
+		if (entry == null) {
+			return false;
+		}
+		unschedule(entry);
+		return true;
+	}
+
+	/** Returns the last expiry reported for the transaction's subscription, or -1 if it isn't tracked. */
+	public synchronized long getExpiryMillis (Transaction transaction) {
+		Entry entry = entries.get(TransactionKeys.key(transaction));
+		return entry != null ? entry.expiryMillis : -1;
+	}
+
+	/** Returns the number of tracked subscriptions. */
+	public synchronized int size () {
+		return entries.size();
+	}
+
+	/** Returns the number of checks in progress. */
+	public synchronized int getChecking () {
+		return checking;
+	}
+
+	/** Processes all ticks up to the given time and starts the checks due in them. Called by the thread of {@link #start()}; call
+	 * it yourself to drive the tracker from your own scheduler. */
+	public void advance (long nowMillis) {
+		List<Entry> due = null;
+		synchronized (this) {
+			long target = nowMillis / tickMillis;
+			int permits = maxConcurrentChecks - checking;
+			while (currentTick < target) {
+				currentTick++;
+				refill();
+				int slot = (int)(currentTick & mask);
+				Entry entry = wheel[slot];
+				wheel[slot] = null;
+				while (entry != null) {
+					Entry next = entry.next;
+					entry.prev = entry.next = null;
+					entry.slot = -1;
+					entry.tick = -1;
+					if (permits > 0) {
+						permits--;
+						checking++;
+						entry.checking = true;
+						entry.checkedExpiryMillis = entry.expiryMillis;
+						entry.checkedAtMillis = currentTick * tickMillis;
+						if (due == null) {
+							due = new ArrayList<Entry>();
+						}
+						due.add(entry);
+					} else {
+						// too many checks running: try again next tick
+						entry.tick = currentTick + 1;
+						link(entry, entry.tick);
+					}
+					entry = next;
+				}
+			}
+		}
+		if (due != null) {
+			for (int i = 0; i < due.size(); i++) {
+				check(due.get(i));
+			}
+		}
+	}
+
+	private void check (final Entry entry) {
+		invalidateCached(manager.getVerifier(entry.transaction.getStoreName()), entry.transaction);
+		manager.verifyAsync(entry.transaction, new VerificationCallback() {
+			@Override
+			public void verified (Transaction transaction, boolean valid) {
+				long expiry;
+				synchronized (SubscriptionTracker.this) {
+					checking--;
+					entry.checking = false;
+					if (entries.get(entry.key) != entry) {
+						// removed meanwhile
+						return;
+					}
+					expiry = entry.expiryMillis;
+					if (expiry > entry.checkedExpiryMillis) {
+						// renewed: the verifier reported the new expiry (and the listener was told)
+						schedule(entry, expiry + checkOffsetMillis);
+						return;
+					}
+					if (expiry > entry.checkedAtMillis) {
+						// checked ahead of the expiry and not renewed yet: once more when it expires
+						schedule(entry, expiry);
+						return;
+					}
+					entries.remove(entry.key);
+				}
+				Listener listener = SubscriptionTracker.this.listener;
+				if (listener != null) {
+					listener.expired(entry.transaction, expiry);
+				}
+			}
+
+			@Override
+			public void failed (Transaction transaction, Throwable cause) {
+				synchronized (SubscriptionTracker.this) {
+					checking--;
+					entry.checking = false;
+					if (entries.get(entry.key) != entry) {
+						return;
+					}
+					if (entry.expiryMillis > entry.checkedExpiryMillis) {
+						schedule(entry, entry.expiryMillis + checkOffsetMillis);
+					} else {
+						// store not reachable: no verdict, ask again later
+						schedule(entry, currentTick * tickMillis + retryMillis);
+					}
+				}
+			}
+		});
+	}
+
+	/** Removes the transaction's result from the caches among the verifier and the verifiers it consists of. */
+	private static void invalidateCached (PurchaseVerifier verifier, Transaction transaction) {
+		if (verifier instanceof CachingPurchaseVerifier) {
+			CachingPurchaseVerifier cache = (CachingPurchaseVerifier)verifier;
+			cache.invalidate(transaction);
+			invalidateCached(cache.getVerifier(), transaction);
+		} else if (verifier instanceof ChainedPurchaseVerifier) {
+			List<PurchaseVerifier> verifiers = ((ChainedPurchaseVerifier)verifier).getVerifiers();
+			for (int i = 0; i < verifiers.size(); i++) {
+				invalidateCached(verifiers.get(i), transaction);
+			}
+		}
+	}
+
+	/** Puts the entry into the wheel, or into the overflow if it's due after the wheel's range. */
+	private void schedule (Entry entry, long dueMillis) {
+		long tick = dueTick(dueMillis);
+		entry.tick = tick;
+		if (tick - currentTick <= mask) {
+			link(entry, tick);
+		} else {
+			overflow.add(new Overflow(tick, entry, ++entry.version));
+		}
+	}
+
+	private long dueTick (long dueMillis) {
+		return Math.max(dueMillis / tickMillis, currentTick + 1);
+	}
+
+	private void unschedule (Entry entry) {
+		if (entry.slot >= 0) {
+			if (entry.prev != null) {
+				entry.prev.next = entry.next;
+			} else {
+				wheel[entry.slot] = entry.next;
+			}
+			if (entry.next != null) {
+				entry.next.prev = entry.prev;
+			}
+			entry.prev = entry.next = null;
+			entry.slot = -1;
+		}
+		entry.tick = -1;
+		// outdates the entry's overflow node
+		entry.version++;
+	}
+
+	private void link (Entry entry, long tick) {
+		int slot = (int)(tick & mask);
+		Entry head = wheel[slot];
+		entry.next = head;
+		entry.prev = null;
+		if (head != null) {
+			head.prev = entry;
+		}
+		wheel[slot] = entry;
+		entry.slot = slot;
+	}
+
+	/** Moves the overflow entries that came within the wheel's range into the wheel. */
+	private void refill () {
+		Overflow node;
+		while ((node = overflow.peek()) != null && node.tick - currentTick <= mask) {
+			overflow.poll();
+			Entry entry = node.entry;
+			if (node.version == entry.version && entries.get(entry.key) == entry) {
+				link(entry, Math.max(node.tick, currentTick));
+			}
+		}
+	}
+
+	/** Starts a daemon thread that advances the tracker every tick. */
+	public synchronized void start () {
+		if (thread != null) {
+			return;
+		}
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run () {
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						long now = System.currentTimeMillis();
+						advance(now);
+						Thread.sleep(tickMillis - now % tickMillis);
+					}
+				} catch (InterruptedException e) {
+					// stopped
+				}
+			}
+		}, "gdx-pay-subscriptions");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Stops the thread of {@link #start()}. Checks in progress complete. */
+	public synchronized void stop () {
+		if (thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	/** A tracked subscription. */
+	private static class Entry {
+		final String key;
+		Transaction transaction;
+		long expiryMillis;
+		/** The expiry and the time when the running check started. */
+		long checkedExpiryMillis;
+		long checkedAtMillis;
+		boolean checking;
+
+		/** The tick the check is scheduled for, -1 while not scheduled. */
+		long tick = -1;
+		/** Wheel slot (-1 if not in the wheel) and neighbours in it. */
+		int slot = -1;
+		Entry prev, next;
+		/** Bumped whenever the entry is rescheduled, so outdated overflow nodes are ignored. */
+		long version;
+
+		Entry (String key, Transaction transaction, long expiryMillis) {
+			this.key = key;
+			this.transaction = transaction;
+			this.expiryMillis = expiryMillis;
+		}
+	}
+
+	private static class Overflow implements Comparable<Overflow> {
+		final long tick;
+		final Entry entry;
+		final long version;
+
+		Overflow (long tick, Entry entry, long version) {
+			this.tick = tick;
+			this.entry = entry;
+			this.version = version;
+		}
+
+		@Override
+		public int compareTo (Overflow other) {
+			return tick < other.tick ? -1 : tick > other.tick ? 1 : 0;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.badlogic.gdx.pay.Transaction;
+
+/** Identifies transactions for decorators that share results between verifications of the same purchase. */
+final class TransactionKeys {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue () {
+			try {
+				return MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
+	private TransactionKeys () {
+		// not used
+	}
+
+	/** Returns the store name plus order id, or plus a hash of the receipt signature if there is no order id. */
+	static String key (Transaction transaction) {
+		String orderId = transaction.getOrderId();
+		if (orderId != null) {
+			return transaction.getStoreName() + "|order|" + orderId;
+		} else {
+			String signature = transaction.getTransactionDataSignature();
+			return transaction.getStoreName() + "|receipt|" + (signature != null ? hex(digest(signature, null)) : "");
+		}
+	}
+
+	/** Returns the SHA-256 hash of everything a verifier checks besides the key: product, user id, transaction data and
+	 * signature. Transactions with the same key but another fingerprint must be verified on their own. */
+	static byte[] fingerprint (Transaction transaction) {
+		MessageDigest digest = digests.get();
+		digest.reset();
+		update(digest, transaction.getIdentifier());
+		update(digest, transaction.getUserId());
+		update(digest, transaction.getTransactionData());
+		update(digest, transaction.getTransactionDataSignature());
+		return digest.digest();
+	}
+
+	/** Adds the string with a length prefix, so neither shifted boundaries nor null and "" collide. */
+	private static void update (MessageDigest digest, String value) {
+		if (value == null) {
+			digest.update((byte)0);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF_8);
+		digest.update((byte)1);
+		digest.update((byte)(bytes.length >>> 24));
+		digest.update((byte)(bytes.length >>> 16));
+		digest.update((byte)(bytes.length >>> 8));
+		digest.update((byte)bytes.length);
+		digest.update(bytes);
+	}
+
+	static byte[] digest (String first, String second) {
+		MessageDigest digest = digests.get();
+		digest.reset();
+		if (first != null) {
+			digest.update(first.getBytes(UTF_8));
+		}
+		// separator, so ("ab", "c") and ("a", "bc") don't collide
+		digest.update((byte)(first != null ? 1 : 0));
+		if (second != null) {
+			digest.update(second.getBytes(UTF_8));
+		}
+		return digest.digest();
+	}
+
+	static String hex (byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+			chars[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+		}
+		return new String(chars);
+	}
+}
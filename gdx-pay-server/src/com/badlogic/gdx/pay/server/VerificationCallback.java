@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server;
+
+import com.badlogic.gdx.pay.Transaction;
+
+/** Receives the outcome of an asynchronous verification. Callbacks are invoked on the thread that completed the verification,
+ * so implementations should return quickly and must not block. */
+public interface VerificationCallback {
+
+	/** Called once the verifier reached a verdict for the transaction. */
+	void verified (Transaction transaction, boolean valid);
+
+	/** Called if the verification could not be carried out, e.g. because the verifier threw or the executor rejected the task. */
+	void failed (Transaction transaction, Throwable cause);
+}
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.badlogic.gdx.pay.Transaction;
+
+/** The pending result of an asynchronous verification. Completed exactly once via {@link #complete(boolean)} or
+ * {@link #fail(Throwable)}; callbacks added before or after completion are notified exactly once. */
+public class VerificationFuture implements Future<Boolean> {
+
+	private final Transaction transaction;
+
+	private boolean done;
+	private boolean valid;
+	private Throwable cause;
+
+	/** Callbacks waiting for completion (null once completed). */
+	private List<VerificationCallback> callbacks;
+
+	public VerificationFuture (Transaction transaction) {
+		this.transaction = transaction;
+	}
+
+	/** Returns a future that is already completed with the given verdict. */
+	public static VerificationFuture completed (Transaction transaction, boolean valid) {
+		VerificationFuture future = new VerificationFuture(transaction);
+		future.complete(valid);
+		return future;
+	}
+
+	/** Returns a future that already failed with the given cause. */
+	public static VerificationFuture failed (Transaction transaction, Throwable cause) {
+		VerificationFuture future = new VerificationFuture(transaction);
+		future.fail(cause);
+		return future;
+	}
+
+	/** The transaction being verified. */
+	public Transaction getTransaction () {
+		return transaction;
+	}
+
+	/** Completes this future with a verdict. Returns false if it was already completed. */
+	public boolean complete (boolean valid) {
+		List<VerificationCallback> pending;
+		synchronized (this) {
+			if (done) {
+				return false;
+			}
+			this.valid = valid;
+			pending = finish();
+		}
+		if (pending != null) {
+			for (int i = 0; i < pending.size(); i++) {
+				dispatch(pending.get(i));
+			}
+		}
+		return true;
+	}
+
+	/** Completes this future exceptionally. Returns false if it was already completed. */
+	public boolean fail (Throwable cause) {
+		List<VerificationCallback> pending;
+		synchronized (this) {
+			if (done) {
+				return false;
+			}
+			this.cause = cause;
+			pending = finish();
+		}
+		if (pending != null) {
+			for (int i = 0; i < pending.size(); i++) {
+				dispatch(pending.get(i));
+			}
+		}
+		return true;
+	}
+
+	/** Registers a callback. It is invoked immediately on the calling thread if this future is already done. */
+	public void addCallback (VerificationCallback callback) {
+		if (callback == null) {
+			return;
+		}
+		synchronized (this) {
+			if (!done) {
+				if (callbacks == null) {
+					callbacks = new ArrayList<VerificationCallback>(2);
+				}
+				callbacks.add(callback);
+				return;
+			}
+		}
+		dispatch(callback);
+	}
+
+	private List<VerificationCallback> finish () {
+		done = true;
+		List<VerificationCallback> pending = callbacks;
+		callbacks = null;
+		notifyAll();
+		return pending;
+	}
+
+	private void dispatch (VerificationCallback callback) {
+		try {
+			if (cause != null) {
+				callback.failed(transaction, cause);
+			} else {
+				callback.verified(transaction, valid);
+			}
+		} catch (RuntimeException e) {
+			// a misbehaving callback must not break the completing thread
+			System.err.println("Verification callback failed: " + e);
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public boolean cancel (boolean mayInterruptIfRunning) {
+		return fail(new CancellationException());
+	}
+
+	@Override
+	public synchronized boolean isCancelled () {
+		return cause instanceof CancellationException;
+	}
+
+	@Override
+	public synchronized boolean isDone () {
+		return done;
+	}
+
+	@Override
+	public synchronized Boolean get () throws InterruptedException, ExecutionException {
+		while (!done) {
+			wait();
+		}
+		return result();
+	}
+
+	@Override
+	public synchronized Boolean get (long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+		TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!done) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				throw new TimeoutException();
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return result();
+	}
+
+	private Boolean result () throws ExecutionException {
+		if (cause instanceof CancellationException) {
+			throw (CancellationException)cause;
+		}
+		if (cause != null) {
+			throw new ExecutionException(cause);
+		}
+		return Boolean.valueOf(valid);
+	}
+}
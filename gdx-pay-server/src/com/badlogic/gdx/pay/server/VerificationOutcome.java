@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server;
+
+/** The outcome of verifying one transaction of a batch, see {@link PurchaseVerifierManager#verifyAll(java.util.Collection)}. */
+public enum VerificationOutcome {
+	/** The store accepted the transaction. */
+	VALID,
+	/** The store rejected the transaction. */
+	INVALID,
+	/** The store could not be asked (see {@link VerifierUnavailableException}): verify the transaction again later. */
+	UNAVAILABLE,
+	/** The verifier failed unexpectedly. */
+	FAILED;
+
+	/** True for {@link #VALID}. */
+	public boolean isValid () {
+		return this == VALID;
+	}
+
+	/** Returns {@link #VALID} or {@link #INVALID}. */
+	public static VerificationOutcome of (boolean valid) {
+		return valid ? VALID : INVALID;
+	}
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server;
+
+/** Thrown instead of returning a verdict if a store could not be asked, e.g. because it did not answer, its circuit breaker is
+ * open or its bulkhead is full. The transaction is neither valid nor invalid: verify it again later. */
+public class VerifierUnavailableException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String storeName;
+
+	public VerifierUnavailableException (String storeName, String message) {
+		super(message);
+		this.storeName = storeName;
+	}
+
+	public VerifierUnavailableException (String storeName, String message, Throwable cause) {
+		super(message, cause);
+		this.storeName = storeName;
+	}
+
+	/** The store that could not be asked. */
+	public String getStoreName () {
+		return storeName;
+	}
+}
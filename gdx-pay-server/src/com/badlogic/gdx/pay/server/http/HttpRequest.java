@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.http;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A HTTP request to be sent via {@link HttpTransport}. */
+public final class HttpRequest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final String method;
+	private final String url;
+	private final byte[] body;
+	/** Header names and values, alternating. */
+	private final List<String> headers = new ArrayList<String>(8);
+	/** Parts of the URL that {@link #toString()} hides. */
+	private final List<String> redacted = new ArrayList<String>(1);
+
+	private HttpRequest (String method, String url, byte[] body) {
+		this.method = method;
+		this.url = url;
+		this.body = body;
+	}
+
+	/** Creates a GET request. */
+	public static HttpRequest get (String url) {
+		return new HttpRequest("GET", url, null);
+	}
+
+	/** Creates a POST request with the given body. */
+	public static HttpRequest post (String url, String contentType, byte[] body) {
+		return new HttpRequest("POST", url, body).header("Content-Type", contentType);
+	}
+
+	/** Creates a POST request with a JSON body (encoded as UTF-8). */
+	public static HttpRequest postJson (String url, String json) {
+		return post(url, "application/json", json.getBytes(UTF_8)).header("Accept", "application/json");
+	}
+
+	/** Adds a request header and returns this for chaining. */
+	public HttpRequest header (String name, String value) {
+		headers.add(name);
+		headers.add(value);
+		return this;
+	}
+
+	/** Hides a part of the URL, e.g. a secret in its path, from {@link #toString()} and so from log and error messages. Returns
+	 * this for chaining. */
+	public HttpRequest redact (String urlPart) {
+		if (urlPart != null && urlPart.length() > 0) {
+			redacted.add(urlPart);
+		}
+		return this;
+	}
+
+	public String getMethod () {
+		return method;
+	}
+
+	public String getUrl () {
+		return url;
+	}
+
+	/** The request body or null for none. */
+	public byte[] getBody () {
+		return body;
+	}
+
+	public int getHeaderCount () {
+		return headers.size() / 2;
+	}
+
+	public String getHeaderName (int index) {
+		return headers.get(index * 2);
+	}
+
+	public String getHeaderValue (int index) {
+		return headers.get(index * 2 + 1);
+	}
+
+	/** Returns a copy of this request sent to another URL. */
+	public HttpRequest withUrl (String url) {
+		HttpRequest request = new HttpRequest(method, url, body);
+		request.headers.addAll(headers);
+		request.redacted.addAll(redacted);
+		return request;
+	}
+
+	@Override
+	public String toString () {
+		return method + " " + redacted(url);
+	}
+
+	/** Returns the text with the redacted parts of the URL replaced. */
+	public String redacted (String text) {
+		String result = text;
+		for (int i = 0; i < redacted.size(); i++) {
+			result = result.replace(redacted.get(i), "***");
+		}
+		return result;
+	}
+}
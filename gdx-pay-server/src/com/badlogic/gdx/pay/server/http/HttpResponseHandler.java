@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Reads the response of a request sent via {@link HttpTransport}. */
+public interface HttpResponseHandler<T> {
+
+	/** Called with the response status code and body. The body stream is never null (empty if there was no body), is owned by the
+	 * transport and doesn't need to be closed or read to its end. */
+	T handle (int statusCode, InputStream body) throws IOException;
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.http;
+
+import java.io.IOException;
+
+/** Sends HTTP requests for purchase verifiers that validate against a remote store server. Implementations must be thread-safe.
+ * 
+ * @see PooledHttpTransport
+ * @see LocalHttpTransport */
+public interface HttpTransport {
+
+	/** Sends the request and hands the response to the handler. The response body is consumed completely and released once the
+	 * handler returns, so the underlying connection can be reused; the handler must not keep a reference to the stream.
+	 * 
+	 * @param request The request to send.
+	 * @param handler Reads the response.
+	 * @return Whatever the handler returned.
+	 * @throws IOException if the request could not be sent or the response could not be read. */
+	<T> T execute (HttpRequest request, HttpResponseHandler<T> handler) throws IOException;
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.http;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Test double that sends all requests to a local stand-in server instead of the store, e.g. to measure throughput without the
+ * network. Scheme, host and port of every request are replaced by the base URL; path and query are kept, so the stand-in sees
+ * e.g. "/verifyReceipt".
+ * 
+ * <pre>
+ * HttpTransport transport = new LocalHttpTransport("http://127.0.0.1:8080");
+ * PurchaseVerifieriOSApple verifier = new PurchaseVerifieriOSApple(false, transport);
+ * </pre> */
+public class LocalHttpTransport implements HttpTransport {
+
+	private final String baseUrl;
+	private final HttpTransport delegate;
+	private final AtomicLong requestCount = new AtomicLong();
+
+	/** Redirects to the base URL via a default {@link PooledHttpTransport}. */
+	public LocalHttpTransport (String baseUrl) {
+		this(baseUrl, new PooledHttpTransport());
+	}
+
+	/** @param baseUrl The local server, e.g. "http://127.0.0.1:8080".
+	 * @param delegate The transport that actually sends the redirected requests. */
+	public LocalHttpTransport (String baseUrl, HttpTransport delegate) {
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+		this.delegate = delegate;
+	}
+
+	/** The number of requests sent so far. */
+	public long getRequestCount () {
+		return requestCount.get();
+	}
+
+	@Override
+	public <T> T execute (HttpRequest request, HttpResponseHandler<T> handler) throws IOException {
+		requestCount.incrementAndGet();
+		return delegate.execute(request.withUrl(redirect(request.getUrl())), handler);
+	}
+
+	/** Returns the URL as sent to the local server. */
+	public String redirect (String url) throws MalformedURLException {
+		URL original = new URL(url);
+		String file = original.getFile();
+		return baseUrl + (file.length() > 0 ? file : "/");
+	}
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/** Default {@link HttpTransport}: persistent (keep-alive) connections via {@link HttpURLConnection}.
+ * <p>
+ * Connections are reused because every response is drained and its stream closed instead of disconnecting, which returns the
+ * socket to the JDK's keep-alive cache. The number of connections in use at the same time is bounded by {@code maxConnections};
+ * a request waits up to the connect timeout for a free connection before failing. Note the JDK keeps at most
+ * {@code http.maxConnections} (system property, default 5) idle connections per host, so set it to at least
+ * {@code maxConnections} to avoid re-handshaking under load. */
+public class PooledHttpTransport implements HttpTransport {
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+	public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+	public static final int DEFAULT_READ_TIMEOUT_MILLIS = 15000;
+
+	private final int maxConnections;
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+	private final Semaphore connections;
+
+	public PooledHttpTransport () {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+	}
+
+	/** @param maxConnections The maximum number of connections in use at the same time.
+	 * @param connectTimeoutMillis Timeout for establishing a connection (and for waiting for a free one).
+	 * @param readTimeoutMillis Timeout for reading the response. */
+	public PooledHttpTransport (int maxConnections, int connectTimeoutMillis, int readTimeoutMillis) {
+		if (maxConnections < 1) throw new IllegalArgumentException("maxConnections must be at least 1: " + maxConnections);
+		this.maxConnections = maxConnections;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.connections = new Semaphore(maxConnections, true);
+	}
+
+	public int getMaxConnections () {
+		return maxConnections;
+	}
+
+	/** Returns the number of connections currently in use. */
+	public int getActiveConnections () {
+		return maxConnections - connections.availablePermits();
+	}
+
+	public int getConnectTimeoutMillis () {
+		return connectTimeoutMillis;
+	}
+
+	public int getReadTimeoutMillis () {
+		return readTimeoutMillis;
+	}
+
+	@Override
+	public <T> T execute (HttpRequest request, HttpResponseHandler<T> handler) throws IOException {
+		try {
+			if (!connections.tryAcquire(connectTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new IOException("No free connection within " + connectTimeoutMillis + "ms: " + request);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a connection: " + request);
+		}
+		try {
+			return send(request, handler);
+		} finally {
+			connections.release();
+		}
+	}
+
+	private <T> T send (HttpRequest request, HttpResponseHandler<T> handler) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection)new URL(request.getUrl()).openConnection();
+		boolean reusable = false;
+		try {
+			conn.setConnectTimeout(connectTimeoutMillis);
+			conn.setReadTimeout(readTimeoutMillis);
+			conn.setUseCaches(false);
+			conn.setInstanceFollowRedirects(false);
+			conn.setRequestMethod(request.getMethod());
+			conn.setRequestProperty("Connection", "keep-alive");
+			for (int i = 0; i < request.getHeaderCount(); i++) {
+				conn.setRequestProperty(request.getHeaderName(i), request.getHeaderValue(i));
+			}
+
+			byte[] body = request.getBody();
+			if (body != null) {
+				conn.setDoOutput(true);
+				// not streamed: HttpURLConnection then sends headers and body together
+				OutputStream out = conn.getOutputStream();
+				out.write(body);
+				out.close();
+			}
+
+			int statusCode = conn.getResponseCode();
+			InputStream in = statusCode >= 400 ? conn.getErrorStream() : conn.getInputStream();
+			if (in == null) {
+				in = new EmptyInputStream();
+			}
+			try {
+				T result = handler.handle(statusCode, new UnclosableInputStream(in));
+				drain(in);
+				reusable = true;
+				return result;
+			} finally {
+				in.close();
+			}
+		} finally {
+			if (!reusable) {
+				// don't hand a connection in unknown state back to the keep-alive cache
+				conn.disconnect();
+			}
+		}
+	}
+
+	private static void drain (InputStream in) throws IOException {
+		byte[] buffer = new byte[512];
+		while (in.read(buffer) >= 0) {
+			// discard the rest so the connection can be reused
+		}
+	}
+
+	/** Keeps handlers from closing the response stream before it was drained. */
+	private static class UnclosableInputStream extends FilterInputStream {
+		UnclosableInputStream (InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public void close () {
+			// closed by the transport
+		}
+	}
+
+	private static class EmptyInputStream extends InputStream {
+		@Override
+		public int read () {
+			return -1;
+		}
+	}
+}
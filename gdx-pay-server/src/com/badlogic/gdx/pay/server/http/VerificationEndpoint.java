@@ -0,0 +1,355 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.PurchaseVerifierAsyncAdapter;
+import com.badlogic.gdx.pay.server.PurchaseVerifierManager;
+import com.badlogic.gdx.pay.server.VerificationCallback;
+import com.badlogic.gdx.pay.server.VerificationFuture;
+import com.badlogic.gdx.pay.server.VerifierUnavailableException;
+import com.badlogic.gdx.pay.server.util.JsonReader;
+import com.badlogic.gdx.pay.server.util.TransactionJson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/** Embeddable HTTP endpoint for a {@link PurchaseVerifierManager}, built on the JDK's HTTP server. Clients POST a transaction
+ * as JSON object, or a batch of transactions as JSON array, to the endpoint's path (default "/verify"):
+ * 
+ * <pre>
+ * {"storeName":"AppleiOS", "identifier":"coins_100", "orderId":"...", "transactionData":"..."}
+ * </pre>
+ * 
+ * A single transaction is answered with {"valid":true} or {"valid":false}; if the store could not be asked (see
+ * {@link VerifierUnavailableException}) with status 503 and {"error":"unavailable","store":"..."}. A batch is verified
+ * concurrently via {@link PurchaseVerifierManager#verifyAsync(Transaction, VerificationCallback)} and answered as a stream of
+ * JSON lines (application/x-ndjson), one per transaction in the order they complete, e.g. {"index":2,"valid":true} or
+ * {"index":0,"error":"unavailable","store":"..."}. Verifications of a batch still pending after the batch timeout are cancelled
+ * and answered with {"index":1,"error":"timeout"}. Other failures are answered with "error":"internal", without details.
+ * 
+ * <pre>
+ * VerificationEndpoint endpoint = new VerificationEndpoint(manager);
+ * endpoint.start(new InetSocketAddress(8080));
+ * ...
+ * endpoint.stop(5);
+ * </pre>
+ * 
+ * Exchanges are handled on the executor passed to the constructor, by default one with virtual threads where the JVM supports
+ * them (see {@link #newDefaultExecutor()}). The verifications of batches run on the manager's executor (see
+ * {@link PurchaseVerifierManager#setExecutor(ExecutorService)}), which must be a different one: exchanges wait for their
+ * verifications, so with a shared bounded executor they could take all threads and wait forever. */
+public class VerificationEndpoint {
+
+	public static final String DEFAULT_PATH = "/verify";
+	public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+	public static final int DEFAULT_MAX_REQUEST_BYTES = 1024 * 1024;
+	/** Threads of the default executor if virtual threads aren't available. */
+	public static final int DEFAULT_THREADS = 64;
+	/** Exchanges of the default executor that can wait for a thread if virtual threads aren't available. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+	public static final long DEFAULT_BATCH_TIMEOUT_MILLIS = 60000;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final PurchaseVerifierManager manager;
+	private final ExecutorService executor;
+	/** True if we created the executor ourselves, i.e. it's ours to shut down. */
+	private final boolean ownExecutor;
+
+	private String path = DEFAULT_PATH;
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+	private int maxRequestBytes = DEFAULT_MAX_REQUEST_BYTES;
+	private volatile long batchTimeoutMillis = DEFAULT_BATCH_TIMEOUT_MILLIS;
+
+	private HttpServer server;
+
+	/** Handles exchanges on a default executor, see {@link #newDefaultExecutor()}. */
+	public VerificationEndpoint (PurchaseVerifierManager manager) {
+		this(manager, newDefaultExecutor(), true);
+	}
+
+	/** @param executor Handles the exchanges; single transactions are verified on it directly. Must not be the manager's
+	 *           executor. */
+	public VerificationEndpoint (PurchaseVerifierManager manager, ExecutorService executor) {
+		this(manager, executor, false);
+	}
+
+	private VerificationEndpoint (PurchaseVerifierManager manager, ExecutorService executor, boolean ownExecutor) {
+		this.manager = manager;
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+	}
+
+	/** Returns an executor that starts a virtual thread per task if the JVM supports them (Java 21+), otherwise a bounded
+	 * executor with {@link #DEFAULT_THREADS} threads. */
+	public static ExecutorService newDefaultExecutor () {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)method.invoke(null);
+		} catch (Exception e) {
+			// no virtual threads
+			return PurchaseVerifierAsyncAdapter.newBoundedExecutor(DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+		}
+	}
+
+	/** Sets the path of the endpoint (default: {@link #DEFAULT_PATH}). Must be called before {@link #start(InetSocketAddress)}. */
+	public void setPath (String path) {
+		this.path = path;
+	}
+
+	/** Sets the maximum number of transactions per batch (default: {@link #DEFAULT_MAX_BATCH_SIZE}). Larger batches are
+	 * rejected with status 413. */
+	public void setMaxBatchSize (int maxBatchSize) {
+		if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize must be at least 1: " + maxBatchSize);
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/** Sets the maximum size of a request body (default: {@link #DEFAULT_MAX_REQUEST_BYTES}). Larger requests are rejected with
+	 * status 413. */
+	public void setMaxRequestBytes (int maxRequestBytes) {
+		if (maxRequestBytes < 1) throw new IllegalArgumentException("maxRequestBytes must be at least 1: " + maxRequestBytes);
+		this.maxRequestBytes = maxRequestBytes;
+	}
+
+	/** Sets how long a batch may take (default: {@link #DEFAULT_BATCH_TIMEOUT_MILLIS}). Verifications still pending then are
+	 * cancelled and reported as "timeout". */
+	public void setBatchTimeoutMillis (long batchTimeoutMillis) {
+		if (batchTimeoutMillis < 1) throw new IllegalArgumentException("batchTimeoutMillis must be at least 1: " + batchTimeoutMillis);
+		this.batchTimeoutMillis = batchTimeoutMillis;
+	}
+
+	public PurchaseVerifierManager getManager () {
+		return manager;
+	}
+
+	public ExecutorService getExecutor () {
+		return executor;
+	}
+
+	/** Starts listening on the given address (port 0 picks a free port, see {@link #getAddress()}).
+	 * 
+	 * @throws IOException if the server could not be bound.
+	 * @throws IllegalStateException if the endpoint was started already or shares its executor with the manager. */
+	public synchronized void start (InetSocketAddress address) throws IOException {
+		if (server != null) throw new IllegalStateException("Endpoint already started");
+		if (executor == manager.getExecutor()) throw new IllegalStateException("Endpoint and manager must not share an executor");
+		HttpServer server = HttpServer.create(address, 0);
+		server.createContext(path, new VerifyHandler());
+		server.setExecutor(executor);
+		server.start();
+		this.server = server;
+	}
+
+	/** Returns the address the endpoint listens on, null if it isn't started. */
+	public synchronized InetSocketAddress getAddress () {
+		return server != null ? server.getAddress() : null;
+	}
+
+	/** Stops listening, waiting up to the given number of seconds for running exchanges to complete. Shuts down the default
+	 * executor if one was created. */
+	public synchronized void stop (int delaySeconds) {
+		if (server != null) {
+			server.stop(delaySeconds);
+			server = null;
+		}
+		if (ownExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	private class VerifyHandler implements HttpHandler {
+		@Override
+		public void handle (HttpExchange exchange) throws IOException {
+			try {
+				if (!"POST".equals(exchange.getRequestMethod())) {
+					exchange.getResponseHeaders().set("Allow", "POST");
+					respond(exchange, 405, "{\"error\":\"method not allowed\"}");
+					return;
+				}
+				byte[] body = readBody(exchange.getRequestBody());
+				if (body == null) {
+					respond(exchange, 413, "{\"error\":\"request too large\"}");
+					return;
+				}
+				List<Transaction> transactions = new ArrayList<Transaction>();
+				boolean batch;
+				try {
+					JsonReader reader = new JsonReader(new ByteArrayInputStream(body));
+					batch = reader.peek() == JsonReader.Token.BEGIN_ARRAY;
+					if (batch) {
+						reader.beginArray();
+						while (reader.hasNext()) {
+							if (transactions.size() == maxBatchSize) {
+								respond(exchange, 413, "{\"error\":\"batch too large\"}");
+								return;
+							}
+							transactions.add(TransactionJson.read(reader));
+						}
+						reader.endArray();
+					} else {
+						transactions.add(TransactionJson.read(reader));
+					}
+					reader.peek();
+				} catch (IOException e) {
+					respond(exchange, 400, "{\"error\":" + TransactionJson.quote("malformed request: " + e.getMessage()) + "}");
+					return;
+				}
+				if (batch) {
+					verifyBatch(exchange, transactions);
+				} else {
+					verify(exchange, transactions.get(0));
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+
+		/** Reads the request body, null if it exceeds the maximum size. */
+		private byte[] readBody (InputStream in) throws IOException {
+			byte[] buffer = new byte[Math.min(4096, maxRequestBytes)];
+			int length = 0;
+			int count;
+			while ((count = in.read(buffer, length, buffer.length - length)) != -1) {
+				length += count;
+				if (length == buffer.length) {
+					if (length >= maxRequestBytes) {
+						return in.read() == -1 && length == maxRequestBytes ? buffer : null;
+					}
+					byte[] bigger = new byte[Math.min(buffer.length * 2, maxRequestBytes)];
+					System.arraycopy(buffer, 0, bigger, 0, length);
+					buffer = bigger;
+				}
+			}
+			byte[] body = new byte[length];
+			System.arraycopy(buffer, 0, body, 0, length);
+			return body;
+		}
+
+		private void verify (HttpExchange exchange, Transaction transaction) throws IOException {
+			boolean valid;
+			try {
+				valid = manager.isValid(transaction);
+			} catch (VerifierUnavailableException e) {
+				respond(exchange, 503, "{" + error(e) + "}");
+				return;
+			} catch (RuntimeException e) {
+				respond(exchange, 500, "{" + error(e) + "}");
+				return;
+			}
+			respond(exchange, 200, valid ? "{\"valid\":true}" : "{\"valid\":false}");
+		}
+
+		private void verifyBatch (HttpExchange exchange, List<Transaction> transactions) throws IOException {
+			final BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+			int n = transactions.size();
+			List<VerificationFuture> futures = new ArrayList<VerificationFuture>(n);
+			for (int i = 0; i < n; i++) {
+				final int index = i;
+				futures.add(manager.verifyAsync(transactions.get(i), new VerificationCallback() {
+					@Override
+					public void verified (Transaction transaction, boolean valid) {
+						lines.add("{\"index\":" + index + ",\"valid\":" + valid + "}\n");
+					}
+
+					@Override
+					public void failed (Transaction transaction, Throwable cause) {
+						lines.add("{\"index\":" + index + "," + error(cause) + "}\n");
+					}
+				}));
+			}
+
+			// results are streamed as they complete
+			exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+			boolean completed = false;
+			try {
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream out = exchange.getResponseBody();
+				long deadline = System.currentTimeMillis() + batchTimeoutMillis;
+				boolean timedOut = false;
+				for (int i = 0; i < n; i++) {
+					String line = timedOut ? lines.take() : lines.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+					if (line == null) {
+						// cancelling fails the pending futures, so every remaining line is queued (or about to be)
+						timedOut = true;
+						for (int j = 0; j < n; j++) {
+							futures.get(j).cancel(false);
+						}
+						line = lines.take();
+					}
+					out.write(line.getBytes(UTF_8));
+					if (lines.isEmpty()) {
+						out.flush();
+					}
+				}
+				out.close();
+				completed = true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				if (!completed) {
+					// client gone or shutting down: the remaining results aren't needed
+					for (int i = 0; i < n; i++) {
+						futures.get(i).cancel(false);
+					}
+				}
+			}
+		}
+
+		private void respond (HttpExchange exchange, int status, String json) throws IOException {
+			byte[] bytes = json.getBytes(UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(bytes);
+			out.close();
+		}
+	}
+
+	/** Returns the error members of a result object (without braces). Details of unexpected failures are logged, not returned
+	 * to the client. */
+	static String error (Throwable cause) {
+		if (cause instanceof VerifierUnavailableException) {
+			String store = ((VerifierUnavailableException)cause).getStoreName();
+			return "\"error\":\"unavailable\",\"store\":" + (store != null ? TransactionJson.quote(store) : "null");
+		}
+		if (cause instanceof CancellationException) {
+			// only batches that timed out are cancelled while they are answered
+			return "\"error\":\"timeout\"";
+		}
+		System.err.println("Verification failed: " + cause);
+		cause.printStackTrace();
+		return "\"error\":\"internal\"";
+	}
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.impl;
+
+/** The result of verifying a receipt with Amazon's Receipt Verification Service (RVS). The status is the HTTP status code of
+ * the response; the receipt fields are only set for {@link #STATUS_OK}. Times are in milliseconds since the epoch or -1 if not
+ * present.
+ * 
+ * @see AmazonReceiptResponseParser */
+public final class AmazonReceiptResponse {
+
+	/** The receipt is valid (and possibly cancelled, see {@link #isCancelled()}). */
+	public static final int STATUS_OK = 200;
+	/** The receipt id is invalid or unknown. */
+	public static final int STATUS_INVALID_RECEIPT = 400;
+	/** The receipt id is no longer valid. */
+	public static final int STATUS_RECEIPT_GONE = 410;
+	/** The shared developer secret is invalid. */
+	public static final int STATUS_INVALID_DEVELOPER_SECRET = 496;
+	/** The user id is invalid. */
+	public static final int STATUS_INVALID_USER = 497;
+
+	int status;
+	String receiptId;
+	String productId;
+	String productType;
+	String parentProductId;
+	String term;
+	String termSku;
+	int quantity = 1;
+	long purchaseDateMillis = -1;
+	long cancelDateMillis = -1;
+	int cancelReason = -1;
+	long renewalDateMillis = -1;
+	long freeTrialEndDateMillis = -1;
+	long gracePeriodEndDateMillis = -1;
+	boolean autoRenewing;
+	boolean testTransaction;
+	boolean betaProduct;
+
+	AmazonReceiptResponse (int status) {
+		this.status = status;
+	}
+
+	/** The HTTP status code, see the STATUS_ constants. */
+	public int getStatus () {
+		return status;
+	}
+
+	/** True if Amazon could not answer, i.e. the receipt should be verified again later (HTTP 429 and 5xx). */
+	public boolean isTransient () {
+		return status == 429 || (status >= 500 && status <= 599);
+	}
+
+	public String getReceiptId () {
+		return receiptId;
+	}
+
+	/** The SKU of the purchased item. */
+	public String getProductId () {
+		return productId;
+	}
+
+	/** "CONSUMABLE", "ENTITLED" or "SUBSCRIPTION". */
+	public String getProductType () {
+		return productType;
+	}
+
+	/** The parent SKU of a subscription term. */
+	public String getParentProductId () {
+		return parentProductId;
+	}
+
+	/** The subscription term, e.g. "1 Month". */
+	public String getTerm () {
+		return term;
+	}
+
+	public String getTermSku () {
+		return termSku;
+	}
+
+	public int getQuantity () {
+		return quantity;
+	}
+
+	public long getPurchaseDateMillis () {
+		return purchaseDateMillis;
+	}
+
+	/** When the purchase was cancelled, refunded or the subscription ended; -1 if it wasn't. */
+	public long getCancelDateMillis () {
+		return cancelDateMillis;
+	}
+
+	/** Why the purchase was cancelled (0: unknown, 1: cancelled or refunded by the customer, 2: by the system); -1 if not
+	 * reported. */
+	public int getCancelReason () {
+		return cancelReason;
+	}
+
+	public boolean isCancelled () {
+		return cancelDateMillis >= 0;
+	}
+
+	public long getRenewalDateMillis () {
+		return renewalDateMillis;
+	}
+
+	public long getFreeTrialEndDateMillis () {
+		return freeTrialEndDateMillis;
+	}
+
+	public long getGracePeriodEndDateMillis () {
+		return gracePeriodEndDateMillis;
+	}
+
+	public boolean isAutoRenewing () {
+		return autoRenewing;
+	}
+
+	/** True for purchases made in the sandbox (App Tester). */
+	public boolean isTestTransaction () {
+		return testTransaction;
+	}
+
+	/** True for purchases of a Live App Testing version. */
+	public boolean isBetaProduct () {
+		return betaProduct;
+	}
+
+	@Override
+	public String toString () {
+		return "AmazonReceiptResponse{" +
+				"status=" + status +
+				", receiptId='" + receiptId + '\'' +
+				", productId='" + productId + '\'' +
+				", productType='" + productType + '\'' +
+				", quantity=" + quantity +
+				", purchaseDateMillis=" + purchaseDateMillis +
+				", cancelDateMillis=" + cancelDateMillis +
+				", cancelReason=" + cancelReason +
+				", renewalDateMillis=" + renewalDateMillis +
+				", testTransaction=" + testTransaction +
+				'}';
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.badlogic.gdx.pay.server.util.JsonReader;
+
+/** Parses the JSON body of an Amazon RVS response in a single streaming pass; unknown fields are skipped. */
+public final class AmazonReceiptResponseParser {
+
+	private static final String[] NAMES = {"receiptId", "productId", "productType", "parentProductId", "term", "termSku",
+		"quantity", "purchaseDate", "cancelDate", "cancelReason", "renewalDate", "freeTrialEndDate", "gracePeriodEndDate",
+		"autoRenewing", "testTransaction", "betaProduct"};
+
+	private AmazonReceiptResponseParser () {
+		// not used
+	}
+
+	/** Parses the body of a response with the given HTTP status (UTF-8 encoded JSON).
+	 * 
+	 * @throws IOException if reading fails or the response is malformed. */
+	public static AmazonReceiptResponse parse (int status, InputStream in) throws IOException {
+		AmazonReceiptResponse response = new AmazonReceiptResponse(status);
+		JsonReader reader = new JsonReader(in);
+		reader.beginObject();
+		while (reader.hasNext()) {
+			int name = reader.nextName(NAMES);
+			if (name >= 0 && reader.peek() == JsonReader.Token.NULL) {
+				reader.nextNull();
+				continue;
+			}
+			switch (name) {
+			case 0:
+				response.receiptId = reader.nextString();
+				break;
+			case 1:
+				response.productId = reader.nextString();
+				break;
+			case 2:
+				response.productType = reader.nextString();
+				break;
+			case 3:
+				response.parentProductId = reader.nextString();
+				break;
+			case 4:
+				response.term = reader.nextString();
+				break;
+			case 5:
+				response.termSku = reader.nextString();
+				break;
+			case 6:
+				response.quantity = reader.nextInt();
+				break;
+			case 7:
+				response.purchaseDateMillis = reader.nextLong();
+				break;
+			case 8:
+				response.cancelDateMillis = reader.nextLong();
+				break;
+			case 9:
+				response.cancelReason = reader.nextInt();
+				break;
+			case 10:
+				response.renewalDateMillis = reader.nextLong();
+				break;
+			case 11:
+				response.freeTrialEndDateMillis = reader.nextLong();
+				break;
+			case 12:
+				response.gracePeriodEndDateMillis = reader.nextLong();
+				break;
+			case 13:
+				response.autoRenewing = reader.nextBoolean();
+				break;
+			case 14:
+				response.testTransaction = reader.nextBoolean();
+				break;
+			case 15:
+				response.betaProduct = reader.nextBoolean();
+				break;
+			default:
+				reader.skipValue();
+				break;
+			}
+		}
+		reader.endObject();
+		return response;
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.util.List;
+
+/** An in-app purchase record from an App Store receipt, i.e. an entry of "in_app" or "latest_receipt_info" in Apple's
+ * verifyReceipt response, or an in-app purchase receipt decoded locally. Times are in milliseconds since the epoch or -1 if not
+ * present. */
+public final class AppleInAppPurchase {
+
+	int quantity = 1;
+	String productId;
+	String transactionId;
+	String originalTransactionId;
+	long purchaseDateMillis = -1;
+	long originalPurchaseDateMillis = -1;
+	long expiresDateMillis = -1;
+	long cancellationDateMillis = -1;
+	boolean trialPeriod;
+
+	AppleInAppPurchase () {
+	}
+
+	public int getQuantity () {
+		return quantity;
+	}
+
+	public String getProductId () {
+		return productId;
+	}
+
+	public String getTransactionId () {
+		return transactionId;
+	}
+
+	/** The transaction id of the original purchase; identical for all renewals and restores of a purchase. */
+	public String getOriginalTransactionId () {
+		return originalTransactionId;
+	}
+
+	public long getPurchaseDateMillis () {
+		return purchaseDateMillis;
+	}
+
+	public long getOriginalPurchaseDateMillis () {
+		return originalPurchaseDateMillis;
+	}
+
+	/** The expiry of an auto-renewable subscription or -1 for other products. */
+	public long getExpiresDateMillis () {
+		return expiresDateMillis;
+	}
+
+	/** When Apple customer support refunded the purchase or -1 if it wasn't. */
+	public long getCancellationDateMillis () {
+		return cancellationDateMillis;
+	}
+
+	public boolean isCancelled () {
+		return cancellationDateMillis >= 0;
+	}
+
+	public boolean isTrialPeriod () {
+		return trialPeriod;
+	}
+
+	/** Returns the purchase with the given transaction id or, if there is none, the first with it as original transaction id
+	 * (which may be any renewal of a subscription), or null. */
+	static AppleInAppPurchase find (List<AppleInAppPurchase> purchases, String transactionId) {
+		if (transactionId == null) {
+			return null;
+		}
+		AppleInAppPurchase original = null;
+		for (int i = 0; i < purchases.size(); i++) {
+			AppleInAppPurchase purchase = purchases.get(i);
+			if (transactionId.equals(purchase.transactionId)) {
+				return purchase;
+			}
+			if (original == null && transactionId.equals(purchase.originalTransactionId)) {
+				original = purchase;
+			}
+		}
+		return original;
+	}
+
+	/** Returns the latest expiry of a non-cancelled purchase of the product (any product if null) if later than the given one. */
+	static long latestExpiry (List<AppleInAppPurchase> purchases, String productId, long expiry) {
+		for (int i = 0; i < purchases.size(); i++) {
+			AppleInAppPurchase purchase = purchases.get(i);
+			if ((productId == null || productId.equals(purchase.productId)) && !purchase.isCancelled()
+				&& purchase.expiresDateMillis > expiry) {
+				expiry = purchase.expiresDateMillis;
+			}
+		}
+		return expiry;
+	}
+
+	/** True if the given id is the transaction id or the original transaction id of this purchase. */
+	public boolean matchesTransaction (String id) {
+		return id != null && (id.equals(transactionId) || id.equals(originalTransactionId));
+	}
+
+	@Override
+	public String toString () {
+		return "AppleInAppPurchase{" +
+				"productId='" + productId + '\'' +
+				", transactionId='" + transactionId + '\'' +
+				", originalTransactionId='" + originalTransactionId + '\'' +
+				", quantity=" + quantity +
+				", purchaseDateMillis=" + purchaseDateMillis +
+				", expiresDateMillis=" + expiresDateMillis +
+				", cancellationDateMillis=" + cancellationDateMillis +
+				'}';
+	}
+}
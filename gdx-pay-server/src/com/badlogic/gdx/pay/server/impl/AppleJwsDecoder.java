@@ -0,0 +1,344 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPublicKey;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.badlogic.gdx.pay.server.util.Base64Codec;
+import com.badlogic.gdx.pay.server.util.JsonReader;
+
+/** Decodes and validates StoreKit 2 signed transactions locally, without calling Apple. A signed transaction is a compact JWS
+ * (<code>header.payload.signature</code>, base 64 URL encoded) whose header carries the signing certificate chain ("x5c"):
+ * the leaf certificate must be issued by the intermediate certificate, which must be issued by the configured Apple root
+ * certificate, and the ES256 signature must verify with the leaf's key.
+ * <p>
+ * Validated chains are cached by the JWS header, which is the same for all transactions signed with the same certificates, so
+ * later transactions only pay for parsing the payload and one ECDSA check. Validated intermediate certificates are cached as
+ * well. Requires a JVM with elliptic curve support (Java 7 or later, or an additional security provider). Instances are
+ * thread-safe.
+ * 
+ * @see PurchaseVerifieriOSAppleStoreKit2 */
+public class AppleJwsDecoder {
+
+	/** Marks certificates that sign App Store data ("Apple Mac App Store and iTunes Store Receipt Signing"). */
+	private static final String OID_APPLE_LEAF = "1.2.840.113635.100.6.11.1";
+	/** Marks the "Apple Worldwide Developer Relations" intermediate certificate. */
+	private static final String OID_APPLE_INTERMEDIATE = "1.2.840.113635.100.6.2.1";
+
+	/** Bounds the caches of validated chains and intermediates; they are cleared when exceeded. */
+	private static final int MAX_CACHED_CERTIFICATES = 64;
+
+	/** Length of an ES256 signature: r and s with 32 bytes each. */
+	private static final int ES256_SIGNATURE_LENGTH = 64;
+
+	private static final String[] HEADER_NAMES = {"alg", "x5c"};
+	private static final String[] PAYLOAD_NAMES = {"transactionId", "originalTransactionId", "bundleId", "productId", "type",
+		"environment", "appAccountToken", "quantity", "purchaseDate", "originalPurchaseDate", "expiresDate", "revocationDate",
+		"revocationReason", "signedDate"};
+
+	private final X509Certificate rootCertificate;
+	private final SignatureVerifier verifier = new SignatureVerifier("SHA256withECDSA");
+
+	/** Validated signers by JWS header. */
+	private final Map<String, Signer> signers = new ConcurrentHashMap<String, Signer>(16);
+	/** Intermediate certificates (by their base 64 encoding) known to be issued by the root certificate. */
+	private final Map<String, X509Certificate> intermediates = new ConcurrentHashMap<String, X509Certificate>(16);
+
+	private volatile boolean checkAppleExtensions = true;
+
+	/** @param rootCertificate The trusted Apple root certificate ("Apple Root CA - G3", see
+	 *           https://www.apple.com/certificateauthority/), e.g. loaded with {@link AppleReceiptDecoder#loadCertificate}.
+	 * @throws IllegalArgumentException if the JVM doesn't support ECDSA. */
+	public AppleJwsDecoder (X509Certificate rootCertificate) {
+		this.rootCertificate = rootCertificate;
+	}
+
+	public X509Certificate getRootCertificate () {
+		return rootCertificate;
+	}
+
+	/** Sets whether the leaf and intermediate certificates must carry Apple's marker extensions (default true). Turn it off only
+	 * to test with certificates of your own. */
+	public void setCheckAppleExtensions (boolean checkAppleExtensions) {
+		this.checkAppleExtensions = checkAppleExtensions;
+		signers.clear();
+		intermediates.clear();
+	}
+
+	/** Decodes and validates a signed transaction. The certificates are validated at the time the transaction was signed.
+	 * 
+	 * @throws IOException if the JWS is malformed.
+	 * @throws GeneralSecurityException if the signature or certificate chain is invalid. */
+	public AppleJwsTransaction decodeTransaction (String jws) throws IOException, GeneralSecurityException {
+		int first = jws.indexOf('.');
+		int second = first > 0 ? jws.indexOf('.', first + 1) : -1;
+		if (second < 0 || jws.indexOf('.', second + 1) >= 0) {
+			throw new IOException("Not a compact JWS.");
+		}
+
+		// the payload is read before it is verified only to learn the signing date; nothing is returned unless verified
+		AppleJwsTransaction transaction = parsePayload(decode(jws.substring(first + 1, second)));
+		Date validationDate = transaction.signedDateMillis >= 0 ? new Date(transaction.signedDateMillis) : new Date();
+		Signer signer = signer(jws.substring(0, first), validationDate);
+
+		byte[] signature = decode(jws.substring(second + 1));
+		if (signature.length != ES256_SIGNATURE_LENGTH) {
+			throw new SignatureException("ES256 signature must have " + ES256_SIGNATURE_LENGTH + " bytes: " + signature.length);
+		}
+		byte[] der = toDer(signature);
+		if (!verifier.verify(signer.key, jws.substring(0, second), der, 0, der.length)) {
+			throw new SignatureException("JWS signature does not match.");
+		}
+		return transaction;
+	}
+
+	/** Returns the validated signer of the header's certificate chain. */
+	private Signer signer (String header, Date validationDate) throws IOException, GeneralSecurityException {
+		Signer signer = signers.get(header);
+		if (signer == null) {
+			signer = validate(header, validationDate);
+			if (signers.size() >= MAX_CACHED_CERTIFICATES) {
+				signers.clear();
+			}
+			signers.put(header, signer);
+		} else {
+			signer.leaf.checkValidity(validationDate);
+			signer.intermediate.checkValidity(validationDate);
+		}
+		return signer;
+	}
+
+	private Signer validate (String header, Date validationDate) throws IOException, GeneralSecurityException {
+		String algorithm = null;
+		List<String> chain = new ArrayList<String>(3);
+		JsonReader reader = new JsonReader(new ByteArrayInputStream(decode(header)));
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName(HEADER_NAMES)) {
+			case 0:
+				algorithm = reader.nextStringOrNull();
+				break;
+			case 1:
+				reader.beginArray();
+				while (reader.hasNext()) {
+					chain.add(reader.nextString());
+				}
+				reader.endArray();
+				break;
+			default:
+				reader.skipValue();
+				break;
+			}
+		}
+		reader.endObject();
+		if (!"ES256".equals(algorithm)) {
+			throw new SignatureException("Unsupported JWS algorithm: " + algorithm);
+		}
+		if (chain.size() < 2) {
+			throw new CertificateException("JWS certificate chain is incomplete: " + chain.size() + " certificate(s)");
+		}
+
+		CertificateFactory factory = CertificateFactory.getInstance("X.509");
+		X509Certificate intermediate = intermediates.get(chain.get(1));
+		if (intermediate == null) {
+			intermediate = certificate(factory, chain.get(1));
+			intermediate.checkValidity(validationDate);
+			if (intermediate.getBasicConstraints() < 0) {
+				throw new CertificateException("JWS intermediate certificate is not a CA certificate.");
+			}
+			if (checkAppleExtensions && intermediate.getExtensionValue(OID_APPLE_INTERMEDIATE) == null) {
+				throw new CertificateException("JWS intermediate certificate is not an Apple intermediate certificate.");
+			}
+			if (!intermediate.getIssuerX500Principal().equals(rootCertificate.getSubjectX500Principal())) {
+				throw new CertificateException("JWS certificate chain does not lead to the root certificate.");
+			}
+			verify(intermediate, rootCertificate.getPublicKey());
+			if (intermediates.size() >= MAX_CACHED_CERTIFICATES) {
+				intermediates.clear();
+			}
+			intermediates.put(chain.get(1), intermediate);
+		} else {
+			intermediate.checkValidity(validationDate);
+		}
+
+		X509Certificate leaf = certificate(factory, chain.get(0));
+		leaf.checkValidity(validationDate);
+		if (checkAppleExtensions && leaf.getExtensionValue(OID_APPLE_LEAF) == null) {
+			throw new CertificateException("JWS signing certificate is not an App Store signing certificate.");
+		}
+		if (!leaf.getIssuerX500Principal().equals(intermediate.getSubjectX500Principal())) {
+			throw new CertificateException("JWS signing certificate not issued by the intermediate certificate.");
+		}
+		verify(leaf, intermediate.getPublicKey());
+		if (!(leaf.getPublicKey() instanceof ECPublicKey)) {
+			throw new CertificateException("JWS signing certificate has no EC key: " + leaf.getPublicKey().getAlgorithm());
+		}
+		return new Signer(leaf, intermediate);
+	}
+
+	private static X509Certificate certificate (CertificateFactory factory, String base64) throws IOException,
+		CertificateException {
+		byte[] encoded;
+		try {
+			// x5c entries are standard base 64 (RFC 7515)
+			encoded = Base64Codec.STANDARD.decode(base64);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("JWS certificate is not valid base 64: " + e.getMessage());
+		}
+		return (X509Certificate)factory.generateCertificate(new ByteArrayInputStream(encoded));
+	}
+
+	private static void verify (X509Certificate certificate, PublicKey issuerKey) throws GeneralSecurityException {
+		try {
+			certificate.verify(issuerKey);
+		} catch (InvalidKeyException e) {
+			throw new CertificateException("JWS certificate not signed by its issuer.", e);
+		} catch (SignatureException e) {
+			throw new CertificateException("JWS certificate not signed by its issuer.", e);
+		}
+	}
+
+	private static byte[] decode (String part) throws IOException {
+		try {
+			return Base64Codec.URL_SAFE_NO_PADDING.decode(part);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("JWS is not valid base 64: " + e.getMessage());
+		}
+	}
+
+	private static AppleJwsTransaction parsePayload (byte[] payload) throws IOException {
+		AppleJwsTransaction transaction = new AppleJwsTransaction();
+		JsonReader reader = new JsonReader(new ByteArrayInputStream(payload));
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName(PAYLOAD_NAMES)) {
+			case 0:
+				transaction.transactionId = reader.nextStringOrNull();
+				break;
+			case 1:
+				transaction.originalTransactionId = reader.nextStringOrNull();
+				break;
+			case 2:
+				transaction.bundleId = reader.nextStringOrNull();
+				break;
+			case 3:
+				transaction.productId = reader.nextStringOrNull();
+				break;
+			case 4:
+				transaction.type = reader.nextStringOrNull();
+				break;
+			case 5:
+				transaction.environment = reader.nextStringOrNull();
+				break;
+			case 6:
+				transaction.appAccountToken = reader.nextStringOrNull();
+				break;
+			case 7:
+				transaction.quantity = reader.nextInt();
+				break;
+			case 8:
+				transaction.purchaseDateMillis = reader.nextLong();
+				break;
+			case 9:
+				transaction.originalPurchaseDateMillis = reader.nextLong();
+				break;
+			case 10:
+				transaction.expiresDateMillis = reader.nextLong();
+				break;
+			case 11:
+				transaction.revocationDateMillis = reader.nextLong();
+				break;
+			case 12:
+				transaction.revocationReason = reader.nextInt();
+				break;
+			case 13:
+				transaction.signedDateMillis = reader.nextLong();
+				break;
+			default:
+				reader.skipValue();
+				break;
+			}
+		}
+		reader.endObject();
+		return transaction;
+	}
+
+	/** Converts a JWS ECDSA signature (r and s as unsigned big-endian numbers of equal length) to the DER encoding expected by
+	 * {@link java.security.Signature}: SEQUENCE { INTEGER r, INTEGER s }. */
+	static byte[] toDer (byte[] signature) {
+		int half = signature.length / 2;
+		int rStart = firstSignificant(signature, 0, half);
+		int sStart = firstSignificant(signature, half, signature.length);
+		int rLength = half - rStart + ((signature[rStart] & 0x80) != 0 ? 1 : 0);
+		int sLength = signature.length - sStart + ((signature[sStart] & 0x80) != 0 ? 1 : 0);
+		int length = 2 + rLength + 2 + sLength;
+		byte[] der = new byte[2 + length];
+		int i = 0;
+		der[i++] = 0x30;
+		der[i++] = (byte)length;
+		der[i++] = 0x02;
+		der[i++] = (byte)rLength;
+		if (rLength > half - rStart) {
+			der[i++] = 0;
+		}
+		System.arraycopy(signature, rStart, der, i, half - rStart);
+		i += half - rStart;
+		der[i++] = 0x02;
+		der[i++] = (byte)sLength;
+		if (sLength > signature.length - sStart) {
+			der[i++] = 0;
+		}
+		System.arraycopy(signature, sStart, der, i, signature.length - sStart);
+		return der;
+	}
+
+	/** Returns the index of the first non-zero byte in the range, keeping at least the last byte. */
+	private static int firstSignificant (byte[] bytes, int start, int end) {
+		while (start < end - 1 && bytes[start] == 0) {
+			start++;
+		}
+		return start;
+	}
+
+	/** A validated certificate chain and the parsed key of its leaf. */
+	private static final class Signer {
+		final X509Certificate leaf;
+		final X509Certificate intermediate;
+		final PublicKey key;
+
+		Signer (X509Certificate leaf, X509Certificate intermediate) {
+			this.leaf = leaf;
+			this.intermediate = intermediate;
+			this.key = leaf.getPublicKey();
+		}
+	}
+}
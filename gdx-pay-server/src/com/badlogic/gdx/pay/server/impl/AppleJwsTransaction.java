@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.impl;
+
+/** The payload of a StoreKit 2 signed transaction (JWSTransactionDecodedPayload), e.g. the <code>jwsRepresentation</code> of a
+ * transaction on the device. Times are in milliseconds since the epoch or -1 if not present.
+ * 
+ * @see AppleJwsDecoder */
+public final class AppleJwsTransaction {
+
+	/** Environment of purchases made with real money. */
+	public static final String ENVIRONMENT_PRODUCTION = "Production";
+
+	String transactionId;
+	String originalTransactionId;
+	String bundleId;
+	String productId;
+	String type;
+	String environment;
+	String appAccountToken;
+	int quantity = 1;
+	long purchaseDateMillis = -1;
+	long originalPurchaseDateMillis = -1;
+	long expiresDateMillis = -1;
+	long revocationDateMillis = -1;
+	int revocationReason = -1;
+	long signedDateMillis = -1;
+
+	AppleJwsTransaction () {
+	}
+
+	public String getTransactionId () {
+		return transactionId;
+	}
+
+	/** The transaction id of the original purchase; identical for all renewals and restores of a purchase. */
+	public String getOriginalTransactionId () {
+		return originalTransactionId;
+	}
+
+	public String getBundleId () {
+		return bundleId;
+	}
+
+	public String getProductId () {
+		return productId;
+	}
+
+	/** The product type, e.g. "Consumable", "Non-Consumable" or "Auto-Renewable Subscription". */
+	public String getType () {
+		return type;
+	}
+
+	/** "Production", "Sandbox" or "Xcode". */
+	public String getEnvironment () {
+		return environment;
+	}
+
+	public boolean isProduction () {
+		return ENVIRONMENT_PRODUCTION.equals(environment);
+	}
+
+	/** The UUID the app attached to the purchase, or null. */
+	public String getAppAccountToken () {
+		return appAccountToken;
+	}
+
+	public int getQuantity () {
+		return quantity;
+	}
+
+	public long getPurchaseDateMillis () {
+		return purchaseDateMillis;
+	}
+
+	public long getOriginalPurchaseDateMillis () {
+		return originalPurchaseDateMillis;
+	}
+
+	/** The expiry of an auto-renewable subscription or -1 for other products. */
+	public long getExpiresDateMillis () {
+		return expiresDateMillis;
+	}
+
+	/** When Apple refunded or revoked the purchase or -1 if it didn't. */
+	public long getRevocationDateMillis () {
+		return revocationDateMillis;
+	}
+
+	/** 0 for a refund for other reasons, 1 for a refund because of an issue in the app, -1 if not revoked. */
+	public int getRevocationReason () {
+		return revocationReason;
+	}
+
+	public boolean isRevoked () {
+		return revocationDateMillis >= 0;
+	}
+
+	/** When the App Store signed the transaction. */
+	public long getSignedDateMillis () {
+		return signedDateMillis;
+	}
+
+	/** True if the given id is the transaction id or the original transaction id of this transaction. */
+	public boolean matchesTransaction (String id) {
+		return id != null && (id.equals(transactionId) || id.equals(originalTransactionId));
+	}
+
+	@Override
+	public String toString () {
+		return "AppleJwsTransaction{" +
+				"transactionId='" + transactionId + '\'' +
+				", originalTransactionId='" + originalTransactionId + '\'' +
+				", bundleId='" + bundleId + '\'' +
+				", productId='" + productId + '\'' +
+				", type='" + type + '\'' +
+				", environment='" + environment + '\'' +
+				", quantity=" + quantity +
+				", purchaseDateMillis=" + purchaseDateMillis +
+				", expiresDateMillis=" + expiresDateMillis +
+				", revocationDateMillis=" + revocationDateMillis +
+				", signedDateMillis=" + signedDateMillis +
+				'}';
+	}
+}
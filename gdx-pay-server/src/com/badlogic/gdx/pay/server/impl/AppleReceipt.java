@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The contents of an App Store receipt decoded locally, see {@link AppleReceiptDecoder}. Times are in milliseconds since the
+ * epoch or -1 if not present. */
+public final class AppleReceipt {
+
+	String bundleId;
+	String applicationVersion;
+	String originalApplicationVersion;
+	long creationDateMillis = -1;
+	long expirationDateMillis = -1;
+	final List<AppleInAppPurchase> inApp = new ArrayList<AppleInAppPurchase>(4);
+
+	AppleReceipt () {
+	}
+
+	public String getBundleId () {
+		return bundleId;
+	}
+
+	public String getApplicationVersion () {
+		return applicationVersion;
+	}
+
+	public String getOriginalApplicationVersion () {
+		return originalApplicationVersion;
+	}
+
+	/** When the receipt was created (i.e. signed). */
+	public long getCreationDateMillis () {
+		return creationDateMillis;
+	}
+
+	/** When the receipt expires; only set for volume purchase program receipts. */
+	public long getExpirationDateMillis () {
+		return expirationDateMillis;
+	}
+
+	/** The in-app purchase receipts. */
+	public List<AppleInAppPurchase> getInApp () {
+		return Collections.unmodifiableList(inApp);
+	}
+
+	/** Returns the purchase with the given transaction id, else the first with it as original transaction id, or null. */
+	public AppleInAppPurchase findPurchase (String transactionId) {
+		return AppleInAppPurchase.find(inApp, transactionId);
+	}
+
+	/** Returns the latest expiry of a non-cancelled subscription for the product (any product if null), or -1 if none. */
+	public long getSubscriptionExpiryMillis (String productId) {
+		return AppleInAppPurchase.latestExpiry(inApp, productId, -1);
+	}
+
+	@Override
+	public String toString () {
+		return "AppleReceipt{" +
+				"bundleId='" + bundleId + '\'' +
+				", applicationVersion='" + applicationVersion + '\'' +
+				", creationDateMillis=" + creationDateMillis +
+				", inApp=" + inApp +
+				'}';
+	}
+}
@@ -0,0 +1,551 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.security.auth.x500.X500Principal;
+
+import com.badlogic.gdx.pay.server.util.Base64Codec;
+import com.badlogic.gdx.pay.server.util.DerReader;
+
+/** Decodes and validates App Store receipts locally, without calling Apple. The receipt is a PKCS#7 signed-data container: its
+ * signature is verified against the signer certificate, whose chain must end at the configured Apple root certificate, and the
+ * ASN.1 payload is decoded into an {@link AppleReceipt}.
+ * <p>
+ * The signer certificate must carry Apple's receipt signing marker (1.2.840.113635.100.6.11.1) and the certificate issued by the
+ * root Apple's intermediate marker (1.2.840.113635.100.6.2.1), so certificates Apple issues for other purposes can't sign
+ * receipts. Certificates that were validated once are cached (by their encoding), so later receipts signed by the same
+ * certificates only pay for the receipt signature itself. Instances are thread-safe.
+ * 
+ * @see PurchaseVerifieriOSAppleOffline */
+public class AppleReceiptDecoder {
+
+	private static final String OID_SIGNED_DATA = "1.2.840.113549.1.7.2";
+	private static final String OID_DATA = "1.2.840.113549.1.7.1";
+	private static final String OID_MESSAGE_DIGEST = "1.2.840.113549.1.9.4";
+	/** Marks certificates that sign App Store receipts ("Mac App Store and iTunes Store Receipt Signing"). */
+	static final String OID_APPLE_RECEIPT_SIGNER = "1.2.840.113635.100.6.11.1";
+	/** Marks the "Apple Worldwide Developer Relations" intermediate certificate. */
+	static final String OID_APPLE_INTERMEDIATE = "1.2.840.113635.100.6.2.1";
+	/** Index of digitalSignature in {@link X509Certificate#getKeyUsage()}. */
+	private static final int KEY_USAGE_DIGITAL_SIGNATURE = 0;
+
+	// receipt attribute types
+	private static final int BUNDLE_ID = 2;
+	private static final int APPLICATION_VERSION = 3;
+	private static final int CREATION_DATE = 12;
+	private static final int IN_APP = 17;
+	private static final int ORIGINAL_APPLICATION_VERSION = 19;
+	private static final int EXPIRATION_DATE = 21;
+
+	// in-app purchase attribute types
+	private static final int QUANTITY = 1701;
+	private static final int PRODUCT_ID = 1702;
+	private static final int TRANSACTION_ID = 1703;
+	private static final int PURCHASE_DATE = 1704;
+	private static final int ORIGINAL_TRANSACTION_ID = 1705;
+	private static final int ORIGINAL_PURCHASE_DATE = 1706;
+	private static final int EXPIRES_DATE = 1708;
+	private static final int CANCELLATION_DATE = 1712;
+	private static final int TRIAL_PERIOD = 1713;
+
+	/** Bounds the cache of validated certificates; it is cleared when exceeded. */
+	private static final int MAX_CACHED_CERTIFICATES = 64;
+	/** Bounds the length of certificate chains. */
+	private static final int MAX_CHAIN_LENGTH = 5;
+
+	private final X509Certificate rootCertificate;
+
+	/** Certificates (by encoding) known to chain up to the root certificate. */
+	private final Map<CertificateKey, X509Certificate> validatedCertificates =
+		new ConcurrentHashMap<CertificateKey, X509Certificate>(16);
+	/** Signature verifiers by algorithm name. */
+	private final Map<String, SignatureVerifier> signatureVerifiers = new ConcurrentHashMap<String, SignatureVerifier>(8);
+
+	/** @param rootCertificate The trusted Apple root certificate ("Apple Inc. Root Certificate", see
+	 *           https://www.apple.com/certificateauthority/), e.g. loaded with {@link #loadCertificate(InputStream)}. */
+	public AppleReceiptDecoder (X509Certificate rootCertificate) {
+		this.rootCertificate = rootCertificate;
+	}
+
+	/** Loads a DER or PEM encoded X.509 certificate. */
+	public static X509Certificate loadCertificate (InputStream in) throws CertificateException {
+		return (X509Certificate)CertificateFactory.getInstance("X.509").generateCertificate(in);
+	}
+
+	public X509Certificate getRootCertificate () {
+		return rootCertificate;
+	}
+
+	/** Decodes and validates a base 64 encoded receipt.
+	 * 
+	 * @throws IOException if the receipt is malformed.
+	 * @throws GeneralSecurityException if the signature or certificate chain is invalid. */
+	public AppleReceipt decode (String base64Receipt) throws IOException, GeneralSecurityException {
+		byte[] receipt;
+		try {
+			receipt = Base64Codec.STANDARD.decode(base64Receipt);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Receipt is not valid base 64: " + e.getMessage());
+		}
+		return decode(receipt);
+	}
+
+	/** Decodes and validates a receipt.
+	 * 
+	 * @throws IOException if the receipt is malformed.
+	 * @throws GeneralSecurityException if the signature or certificate chain is invalid. */
+	public AppleReceipt decode (byte[] receipt) throws IOException, GeneralSecurityException {
+		DerReader signedData = signedData(receipt);
+		byte[] payload = content(signedData);
+
+		List<CertificateKey> certificates = new ArrayList<CertificateKey>(4);
+		int tag = signedData.next();
+		if (tag == DerReader.CONTEXT_0) {
+			DerReader certificateSet = signedData.contents();
+			while (certificateSet.hasNext()) {
+				certificateSet.expect(DerReader.SEQUENCE);
+				certificates.add(new CertificateKey(receipt, certificateSet.elementOffset(), certificateSet.elementLength()));
+			}
+			tag = signedData.next();
+		}
+		if (tag == DerReader.CONTEXT_1) {
+			tag = signedData.next();
+		}
+		if (tag != DerReader.SET) {
+			throw new IOException("Receipt has no signer infos.");
+		}
+		DerReader signerInfos = signedData.contents();
+		if (!signerInfos.hasNext()) {
+			throw new IOException("Receipt is not signed.");
+		}
+		DerReader signerInfo = signerInfos.expect(DerReader.SEQUENCE).contents();
+
+		AppleReceipt result = parsePayload(payload);
+		Date validationDate = result.creationDateMillis >= 0 ? new Date(result.creationDateMillis) : new Date();
+		verifySignature(signerInfo, payload, certificates, validationDate);
+		return result;
+	}
+
+	private void verifySignature (DerReader signerInfo, byte[] payload, List<CertificateKey> certificates, Date validationDate)
+		throws IOException, GeneralSecurityException {
+		// SignerInfo ::= SEQUENCE { version, sid, digestAlgorithm, [0] signedAttrs, signatureAlgorithm, signature, ... }
+		signerInfo.expect(DerReader.INTEGER);
+		signerInfo.expect(DerReader.SEQUENCE);
+		DerReader sid = signerInfo.contents();
+		DerReader issuer = sid.expect(DerReader.SEQUENCE);
+		X500Principal issuerName = new X500Principal(issuer.elementBytes());
+		BigInteger serialNumber = sid.expect(DerReader.INTEGER).bigIntegerValue();
+
+		String digestAlgorithm = digestName(signerInfo.expect(DerReader.SEQUENCE).contents().expect(DerReader.OBJECT_IDENTIFIER)
+			.oidValue());
+
+		byte[] signedBytes = payload;
+		int tag = signerInfo.next();
+		if (tag == DerReader.CONTEXT_0) {
+			// signed attributes: the signature covers their DER encoding as SET, and they hold the payload's digest
+			signedBytes = signerInfo.elementBytes();
+			signedBytes[0] = (byte)DerReader.SET;
+			byte[] messageDigest = findMessageDigest(signerInfo.contents());
+			byte[] actualDigest = MessageDigest.getInstance(digestAlgorithm).digest(payload);
+			if (messageDigest == null || !MessageDigest.isEqual(messageDigest, actualDigest)) {
+				throw new SignatureException("Receipt digest mismatch.");
+			}
+			signerInfo.next();
+		}
+		DerReader signature = signerInfo.expect(DerReader.OCTET_STRING);
+
+		X509Certificate signer = validateChain(certificates, issuerName, serialNumber, validationDate);
+		PublicKey key = signer.getPublicKey();
+		String algorithm = digestAlgorithm.replace("-", "") + "with" + ("EC".equals(key.getAlgorithm()) ? "ECDSA" : key.getAlgorithm());
+		if (!signatureVerifier(algorithm).verify(key, signedBytes, 0, signedBytes.length, signature.data(),
+			signature.valueOffset(), signature.valueLength())) {
+			throw new SignatureException("Receipt signature invalid.");
+		}
+	}
+
+	private SignatureVerifier signatureVerifier (String algorithm) {
+		SignatureVerifier verifier = signatureVerifiers.get(algorithm);
+		if (verifier == null) {
+			verifier = new SignatureVerifier(algorithm);
+			signatureVerifiers.put(algorithm, verifier);
+		}
+		return verifier;
+	}
+
+	private static byte[] findMessageDigest (DerReader attributes) throws IOException {
+		while (attributes.hasNext()) {
+			DerReader attribute = attributes.expect(DerReader.SEQUENCE).contents();
+			if (OID_MESSAGE_DIGEST.equals(attribute.expect(DerReader.OBJECT_IDENTIFIER).oidValue())) {
+				return attribute.expect(DerReader.SET).contents().expect(DerReader.OCTET_STRING).valueBytes();
+			}
+		}
+		return null;
+	}
+
+	private static String digestName (String oid) throws IOException {
+		if ("1.3.14.3.2.26".equals(oid)) return "SHA-1";
+		if ("2.16.840.1.101.3.4.2.1".equals(oid)) return "SHA-256";
+		if ("2.16.840.1.101.3.4.2.2".equals(oid)) return "SHA-384";
+		if ("2.16.840.1.101.3.4.2.3".equals(oid)) return "SHA-512";
+		throw new IOException("Unsupported digest algorithm: " + oid);
+	}
+
+	/** Returns the signer's certificate after validating its chain up to the root certificate. */
+	private X509Certificate validateChain (List<CertificateKey> encodedCertificates, X500Principal issuerName, BigInteger serialNumber,
+		Date validationDate) throws GeneralSecurityException {
+		List<X509Certificate> certificates = new ArrayList<X509Certificate>(encodedCertificates.size());
+		List<Boolean> validated = new ArrayList<Boolean>(encodedCertificates.size());
+		CertificateFactory factory = null;
+		for (int i = 0; i < encodedCertificates.size(); i++) {
+			CertificateKey encoded = encodedCertificates.get(i);
+			X509Certificate certificate = validatedCertificates.get(encoded);
+			validated.add(certificate != null);
+			if (certificate == null) {
+				if (factory == null) {
+					factory = CertificateFactory.getInstance("X.509");
+				}
+				certificate = (X509Certificate)factory.generateCertificate(new ByteArrayInputStream(encoded.data, encoded.offset,
+					encoded.length));
+			}
+			certificates.add(certificate);
+		}
+
+		int signerIndex = -1;
+		for (int i = 0; i < certificates.size(); i++) {
+			X509Certificate certificate = certificates.get(i);
+			if (certificate.getSerialNumber().equals(serialNumber) && certificate.getIssuerX500Principal().equals(issuerName)) {
+				signerIndex = i;
+				break;
+			}
+		}
+		if (signerIndex < 0) {
+			throw new CertificateException("Receipt signer certificate not found.");
+		}
+		// other certificates Apple issues under the root (e.g. developer certificates) must not sign receipts
+		X509Certificate signer = certificates.get(signerIndex);
+		if (signer.getExtensionValue(OID_APPLE_RECEIPT_SIGNER) == null) {
+			throw new CertificateException("Receipt signer certificate is not a receipt signing certificate.");
+		}
+		boolean[] keyUsage = signer.getKeyUsage();
+		if (keyUsage == null || !keyUsage[KEY_USAGE_DIGITAL_SIGNATURE]) {
+			throw new CertificateException("Receipt signer certificate is not meant for signatures.");
+		}
+
+		// walk up to the root; stop early at a certificate validated before
+		List<Integer> chain = new ArrayList<Integer>(MAX_CHAIN_LENGTH);
+		int current = signerIndex;
+		while (true) {
+			X509Certificate certificate = certificates.get(current);
+			certificate.checkValidity(validationDate);
+			chain.add(current);
+			if (validated.get(current)) {
+				break;
+			}
+			if (certificate.getIssuerX500Principal().equals(rootCertificate.getSubjectX500Principal())) {
+				if (certificate.getExtensionValue(OID_APPLE_INTERMEDIATE) == null) {
+					throw new CertificateException("Receipt certificate chain lacks the Apple intermediate certificate.");
+				}
+				verify(certificate, rootCertificate.getPublicKey());
+				break;
+			}
+			int issuer = findIssuer(certificates, certificate);
+			if (issuer < 0 || chain.contains(issuer) || chain.size() >= MAX_CHAIN_LENGTH) {
+				throw new CertificateException("Receipt certificate chain does not lead to the root certificate.");
+			}
+			if (certificates.get(issuer).getBasicConstraints() < 0) {
+				throw new CertificateException("Receipt certificate issued by a non-CA certificate.");
+			}
+			verify(certificate, certificates.get(issuer).getPublicKey());
+			current = issuer;
+		}
+
+		// remember the validated certificates
+		if (validatedCertificates.size() + chain.size() > MAX_CACHED_CERTIFICATES) {
+			validatedCertificates.clear();
+		}
+		for (int i = 0; i < chain.size(); i++) {
+			int index = chain.get(i);
+			if (!validated.get(index)) {
+				validatedCertificates.put(encodedCertificates.get(index).copy(), certificates.get(index));
+			}
+		}
+		return signer;
+	}
+
+	private static int findIssuer (List<X509Certificate> certificates, X509Certificate certificate) {
+		for (int i = 0; i < certificates.size(); i++) {
+			if (certificates.get(i) != certificate
+				&& certificates.get(i).getSubjectX500Principal().equals(certificate.getIssuerX500Principal())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static void verify (X509Certificate certificate, PublicKey issuerKey) throws GeneralSecurityException {
+		try {
+			certificate.verify(issuerKey);
+		} catch (InvalidKeyException e) {
+			throw new CertificateException("Receipt certificate not signed by its issuer.", e);
+		} catch (SignatureException e) {
+			throw new CertificateException("Receipt certificate not signed by its issuer.", e);
+		}
+	}
+
+	/** Returns the bundle id of a base 64 encoded receipt WITHOUT validating the receipt, e.g. to route it; null if the receipt
+	 * can't be decoded. Don't base any decision about the purchase on the result. */
+	public static String readBundleId (String base64Receipt) {
+		if (base64Receipt == null) {
+			return null;
+		}
+		try {
+			return parsePayload(content(signedData(Base64Codec.STANDARD.decode(base64Receipt)))).getBundleId();
+		} catch (IOException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			// not base 64 (e.g. an old style receipt)
+			return null;
+		}
+	}
+
+	/** Returns a reader at the start of the SignedData of a PKCS#7 container. */
+	private static DerReader signedData (byte[] receipt) throws IOException {
+		// ContentInfo ::= SEQUENCE { contentType OID, [0] EXPLICIT SignedData }
+		DerReader contentInfo = new DerReader(receipt).expect(DerReader.SEQUENCE).contents();
+		if (!OID_SIGNED_DATA.equals(contentInfo.expect(DerReader.OBJECT_IDENTIFIER).oidValue())) {
+			throw new IOException("Receipt is not PKCS#7 signed data.");
+		}
+		return contentInfo.expect(DerReader.CONTEXT_0).contents().expect(DerReader.SEQUENCE).contents();
+	}
+
+	/** Reads the signed content, leaving the reader at the certificates. */
+	private static byte[] content (DerReader signedData) throws IOException {
+		// SignedData ::= SEQUENCE { version, digestAlgorithms SET, encapContentInfo, [0] certificates, [1] crls, signerInfos }
+		signedData.expect(DerReader.INTEGER);
+		signedData.expect(DerReader.SET);
+		DerReader encapContentInfo = signedData.expect(DerReader.SEQUENCE).contents();
+		if (!OID_DATA.equals(encapContentInfo.expect(DerReader.OBJECT_IDENTIFIER).oidValue())) {
+			throw new IOException("Receipt content is not PKCS#7 data.");
+		}
+		DerReader eContent = encapContentInfo.expect(DerReader.CONTEXT_0).contents();
+		eContent.next();
+		return eContent.octets();
+	}
+
+	/** Decodes the ASN.1 receipt payload (without validating anything).
+	 * 
+	 * @throws IOException if the payload is malformed. */
+	public static AppleReceipt parsePayload (byte[] payload) throws IOException {
+		AppleReceipt receipt = new AppleReceipt();
+		DerReader attributes = new DerReader(payload).expect(DerReader.SET).contents();
+		while (attributes.hasNext()) {
+			DerReader attribute = attributes.expect(DerReader.SEQUENCE).contents();
+			int type = (int)attribute.expect(DerReader.INTEGER).longValue();
+			attribute.expect(DerReader.INTEGER);
+			DerReader value = attribute.expect(DerReader.OCTET_STRING);
+			switch (type) {
+			case BUNDLE_ID:
+				receipt.bundleId = stringValue(value);
+				break;
+			case APPLICATION_VERSION:
+				receipt.applicationVersion = stringValue(value);
+				break;
+			case ORIGINAL_APPLICATION_VERSION:
+				receipt.originalApplicationVersion = stringValue(value);
+				break;
+			case CREATION_DATE:
+				receipt.creationDateMillis = parseDate(stringValue(value));
+				break;
+			case EXPIRATION_DATE:
+				receipt.expirationDateMillis = parseDate(stringValue(value));
+				break;
+			case IN_APP:
+				receipt.inApp.add(parseInAppPurchase(value));
+				break;
+			default:
+				// not needed (opaque value, hash etc.)
+				break;
+			}
+		}
+		return receipt;
+	}
+
+	private static AppleInAppPurchase parseInAppPurchase (DerReader value) throws IOException {
+		AppleInAppPurchase purchase = new AppleInAppPurchase();
+		DerReader attributes = new DerReader(value.data(), value.valueOffset(), value.valueLength()).expect(DerReader.SET)
+			.contents();
+		while (attributes.hasNext()) {
+			DerReader attribute = attributes.expect(DerReader.SEQUENCE).contents();
+			int type = (int)attribute.expect(DerReader.INTEGER).longValue();
+			attribute.expect(DerReader.INTEGER);
+			DerReader field = attribute.expect(DerReader.OCTET_STRING);
+			switch (type) {
+			case QUANTITY:
+				purchase.quantity = (int)integerValue(field);
+				break;
+			case PRODUCT_ID:
+				purchase.productId = stringValue(field);
+				break;
+			case TRANSACTION_ID:
+				purchase.transactionId = stringValue(field);
+				break;
+			case ORIGINAL_TRANSACTION_ID:
+				purchase.originalTransactionId = stringValue(field);
+				break;
+			case PURCHASE_DATE:
+				purchase.purchaseDateMillis = parseDate(stringValue(field));
+				break;
+			case ORIGINAL_PURCHASE_DATE:
+				purchase.originalPurchaseDateMillis = parseDate(stringValue(field));
+				break;
+			case EXPIRES_DATE:
+				purchase.expiresDateMillis = parseDate(stringValue(field));
+				break;
+			case CANCELLATION_DATE:
+				purchase.cancellationDateMillis = parseDate(stringValue(field));
+				break;
+			case TRIAL_PERIOD:
+				purchase.trialPeriod = integerValue(field) != 0;
+				break;
+			default:
+				break;
+			}
+		}
+		return purchase;
+	}
+
+	/** Decodes the DER string nested in an attribute's octet string value. */
+	private static String stringValue (DerReader value) throws IOException {
+		DerReader nested = new DerReader(value.data(), value.valueOffset(), value.valueLength());
+		if (!nested.hasNext()) {
+			return null;
+		}
+		nested.next();
+		return nested.stringValue();
+	}
+
+	/** Decodes the DER integer nested in an attribute's octet string value. */
+	private static long integerValue (DerReader value) throws IOException {
+		return new DerReader(value.data(), value.valueOffset(), value.valueLength()).expect(DerReader.INTEGER).longValue();
+	}
+
+	/** Parses a RFC 3339 date like "2013-08-01T07:00:00Z"; returns -1 for null or empty strings. */
+	static long parseDate (String date) throws IOException {
+		if (date == null || date.length() == 0) {
+			return -1;
+		}
+		try {
+			Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+			calendar.clear();
+			calendar.set(digits(date, 0, 4), digits(date, 5, 7) - 1, digits(date, 8, 10), digits(date, 11, 13),
+				digits(date, 14, 16), digits(date, 17, 19));
+			int i = 19;
+			int millis = 0;
+			if (i < date.length() && date.charAt(i) == '.') {
+				int start = ++i;
+				while (i < date.length() && Character.isDigit(date.charAt(i))) {
+					i++;
+				}
+				String fraction = (date.substring(start, Math.min(i, start + 3)) + "00").substring(0, 3);
+				millis = Integer.parseInt(fraction);
+			}
+			long offsetMillis = 0;
+			char zone = date.charAt(i);
+			if (zone == '+' || zone == '-') {
+				offsetMillis = (digits(date, i + 1, i + 3) * 60L + digits(date, i + 4, i + 6)) * 60000L;
+				if (zone == '-') {
+					offsetMillis = -offsetMillis;
+				}
+			} else if (zone != 'Z' && zone != 'z') {
+				throw new IOException("Invalid date: " + date);
+			}
+			return calendar.getTimeInMillis() + millis - offsetMillis;
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid date: " + date);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Invalid date: " + date);
+		}
+	}
+
+	private static int digits (String text, int start, int end) {
+		return Integer.parseInt(text.substring(start, end));
+	}
+
+	/** Identifies a certificate by its encoding. */
+	private static final class CertificateKey {
+		final byte[] data;
+		final int offset;
+		final int length;
+		private final int hash;
+
+		CertificateKey (byte[] data, int offset, int length) {
+			this.data = data;
+			this.offset = offset;
+			this.length = length;
+			int h = 1;
+			for (int i = offset; i < offset + length; i++) {
+				h = 31 * h + data[i];
+			}
+			this.hash = h;
+		}
+
+		/** Returns a key that doesn't reference the (larger) array this one points into. */
+		CertificateKey copy () {
+			byte[] bytes = new byte[length];
+			System.arraycopy(data, offset, bytes, 0, length);
+			return new CertificateKey(bytes, 0, length);
+		}
+
+		@Override
+		public int hashCode () {
+			return hash;
+		}
+
+		@Override
+		public boolean equals (Object o) {
+			if (this == o) return true;
+			if (!(o instanceof CertificateKey)) return false;
+			CertificateKey that = (CertificateKey)o;
+			if (hash != that.hash || length != that.length) return false;
+			for (int i = 0; i < length; i++) {
+				if (data[offset + i] != that.data[that.offset + i]) return false;
+			}
+			return true;
+		}
+	}
+}
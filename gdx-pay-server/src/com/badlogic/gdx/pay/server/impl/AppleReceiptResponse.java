@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The result of verifying a receipt with Apple's verifyReceipt endpoint.
+ * 
+ * @see AppleReceiptResponseParser */
+public final class AppleReceiptResponse {
+
+	/** Status if the response had no status. */
+	public static final int STATUS_UNKNOWN = -1;
+	/** Status of a valid receipt. */
+	public static final int STATUS_VALID = 0;
+
+	int status = STATUS_UNKNOWN;
+	String environment;
+	String bundleId;
+	String applicationVersion;
+	boolean retryable;
+	final List<AppleInAppPurchase> inApp = new ArrayList<AppleInAppPurchase>(4);
+	final List<AppleInAppPurchase> latestReceiptInfo = new ArrayList<AppleInAppPurchase>(4);
+
+	AppleReceiptResponse () {
+	}
+
+	/** The status code, 0 for a valid receipt or one of the 21xxx error codes. */
+	public int getStatus () {
+		return status;
+	}
+
+	public boolean isValid () {
+		return status == STATUS_VALID;
+	}
+
+	/** "Production" or "Sandbox" (null if not reported). */
+	public String getEnvironment () {
+		return environment;
+	}
+
+	public String getBundleId () {
+		return bundleId;
+	}
+
+	public String getApplicationVersion () {
+		return applicationVersion;
+	}
+
+	/** True if Apple flagged the error as temporary ("is-retryable"). */
+	public boolean isRetryable () {
+		return retryable;
+	}
+
+	/** True if the status says nothing about the receipt but Apple failed to answer, so the receipt should be sent again later:
+	 * 21005 (receipt server unavailable), 21009 and 21100-21199 (internal data access errors), or any status flagged as
+	 * retryable. */
+	public boolean isTransient () {
+		return retryable || status == 21005 || status == 21009 || (status >= 21100 && status <= 21199);
+	}
+
+	/** The in-app purchases of the receipt ("in_app"). */
+	public List<AppleInAppPurchase> getInApp () {
+		return Collections.unmodifiableList(inApp);
+	}
+
+	/** The latest transactions of auto-renewable subscriptions ("latest_receipt_info"); empty for other receipts. */
+	public List<AppleInAppPurchase> getLatestReceiptInfo () {
+		return Collections.unmodifiableList(latestReceiptInfo);
+	}
+
+	/** Returns the purchase with the given transaction or original transaction id, or null. The latest receipt info is searched
+	 * first as it holds the most recent renewals. */
+	public AppleInAppPurchase findPurchase (String transactionId) {
+		AppleInAppPurchase purchase = AppleInAppPurchase.find(latestReceiptInfo, transactionId);
+		return purchase != null ? purchase : AppleInAppPurchase.find(inApp, transactionId);
+	}
+
+	/** Returns the latest expiry of a non-cancelled subscription for the product (any product if null), or -1 if none. */
+	public long getSubscriptionExpiryMillis (String productId) {
+		long expiry = AppleInAppPurchase.latestExpiry(latestReceiptInfo, productId, -1);
+		return AppleInAppPurchase.latestExpiry(inApp, productId, expiry);
+	}
+
+	@Override
+	public String toString () {
+		return "AppleReceiptResponse{" +
+				"status=" + status +
+				", environment='" + environment + '\'' +
+				", bundleId='" + bundleId + '\'' +
+				", inApp=" + inApp +
+				", latestReceiptInfo=" + latestReceiptInfo +
+				'}';
+	}
+}
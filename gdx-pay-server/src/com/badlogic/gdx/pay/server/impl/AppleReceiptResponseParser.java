@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import com.badlogic.gdx.pay.server.util.JsonReader;
+
+/** Parses Apple's verifyReceipt response in a single streaming pass. Only the fields of {@link AppleReceiptResponse} are read;
+ * everything else, including the large base 64 "latest_receipt", is skipped without being buffered, so memory use doesn't grow
+ * with the response size. */
+public final class AppleReceiptResponseParser {
+
+	private static final String[] RESPONSE_NAMES = {"status", "environment", "receipt", "latest_receipt_info", "is-retryable"};
+	private static final String[] RECEIPT_NAMES = {"bundle_id", "application_version", "in_app"};
+	private static final String[] PURCHASE_NAMES = {"quantity", "product_id", "transaction_id", "original_transaction_id",
+		"purchase_date_ms", "original_purchase_date_ms", "expires_date_ms", "cancellation_date_ms", "is_trial_period"};
+
+	private AppleReceiptResponseParser () {
+		// not used
+	}
+
+	/** Parses the response body (UTF-8 encoded JSON).
+	 * 
+	 * @throws IOException if reading fails or the response is malformed. */
+	public static AppleReceiptResponse parse (InputStream in) throws IOException {
+		AppleReceiptResponse response = new AppleReceiptResponse();
+		JsonReader reader = new JsonReader(in);
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName(RESPONSE_NAMES)) {
+			case 0:
+				response.status = reader.nextInt();
+				break;
+			case 1:
+				response.environment = reader.nextStringOrNull();
+				break;
+			case 2:
+				if (reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+					parseReceipt(reader, response);
+				} else {
+					reader.skipValue();
+				}
+				break;
+			case 3:
+				parsePurchases(reader, response.latestReceiptInfo);
+				break;
+			case 4:
+				response.retryable = reader.nextBoolean();
+				break;
+			default:
+				reader.skipValue();
+				break;
+			}
+		}
+		reader.endObject();
+		return response;
+	}
+
+	private static void parseReceipt (JsonReader reader, AppleReceiptResponse response) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName(RECEIPT_NAMES)) {
+			case 0:
+				response.bundleId = reader.nextStringOrNull();
+				break;
+			case 1:
+				response.applicationVersion = reader.nextStringOrNull();
+				break;
+			case 2:
+				parsePurchases(reader, response.inApp);
+				break;
+			default:
+				reader.skipValue();
+				break;
+			}
+		}
+		reader.endObject();
+	}
+
+	private static void parsePurchases (JsonReader reader, List<AppleInAppPurchase> purchases) throws IOException {
+		if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+			reader.skipValue();
+			return;
+		}
+		reader.beginArray();
+		while (reader.hasNext()) {
+			purchases.add(parsePurchase(reader));
+		}
+		reader.endArray();
+	}
+
+	private static AppleInAppPurchase parsePurchase (JsonReader reader) throws IOException {
+		AppleInAppPurchase purchase = new AppleInAppPurchase();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			int name = reader.nextName(PURCHASE_NAMES);
+			if (name >= 0 && reader.peek() == JsonReader.Token.NULL) {
+				reader.nextNull();
+				continue;
+			}
+			switch (name) {
+			case 0:
+				purchase.quantity = reader.nextInt();
+				break;
+			case 1:
+				purchase.productId = reader.nextString();
+				break;
+			case 2:
+				purchase.transactionId = reader.nextString();
+				break;
+			case 3:
+				purchase.originalTransactionId = reader.nextString();
+				break;
+			case 4:
+				purchase.purchaseDateMillis = reader.nextLong();
+				break;
+			case 5:
+				purchase.originalPurchaseDateMillis = reader.nextLong();
+				break;
+			case 6:
+				purchase.expiresDateMillis = reader.nextLong();
+				break;
+			case 7:
+				purchase.cancellationDateMillis = reader.nextLong();
+				break;
+			case 8:
+				purchase.trialPeriod = reader.nextBoolean();
+				break;
+			default:
+				reader.skipValue();
+				break;
+			}
+		}
+		reader.endObject();
+		return purchase;
+	}
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.impl;
+
+/** The result of querying a purchase with the Google Play Developer API (purchases.products or purchases.subscriptions). The
+ * status is the HTTP status code of the response; the purchase fields are only set for {@link #STATUS_OK}. Times are in
+ * milliseconds since the epoch, unset values are -1.
+ * 
+ * @see GooglePurchaseResponseParser */
+public final class GooglePurchaseResponse {
+
+	/** The purchase token is known, see {@link #isPurchased()} or {@link #isActiveAt(long)}. */
+	public static final int STATUS_OK = 200;
+	/** The purchase token is malformed. */
+	public static final int STATUS_INVALID_TOKEN = 400;
+	/** The access token is missing or expired. */
+	public static final int STATUS_UNAUTHORIZED = 401;
+	/** The service account has no access to the app. */
+	public static final int STATUS_FORBIDDEN = 403;
+	/** The purchase token is unknown (for this package and product). */
+	public static final int STATUS_NOT_FOUND = 404;
+	/** The purchase token is no longer valid, e.g. an expired subscription's token after a long time. */
+	public static final int STATUS_GONE = 410;
+
+	/** Product purchase state: purchased. */
+	public static final int PURCHASE_STATE_PURCHASED = 0;
+	/** Product purchase state: cancelled (refunded, charged back or never paid). */
+	public static final int PURCHASE_STATE_CANCELLED = 1;
+	/** Product purchase state: pending (payment not received yet). */
+	public static final int PURCHASE_STATE_PENDING = 2;
+
+	int status;
+	final boolean subscription;
+	String orderId;
+	String productId;
+	int purchaseState = -1;
+	int consumptionState = -1;
+	int acknowledgementState = -1;
+	/** 0: test purchase, 1: promo code, 2: rewarded; -1 for regular purchases. */
+	int purchaseType = -1;
+	int quantity = 1;
+	long purchaseTimeMillis = -1;
+	long startTimeMillis = -1;
+	long expiryTimeMillis = -1;
+	long userCancellationTimeMillis = -1;
+	int paymentState = -1;
+	int cancelReason = -1;
+	boolean autoRenewing;
+	String linkedPurchaseToken;
+
+	GooglePurchaseResponse (int status, boolean subscription) {
+		this.status = status;
+		this.subscription = subscription;
+	}
+
+	/** The HTTP status code, see the STATUS_ constants. */
+	public int getStatus () {
+		return status;
+	}
+
+	/** True if Google could not answer, i.e. the purchase should be verified again later (HTTP 429 and 5xx). */
+	public boolean isTransient () {
+		return status == 429 || (status >= 500 && status <= 599);
+	}
+
+	/** True for a response of purchases.subscriptions, false for purchases.products. */
+	public boolean isSubscription () {
+		return subscription;
+	}
+
+	/** The order id; renewals of a subscription have the id of the first order plus "..n". */
+	public String getOrderId () {
+		return orderId;
+	}
+
+	/** The product id if reported (product purchases only). */
+	public String getProductId () {
+		return productId;
+	}
+
+	/** The state of a product purchase, see the PURCHASE_STATE_ constants; -1 for subscriptions. */
+	public int getPurchaseState () {
+		return purchaseState;
+	}
+
+	/** True if the product was purchased and neither refunded nor pending. */
+	public boolean isPurchased () {
+		return purchaseState == PURCHASE_STATE_PURCHASED;
+	}
+
+	/** 0: not consumed yet, 1: consumed; -1 for subscriptions. */
+	public int getConsumptionState () {
+		return consumptionState;
+	}
+
+	/** 0: not acknowledged yet, 1: acknowledged. */
+	public int getAcknowledgementState () {
+		return acknowledgementState;
+	}
+
+	/** 0: test purchase, 1: promo code, 2: rewarded; -1 for regular purchases. */
+	public int getPurchaseType () {
+		return purchaseType;
+	}
+
+	/** True for purchases made with a license testing account. */
+	public boolean isTestPurchase () {
+		return purchaseType == 0;
+	}
+
+	public int getQuantity () {
+		return quantity;
+	}
+
+	public long getPurchaseTimeMillis () {
+		return purchaseTimeMillis;
+	}
+
+	public long getStartTimeMillis () {
+		return startTimeMillis;
+	}
+
+	/** When the subscription expires or expired; revoked and refunded subscriptions expire immediately. */
+	public long getExpiryTimeMillis () {
+		return expiryTimeMillis;
+	}
+
+	/** True if the subscription grants access at the given time (also in the grace period and after the user cancelled it,
+	 * until it expires). */
+	public boolean isActiveAt (long timeMillis) {
+		return expiryTimeMillis > timeMillis;
+	}
+
+	/** When the user cancelled the subscription; -1 if they didn't. */
+	public long getUserCancellationTimeMillis () {
+		return userCancellationTimeMillis;
+	}
+
+	/** 0: payment pending, 1: payment received, 2: free trial, 3: pending deferred upgrade/downgrade; -1 if not reported. */
+	public int getPaymentState () {
+		return paymentState;
+	}
+
+	/** 0: cancelled by the user, 1: by the system (e.g. billing problem), 2: replaced by a new subscription, 3: by the developer;
+	 * -1 if the subscription wasn't cancelled. */
+	public int getCancelReason () {
+		return cancelReason;
+	}
+
+	public boolean isAutoRenewing () {
+		return autoRenewing;
+	}
+
+	/** The token of the purchase this subscription replaced (upgrade/downgrade or re-signup), null if none. */
+	public String getLinkedPurchaseToken () {
+		return linkedPurchaseToken;
+	}
+
+	@Override
+	public String toString () {
+		return "GooglePurchaseResponse{" +
+				"status=" + status +
+				", subscription=" + subscription +
+				", orderId='" + orderId + '\'' +
+				", purchaseState=" + purchaseState +
+				", purchaseType=" + purchaseType +
+				", purchaseTimeMillis=" + purchaseTimeMillis +
+				", expiryTimeMillis=" + expiryTimeMillis +
+				", paymentState=" + paymentState +
+				", cancelReason=" + cancelReason +
+				'}';
+	}
+}
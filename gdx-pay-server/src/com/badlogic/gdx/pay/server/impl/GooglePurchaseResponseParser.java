@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.badlogic.gdx.pay.server.util.JsonReader;
+
+/** Parses the JSON body of a Google Play Developer API purchase resource in a single streaming pass; unknown fields are
+ * skipped. */
+public final class GooglePurchaseResponseParser {
+
+	private static final String[] NAMES = {"orderId", "productId", "purchaseState", "consumptionState", "acknowledgementState",
+		"purchaseType", "quantity", "purchaseTimeMillis", "startTimeMillis", "expiryTimeMillis", "userCancellationTimeMillis",
+		"paymentState", "cancelReason", "autoRenewing", "linkedPurchaseToken"};
+
+	private GooglePurchaseResponseParser () {
+		// not used
+	}
+
+	/** Parses the body of a response with the given HTTP status (UTF-8 encoded JSON).
+	 * 
+	 * @param subscription True for a purchases.subscriptions resource, false for purchases.products.
+	 * @throws IOException if reading fails or the response is malformed. */
+	public static GooglePurchaseResponse parse (int status, boolean subscription, InputStream in) throws IOException {
+		GooglePurchaseResponse response = new GooglePurchaseResponse(status, subscription);
+		JsonReader reader = new JsonReader(in);
+		reader.beginObject();
+		while (reader.hasNext()) {
+			int name = reader.nextName(NAMES);
+			if (name >= 0 && reader.peek() == JsonReader.Token.NULL) {
+				reader.nextNull();
+				continue;
+			}
+			switch (name) {
+			case 0:
+				response.orderId = reader.nextString();
+				break;
+			case 1:
+				response.productId = reader.nextString();
+				break;
+			case 2:
+				response.purchaseState = reader.nextInt();
+				break;
+			case 3:
+				response.consumptionState = reader.nextInt();
+				break;
+			case 4:
+				response.acknowledgementState = reader.nextInt();
+				break;
+			case 5:
+				response.purchaseType = reader.nextInt();
+				break;
+			case 6:
+				response.quantity = reader.nextInt();
+				break;
+			case 7:
+				response.purchaseTimeMillis = reader.nextLong();
+				break;
+			case 8:
+				response.startTimeMillis = reader.nextLong();
+				break;
+			case 9:
+				response.expiryTimeMillis = reader.nextLong();
+				break;
+			case 10:
+				response.userCancellationTimeMillis = reader.nextLong();
+				break;
+			case 11:
+				response.paymentState = reader.nextInt();
+				break;
+			case 12:
+				response.cancelReason = reader.nextInt();
+				break;
+			case 13:
+				response.autoRenewing = reader.nextBoolean();
+				break;
+			case 14:
+				response.linkedPurchaseToken = reader.nextString();
+				break;
+			default:
+				reader.skipValue();
+				break;
+			}
+		}
+		reader.endObject();
+		return response;
+	}
+}
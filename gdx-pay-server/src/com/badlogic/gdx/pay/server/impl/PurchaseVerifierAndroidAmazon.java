@@ -16,14 +16,45 @@
 
 package com.badlogic.gdx.pay.server.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
 import com.badlogic.gdx.pay.PurchaseManagerConfig;
 import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.VerifierUnavailableException;
+import com.badlogic.gdx.pay.server.http.HttpRequest;
+import com.badlogic.gdx.pay.server.http.HttpResponseHandler;
+import com.badlogic.gdx.pay.server.http.HttpTransport;
+import com.badlogic.gdx.pay.server.http.PooledHttpTransport;
 
 /** Purchase verifier for Amazon. Return true if the purchase appears valid.
+ * <p>
+ * Receipts are verified with Amazon's Receipt Verification Service (RVS): the transaction's order id is the receipt id and its
+ * user id the Amazon user id. A receipt is valid if RVS knows it, it is for the transaction's product and it was not cancelled.
+ * Use the sandbox for purchases made with Amazon App Tester, or point the verifier to a local RVS stand-in:
+ * <pre>
+ * new PurchaseVerifierAndroidAmazon(secret, "http://localhost:8080/RVSSandbox", new PooledHttpTransport());
+ * </pre>
  * @author noblemaster */
 public class PurchaseVerifierAndroidAmazon extends PurchaseVerifierBase {
 
+	/** Base URL of the production RVS. */
+	public static final String PRODUCTION_URL = "https://appstore-sdk.amazon.com";
+	/** Base URL of the RVS cloud sandbox. */
+	public static final String SANDBOX_URL = "https://appstore-sdk.amazon.com/sandbox";
+
+	private static final String VERIFY_PATH = "/version/1.0/verifyReceiptId/developer/";
+
 	private String developerSecret;
+
+	/** The RVS to ask. */
+	private final String baseUrl;
+	private final HttpTransport transport;
+
+	/** Maps offer identifiers to Amazon SKUs (optional). */
+	private PurchaseManagerConfig config;
 	
 	/**
 	 * Constructs the purchase-verifier for purchases made via Amazon.
@@ -31,7 +62,36 @@ public class PurchaseVerifierAndroidAmazon extends PurchaseVerifierBase {
 	 * @param developerSecret  The shared secret for your Amazon developer account.
 	 */
 	public PurchaseVerifierAndroidAmazon(String developerSecret) {
+		this(developerSecret, false);
+	}
+
+	/** @param developerSecret The shared secret for your Amazon developer account.
+	 * @param sandbox True to use the RVS cloud sandbox. */
+	public PurchaseVerifierAndroidAmazon (String developerSecret, boolean sandbox) {
+		this(developerSecret, sandbox ? SANDBOX_URL : PRODUCTION_URL, new PooledHttpTransport());
+	}
+
+	/** @param developerSecret The shared secret for your Amazon developer account.
+	 * @param baseUrl The RVS base URL, e.g. {@link #PRODUCTION_URL}, {@link #SANDBOX_URL} or a local stand-in.
+	 * @param transport Sends the requests; share it between verifiers talking to the same host. */
+	public PurchaseVerifierAndroidAmazon (String developerSecret, String baseUrl, HttpTransport transport) {
 		this.developerSecret = developerSecret;
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+		this.transport = transport;
+	}
+
+	/** Sets the configuration used on the client, so transactions can be matched with Amazon SKUs where those differ from the
+	 * offer identifiers (see {@link Offer#putIdentifierForStore(String, String)}). */
+	public void setPurchaseManagerConfig (PurchaseManagerConfig config) {
+		this.config = config;
+	}
+
+	public String getBaseUrl () {
+		return baseUrl;
+	}
+
+	public HttpTransport getTransport () {
+		return transport;
 	}
 	
 	@Override
@@ -39,9 +99,90 @@ public class PurchaseVerifierAndroidAmazon extends PurchaseVerifierBase {
 		return PurchaseManagerConfig.STORE_NAME_ANDROID_AMAZON;
 	}
 
+	/** Returns true if RVS confirms the receipt.
+	 * 
+	 * @throws VerifierUnavailableException if RVS could not be reached, answered with a server error or rejected the developer
+	 *            secret: the receipt is neither valid nor invalid. */
 	@Override
 	public boolean isValid (Transaction transaction) {
-		// TODO: implement...
+		String receiptId = transaction.getOrderId();
+		String userId = transaction.getUserId();
+		if (receiptId == null || userId == null) {
+			log("Receipt id or user id missing: " + receiptId + ", " + userId);
+			return false;
+		}
+
+		AmazonReceiptResponse response;
+		try {
+			response = verifyReceipt(userId, receiptId);
+		} catch (IOException e) {
+			// I/O-error: we don't know, Amazon has to be asked again later
+			String message = "I/O error during verification: " + redacted(String.valueOf(e));
+			error(message, e);
+			throw new VerifierUnavailableException(storeName(), message, e);
+		}
+		int status = response.getStatus();
+		recordStatus(status);
+		if (response.isTransient()) {
+			throw new VerifierUnavailableException(storeName(), status + ": Receipt verification service unavailable");
+		}
+
+		switch (status) {
+			case AmazonReceiptResponse.STATUS_OK: break;
+			case AmazonReceiptResponse.STATUS_INVALID_RECEIPT: log(status + ": Invalid receipt id"); return false;
+			case AmazonReceiptResponse.STATUS_RECEIPT_GONE: log(status + ": Receipt id no longer valid"); return false;
+			case AmazonReceiptResponse.STATUS_INVALID_DEVELOPER_SECRET:
+				// our configuration is broken, not the receipt
+				log(status + ": Invalid developer secret");
+				throw new VerifierUnavailableException(storeName(), status + ": Invalid developer secret");
+			case AmazonReceiptResponse.STATUS_INVALID_USER: log(status + ": Invalid user id"); return false;
+			default:
+				// unknown error code (nevertheless a problem)
+				log("Unknown error: status code = " + status);
+				return false;
+		}
+		if (!productMatches(config, transaction.getIdentifier(), response.getProductId())) {
+			log("Product mismatch: " + transaction.getIdentifier() + " vs. " + response.getProductId());
+			return false;
+		}
+		if (response.isCancelled()) {
+			log("Purchase was cancelled: " + receiptId + " (cancel date " + response.getCancelDateMillis() + ", reason "
+				+ response.getCancelReason() + ")");
+			return false;
+		}
 		return true;
 	}
+
+	/** Asks RVS about a receipt and returns the complete result, including cancel date and reason.
+	 * 
+	 * @param userId The Amazon user id of the purchase.
+	 * @param receiptId The receipt id of the purchase.
+	 * @throws IOException if RVS could not be reached or the response could not be read. */
+	public AmazonReceiptResponse verifyReceipt (String userId, String receiptId) throws IOException {
+		String url = baseUrl + VERIFY_PATH + encode(developerSecret) + "/user/" + encode(userId) + "/receiptId/" + encode(receiptId);
+		return transport.execute(HttpRequest.get(url).header("Accept", "application/json").redact(encode(developerSecret)),
+			new HttpResponseHandler<AmazonReceiptResponse>() {
+				@Override
+				public AmazonReceiptResponse handle (int statusCode, InputStream body) throws IOException {
+					if (statusCode != AmazonReceiptResponse.STATUS_OK) {
+						return new AmazonReceiptResponse(statusCode);
+					}
+					return AmazonReceiptResponseParser.parse(statusCode, body);
+				}
+			});
+	}
+
+	/** Returns the text with the developer secret hidden. */
+	private String redacted (String text) {
+		return text.replace(encode(developerSecret), "***");
+	}
+
+	/** Encodes a path segment. */
+	private static String encode (String segment) {
+		try {
+			return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
 }
@@ -18,20 +18,106 @@ package com.badlogic.gdx.pay.server.impl;
 
 import com.badlogic.gdx.pay.PurchaseManagerConfig;
 import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.util.Base64Codec;
+import com.badlogic.gdx.pay.server.util.JsonReader;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.security.GeneralSecurityException;
 import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Purchase verifier for Google Play. Return true if the purchase appears valid.
+ * <p>
+ * One verifier serves any number of apps: register the license key of every app with
+ * {@link #addPublicKey(String, String)}. Purchases are routed by the "packageName" in their purchase data to the keys of
+ * that app, which are parsed once when added. While a key is rotated, an app can have several keys; a purchase is valid if
+ * one of them verifies it. The key of {@link #setPublicKey(String)} is used for purchases of apps without keys of their own.
  *
  * @author noblemaster
  */
 public class PurchaseVerifierAndroidGoogle extends PurchaseVerifierBase {
 
-    private PublicKey publicKey;
+    private static final String[] NAMES = {"packageName"};
 
+    private volatile PublicKey publicKey;
+
+    /** Keys per package name, newest first; replaced as a whole on change (copy-on-write), guarded by this when writing. */
+    private volatile Map<String, PublicKey[]> packageKeys = Collections.emptyMap();
+
+    /** Sets the key for purchases of apps that have no keys of their own (null for none).
+     *
+     * @throws IllegalArgumentException if the key is invalid */
     public void setPublicKey(String publicKeyString) {
-        publicKey = Security.generatePublicKey(publicKeyString);
+        publicKey = publicKeyString != null ? Security.generatePublicKey(publicKeyString) : null;
+    }
+
+    /** Adds a license key for the app with the given package name. Keys added later are tried first, so add the new key when
+     * rotating and remove the old one once it is no longer used.
+     *
+     * @param publicKeyString The Base64-encoded key from the Google Play Console.
+     * @throws IllegalArgumentException if the key is invalid */
+    public void addPublicKey(String packageName, String publicKeyString) {
+        if (packageName == null) throw new IllegalArgumentException("packageName must not be null");
+        PublicKey key = Security.generatePublicKey(publicKeyString);
+        synchronized (this) {
+            PublicKey[] keys = packageKeys.get(packageName);
+            PublicKey[] updated;
+            if (keys == null) {
+                updated = new PublicKey[] {key};
+            } else {
+                for (int i = 0; i < keys.length; i++) {
+                    if (Arrays.equals(keys[i].getEncoded(), key.getEncoded())) {
+                        return;
+                    }
+                }
+                updated = new PublicKey[keys.length + 1];
+                updated[0] = key;
+                System.arraycopy(keys, 0, updated, 1, keys.length);
+            }
+            Map<String, PublicKey[]> copy = new HashMap<String, PublicKey[]>(packageKeys);
+            copy.put(packageName, updated);
+            packageKeys = copy;
+        }
+    }
+
+    /** Removes a license key of the app, e.g. after a rotation. Returns false if the app didn't have the key.
+     *
+     * @throws IllegalArgumentException if the key is invalid */
+    public boolean removePublicKey(String packageName, String publicKeyString) {
+        byte[] encoded = Security.generatePublicKey(publicKeyString).getEncoded();
+        synchronized (this) {
+            PublicKey[] keys = packageKeys.get(packageName);
+            if (keys == null) {
+                return false;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (Arrays.equals(keys[i].getEncoded(), encoded)) {
+                    Map<String, PublicKey[]> copy = new HashMap<String, PublicKey[]>(packageKeys);
+                    if (keys.length == 1) {
+                        copy.remove(packageName);
+                    } else {
+                        PublicKey[] updated = new PublicKey[keys.length - 1];
+                        System.arraycopy(keys, 0, updated, 0, i);
+                        System.arraycopy(keys, i + 1, updated, i, keys.length - i - 1);
+                        copy.put(packageName, updated);
+                    }
+                    packageKeys = copy;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** Returns the package names that have keys of their own. */
+    public Set<String> getPackageNames() {
+        return Collections.unmodifiableSet(packageKeys.keySet());
     }
 
     @Override
@@ -41,7 +127,72 @@ public class PurchaseVerifierAndroidGoogle extends PurchaseVerifierBase {
 
     @Override
     public boolean isValid(Transaction transaction) {
-        return Security.verify(publicKey, transaction.getTransactionData(),
-                transaction.getTransactionDataSignature());
+        String purchaseData = transaction.getTransactionData();
+        String signature = transaction.getTransactionDataSignature();
+        Map<String, PublicKey[]> packageKeys = this.packageKeys;
+        if (packageKeys.isEmpty() || purchaseData == null) {
+            // single app
+            boolean valid = Security.verify(publicKey, purchaseData, signature);
+            if (!valid) {
+                recordSignatureFailure();
+            }
+            return valid;
+        }
+
+        String packageName = readPackageName(purchaseData);
+        PublicKey[] keys = packageName != null ? packageKeys.get(packageName) : null;
+        if (keys == null) {
+            PublicKey fallback = publicKey;
+            if (fallback == null) {
+                log("No key for package: " + packageName);
+                recordSignatureFailure();
+                return false;
+            }
+            keys = new PublicKey[] {fallback};
+        }
+        if (signature == null) {
+            log("Signed data or signature missing.");
+            recordSignatureFailure();
+            return false;
+        }
+
+        byte[] signatureBytes;
+        try {
+            signatureBytes = Base64Codec.STANDARD.decode(signature);
+        } catch (IllegalArgumentException e) {
+            log("Signature is not valid base 64.");
+            recordSignatureFailure();
+            return false;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            try {
+                if (SignatureVerifier.SHA1_WITH_RSA.verify(keys[i], purchaseData, signatureBytes, 0, signatureBytes.length)) {
+                    return true;
+                }
+            } catch (GeneralSecurityException e) {
+                log("Signature exception for package " + packageName + ": " + e);
+            }
+        }
+        log("Signature verification failed for package: " + packageName);
+        recordSignatureFailure();
+        return false;
+    }
+
+    /** Returns the "packageName" of the purchase data, or null if there is none or the data is malformed (the signature check
+     * fails then anyway). */
+    private static String readPackageName(String purchaseData) {
+        try {
+            JsonReader reader = new JsonReader(new StringReader(purchaseData));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName(NAMES) == 0) {
+                    return reader.nextStringOrNull();
+                }
+                reader.skipValue();
+            }
+        } catch (IOException e) {
+            // malformed
+        }
+        return null;
     }
 }
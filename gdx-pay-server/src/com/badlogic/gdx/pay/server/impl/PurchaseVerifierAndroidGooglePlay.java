@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.badlogic.gdx.pay.Offer;
+import com.badlogic.gdx.pay.OfferType;
+import com.badlogic.gdx.pay.PurchaseManagerConfig;
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.VerifierUnavailableException;
+import com.badlogic.gdx.pay.server.http.HttpRequest;
+import com.badlogic.gdx.pay.server.http.HttpResponseHandler;
+import com.badlogic.gdx.pay.server.http.HttpTransport;
+
+/** Purchase verifier for Google Play that asks the Google Play Developer API. Unlike {@link PurchaseVerifierAndroidGoogle},
+ * which only checks the signature of the purchase data, it detects refunded and pending purchases as well as cancelled and
+ * expired subscriptions. Return true if the purchase appears valid.
+ * <p>
+ * The purchase token is taken from {@link Transaction#getRequestId()} (as set by gdx-pay's Google billing), the product id from
+ * the offer identifier (or its Google Play identifier, see {@link #setPurchaseManagerConfig(PurchaseManagerConfig)}). Offers of
+ * type {@link OfferType#SUBSCRIPTION} are queried via purchases.subscriptions, all others via purchases.products.
+ * <p>
+ * Answers are remembered per purchase token for {@link #setResponseCacheMillis(long) a while} (active subscriptions at most
+ * until they expire), so repeated verifications of the same purchase don't cost API quota. Token endpoint and API can be
+ * replaced by a local stand-in:
+ * 
+ * <pre>
+ * GoogleAccessTokenProvider tokens = new GoogleAccessTokenProvider(email, key, "http://localhost:8080/token", scope, transport);
+ * new PurchaseVerifierAndroidGooglePlay("com.your.app", tokens, "http://localhost:8080/applications/", transport);
+ * </pre> */
+public class PurchaseVerifierAndroidGooglePlay extends PurchaseVerifierBase {
+
+	/** Base URL of the Google Play Developer API (v3) applications resource. */
+	public static final String API_URL = "https://androidpublisher.googleapis.com/androidpublisher/v3/applications/";
+
+	/** Default time answers are remembered. */
+	public static final long DEFAULT_RESPONSE_CACHE_MILLIS = 60000;
+	private static final int MAX_REMEMBERED_RESPONSES = 10000;
+
+	private final String packageName;
+	private final GoogleAccessTokenProvider tokenProvider;
+	private final String apiUrl;
+	private final HttpTransport transport;
+
+	/** Maps offer identifiers to Google Play product ids and types (optional). */
+	private PurchaseManagerConfig config;
+	private volatile long responseCacheNanos = DEFAULT_RESPONSE_CACHE_MILLIS * 1000000L;
+
+	/** Answers per product/subscription id and purchase token, least recently used first. */
+	private final Map<String, CachedResponse> responses = new LinkedHashMap<String, CachedResponse>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<String, CachedResponse> eldest) {
+			return size() > MAX_REMEMBERED_RESPONSES;
+		}
+	};
+
+	/** @param packageName The package name of the app, e.g. "com.your.app".
+	 * @param tokenProvider Provides the access tokens for the API.
+	 * @param transport Sends the API requests. */
+	public PurchaseVerifierAndroidGooglePlay (String packageName, GoogleAccessTokenProvider tokenProvider, HttpTransport transport) {
+		this(packageName, tokenProvider, API_URL, transport);
+	}
+
+	/** @param apiUrl Base URL of the applications resource, e.g. {@link #API_URL} or a local stand-in. */
+	public PurchaseVerifierAndroidGooglePlay (String packageName, GoogleAccessTokenProvider tokenProvider, String apiUrl,
+		HttpTransport transport) {
+		this.packageName = packageName;
+		this.tokenProvider = tokenProvider;
+		this.apiUrl = apiUrl.endsWith("/") ? apiUrl : apiUrl + "/";
+		this.transport = transport;
+	}
+
+	/** Sets the configuration used on the client, so transactions can be matched with Google Play product ids where those differ
+	 * from the offer identifiers (see {@link Offer#putIdentifierForStore(String, String)}) and subscriptions are recognized. */
+	public void setPurchaseManagerConfig (PurchaseManagerConfig config) {
+		this.config = config;
+	}
+
+	/** Sets how long answers are remembered per purchase token (default: {@link #DEFAULT_RESPONSE_CACHE_MILLIS}); 0 turns
+	 * remembering off. Answers about active subscriptions are remembered at most until the subscription expires. */
+	public void setResponseCacheMillis (long millis) {
+		if (millis < 0) throw new IllegalArgumentException("millis must be >= 0: " + millis);
+		this.responseCacheNanos = millis * 1000000L;
+	}
+
+	/** Forgets all remembered answers. */
+	public void clearResponseCache () {
+		synchronized (responses) {
+			responses.clear();
+		}
+	}
+
+	public String getPackageName () {
+		return packageName;
+	}
+
+	public GoogleAccessTokenProvider getTokenProvider () {
+		return tokenProvider;
+	}
+
+	@Override
+	public String storeName () {
+		return PurchaseManagerConfig.STORE_NAME_ANDROID_GOOGLE;
+	}
+
+	/** Returns true if Google confirms the purchase.
+	 * 
+	 * @throws VerifierUnavailableException if Google could not be reached, no access token could be obtained, the API answered
+	 *            with a server error or rejected our credentials (401 after a token refresh, 403): the purchase is neither valid
+	 *            nor invalid. */
+	@Override
+	public boolean isValid (Transaction transaction) {
+		String purchaseToken = transaction.getRequestId();
+		if (purchaseToken == null || transaction.getIdentifier() == null) {
+			log("Purchase token or identifier missing: " + purchaseToken + ", " + transaction.getIdentifier());
+			return false;
+		}
+		String productId = transaction.getIdentifier();
+		boolean subscription = false;
+		PurchaseManagerConfig config = this.config;
+		Offer offer = config != null ? config.getOffer(productId) : null;
+		if (offer != null) {
+			productId = offer.getIdentifierForStore(storeName());
+			subscription = offer.getType() == OfferType.SUBSCRIPTION;
+		}
+
+		GooglePurchaseResponse response;
+		try {
+			response = subscription ? verifySubscription(productId, purchaseToken) : verifyProduct(productId, purchaseToken);
+		} catch (IOException e) {
+			// I/O-error: we don't know, Google has to be asked again later
+			error("I/O error during verification: " + e, e);
+			throw new VerifierUnavailableException(storeName(), "I/O error during verification: " + e, e);
+		}
+		int status = response.getStatus();
+		recordStatus(status);
+		if (response.isTransient()) {
+			throw new VerifierUnavailableException(storeName(), status + ": Google Play Developer API unavailable");
+		}
+
+		switch (status) {
+			case GooglePurchaseResponse.STATUS_OK: break;
+			case GooglePurchaseResponse.STATUS_INVALID_TOKEN: log(status + ": Invalid purchase token"); return false;
+			case GooglePurchaseResponse.STATUS_UNAUTHORIZED:
+				// rejected even after a token refresh: our credentials are broken, not the purchase
+				log(status + ": Access token rejected");
+				throw new VerifierUnavailableException(storeName(), status + ": Access token rejected");
+			case GooglePurchaseResponse.STATUS_FORBIDDEN:
+				log(status + ": No access to " + packageName);
+				throw new VerifierUnavailableException(storeName(), status + ": No access to " + packageName);
+			case GooglePurchaseResponse.STATUS_NOT_FOUND: log(status + ": Purchase not found"); return false;
+			case GooglePurchaseResponse.STATUS_GONE: log(status + ": Purchase token no longer valid"); return false;
+			default:
+				// unknown error code (nevertheless a problem)
+				log("Unknown error: status code = " + status);
+				return false;
+		}
+		if (!orderMatches(transaction.getOrderId(), response.getOrderId())) {
+			log("Order mismatch: " + transaction.getOrderId() + " vs. " + response.getOrderId());
+			return false;
+		}
+		if (subscription) {
+			if (response.getExpiryTimeMillis() >= 0) {
+				notifySubscription(transaction, response.getExpiryTimeMillis());
+			}
+			if (!response.isActiveAt(System.currentTimeMillis())) {
+				log("Subscription expired: " + response.getExpiryTimeMillis() + " (cancel reason " + response.getCancelReason() + ")");
+				return false;
+			}
+		} else if (!response.isPurchased()) {
+			log("Purchase not completed: purchase state " + response.getPurchaseState());
+			return false;
+		}
+		return true;
+	}
+
+	/** Queries a product purchase (purchases.products.get). Answers are remembered, see {@link #setResponseCacheMillis(long)}.
+	 * 
+	 * @throws IOException if the API could not be reached, the response could not be read or no access token was obtained. */
+	public GooglePurchaseResponse verifyProduct (String productId, String purchaseToken) throws IOException {
+		return query("products/", productId, purchaseToken, false);
+	}
+
+	/** Queries a subscription purchase (purchases.subscriptions.get). Answers are remembered, see
+	 * {@link #setResponseCacheMillis(long)}.
+	 * 
+	 * @throws IOException if the API could not be reached, the response could not be read or no access token was obtained. */
+	public GooglePurchaseResponse verifySubscription (String subscriptionId, String purchaseToken) throws IOException {
+		return query("subscriptions/", subscriptionId, purchaseToken, true);
+	}
+
+	private GooglePurchaseResponse query (String collection, String productId, String purchaseToken, boolean subscription)
+		throws IOException {
+		String key = collection + productId + '/' + purchaseToken;
+		long now = System.nanoTime();
+		synchronized (responses) {
+			CachedResponse cached = responses.get(key);
+			if (cached != null) {
+				if (now - cached.expiresAtNanos < 0) {
+					return cached.response;
+				}
+				responses.remove(key);
+			}
+		}
+
+		String url = apiUrl + encode(packageName) + "/purchases/" + collection + encode(productId) + "/tokens/"
+			+ encode(purchaseToken);
+		GooglePurchaseResponse response = request(url, subscription);
+		if (response.getStatus() == GooglePurchaseResponse.STATUS_UNAUTHORIZED) {
+			// token revoked or expired early: once more with a fresh one
+			response = request(url, subscription);
+		}
+		remember(key, response, now);
+		return response;
+	}
+
+	private GooglePurchaseResponse request (String url, final boolean subscription) throws IOException {
+		final String accessToken = tokenProvider.getAccessToken();
+		GooglePurchaseResponse response = transport.execute(
+			HttpRequest.get(url).header("Authorization", "Bearer " + accessToken).header("Accept", "application/json"),
+			new HttpResponseHandler<GooglePurchaseResponse>() {
+				@Override
+				public GooglePurchaseResponse handle (int statusCode, InputStream body) throws IOException {
+					if (statusCode != GooglePurchaseResponse.STATUS_OK) {
+						return new GooglePurchaseResponse(statusCode, subscription);
+					}
+					return GooglePurchaseResponseParser.parse(statusCode, subscription, body);
+				}
+			});
+		if (response.getStatus() == GooglePurchaseResponse.STATUS_UNAUTHORIZED) {
+			tokenProvider.invalidate(accessToken);
+		}
+		return response;
+	}
+
+	/** Remembers definite answers: purchases and unknown or invalid tokens. */
+	private void remember (String key, GooglePurchaseResponse response, long now) {
+		long ttl = responseCacheNanos;
+		int status = response.getStatus();
+		if (ttl <= 0 || !(status == GooglePurchaseResponse.STATUS_OK || status == GooglePurchaseResponse.STATUS_INVALID_TOKEN
+			|| status == GooglePurchaseResponse.STATUS_NOT_FOUND || status == GooglePurchaseResponse.STATUS_GONE)) {
+			return;
+		}
+		if (response.isSubscription() && status == GooglePurchaseResponse.STATUS_OK) {
+			long remainingMillis = response.getExpiryTimeMillis() - System.currentTimeMillis();
+			if (remainingMillis > 0) {
+				ttl = Math.min(ttl, remainingMillis * 1000000L);
+			}
+		}
+		synchronized (responses) {
+			responses.put(key, new CachedResponse(response, now + ttl));
+		}
+	}
+
+	/** Order ids of subscription renewals are the id of the first order plus "..n". */
+	private static boolean orderMatches (String orderId, String responseOrderId) {
+		if (orderId == null || responseOrderId == null || orderId.equals(responseOrderId)) {
+			return true;
+		}
+		return responseOrderId.startsWith(orderId + "..") || orderId.startsWith(responseOrderId + "..");
+	}
+
+	/** Encodes a path segment. */
+	private static String encode (String segment) {
+		try {
+			return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static final class CachedResponse {
+		final GooglePurchaseResponse response;
+		/** When the answer must be asked again (System.nanoTime()). */
+		final long expiresAtNanos;
+
+		CachedResponse (GooglePurchaseResponse response, long expiresAtNanos) {
+			this.response = response;
+			this.expiresAtNanos = expiresAtNanos;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.security.PublicKey;
+
+import com.badlogic.gdx.pay.PurchaseManagerConfig;
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.util.JsonReader;
+
+/** Purchase verifier for Huawei AppGallery. Return true if the purchase appears valid.
+ * <p>
+ * The transaction data is Huawei's InAppPurchaseData JSON, signed with SHA256withRSA by the IAP public key of the app (see
+ * AppGallery Connect, "In-App Purchases"). A purchase is valid if the signature matches, the purchase is for the transaction's
+ * product (and order) and it was neither cancelled nor refunded. The public key is decoded once; the signature objects are
+ * cached per thread by {@link SignatureVerifier}. */
+public class PurchaseVerifierAndroidHuawei extends PurchaseVerifierBase {
+
+	/** Purchase state of a completed purchase. */
+	private static final int PURCHASE_STATE_PURCHASED = 0;
+
+	private static final String[] NAMES = {"productId", "orderId", "purchaseState", "subIsvalid"};
+
+	private final Security.SecurityLogger logger = new Security.SecurityLogger() {
+		@Override
+		public void log (String message) {
+			PurchaseVerifierAndroidHuawei.this.log(message);
+		}
+	};
+
+	private volatile PublicKey publicKey;
+
+	/** Maps offer identifiers to Huawei product ids (optional). */
+	private PurchaseManagerConfig config;
+
+	public PurchaseVerifierAndroidHuawei () {
+	}
+
+	/** @param publicKeyString The base 64 encoded IAP public key of the app. */
+	public PurchaseVerifierAndroidHuawei (String publicKeyString) {
+		setPublicKey(publicKeyString);
+	}
+
+	/** Sets the base 64 encoded IAP public key of the app.
+	 * 
+	 * @throws IllegalArgumentException if the key is invalid. */
+	public void setPublicKey (String publicKeyString) {
+		publicKey = Security.generatePublicKey(publicKeyString);
+	}
+
+	/** Sets the configuration used on the client, so transactions can be matched with Huawei product ids where those differ from
+	 * the offer identifiers (see {@link Offer#putIdentifierForStore(String, String)}). */
+	public void setPurchaseManagerConfig (PurchaseManagerConfig config) {
+		this.config = config;
+	}
+
+	@Override
+	public String storeName () {
+		return PurchaseManagerConfig.STORE_NAME_ANDROID_HUAWEI;
+	}
+
+	@Override
+	public boolean isValid (Transaction transaction) {
+		String purchaseData = transaction.getTransactionData();
+		if (!Security.verify(SignatureVerifier.SHA256_WITH_RSA, publicKey, purchaseData,
+			transaction.getTransactionDataSignature(), logger)) {
+			recordSignatureFailure();
+			return false;
+		}
+
+		// the data is signed: parse it in one pass, reading only what is checked
+		String productId = null;
+		String orderId = null;
+		int purchaseState = PURCHASE_STATE_PURCHASED;
+		boolean subscriptionValid = true;
+		try {
+			JsonReader reader = new JsonReader(new StringReader(purchaseData));
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName(NAMES)) {
+				case 0:
+					productId = reader.nextStringOrNull();
+					break;
+				case 1:
+					orderId = reader.nextStringOrNull();
+					break;
+				case 2:
+					purchaseState = reader.nextInt();
+					break;
+				case 3:
+					subscriptionValid = reader.nextBoolean();
+					break;
+				default:
+					reader.skipValue();
+					break;
+				}
+			}
+			reader.endObject();
+		} catch (IOException e) {
+			log("Malformed purchase data: " + e.getMessage());
+			return false;
+		}
+
+		if (!productMatches(config, transaction.getIdentifier(), productId)) {
+			log("Product mismatch: " + transaction.getIdentifier() + " vs. " + productId);
+			return false;
+		}
+		if (transaction.getOrderId() != null && !transaction.getOrderId().equals(orderId)) {
+			log("Order mismatch: " + transaction.getOrderId() + " vs. " + orderId);
+			return false;
+		}
+		if (purchaseState != PURCHASE_STATE_PURCHASED) {
+			log("Purchase not completed: purchase state " + purchaseState);
+			return false;
+		}
+		if (!subscriptionValid) {
+			log("Subscription expired: " + orderId);
+			return false;
+		}
+		return true;
+	}
+}
@@ -16,12 +16,88 @@
 
 package com.badlogic.gdx.pay.server.impl;
 
+import com.badlogic.gdx.pay.Offer;
+import com.badlogic.gdx.pay.PurchaseManagerConfig;
+import com.badlogic.gdx.pay.Transaction;
 import com.badlogic.gdx.pay.server.PurchaseVerifier;
+import com.badlogic.gdx.pay.server.SubscriptionObserver;
+import com.badlogic.gdx.pay.server.metrics.VerifierMetrics;
 
 /**
  * Base class for purchase verifier implementations with some common useful functionality
  */
 public abstract class PurchaseVerifierBase implements PurchaseVerifier {
+
+    /** Where store specific details are recorded (calls and latencies are recorded by the manager), null for nowhere. */
+    private volatile VerifierMetrics metrics = VerifierMetrics.getDefault();
+
+    /** Told about subscription expiries learned from the store, null for nobody. */
+    private volatile SubscriptionObserver subscriptionObserver;
+
+    /** Sets where status codes and signature failures are recorded (default: {@link VerifierMetrics#getDefault()}). Null turns
+     * recording off. */
+    public void setMetrics (VerifierMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public VerifierMetrics getMetrics () {
+        return metrics;
+    }
+
+    /** Sets who is told about subscription expiries this verifier learns from the store (null for nobody). Only verifiers that
+     * ask the store about subscriptions report expiries. */
+    public void setSubscriptionObserver (SubscriptionObserver observer) {
+        this.subscriptionObserver = observer;
+    }
+
+    public SubscriptionObserver getSubscriptionObserver () {
+        return subscriptionObserver;
+    }
+
+    /** Reports the expiry of the transaction's subscription to the observer. */
+    protected void notifySubscription (Transaction transaction, long expiryMillis) {
+        SubscriptionObserver observer = this.subscriptionObserver;
+        if (observer != null) {
+            observer.subscriptionVerified(transaction, expiryMillis);
+        }
+    }
+
+    /** Returns true if the store's product id is the transaction's product: either the identifier itself or, if a config is
+     * given, the store specific identifier of its offer. A transaction without identifier matches no product.
+     * 
+     * @param config Maps offer identifiers to store specific ones (may be null).
+     * @param identifier The transaction's product identifier.
+     * @param productId The product id the store reported. */
+    protected boolean productMatches (PurchaseManagerConfig config, String identifier, String productId) {
+        if (identifier == null || productId == null) {
+            return false;
+        }
+        if (identifier.equals(productId)) {
+            return true;
+        }
+        if (config != null) {
+            Offer offer = config.getOffer(identifier);
+            return offer != null && productId.equals(offer.getIdentifierForStore(storeName()));
+        }
+        return false;
+    }
+
+    /** Records a status code returned by the store. */
+    protected void recordStatus (int status) {
+        VerifierMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.store(storeName()).recordStatus(status);
+        }
+    }
+
+    /** Records a transaction rejected because of its signature. */
+    protected void recordSignatureFailure () {
+        VerifierMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.store(storeName()).recordSignatureFailure();
+        }
+    }
+
     protected void log (String message) {
         System.out.println(message);
     }
@@ -16,16 +16,38 @@
 
 package com.badlogic.gdx.pay.server.impl;
 
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
-
-import javax.net.ssl.HttpsURLConnection;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.badlogic.gdx.pay.PurchaseManagerConfig;
 import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.VerifierUnavailableException;
+import com.badlogic.gdx.pay.server.http.HttpRequest;
+import com.badlogic.gdx.pay.server.http.HttpResponseHandler;
+import com.badlogic.gdx.pay.server.http.HttpTransport;
+import com.badlogic.gdx.pay.server.http.PooledHttpTransport;
 
 /** Purchase verifier for iOS/Apple. Return true if the purchase appears valid.
+ * <p>
+ * Receipts are posted to Apple via a {@link HttpTransport}; by default a {@link PooledHttpTransport} which keeps connections
+ * alive between verifications. Share one transport between verifiers talking to the same host.
+ * <p>
+ * With {@link Environment#AUTO} one verifier handles production as well as TestFlight and App Review (sandbox) receipts:
+ * <pre>
+ * PurchaseVerifieriOSApple verifier = new PurchaseVerifieriOSApple(Environment.AUTO, new PooledHttpTransport());
+ * // optional: also ask the other environment if the first one takes longer than 2 seconds
+ * verifier.setHedging(2000, executor);
+ * </pre>
  * @author noblemaster */
 public class PurchaseVerifieriOSApple extends PurchaseVerifierBase {
 
@@ -34,15 +56,84 @@ public class PurchaseVerifieriOSApple extends PurchaseVerifierBase {
 	// production URL
 	private final static String PRODUCTION_URL = "https://buy.itunes.apple.com/verifyReceipt";
 
-	/** True for sandbox mode. */
-	private boolean sandbox;
+	/** Status for a sandbox receipt sent to production. */
+	private final static int STATUS_SANDBOX_RECEIPT = 21007;
+	/** Status for a production receipt sent to the sandbox. */
+	private final static int STATUS_PRODUCTION_RECEIPT = 21008;
+
+	/** Receipts and bundles whose environment is remembered in {@link Environment#AUTO} mode. */
+	private final static int MAX_REMEMBERED_RECEIPTS = 10000;
+	private final static int MAX_REMEMBERED_BUNDLES = 1000;
+	/** Bound for the per-bundle score: how quickly a bundle's guess follows a change of its traffic. */
+	private final static int MAX_BUNDLE_SCORE = 8;
+
+	/** Where receipts are sent to. */
+	public enum Environment {
+		PRODUCTION,
+		SANDBOX,
+		/** Production first; receipts Apple reports as sandbox receipts (21007) are sent to the sandbox and vice versa (21008).
+		 * The environment that answered is remembered per receipt and per bundle, so later calls mostly need one round trip.
+		 * Note that this accepts sandbox purchases, i.e. purchases that were not paid for: use it on servers that are meant to
+		 * see TestFlight and App Review traffic. */
+		AUTO
+	}
+
+	private final Environment environment;
+
+	/** Sends the receipts to Apple. */
+	private HttpTransport transport;
+
+	/** Environment that answered per receipt hash (true for sandbox), LRU; guarded by itself. */
+	private final Map<Long, Boolean> receiptEnvironments = new LinkedHashMap<Long, Boolean>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<Long, Boolean> eldest) {
+			return size() > MAX_REMEMBERED_RECEIPTS;
+		}
+	};
+	/** Per bundle: positive if its receipts were mostly answered by the sandbox lately. */
+	private final ConcurrentHashMap<String, AtomicInteger> bundleScores = new ConcurrentHashMap<String, AtomicInteger>(16);
+
+	/** Hedging: ask the other environment as well if the first did not answer within the delay. */
+	private volatile long hedgeDelayNanos;
+	private volatile Executor hedgeExecutor;
 	
 	public PurchaseVerifieriOSApple() {
 		this(false);
 	}
 	
 	public PurchaseVerifieriOSApple (boolean sandbox) {
-		this.sandbox = sandbox;
+		this(sandbox, new PooledHttpTransport());
+	}
+
+	public PurchaseVerifieriOSApple (boolean sandbox, HttpTransport transport) {
+		this(sandbox ? Environment.SANDBOX : Environment.PRODUCTION, transport);
+	}
+
+	public PurchaseVerifieriOSApple (Environment environment, HttpTransport transport) {
+		this.environment = environment;
+		this.transport = transport;
+	}
+
+	public Environment getEnvironment () {
+		return environment;
+	}
+
+	/** Enables hedging in {@link Environment#AUTO} mode: if the environment asked first has not answered after the delay, the
+	 * other one is asked in parallel and the first conclusive answer wins. Costs a thread of the executor per verification,
+	 * so use a bounded one (see {@link com.badlogic.gdx.pay.server.PurchaseVerifierAsyncAdapter#newBoundedExecutor(int, int)}).
+	 * 
+	 * @param hedgeAfterMillis The delay before asking the other environment, 0 to turn hedging off.
+	 * @param executor Runs the requests to Apple while the calling thread waits. */
+	public void setHedging (long hedgeAfterMillis, Executor executor) {
+		if (hedgeAfterMillis > 0 && executor == null) throw new IllegalArgumentException("executor must not be null");
+		this.hedgeExecutor = hedgeAfterMillis > 0 ? executor : null;
+		this.hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(hedgeAfterMillis);
+	}
+
+	public HttpTransport getTransport () {
+		return transport;
 	}
 
 	@Override
@@ -50,29 +141,32 @@ public class PurchaseVerifieriOSApple extends PurchaseVerifierBase {
 		return PurchaseManagerConfig.STORE_NAME_IOS_APPLE;
 	}
 
+	/** Returns true if Apple confirms the receipt.
+	 * 
+	 * @throws VerifierUnavailableException if Apple could not be reached or reported a transient error (see
+	 *            {@link AppleReceiptResponse#isTransient()}): the receipt is neither valid nor invalid. */
 	@Override
 	public boolean isValid (Transaction transaction) {
 		// the transaction data is our original == receipt!
 		String receipt = transaction.getTransactionDataSignature();
 
-		final String jsonData = "{\"receipt-data\" : \"" + receipt + "\"}";
 		try {
-			// send the data to Apple
-			final URL url = new URL(sandbox ? SANDBOX_URL : PRODUCTION_URL);
-			final HttpURLConnection conn = (HttpsURLConnection)url.openConnection();
-			conn.setRequestMethod("POST");
-			conn.setDoOutput(true);
-			conn.setRequestProperty("Content-Type", "application/json");
-			conn.setRequestProperty("Accept", "application/json");
-			final OutputStreamWriter wr = new OutputStreamWriter(conn.getOutputStream());
-			wr.write(jsonData);
-			wr.flush();
-
-			// obtain the response
-			int status = extractStatus(conn.getInputStream());
-
-			wr.close();
+			// send the data to Apple and obtain the response
+			AppleReceiptResponse response = verifyReceipt(receipt);
+			int status = response.getStatus();
+			recordStatus(status);
+			if (response.isTransient()) {
+				// no verdict: e.g. RetryingPurchaseVerifier will ask again
+				throw new VerifierUnavailableException(storeName(), status + ": Receipt server temporarily unavailable");
+			}
 			
+			if (status == AppleReceiptResponse.STATUS_VALID || status == 21006) {
+				long expiry = response.getSubscriptionExpiryMillis(transaction.getIdentifier());
+				if (expiry >= 0) {
+					notifySubscription(transaction, expiry);
+				}
+			}
+
 			switch (status) {
 				case -1: log(status + ": Status extraction failed"); return false;
 				case 0: return true;
@@ -80,7 +174,6 @@ public class PurchaseVerifieriOSApple extends PurchaseVerifierBase {
 				case 21002: log(status + ": Data was malformed"); return false;
 				case 21003: log(status + ": Receipt not authenticated"); return false;
 				case 21004: log(status + ": Shared secret does not match"); return false;
-				case 21005: log(status + ": Receipt server unavailable"); return false;
 				case 21006: log(status + ": Receipt valid but sub expired"); return false;
 				case 21007: log(status + ": Sandbox receipt sent to Production environment"); return false;
 				case 21008: log(status + ": Production receipt sent to Sandbox environment"); return false;
@@ -90,56 +183,234 @@ public class PurchaseVerifieriOSApple extends PurchaseVerifierBase {
 			   	return false;
 			}
 		} catch (IOException e) {
-			// I/O-error: let's assume bad news...
+			// I/O-error: we don't know, Apple has to be asked again later
 			error("I/O error during verification: " + e, e);
-			return false;
+			throw new VerifierUnavailableException(storeName(), "I/O error during verification: " + e, e);
+		}
+	}
+
+	/** Sends a receipt to Apple and returns the complete result: status, bundle id, in-app purchases and subscription info. In
+	 * {@link Environment#AUTO} mode the receipt is sent to the environment it belongs to.
+	 *
+	 * @param receipt The base 64 encoded receipt.
+	 * @throws IOException if Apple could not be reached or the response could not be read. */
+	public AppleReceiptResponse verifyReceipt (String receipt) throws IOException {
+		if (environment != Environment.AUTO) {
+			return verifyReceipt(receipt, environment == Environment.SANDBOX);
+		}
+
+		long key = receiptKey(receipt);
+		boolean sandbox = guessSandbox(receipt, key);
+		Executor executor = hedgeExecutor;
+		Attempt answer = null;
+		if (executor != null) {
+			answer = verifyHedged(receipt, sandbox, executor);
+		}
+		if (answer == null) {
+			answer = new Attempt(receipt, sandbox, null);
+			answer.run();
+		}
+		if (answer.sandbox == sandbox && answer.isWrongEnvironment()) {
+			// the other environment was not asked yet
+			answer = new Attempt(receipt, !sandbox, null);
+			answer.run();
+		}
+		AppleReceiptResponse response = answer.get();
+		remember(key, response, answer.sandbox);
+		return response;
+	}
+
+	/** Asks the guessed environment on the executor, and the other one too if the first is slow. Returns null if the executor
+	 * rejected the request. */
+	private Attempt verifyHedged (String receipt, boolean sandbox, Executor executor) throws IOException {
+		BlockingQueue<Attempt> finished = new LinkedBlockingQueue<Attempt>();
+		try {
+			executor.execute(new Attempt(receipt, sandbox, finished));
+		} catch (RejectedExecutionException e) {
+			return null;
+		}
+		try {
+			Attempt first = finished.poll(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+			if (first != null) {
+				// answered in time (a wrong environment is retried by the caller)
+				return first;
+			}
+			try {
+				executor.execute(new Attempt(receipt, !sandbox, finished));
+			} catch (RejectedExecutionException e) {
+				return finished.take();
+			}
+			// two requests in flight: take the first conclusive answer
+			Attempt answer = finished.take();
+			if (answer.isConclusive()) {
+				return answer;
+			}
+			Attempt other = finished.take();
+			return other.isConclusive() || answer.failure != null ? other : answer;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for Apple.");
+		}
+	}
+
+	/** Returns true if the receipt most likely is a sandbox receipt. */
+	private boolean guessSandbox (String receipt, long key) {
+		Boolean sandbox;
+		synchronized (receiptEnvironments) {
+			sandbox = receiptEnvironments.get(key);
+		}
+		if (sandbox != null) {
+			return sandbox;
+		}
+		if (!bundleScores.isEmpty()) {
+			String bundleId = AppleReceiptDecoder.readBundleId(receipt);
+			AtomicInteger score = bundleId != null ? bundleScores.get(bundleId) : null;
+			if (score != null) {
+				return score.get() > 0;
+			}
+		}
+		return false;
+	}
+
+	/** Remembers which environment answered, if the answer shows that the receipt belongs there. */
+	private void remember (long key, AppleReceiptResponse response, boolean sandbox) {
+		int status = response.getStatus();
+		if (status != AppleReceiptResponse.STATUS_VALID && status != 21006) {
+			return;
+		}
+		synchronized (receiptEnvironments) {
+			receiptEnvironments.put(key, sandbox);
+		}
+		String bundleId = response.getBundleId();
+		if (bundleId != null) {
+			AtomicInteger score = bundleScores.get(bundleId);
+			if (score == null && bundleScores.size() < MAX_REMEMBERED_BUNDLES) {
+				score = new AtomicInteger();
+				AtomicInteger existing = bundleScores.putIfAbsent(bundleId, score);
+				if (existing != null) {
+					score = existing;
+				}
+			}
+			if (score != null) {
+				int value;
+				do {
+					value = score.get();
+				} while (!score.compareAndSet(value, Math.max(-MAX_BUNDLE_SCORE, Math.min(MAX_BUNDLE_SCORE, value + (sandbox ? 1 : -1)))));
+			}
+		}
+	}
+
+	/** 64-bit FNV-1a hash of the receipt. A collision only costs a wrong first guess. */
+	private static long receiptKey (String receipt) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < receipt.length(); i++) {
+			hash ^= receipt.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/** Sends a receipt to the given environment, see {@link #verifyReceipt(String)}.
+	 *
+	 * @param receipt The base 64 encoded receipt.
+	 * @param sandbox True for the sandbox, false for production.
+	 * @throws IOException if Apple could not be reached or the response could not be read. */
+	public AppleReceiptResponse verifyReceipt (String receipt, boolean sandbox) throws IOException {
+		final String jsonData = "{\"receipt-data\" : \"" + receipt + "\"}";
+		return transport.execute(HttpRequest.postJson(sandbox ? SANDBOX_URL : PRODUCTION_URL, jsonData),
+			new HttpResponseHandler<AppleReceiptResponse>() {
+				@Override
+				public AppleReceiptResponse handle (int statusCode, InputStream body) throws IOException {
+					if (statusCode != 200) {
+						throw new IOException("Server returned HTTP response code: " + statusCode);
+					}
+					return parseResponse(body);
+				}
+			});
+	}
+
+	/** One request to one environment. */
+	private class Attempt implements Runnable {
+		final String receipt;
+		final boolean sandbox;
+		/** Where to put this attempt once finished, null if run by the caller. */
+		final BlockingQueue<Attempt> finished;
+
+		volatile AppleReceiptResponse response;
+		volatile Exception failure;
+
+		Attempt (String receipt, boolean sandbox, BlockingQueue<Attempt> finished) {
+			this.receipt = receipt;
+			this.sandbox = sandbox;
+			this.finished = finished;
+		}
+
+		@Override
+		public void run () {
+			try {
+				response = verifyReceipt(receipt, sandbox);
+			} catch (IOException e) {
+				failure = e;
+			} catch (RuntimeException e) {
+				failure = e;
+			} finally {
+				if (finished != null) {
+					finished.add(this);
+				}
+			}
+		}
+
+		/** True if Apple answered that the receipt belongs to the other environment. */
+		boolean isWrongEnvironment () {
+			return response != null
+				&& response.getStatus() == (sandbox ? STATUS_PRODUCTION_RECEIPT : STATUS_SANDBOX_RECEIPT);
+		}
+
+		/** True if Apple answered and the receipt belongs to this environment. */
+		boolean isConclusive () {
+			return response != null && !isWrongEnvironment();
+		}
+
+		AppleReceiptResponse get () throws IOException {
+			if (failure instanceof IOException) {
+				throw (IOException)failure;
+			} else if (failure != null) {
+				throw (RuntimeException)failure;
+			}
+			return response;
 		}
 	}
 
+	/**
+	 * Parses the json response from Apple in a single streaming pass, see {@link AppleReceiptResponseParser}.
+	 * Override this method if you want to use a different json parser.
+	 *
+	 * @param inputStream input stream with json message
+	 * @return the parsed response
+	 * @throws IOException if the response cannot be read or is malformed
+	 */
+	protected AppleReceiptResponse parseResponse (InputStream inputStream) throws IOException {
+		return AppleReceiptResponseParser.parse(inputStream);
+	}
+
 	/**
 	 * Attempt to extract message from incoming json stream
 	 * The contents should be something along the lines of '{"status":21004}'
-	 * Override this method if you want to use more robust json parser
 	 *
 	 * @param inputStream input stream with json message
 	 * @return extracted status or -1 if not possible
+	 * @deprecated No longer called by {@link #isValid(Transaction)}, which reads the status together with the rest of the
+	 *             response in one pass. Overriding this method has no effect; override {@link #parseResponse(InputStream)}
+	 *             instead.
 	 */
+	@Deprecated
 	protected int extractStatus (InputStream inputStream) {
-		int status = -1;
-		BufferedReader rd = null;
 		try {
-			rd = new BufferedReader(new InputStreamReader(inputStream));
-			String line;
-			// verify the response: something like {"status":21004} etc...
-			final String search = "\"status\":";
-			while ((line = rd.readLine()) != null) {
-				int indexOf = line.indexOf(search);
-				if (indexOf == -1) continue;
-				int start = indexOf + search.length();
-				while (Character.isWhitespace(line.charAt(start))) {
-					start++;
-				}
-				int end = start + 1;
-				while (Character.isDigit(line.charAt(end))) {
-					end++;
-				}
-				status = Integer.parseInt(line.substring(start, end));
-				break;
-			}
+			return parseResponse(inputStream).getStatus();
 		} catch (IOException ex) {
 			error("Status extraction failed: " + ex, ex);
-		} catch (NumberFormatException ex) {
-			error("Status extraction failed: " + ex, ex);
-		} catch (IndexOutOfBoundsException ex) {
-			error("Status extraction failed: " + ex, ex);
-		} finally {
-			try {
-				if (rd != null) rd.close();
-			} catch (IOException ex) {
-				error("Close failed: ", ex);
-			}
+			return -1;
 		}
-		return status;
 	}
 	
 	/** Just used for testing... */
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+
+import com.badlogic.gdx.pay.PurchaseManagerConfig;
+import com.badlogic.gdx.pay.Transaction;
+
+/** Purchase verifier for iOS/Apple that validates the App Store receipt locally instead of sending it to Apple (see
+ * {@link AppleReceiptDecoder}). Return true if the receipt is signed by Apple, was issued for our app and contains a
+ * non-cancelled purchase matching the transaction's order id and product. Subscriptions are only valid until the latest expiry
+ * the receipt lists for them: a receipt is a snapshot, so renewals after it was issued need a fresh receipt. */
+public class PurchaseVerifieriOSAppleOffline extends PurchaseVerifierBase {
+
+	private final AppleReceiptDecoder decoder;
+	private final String bundleId;
+
+	/** Maps offer identifiers to App Store product ids (optional). */
+	private PurchaseManagerConfig config;
+
+	/** @param rootCertificate The trusted Apple root certificate, see {@link AppleReceiptDecoder#loadCertificate(java.io.InputStream)}.
+	 * @param bundleId The bundle id of the app receipts must belong to. */
+	public PurchaseVerifieriOSAppleOffline (X509Certificate rootCertificate, String bundleId) {
+		this(new AppleReceiptDecoder(rootCertificate), bundleId);
+	}
+
+	public PurchaseVerifieriOSAppleOffline (AppleReceiptDecoder decoder, String bundleId) {
+		if (bundleId == null) throw new IllegalArgumentException("bundleId must not be null");
+		this.decoder = decoder;
+		this.bundleId = bundleId;
+	}
+
+	/** Sets the configuration used on the client, so transactions can be matched with App Store product ids where those differ
+	 * from the offer identifiers (see {@link Offer#putIdentifierForStore(String, String)}). */
+	public void setPurchaseManagerConfig (PurchaseManagerConfig config) {
+		this.config = config;
+	}
+
+	public AppleReceiptDecoder getDecoder () {
+		return decoder;
+	}
+
+	@Override
+	public String storeName () {
+		return PurchaseManagerConfig.STORE_NAME_IOS_APPLE;
+	}
+
+	@Override
+	public boolean isValid (Transaction transaction) {
+		// the receipt is stored as signature
+		String receipt = transaction.getTransactionDataSignature();
+		if (receipt == null) {
+			log("No receipt for transaction: " + transaction.getOrderId());
+			return false;
+		}
+
+		AppleReceipt decoded;
+		try {
+			decoded = decoder.decode(receipt);
+		} catch (IOException e) {
+			log("Malformed receipt: " + e.getMessage());
+			return false;
+		} catch (GeneralSecurityException e) {
+			recordSignatureFailure();
+			log("Receipt not authenticated: " + e.getMessage());
+			return false;
+		}
+
+		if (!bundleId.equals(decoded.getBundleId())) {
+			log("Receipt is for another app: " + decoded.getBundleId());
+			return false;
+		}
+		AppleInAppPurchase purchase = decoded.findPurchase(transaction.getOrderId());
+		if (purchase == null) {
+			log("Transaction not found in receipt: " + transaction.getOrderId());
+			return false;
+		}
+		if (!productMatches(config, transaction.getIdentifier(), purchase.getProductId())) {
+			log("Product mismatch: " + transaction.getIdentifier() + " vs. " + purchase.getProductId());
+			return false;
+		}
+		if (purchase.isCancelled()) {
+			log("Purchase was cancelled: " + transaction.getOrderId());
+			return false;
+		}
+		if (purchase.getExpiresDateMillis() >= 0) {
+			// a subscription: valid while its latest renewal in the receipt hasn't expired
+			long expiry = decoded.getSubscriptionExpiryMillis(purchase.getProductId());
+			if (expiry <= System.currentTimeMillis()) {
+				log("Subscription expired: " + transaction.getOrderId() + " (expiry " + expiry + ")");
+				return false;
+			}
+		}
+		return true;
+	}
+}
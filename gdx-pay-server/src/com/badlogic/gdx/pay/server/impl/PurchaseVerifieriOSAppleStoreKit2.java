@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+
+import com.badlogic.gdx.pay.PurchaseManagerConfig;
+import com.badlogic.gdx.pay.Transaction;
+
+/** Purchase verifier for iOS/Apple StoreKit 2 that validates the signed transaction (the transaction's JWS representation)
+ * locally, see {@link AppleJwsDecoder}. Return true if the transaction is signed by Apple, was issued for our app, matches the
+ * transaction's order id and product, wasn't revoked and, for subscriptions, hasn't expired.
+ * <p>
+ * The signed transaction is expected as transaction data signature, like the receipt for the other Apple verifiers. */
+public class PurchaseVerifieriOSAppleStoreKit2 extends PurchaseVerifierBase {
+
+	private final AppleJwsDecoder decoder;
+	private final String bundleId;
+
+	/** Maps offer identifiers to App Store product ids (optional). */
+	private PurchaseManagerConfig config;
+	private volatile boolean acceptSandbox;
+
+	/** @param rootCertificate The trusted Apple root certificate ("Apple Root CA - G3"), see
+	 *           {@link AppleReceiptDecoder#loadCertificate(java.io.InputStream)}.
+	 * @param bundleId The bundle id of the app transactions must belong to. */
+	public PurchaseVerifieriOSAppleStoreKit2 (X509Certificate rootCertificate, String bundleId) {
+		this(new AppleJwsDecoder(rootCertificate), bundleId);
+	}
+
+	public PurchaseVerifieriOSAppleStoreKit2 (AppleJwsDecoder decoder, String bundleId) {
+		if (bundleId == null) throw new IllegalArgumentException("bundleId must not be null");
+		this.decoder = decoder;
+		this.bundleId = bundleId;
+	}
+
+	/** Sets the configuration used on the client, so transactions can be matched with App Store product ids where those differ
+	 * from the offer identifiers (see {@link Offer#putIdentifierForStore(String, String)}). */
+	public void setPurchaseManagerConfig (PurchaseManagerConfig config) {
+		this.config = config;
+	}
+
+	/** Sets whether transactions of the sandbox and Xcode environments are accepted (default false). Turn it on for servers that
+	 * are meant to see TestFlight and App Review traffic: such purchases were not paid for. */
+	public void setAcceptSandbox (boolean acceptSandbox) {
+		this.acceptSandbox = acceptSandbox;
+	}
+
+	public AppleJwsDecoder getDecoder () {
+		return decoder;
+	}
+
+	@Override
+	public String storeName () {
+		return PurchaseManagerConfig.STORE_NAME_IOS_APPLE;
+	}
+
+	@Override
+	public boolean isValid (Transaction transaction) {
+		// the signed transaction is stored as signature
+		String jws = transaction.getTransactionDataSignature();
+		if (jws == null) {
+			log("No signed transaction for transaction: " + transaction.getOrderId());
+			return false;
+		}
+
+		AppleJwsTransaction decoded;
+		try {
+			decoded = decoder.decodeTransaction(jws);
+		} catch (IOException e) {
+			log("Malformed signed transaction: " + e.getMessage());
+			return false;
+		} catch (GeneralSecurityException e) {
+			recordSignatureFailure();
+			log("Signed transaction not authenticated: " + e.getMessage());
+			return false;
+		}
+
+		if (!bundleId.equals(decoded.getBundleId())) {
+			log("Transaction is for another app: " + decoded.getBundleId());
+			return false;
+		}
+		if (!decoded.isProduction() && !acceptSandbox) {
+			log("Transaction is from the " + decoded.getEnvironment() + " environment: " + transaction.getOrderId());
+			return false;
+		}
+		if (transaction.getOrderId() != null && !decoded.matchesTransaction(transaction.getOrderId())) {
+			log("Order mismatch: " + transaction.getOrderId() + " vs. " + decoded.getTransactionId());
+			return false;
+		}
+		if (!productMatches(config, transaction.getIdentifier(), decoded.getProductId())) {
+			log("Product mismatch: " + transaction.getIdentifier() + " vs. " + decoded.getProductId());
+			return false;
+		}
+		if (decoded.isRevoked()) {
+			log("Transaction was revoked: " + transaction.getOrderId() + " (reason " + decoded.getRevocationReason() + ")");
+			return false;
+		}
+		if (decoded.getExpiresDateMillis() >= 0 && decoded.getExpiresDateMillis() <= System.currentTimeMillis()) {
+			// a renewal comes as a new signed transaction
+			log("Subscription expired: " + decoded.getExpiresDateMillis());
+			return false;
+		}
+		return true;
+	}
+}
@@ -1,19 +1,17 @@
 package com.badlogic.gdx.pay.server.impl;
 
-import com.badlogic.gdx.pay.server.util.Base64Util;
+import com.badlogic.gdx.pay.server.util.Base64Codec;
 
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
-import java.security.Signature;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 
 public class Security {
     private static final String KEY_FACTORY_ALGORITHM = "RSA";
-    private static final String SIGNATURE_ALGORITHM = "SHA1withRSA";
     private static final SecurityLogger logger = new SecurityLogger() {
         @Override public void log (String message) {
             System.out.println(message);
@@ -29,7 +27,7 @@ public class Security {
      */
     public static PublicKey generatePublicKey(String encodedPublicKey) {
         try {
-            byte[] decodedKey = Base64Util.fromBase64(encodedPublicKey);
+            byte[] decodedKey = Base64Codec.STANDARD.decode(encodedPublicKey);
             KeyFactory keyFactory = KeyFactory.getInstance(KEY_FACTORY_ALGORITHM);
             return keyFactory.generatePublic(new X509EncodedKeySpec(decodedKey));
         } catch (NoSuchAlgorithmException e) {
@@ -64,23 +62,39 @@ public class Security {
      * @return true if the data and signature match
      */
     public static boolean verify(PublicKey publicKey, String signedData, String signature, SecurityLogger logger) {
-        byte[] signatureBytes;
+        return verify(SignatureVerifier.SHA1_WITH_RSA, publicKey, signedData, signature, logger);
+    }
+
+    /**
+     * Verifies that the signature from the server matches the computed
+     * signature on the data (encoded as UTF-8) with the given verifier,
+     * e.g. {@link SignatureVerifier#SHA256_WITH_RSA}.
+     *
+     * @param verifier   verifier for the signature algorithm
+     * @param publicKey  public key associated with the developer account
+     * @param signedData signed data from server
+     * @param signature  server signature
+     * @param logger logger that will log any issues
+     * @return true if the data and signature match
+     */
+    public static boolean verify(SignatureVerifier verifier, PublicKey publicKey, String signedData, String signature,
+                                 SecurityLogger logger) {
+        if (signedData == null || signature == null) {
+            logger.log("Signed data or signature missing.");
+            return false;
+        }
         try {
-            signatureBytes = Base64Util.fromBase64(signature);
-            Signature sig = Signature.getInstance(SIGNATURE_ALGORITHM);
-            sig.initVerify(publicKey);
-            sig.update(signedData.getBytes());
-            if (!sig.verify(signatureBytes)) {
+            if (!verifier.verify(publicKey, signedData, signature, Base64Codec.STANDARD)) {
                 logger.log("Signature verification failed.");
                 return false;
             }
             return true;
-        } catch (NoSuchAlgorithmException e) {
-            logger.log("NoSuchAlgorithmException.");
         } catch (InvalidKeyException e) {
             logger.log("Invalid key specification.");
         } catch (SignatureException e) {
             logger.log("Signature exception.");
+        } catch (IllegalArgumentException e) {
+            logger.log("Signature is not valid base 64.");
         }
         return false;
     }
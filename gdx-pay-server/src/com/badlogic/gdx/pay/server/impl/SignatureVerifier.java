@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.badlogic.gdx.pay.server.util.Base64Codec;
+
+/** Verifies signatures with {@link Signature} objects that are initialized once per thread and public key and then reused, so
+ * the hot verification path neither looks up the algorithm nor re-initializes the key. Keys are matched by identity: keep and
+ * reuse the {@link PublicKey} instances (e.g. from {@link Security#generatePublicKey(String)}) instead of re-creating them per
+ * verification. Instances are thread-safe. */
+public class SignatureVerifier {
+
+	/** Verifier for Google Play signatures. */
+	public static final SignatureVerifier SHA1_WITH_RSA = new SignatureVerifier("SHA1withRSA");
+	/** Verifier for Huawei signatures. */
+	public static final SignatureVerifier SHA256_WITH_RSA = new SignatureVerifier("SHA256withRSA");
+
+	/** Upper bound of keys cached per thread; the cache is cleared when exceeded. */
+	private static final int MAX_KEYS_PER_THREAD = 64;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** Per-thread scratch space for encoding strings. */
+	private static final ThreadLocal<Scratch> scratches = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue () {
+			return new Scratch();
+		}
+	};
+
+	private final String algorithm;
+	private final ThreadLocal<Map<PublicKey, Signature>> signatures = new ThreadLocal<Map<PublicKey, Signature>>() {
+		@Override
+		protected Map<PublicKey, Signature> initialValue () {
+			return new IdentityHashMap<PublicKey, Signature>();
+		}
+	};
+
+	/** @param algorithm The signature algorithm, e.g. "SHA256withRSA".
+	 * @throws IllegalArgumentException if the algorithm isn't available. */
+	public SignatureVerifier (String algorithm) {
+		try {
+			Signature.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException("Signature algorithm not available: " + algorithm, e);
+		}
+		this.algorithm = algorithm;
+	}
+
+	public String getAlgorithm () {
+		return algorithm;
+	}
+
+	/** Verifies the signature of a string, which is encoded as UTF-8 without allocating. */
+	public boolean verify (PublicKey publicKey, String data, byte[] signature, int signatureOffset, int signatureLength)
+		throws InvalidKeyException, SignatureException {
+		Scratch scratch = scratches.get();
+		ByteBuffer bytes = scratch.encode(data);
+		return verify(publicKey, bytes.array(), 0, bytes.limit(), signature, signatureOffset, signatureLength);
+	}
+
+	/** Verifies a base 64 encoded signature of a string. Both are decoded into per-thread buffers without allocating.
+	 * 
+	 * @throws IllegalArgumentException if the signature is not valid base 64. */
+	public boolean verify (PublicKey publicKey, String data, CharSequence signature, Base64Codec codec)
+		throws InvalidKeyException, SignatureException {
+		Scratch scratch = scratches.get();
+		byte[] signatureBytes = scratch.signature(codec.decodedLength(signature));
+		int signatureLength = codec.decode(signature, signatureBytes, 0);
+		return verify(publicKey, data, signatureBytes, 0, signatureLength);
+	}
+
+	/** Verifies the signature of the given bytes. */
+	public boolean verify (PublicKey publicKey, byte[] data, byte[] signature) throws InvalidKeyException, SignatureException {
+		return verify(publicKey, data, 0, data.length, signature, 0, signature.length);
+	}
+
+	/** Verifies the signature of the given range of bytes. */
+	public boolean verify (PublicKey publicKey, byte[] data, int offset, int length, byte[] signature, int signatureOffset,
+		int signatureLength) throws InvalidKeyException, SignatureException {
+		Signature sig = signature(publicKey);
+		boolean success = false;
+		try {
+			sig.update(data, offset, length);
+			boolean valid = sig.verify(signature, signatureOffset, signatureLength);
+			success = true;
+			return valid;
+		} finally {
+			if (!success) {
+				// state of the Signature is undefined after a failure: don't reuse it
+				signatures.get().remove(publicKey);
+			}
+		}
+	}
+
+	/** Verifies the signature of the remaining bytes of data. Both buffers are consumed (their positions advance to the limit). */
+	public boolean verify (PublicKey publicKey, ByteBuffer data, ByteBuffer signature)
+		throws InvalidKeyException, SignatureException {
+		byte[] signatureBytes;
+		int signatureOffset;
+		int signatureLength = signature.remaining();
+		if (signature.hasArray()) {
+			signatureBytes = signature.array();
+			signatureOffset = signature.arrayOffset() + signature.position();
+		} else {
+			signatureBytes = scratches.get().signature(signatureLength);
+			signatureOffset = 0;
+			signature.duplicate().get(signatureBytes, 0, signatureLength);
+		}
+		signature.position(signature.limit());
+
+		Signature sig = signature(publicKey);
+		boolean success = false;
+		try {
+			sig.update(data);
+			boolean valid = sig.verify(signatureBytes, signatureOffset, signatureLength);
+			success = true;
+			return valid;
+		} finally {
+			if (!success) {
+				signatures.get().remove(publicKey);
+			}
+		}
+	}
+
+	private Signature signature (PublicKey publicKey) throws InvalidKeyException {
+		Map<PublicKey, Signature> cache = signatures.get();
+		Signature sig = cache.get(publicKey);
+		if (sig == null) {
+			try {
+				sig = Signature.getInstance(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				// checked in the constructor
+				throw new IllegalStateException(e);
+			}
+			sig.initVerify(publicKey);
+			if (cache.size() >= MAX_KEYS_PER_THREAD) {
+				cache.clear();
+			}
+			cache.put(publicKey, sig);
+		}
+		return sig;
+	}
+
+	/** Reusable per-thread buffers. */
+	private static final class Scratch {
+		final CharsetEncoder encoder = UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer bytes = ByteBuffer.allocate(1024);
+		byte[] signature = new byte[512];
+
+		/** Encodes the string into the reusable buffer and returns it flipped for reading. */
+		ByteBuffer encode (String data) {
+			int maxLength = (int)(data.length() * (double)encoder.maxBytesPerChar());
+			if (bytes.capacity() < maxLength) {
+				bytes = ByteBuffer.allocate(Math.max(maxLength, bytes.capacity() * 2));
+			}
+			bytes.clear();
+			encoder.reset();
+			CharBuffer chars = CharBuffer.wrap(data);
+			CoderResult result = encoder.encode(chars, bytes, true);
+			if (!result.isUnderflow()) {
+				throw new IllegalStateException("Encoding failed: " + result);
+			}
+			encoder.flush(bytes);
+			bytes.flip();
+			return bytes;
+		}
+
+		byte[] signature (int length) {
+			if (signature.length < length) {
+				signature = new byte[length];
+			}
+			return signature;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.ledger;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.codec.PayCodec;
+
+/** Encodes transactions into the payload of ledger records: a record version byte followed by the transaction in the
+ * {@link PayCodec} format, which tells null fields apart from any value. */
+final class LedgerCodec {
+
+	static final byte VERSION = 1;
+
+	private LedgerCodec () {
+		// not used
+	}
+
+	static byte[] encode (Transaction transaction) {
+		byte[] encoded = PayCodec.encode(transaction);
+		byte[] payload = new byte[1 + encoded.length];
+		payload[0] = VERSION;
+		System.arraycopy(encoded, 0, payload, 1, encoded.length);
+		return payload;
+	}
+
+	/** @throws IOException if the payload is malformed or of an unknown version. */
+	static Transaction decode (byte[] payload) throws IOException {
+		if (payload.length == 0) {
+			throw new IOException("Empty record");
+		}
+		if (payload[0] != VERSION) {
+			throw new IOException("Unknown record version: " + payload[0]);
+		}
+		try {
+			return PayCodec.decodeTransaction(Arrays.copyOfRange(payload, 1, payload.length));
+		} catch (RuntimeException e) {
+			throw new IOException("Malformed record: " + e);
+		}
+	}
+}
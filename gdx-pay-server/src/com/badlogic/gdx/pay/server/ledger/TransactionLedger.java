@@ -0,0 +1,435 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.ledger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import com.badlogic.gdx.pay.Transaction;
+
+/** Append-only log of verified transactions, e.g. to remember which purchases were granted already:
+ * 
+ * <pre>
+ * TransactionLedger ledger = new TransactionLedger(new File("ledger"));
+ * if (manager.isValid(transaction) &amp;&amp; ledger.appendIfAbsent(transaction) &gt;= 0) {
+ *   // first time this order is seen: grant it
+ * }
+ * </pre>
+ * 
+ * Transactions are written to memory-mapped segment files of fixed size; a new segment is started when a record doesn't fit.
+ * Every record is {@code [int length][int crc32][payload]}, the length written last, so a record is either complete or not there
+ * at all after a crash of the process. Records are addressed by their offset in the ledger (segment base offset plus position).
+ * <p>
+ * Order ids (per store) and user ids are indexed in memory, so lookups like {@link #containsOrder(String, String)} don't touch
+ * the files. The index is rebuilt on opening by replaying the segments; a torn or corrupt record at the tail is cut off.
+ * <p>
+ * Records survive a crash of the process once appended; to survive a crash of the operating system, call {@link #force()} or
+ * turn on {@link #setForceOnAppend(boolean)}. A lock file keeps other processes from opening the same directory. Instances are
+ * thread-safe: appends are serialized, lookups and reads don't block. */
+public class TransactionLedger implements Closeable {
+
+	public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String LOCK_FILE = "ledger.lock";
+	/** Length and checksum. */
+	private static final int HEADER_BYTES = 8;
+
+	private final File directory;
+	private final int segmentBytes;
+	private final RandomAccessFile lockFile;
+	private final FileLock lock;
+
+	/** The segments by base offset, copied on write. */
+	private volatile Segment[] segments;
+	private final CRC32 crc = new CRC32();
+	private boolean forceOnAppend;
+	private volatile boolean closed;
+
+	/** Offsets by store name and order id. */
+	private final ConcurrentHashMap<String, Long> orders = new ConcurrentHashMap<String, Long>();
+	/** Offsets by user id, in append order (arrays are replaced, never modified). */
+	private final ConcurrentHashMap<String, long[]> users = new ConcurrentHashMap<String, long[]>();
+	private volatile int size;
+
+	/** Opens the ledger in the directory with segments of {@link #DEFAULT_SEGMENT_BYTES}. */
+	public TransactionLedger (File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_BYTES);
+	}
+
+	/** Opens the ledger in the directory, creating it if needed, and rebuilds the index from the existing segments.
+	 * 
+	 * @param segmentBytes The size of new segment files; a single transaction must fit into one.
+	 * @throws IOException if the directory can't be created or read, or is used by another process. */
+	public TransactionLedger (File directory, int segmentBytes) throws IOException {
+		if (segmentBytes < 1024) throw new IllegalArgumentException("segmentBytes must be at least 1024: " + segmentBytes);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create ledger directory: " + directory);
+		}
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+		FileLock lock = null;
+		try {
+			lock = lockFile.getChannel().tryLock();
+		} catch (OverlappingFileLockException e) {
+			// opened already by this process
+		} finally {
+			if (lock == null) {
+				lockFile.close();
+			}
+		}
+		if (lock == null) {
+			throw new IOException("Ledger is used by another process or instance: " + directory);
+		}
+		this.lock = lock;
+		try {
+			recover();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/** Maps all segments and replays them to rebuild the index. */
+	private void recover () throws IOException {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept (File dir, String name) {
+				return name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		long[] bases = new long[files.length];
+		for (int i = 0; i < files.length; i++) {
+			String name = files[i].getName();
+			try {
+				bases[i] = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				throw new IOException("Unexpected file in ledger directory: " + files[i]);
+			}
+		}
+		Arrays.sort(bases);
+
+		if (bases.length == 0) {
+			this.segments = new Segment[] {new Segment(0, segmentFile(0), segmentBytes)};
+			return;
+		}
+		// assigned right away, so close() releases what was mapped if opening fails
+		Segment[] segments = new Segment[bases.length];
+		this.segments = segments;
+		for (int i = 0; i < bases.length; i++) {
+			boolean last = i == bases.length - 1;
+			segments[i] = new Segment(bases[i], segmentFile(bases[i]), last ? segmentBytes : 0);
+			replay(segments[i], last);
+		}
+	}
+
+	/** Indexes the records of a segment and sets its end. A corrupt record ends the segment; in the last segment everything
+	 * from there on is erased, so new records can't be followed by stale ones. */
+	private void replay (Segment segment, boolean last) throws IOException {
+		ByteBuffer buffer = segment.buffer.duplicate();
+		int position = 0;
+		int capacity = buffer.capacity();
+		while (position + HEADER_BYTES <= capacity) {
+			int length = buffer.getInt(position);
+			if (length == 0) {
+				break;
+			}
+			Transaction transaction = length > 0 && length <= capacity - position - HEADER_BYTES
+				? readRecord(buffer, position, length) : null;
+			if (transaction == null) {
+				System.err.println("Ledger: corrupt record at " + (segment.base + position) + " in " + segment.file
+					+ (last ? ", cutting off the tail" : ", skipping the rest of the segment"));
+				break;
+			}
+			index(transaction, segment.base + position);
+			position += HEADER_BYTES + length;
+		}
+		segment.end = position;
+		if (last) {
+			for (int i = position; i < capacity; i++) {
+				if (buffer.get(i) != 0) {
+					for (int j = position; j < capacity; j++) {
+						buffer.put(j, (byte)0);
+					}
+					segment.buffer.force();
+					break;
+				}
+			}
+		}
+	}
+
+	/** Returns the transaction of a record or null if its checksum doesn't match or it can't be decoded. */
+	private static Transaction readRecord (ByteBuffer buffer, int position, int length) {
+		byte[] payload = new byte[length];
+		ByteBuffer source = buffer.duplicate();
+		source.position(position + HEADER_BYTES);
+		source.get(payload);
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, length);
+		if ((int)crc.getValue() != buffer.getInt(position + 4)) {
+			return null;
+		}
+		try {
+			return LedgerCodec.decode(payload);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private void index (Transaction transaction, long offset) {
+		if (transaction.getOrderId() != null) {
+			orders.put(orderKey(transaction.getStoreName(), transaction.getOrderId()), Long.valueOf(offset));
+		}
+		String userId = transaction.getUserId();
+		if (userId != null) {
+			long[] offsets = users.get(userId);
+			if (offsets == null) {
+				offsets = new long[] {offset};
+			} else {
+				offsets = Arrays.copyOf(offsets, offsets.length + 1);
+				offsets[offsets.length - 1] = offset;
+			}
+			users.put(userId, offsets);
+		}
+		size++;
+	}
+
+	/** Sets whether every append is forced to the storage device before returning (default: false). Slower, but appended
+	 * records also survive a crash of the operating system. */
+	public synchronized void setForceOnAppend (boolean forceOnAppend) {
+		this.forceOnAppend = forceOnAppend;
+	}
+
+	/** Appends a transaction and returns its offset.
+	 * 
+	 * @throws IOException if the ledger is closed, the transaction is larger than a segment or a new segment can't be created. */
+	public synchronized long append (Transaction transaction) throws IOException {
+		if (closed) throw new IOException("Ledger is closed");
+		byte[] payload = LedgerCodec.encode(transaction);
+		int length = payload.length;
+		if (HEADER_BYTES + length > segmentBytes) {
+			throw new IOException("Transaction too large for a segment: " + length + " bytes");
+		}
+		Segment segment = segments[segments.length - 1];
+		if (segment.end + HEADER_BYTES + length > segment.buffer.capacity()) {
+			segment = roll(segment);
+		}
+
+		int position = segment.end;
+		crc.reset();
+		crc.update(payload, 0, length);
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.position(position + 4);
+		buffer.putInt((int)crc.getValue());
+		buffer.put(payload, 0, length);
+		// the length marks the record as complete
+		segment.buffer.putInt(position, length);
+		segment.end = position + HEADER_BYTES + length;
+		if (forceOnAppend) {
+			segment.buffer.force();
+		}
+
+		long offset = segment.base + position;
+		index(transaction, offset);
+		return offset;
+	}
+
+	/** Appends the transaction unless a transaction with the same store and order id is recorded already ("granted once").
+	 * Transactions without order id are always appended.
+	 * 
+	 * @return The offset of the appended transaction, or -1 if the order was recorded already. */
+	public synchronized long appendIfAbsent (Transaction transaction) throws IOException {
+		if (transaction.getOrderId() != null && containsOrder(transaction.getStoreName(), transaction.getOrderId())) {
+			return -1;
+		}
+		return append(transaction);
+	}
+
+	/** Starts a new segment after the given one. */
+	private Segment roll (Segment current) throws IOException {
+		current.buffer.force();
+		long base = current.base + current.end;
+		Segment segment = new Segment(base, segmentFile(base), segmentBytes);
+		Segment[] segments = Arrays.copyOf(this.segments, this.segments.length + 1);
+		segments[segments.length - 1] = segment;
+		this.segments = segments;
+		return segment;
+	}
+
+	/** Returns true if a transaction with the store name and order id was recorded. */
+	public boolean containsOrder (String storeName, String orderId) {
+		return orders.containsKey(orderKey(storeName, orderId));
+	}
+
+	/** Returns the offset of the transaction with the store name and order id, or -1 if there is none. If an order was appended
+	 * several times, the offset of the last one is returned. */
+	public long getOrderOffset (String storeName, String orderId) {
+		Long offset = orders.get(orderKey(storeName, orderId));
+		return offset != null ? offset.longValue() : -1;
+	}
+
+	/** Returns the offsets of all transactions of a user, in the order they were appended (empty if there are none). */
+	public long[] getUserOffsets (String userId) {
+		long[] offsets = users.get(userId);
+		return offsets != null ? offsets.clone() : new long[0];
+	}
+
+	/** Reads the transaction at the given offset.
+	 * 
+	 * @throws IOException if there is no intact record at the offset. */
+	public Transaction read (long offset) throws IOException {
+		if (closed) throw new IOException("Ledger is closed");
+		Segment[] segments = this.segments;
+		int index = segments.length - 1;
+		while (index > 0 && segments[index].base > offset) {
+			index--;
+		}
+		Segment segment = segments[index];
+		long position = offset - segment.base;
+		if (position < 0 || position + HEADER_BYTES > segment.buffer.capacity()) {
+			throw new IOException("No record at offset " + offset);
+		}
+		ByteBuffer buffer = segment.buffer.duplicate();
+		int length = buffer.getInt((int)position);
+		Transaction transaction = length > 0 && length <= buffer.capacity() - position - HEADER_BYTES
+			? readRecord(buffer, (int)position, length) : null;
+		if (transaction == null) {
+			throw new IOException("No record at offset " + offset);
+		}
+		return transaction;
+	}
+
+	/** Reads all transactions of a user, in the order they were appended. */
+	public List<Transaction> getUserTransactions (String userId) throws IOException {
+		long[] offsets = getUserOffsets(userId);
+		List<Transaction> transactions = new ArrayList<Transaction>(offsets.length);
+		for (int i = 0; i < offsets.length; i++) {
+			transactions.add(read(offsets[i]));
+		}
+		return transactions;
+	}
+
+	/** Returns the number of recorded transactions. */
+	public int size () {
+		return size;
+	}
+
+	/** Returns the offset the next transaction is appended at (or beyond, if it doesn't fit into the current segment). */
+	public synchronized long getEndOffset () {
+		Segment segment = segments[segments.length - 1];
+		return segment.base + segment.end;
+	}
+
+	public int getSegmentCount () {
+		return segments.length;
+	}
+
+	public File getDirectory () {
+		return directory;
+	}
+
+	/** Forces all appended transactions to the storage device. */
+	public synchronized void force () {
+		if (!closed) {
+			segments[segments.length - 1].buffer.force();
+		}
+	}
+
+	/** Forces appended transactions to the storage device and closes the files. The mapped memory is released once it is garbage
+	 * collected. */
+	@Override
+	public synchronized void close () throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		IOException failure = null;
+		Segment[] segments = this.segments;
+		if (segments != null) {
+			for (int i = 0; i < segments.length && segments[i] != null; i++) {
+				try {
+					segments[i].buffer.force();
+					segments[i].channel.close();
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+		}
+		try {
+			lock.release();
+			lockFile.close();
+		} catch (IOException e) {
+			failure = e;
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private File segmentFile (long base) {
+		return new File(directory, String.format("%020d", base) + SEGMENT_SUFFIX);
+	}
+
+	private static String orderKey (String storeName, String orderId) {
+		return storeName + '|' + orderId;
+	}
+
+	/** A mapped segment file. */
+	private static final class Segment {
+		final long base;
+		final File file;
+		final FileChannel channel;
+		final MappedByteBuffer buffer;
+		/** Position after the last record; only accessed while appending (or opening). */
+		int end;
+
+		/** Maps an existing segment file, or creates one; files smaller than the given size are enlarged. */
+		Segment (long base, File file, int size) throws IOException {
+			this.base = base;
+			this.file = file;
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			boolean success = false;
+			try {
+				if (size > 0 && raf.length() < size) {
+					raf.setLength(size);
+				}
+				channel = raf.getChannel();
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+				success = true;
+			} finally {
+				if (!success) {
+					raf.close();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Latency distribution with exponential buckets: the first bucket holds everything below 64 microseconds, every further bucket
+ * doubles the upper bound, and the last one holds everything from about 67 seconds on. Recording is lock-free and doesn't
+ * allocate; percentiles are accurate to the bucket bounds, i.e. within a factor of two. */
+public final class LatencyHistogram {
+
+	/** Number of buckets. */
+	public static final int BUCKETS = 22;
+	/** Upper bound of the first bucket in microseconds, as power of two. */
+	private static final int FIRST_BOUND_SHIFT = 6;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final StripedCounter count = new StripedCounter();
+	private final StripedCounter totalNanos = new StripedCounter();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/** Records one call that took the given time. */
+	public void record (long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.getAndIncrement(bucket(nanos));
+		count.increment();
+		totalNanos.add(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	/** Returns the exclusive upper bound of a bucket in microseconds, or {@link Long#MAX_VALUE} for the last bucket. */
+	public static long upperBoundMicros (int bucket) {
+		return bucket < BUCKETS - 1 ? 1L << (FIRST_BOUND_SHIFT + bucket) : Long.MAX_VALUE;
+	}
+
+	static int bucket (long nanos) {
+		long micros = nanos / 1000;
+		if (micros < (1L << FIRST_BOUND_SHIFT)) {
+			return 0;
+		}
+		int bucket = 63 - Long.numberOfLeadingZeros(micros) - FIRST_BOUND_SHIFT + 1;
+		return Math.min(bucket, BUCKETS - 1);
+	}
+
+	/** Returns the number of recorded calls per bucket. */
+	public long[] getBucketCounts () {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+		}
+		return counts;
+	}
+
+	public long getCount () {
+		return count.sum();
+	}
+
+	/** Returns the mean latency in milliseconds, 0 if nothing was recorded. */
+	public double getMeanMillis () {
+		long calls = count.sum();
+		return calls > 0 ? totalNanos.sum() / (double)calls / TimeUnit.MILLISECONDS.toNanos(1) : 0;
+	}
+
+	/** Returns the highest latency in milliseconds. */
+	public double getMaxMillis () {
+		return maxNanos.get() / (double)TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/** Returns the latency in milliseconds below which the given fraction of calls completed (e.g. 0.99), rounded up to the
+	 * bucket's upper bound and capped at the maximum. 0 if nothing was recorded. */
+	public double getPercentileMillis (double fraction) {
+		return percentileMillis(getBucketCounts(), fraction, getMaxMillis());
+	}
+
+	static double percentileMillis (long[] counts, double fraction, double maxMillis) {
+		if (fraction < 0 || fraction > 1) throw new IllegalArgumentException("fraction must be in [0, 1]: " + fraction);
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(fraction * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(upperBoundMicros(i) / 1000.0, maxMillis);
+			}
+		}
+		return maxMillis;
+	}
+
+	/** Clears all buckets. */
+	public void reset () {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		totalNanos.reset();
+		maxNanos.set(0);
+	}
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** The counters of one store. Obtained via {@link VerifierMetrics#store(String)}; {@link com.badlogic.gdx.pay.server.PurchaseVerifierManager}
+ * records calls, verdicts and latencies, the verifiers add what only they know (status codes, signature failures, cache hits).
+ * All methods are thread-safe and the record methods don't block. */
+public final class StoreMetrics implements StoreMetricsMXBean {
+
+	private final String storeName;
+
+	private final StripedCounter valid = new StripedCounter();
+	private final StripedCounter invalid = new StripedCounter();
+	private final StripedCounter errors = new StripedCounter();
+	private final StripedCounter unavailable = new StripedCounter();
+	private final StripedCounter retries = new StripedCounter();
+	private final StripedCounter signatureFailures = new StripedCounter();
+	private final StripedCounter cacheHits = new StripedCounter();
+	private final StripedCounter cacheMisses = new StripedCounter();
+	private final StripedCounter coalesced = new StripedCounter();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	/** Status codes come with remote calls, i.e. are rare compared to the other counters. */
+	private final ConcurrentHashMap<Integer, AtomicLong> statusCounts = new ConcurrentHashMap<Integer, AtomicLong>(16);
+
+	StoreMetrics (String storeName) {
+		this.storeName = storeName;
+	}
+
+	/** Records a verification that returned a verdict after the given time. */
+	public void recordVerdict (boolean valid, long nanos) {
+		(valid ? this.valid : this.invalid).increment();
+		latency.record(nanos);
+	}
+
+	/** Records a verification that threw after the given time. */
+	public void recordError (long nanos) {
+		errors.increment();
+		latency.record(nanos);
+	}
+
+	/** Records a verification rejected without calling the store (circuit breaker open or bulkhead full). */
+	public void recordUnavailable () {
+		unavailable.increment();
+	}
+
+	/** Records a verification that is tried again after a transient failure. */
+	public void recordRetry () {
+		retries.increment();
+	}
+
+	/** Records a status code returned by the store. */
+	public void recordStatus (int status) {
+		Integer key = Integer.valueOf(status);
+		AtomicLong count = statusCounts.get(key);
+		if (count == null) {
+			count = new AtomicLong();
+			AtomicLong existing = statusCounts.putIfAbsent(key, count);
+			if (existing != null) {
+				count = existing;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	public void recordSignatureFailure () {
+		signatureFailures.increment();
+	}
+
+	public void recordCacheHit () {
+		cacheHits.increment();
+	}
+
+	public void recordCacheMiss () {
+		cacheMisses.increment();
+	}
+
+	/** Records a verification that shared the result of an identical one already in flight. */
+	public void recordCoalesced () {
+		coalesced.increment();
+	}
+
+	/** The latency distribution of all recorded calls. */
+	public LatencyHistogram getLatency () {
+		return latency;
+	}
+
+	@Override
+	public String getStoreName () {
+		return storeName;
+	}
+
+	@Override
+	public long getCalls () {
+		return latency.getCount();
+	}
+
+	@Override
+	public long getValid () {
+		return valid.sum();
+	}
+
+	@Override
+	public long getInvalid () {
+		return invalid.sum();
+	}
+
+	@Override
+	public long getErrors () {
+		return errors.sum();
+	}
+
+	@Override
+	public long getUnavailable () {
+		return unavailable.sum();
+	}
+
+	@Override
+	public long getRetries () {
+		return retries.sum();
+	}
+
+	@Override
+	public long getSignatureFailures () {
+		return signatureFailures.sum();
+	}
+
+	@Override
+	public long getCacheHits () {
+		return cacheHits.sum();
+	}
+
+	@Override
+	public long getCacheMisses () {
+		return cacheMisses.sum();
+	}
+
+	@Override
+	public long getCoalesced () {
+		return coalesced.sum();
+	}
+
+	@Override
+	public double getMeanLatencyMillis () {
+		return latency.getMeanMillis();
+	}
+
+	@Override
+	public double getLatencyMillisP50 () {
+		return latency.getPercentileMillis(0.5);
+	}
+
+	@Override
+	public double getLatencyMillisP90 () {
+		return latency.getPercentileMillis(0.9);
+	}
+
+	@Override
+	public double getLatencyMillisP99 () {
+		return latency.getPercentileMillis(0.99);
+	}
+
+	@Override
+	public double getMaxLatencyMillis () {
+		return latency.getMaxMillis();
+	}
+
+	@Override
+	public SortedMap<Integer, Long> getStatusCounts () {
+		SortedMap<Integer, Long> counts = new TreeMap<Integer, Long>();
+		for (Map.Entry<Integer, AtomicLong> entry : statusCounts.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().get());
+		}
+		return counts;
+	}
+
+	/** Returns a copy of the current values. */
+	public StoreMetricsSnapshot snapshot () {
+		return new StoreMetricsSnapshot(this);
+	}
+
+	@Override
+	public void reset () {
+		valid.reset();
+		invalid.reset();
+		errors.reset();
+		unavailable.reset();
+		retries.reset();
+		signatureFailures.reset();
+		cacheHits.reset();
+		cacheMisses.reset();
+		coalesced.reset();
+		latency.reset();
+		statusCounts.clear();
+	}
+
+	@Override
+	public String toString () {
+		return snapshot().toString();
+	}
+}
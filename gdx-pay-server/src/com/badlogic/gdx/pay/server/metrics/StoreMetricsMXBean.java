@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.metrics;
+
+import java.util.Map;
+
+/** JMX view of the {@link StoreMetrics} of one store. Registered by {@link VerifierMetrics#registerMBeans()} as
+ * <code>com.badlogicgames.gdxpay:type=PurchaseVerifier,store=&lt;store name&gt;</code>. */
+public interface StoreMetricsMXBean {
+
+	String getStoreName ();
+
+	/** Verifications that completed with a verdict or an exception. */
+	long getCalls ();
+
+	long getValid ();
+
+	long getInvalid ();
+
+	/** Verifications that threw instead of returning a verdict. */
+	long getErrors ();
+
+	/** Verifications rejected without calling the store because its circuit breaker was open or its bulkhead full. */
+	long getUnavailable ();
+
+	/** Verifications tried again after a transient failure (see RetryingPurchaseVerifier). */
+	long getRetries ();
+
+	/** Transactions rejected because their signature did not verify. */
+	long getSignatureFailures ();
+
+	long getCacheHits ();
+
+	long getCacheMisses ();
+
+	/** Verifications that shared the result of an identical one in flight (see CoalescingPurchaseVerifier). */
+	long getCoalesced ();
+
+	double getMeanLatencyMillis ();
+
+	double getLatencyMillisP50 ();
+
+	double getLatencyMillisP90 ();
+
+	double getLatencyMillisP99 ();
+
+	double getMaxLatencyMillis ();
+
+	/** Number of responses per store status code, e.g. Apple's 0 and 21000-21008. */
+	Map<Integer, Long> getStatusCounts ();
+
+	/** Sets all counters to zero. */
+	void reset ();
+}
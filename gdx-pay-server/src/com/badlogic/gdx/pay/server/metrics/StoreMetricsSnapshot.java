@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.metrics;
+
+import java.util.Collections;
+import java.util.SortedMap;
+
+/** The values of a {@link StoreMetrics} at one point in time. */
+public final class StoreMetricsSnapshot {
+
+	private final String storeName;
+	private final long calls;
+	private final long valid;
+	private final long invalid;
+	private final long errors;
+	private final long unavailable;
+	private final long retries;
+	private final long signatureFailures;
+	private final long cacheHits;
+	private final long cacheMisses;
+	private final long coalesced;
+	private final long[] latencyBuckets;
+	private final double meanLatencyMillis;
+	private final double maxLatencyMillis;
+	private final SortedMap<Integer, Long> statusCounts;
+
+	StoreMetricsSnapshot (StoreMetrics metrics) {
+		this.storeName = metrics.getStoreName();
+		this.valid = metrics.getValid();
+		this.invalid = metrics.getInvalid();
+		this.errors = metrics.getErrors();
+		this.unavailable = metrics.getUnavailable();
+		this.retries = metrics.getRetries();
+		this.signatureFailures = metrics.getSignatureFailures();
+		this.cacheHits = metrics.getCacheHits();
+		this.cacheMisses = metrics.getCacheMisses();
+		this.coalesced = metrics.getCoalesced();
+		LatencyHistogram latency = metrics.getLatency();
+		this.latencyBuckets = latency.getBucketCounts();
+		long calls = 0;
+		for (int i = 0; i < latencyBuckets.length; i++) {
+			calls += latencyBuckets[i];
+		}
+		this.calls = calls;
+		this.meanLatencyMillis = latency.getMeanMillis();
+		this.maxLatencyMillis = latency.getMaxMillis();
+		this.statusCounts = Collections.unmodifiableSortedMap(metrics.getStatusCounts());
+	}
+
+	public String getStoreName () {
+		return storeName;
+	}
+
+	public long getCalls () {
+		return calls;
+	}
+
+	public long getValid () {
+		return valid;
+	}
+
+	public long getInvalid () {
+		return invalid;
+	}
+
+	public long getErrors () {
+		return errors;
+	}
+
+	/** Verifications rejected without calling the store. */
+	public long getUnavailable () {
+		return unavailable;
+	}
+
+	/** Verifications tried again after a transient failure. */
+	public long getRetries () {
+		return retries;
+	}
+
+	public long getSignatureFailures () {
+		return signatureFailures;
+	}
+
+	public long getCacheHits () {
+		return cacheHits;
+	}
+
+	public long getCacheMisses () {
+		return cacheMisses;
+	}
+
+	public long getCoalesced () {
+		return coalesced;
+	}
+
+	/** Calls per latency bucket, see {@link LatencyHistogram#upperBoundMicros(int)} for the bucket bounds. */
+	public long[] getLatencyBuckets () {
+		return latencyBuckets.clone();
+	}
+
+	public double getMeanLatencyMillis () {
+		return meanLatencyMillis;
+	}
+
+	public double getMaxLatencyMillis () {
+		return maxLatencyMillis;
+	}
+
+	/** Returns the latency below which the given fraction of calls completed, see
+	 * {@link LatencyHistogram#getPercentileMillis(double)}. */
+	public double getPercentileLatencyMillis (double fraction) {
+		return LatencyHistogram.percentileMillis(latencyBuckets, fraction, maxLatencyMillis);
+	}
+
+	/** Number of responses per store status code. */
+	public SortedMap<Integer, Long> getStatusCounts () {
+		return statusCounts;
+	}
+
+	@Override
+	public String toString () {
+		return "StoreMetricsSnapshot{" +
+				"storeName='" + storeName + '\'' +
+				", calls=" + calls +
+				", valid=" + valid +
+				", invalid=" + invalid +
+				", errors=" + errors +
+				", unavailable=" + unavailable +
+				", retries=" + retries +
+				", signatureFailures=" + signatureFailures +
+				", cacheHits=" + cacheHits +
+				", cacheMisses=" + cacheMisses +
+				", coalesced=" + coalesced +
+				", meanLatencyMillis=" + meanLatencyMillis +
+				", p99LatencyMillis=" + getPercentileLatencyMillis(0.99) +
+				", maxLatencyMillis=" + maxLatencyMillis +
+				", statusCounts=" + statusCounts +
+				'}';
+	}
+}
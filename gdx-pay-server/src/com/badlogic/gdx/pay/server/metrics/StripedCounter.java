@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A counter that is cheap to update from many threads at once: every thread adds to one of several cells, each on its own
+ * cache line, and reads sum up all cells. Reads are not atomic with respect to concurrent updates, which is fine for
+ * statistics. */
+public final class StripedCounter {
+
+	/** Longs per cell, so neighbouring cells don't share a 64 byte cache line. */
+	private static final int PADDING = 8;
+	/** Number of cells: a power of two, at least the number of processors (up to 64). */
+	private static final int STRIPES = stripes();
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	private static int stripes () {
+		int processors = Runtime.getRuntime().availableProcessors();
+		int stripes = 1;
+		while (stripes < processors && stripes < 64) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+
+	public void increment () {
+		cells.getAndIncrement(index());
+	}
+
+	public void add (long delta) {
+		cells.getAndAdd(index(), delta);
+	}
+
+	/** Returns the current total. */
+	public long sum () {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += cells.get(i * PADDING);
+		}
+		return sum;
+	}
+
+	/** Sets the total to zero. Updates racing with the reset may or may not be counted. */
+	public void reset () {
+		for (int i = 0; i < STRIPES; i++) {
+			cells.set(i * PADDING, 0);
+		}
+	}
+
+	private static int index () {
+		// thread ids are sequential: spread them over the cells
+		long id = Thread.currentThread().getId();
+		int hash = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+		return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+	}
+
+	@Override
+	public String toString () {
+		return Long.toString(sum());
+	}
+}
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/** Registry of per-store verification metrics. The manager and the verifiers record into {@link #getDefault()} unless given
+ * another registry (or null to record nothing).
+ * 
+ * <pre>
+ * // expose the counters via JMX (e.g. for jconsole or a JMX exporter)...
+ * VerifierMetrics.getDefault().registerMBeans();
+ * 
+ * // ...or poll them
+ * for (StoreMetricsSnapshot store : VerifierMetrics.getDefault().snapshot().values()) {
+ *   System.out.println(store);
+ * }
+ * </pre> */
+public class VerifierMetrics {
+
+	/** JMX domain of the store MBeans. */
+	public static final String JMX_DOMAIN = "com.badlogicgames.gdxpay";
+
+	private static final VerifierMetrics defaultMetrics = new VerifierMetrics();
+
+	private final ConcurrentHashMap<String, StoreMetrics> stores = new ConcurrentHashMap<String, StoreMetrics>(16);
+
+	/** Where to register MBeans for stores seen later, null if JMX is off. Guarded by this. */
+	private MBeanServer mbeanServer;
+	private String jmxDomain;
+	private final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+	/** The registry used unless configured otherwise. */
+	public static VerifierMetrics getDefault () {
+		return defaultMetrics;
+	}
+
+	/** Returns the metrics of a store, creating them on first use. */
+	public StoreMetrics store (String storeName) {
+		if (storeName == null) {
+			storeName = "null";
+		}
+		StoreMetrics metrics = stores.get(storeName);
+		if (metrics == null) {
+			metrics = new StoreMetrics(storeName);
+			StoreMetrics existing = stores.putIfAbsent(storeName, metrics);
+			if (existing != null) {
+				return existing;
+			}
+			register(metrics);
+		}
+		return metrics;
+	}
+
+	/** Returns the current values of all stores, sorted by store name. */
+	public SortedMap<String, StoreMetricsSnapshot> snapshot () {
+		SortedMap<String, StoreMetricsSnapshot> snapshot = new TreeMap<String, StoreMetricsSnapshot>();
+		for (StoreMetrics metrics : stores.values()) {
+			snapshot.put(metrics.getStoreName(), metrics.snapshot());
+		}
+		return Collections.unmodifiableSortedMap(snapshot);
+	}
+
+	/** Sets the counters of all stores to zero. */
+	public void reset () {
+		for (StoreMetrics metrics : stores.values()) {
+			metrics.reset();
+		}
+	}
+
+	/** Registers one MBean per store with the platform MBean server, see {@link StoreMetricsMXBean}. Stores seen later are
+	 * registered as they appear. */
+	public void registerMBeans () throws JMException {
+		registerMBeans(ManagementFactory.getPlatformMBeanServer(), JMX_DOMAIN);
+	}
+
+	/** Registers one MBean per store with the given server under the given domain (use different domains for different
+	 * registries in one JVM). Stores seen later are registered as they appear. */
+	public synchronized void registerMBeans (MBeanServer server, String domain) throws JMException {
+		unregisterMBeans();
+		mbeanServer = server;
+		jmxDomain = domain;
+		for (StoreMetrics metrics : stores.values()) {
+			ObjectName name = objectName(domain, metrics.getStoreName());
+			server.registerMBean(metrics, name);
+			registered.add(name);
+		}
+	}
+
+	/** Removes all MBeans registered by this registry. */
+	public synchronized void unregisterMBeans () {
+		if (mbeanServer == null) {
+			return;
+		}
+		for (int i = 0; i < registered.size(); i++) {
+			try {
+				mbeanServer.unregisterMBean(registered.get(i));
+			} catch (JMException e) {
+				// unregistered by someone else already
+			}
+		}
+		registered.clear();
+		mbeanServer = null;
+		jmxDomain = null;
+	}
+
+	private synchronized void register (StoreMetrics metrics) {
+		if (mbeanServer == null) {
+			return;
+		}
+		try {
+			ObjectName name = objectName(jmxDomain, metrics.getStoreName());
+			if (!mbeanServer.isRegistered(name)) {
+				// (else registered by registerMBeans(...) between creation and now)
+				mbeanServer.registerMBean(metrics, name);
+				registered.add(name);
+			}
+		} catch (JMException e) {
+			// metrics must never break verification
+			System.err.println("Could not register MBean for store " + metrics.getStoreName() + ": " + e);
+		}
+	}
+
+	private static ObjectName objectName (String domain, String storeName) throws MalformedObjectNameException {
+		return new ObjectName(domain + ":type=PurchaseVerifier,store=" + ObjectName.quote(storeName));
+	}
+
+	@Override
+	public String toString () {
+		StringBuilder builder = new StringBuilder("VerifierMetrics{");
+		for (Map.Entry<String, StoreMetricsSnapshot> entry : snapshot().entrySet()) {
+			builder.append(builder.length() > 16 ? ", " : "").append(entry.getValue());
+		}
+		return builder.append('}').toString();
+	}
+}
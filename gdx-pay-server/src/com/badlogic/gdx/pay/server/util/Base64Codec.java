@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** Table-driven RFC 4648 base 64 codec for the standard ("+/") and the URL-safe ("-_") alphabet. Decoding validates characters
+ * and padding (throwing {@link IllegalArgumentException} for malformed input) and can write into caller-supplied arrays or
+ * buffers, so decoding signatures and receipts on the verification path doesn't need to allocate. Instances are immutable and
+ * thread-safe.
+ * <p>
+ * Note {@link Base64Util} uses a different, non-standard alphabet ("$_"). Use this codec for data from the stores.
+ * 
+ * @see Base64InputStream */
+public final class Base64Codec {
+
+	private static final char[] STANDARD_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+	private static final char[] URL_SAFE_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+	/** The standard alphabet (RFC 4648 section 4); encodes with padding and requires it when decoding. */
+	public static final Base64Codec STANDARD = new Base64Codec(STANDARD_ALPHABET, true);
+	/** The URL and file name safe alphabet (RFC 4648 section 5); encodes with padding and requires it when decoding. */
+	public static final Base64Codec URL_SAFE = new Base64Codec(URL_SAFE_ALPHABET, true);
+	/** The URL-safe alphabet without padding, as used by JWS/JWT; accepts input with or without padding. */
+	public static final Base64Codec URL_SAFE_NO_PADDING = new Base64Codec(URL_SAFE_ALPHABET, false);
+
+	private static final char PAD = '=';
+
+	private final char[] alphabet;
+	private final byte[] encodeTable;
+	/** Maps characters (0-255) to their 6-bit value or -1 for characters outside of the alphabet. */
+	private final int[] decodeTable;
+	private final boolean padding;
+
+	private Base64Codec (char[] alphabet, boolean padding) {
+		this.alphabet = alphabet;
+		this.padding = padding;
+		this.encodeTable = new byte[64];
+		this.decodeTable = new int[256];
+		Arrays.fill(decodeTable, -1);
+		for (int i = 0; i < 64; i++) {
+			encodeTable[i] = (byte)alphabet[i];
+			decodeTable[alphabet[i]] = i;
+		}
+	}
+
+	/** True if this codec writes padding and requires it when decoding. */
+	public boolean isPadding () {
+		return padding;
+	}
+
+	/** Returns a codec with the same alphabet that doesn't write padding and accepts input with or without padding. */
+	public Base64Codec withoutPadding () {
+		return padding ? new Base64Codec(alphabet, false) : this;
+	}
+
+	/** Returns the 6-bit value of a character or -1 if it isn't part of the alphabet. */
+	public int decodeValue (int c) {
+		return (c & ~0xff) == 0 ? decodeTable[c] : -1;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------------------
+	// encoding
+
+	/** Returns the number of characters the given number of bytes are encoded to. */
+	public int encodedLength (int length) {
+		return padding ? 4 * ((length + 2) / 3) : (length * 4 + 2) / 3;
+	}
+
+	/** Encodes the bytes into a string; null is encoded as null. */
+	public String encode (byte[] data) {
+		if (data == null) {
+			return null;
+		}
+		return encode(data, 0, data.length);
+	}
+
+	/** Encodes the given range of bytes into a string. */
+	public String encode (byte[] data, int offset, int length) {
+		byte[] out = new byte[encodedLength(length)];
+		encode(data, offset, length, out, 0);
+		char[] chars = new char[out.length];
+		for (int i = 0; i < out.length; i++) {
+			chars[i] = (char)out[i];
+		}
+		return new String(chars);
+	}
+
+	/** Encodes the given range of bytes as ASCII characters into the destination array.
+	 * 
+	 * @return The number of characters written, see {@link #encodedLength(int)}. */
+	public int encode (byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+		int needed = encodedLength(length);
+		if (dst.length - dstOffset < needed) {
+			throw new IllegalArgumentException("Output buffer too small: " + needed + " bytes needed.");
+		}
+		byte[] table = encodeTable;
+		int p = offset;
+		int q = dstOffset;
+		int full = offset + (length / 3) * 3;
+		while (p < full) {
+			int b = (src[p] & 0xff) << 16 | (src[p + 1] & 0xff) << 8 | (src[p + 2] & 0xff);
+			dst[q] = table[b >>> 18];
+			dst[q + 1] = table[(b >>> 12) & 0x3f];
+			dst[q + 2] = table[(b >>> 6) & 0x3f];
+			dst[q + 3] = table[b & 0x3f];
+			p += 3;
+			q += 4;
+		}
+		int rem = offset + length - p;
+		if (rem == 1) {
+			int b = (src[p] & 0xff) << 16;
+			dst[q++] = table[b >>> 18];
+			dst[q++] = table[(b >>> 12) & 0x3f];
+			if (padding) {
+				dst[q++] = PAD;
+				dst[q++] = PAD;
+			}
+		} else if (rem == 2) {
+			int b = (src[p] & 0xff) << 16 | (src[p + 1] & 0xff) << 8;
+			dst[q++] = table[b >>> 18];
+			dst[q++] = table[(b >>> 12) & 0x3f];
+			dst[q++] = table[(b >>> 6) & 0x3f];
+			if (padding) {
+				dst[q++] = PAD;
+			}
+		}
+		return q - dstOffset;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------------------
+	// decoding
+
+	/** Returns the number of bytes the encoded characters decode to.
+	 * 
+	 * @throws IllegalArgumentException if the length or padding is invalid. */
+	public int decodedLength (CharSequence src) {
+		int end = src.length();
+		int pad = 0;
+		while (pad < 2 && end > 0 && src.charAt(end - 1) == PAD) {
+			end--;
+			pad++;
+		}
+		return decodedLength(end, pad);
+	}
+
+	/** Returns the number of bytes the encoded ASCII characters decode to.
+	 * 
+	 * @throws IllegalArgumentException if the length or padding is invalid. */
+	public int decodedLength (byte[] src, int offset, int length) {
+		int end = offset + length;
+		int pad = 0;
+		while (pad < 2 && end > offset && src[end - 1] == PAD) {
+			end--;
+			pad++;
+		}
+		return decodedLength(end - offset, pad);
+	}
+
+	/** @param n Number of characters without padding.
+	 * @param pad Number of padding characters. */
+	private int decodedLength (int n, int pad) {
+		if ((padding || pad > 0) && ((n + pad) & 3) != 0) {
+			throw new IllegalArgumentException("Invalid base 64 length: " + (n + pad) + " (padding " + pad + ").");
+		}
+		int rem = n & 3;
+		if (rem == 1) {
+			throw new IllegalArgumentException("Invalid base 64 length: " + n + ".");
+		}
+		return (n >>> 2) * 3 + (rem == 0 ? 0 : rem - 1);
+	}
+
+	/** Decodes a string; null is decoded as null. */
+	public byte[] decode (CharSequence src) {
+		if (src == null) {
+			return null;
+		}
+		byte[] dst = new byte[decodedLength(src)];
+		decode(src, dst, 0);
+		return dst;
+	}
+
+	/** Decodes the characters into the destination array.
+	 * 
+	 * @return The number of bytes written, see {@link #decodedLength(CharSequence)}.
+	 * @throws IllegalArgumentException if the input is malformed or the destination too small. */
+	public int decode (CharSequence src, byte[] dst, int dstOffset) {
+		int out = decodedLength(src);
+		if (dst.length - dstOffset < out) {
+			throw new IllegalArgumentException("Output buffer too small: " + out + " bytes needed.");
+		}
+		int[] table = decodeTable;
+		int p = 0;
+		int q = dstOffset;
+		int end = dstOffset + out;
+		int full = dstOffset + (out / 3) * 3;
+		while (q < full) {
+			int b = value(table, src.charAt(p)) << 18 | value(table, src.charAt(p + 1)) << 12
+				| value(table, src.charAt(p + 2)) << 6 | value(table, src.charAt(p + 3));
+			if (b < 0) {
+				throw invalid(src, p);
+			}
+			dst[q] = (byte)(b >> 16);
+			dst[q + 1] = (byte)(b >> 8);
+			dst[q + 2] = (byte)b;
+			p += 4;
+			q += 3;
+		}
+		if (q < end) {
+			int b = value(table, src.charAt(p)) << 18 | value(table, src.charAt(p + 1)) << 12;
+			if (end - q == 2) {
+				b |= value(table, src.charAt(p + 2)) << 6;
+			}
+			if (b < 0) {
+				throw invalid(src, p);
+			}
+			dst[q++] = (byte)(b >> 16);
+			if (q < end) {
+				dst[q++] = (byte)(b >> 8);
+			}
+		}
+		return out;
+	}
+
+	/** Decodes the given range of ASCII characters into the destination array.
+	 * 
+	 * @return The number of bytes written, see {@link #decodedLength(byte[], int, int)}.
+	 * @throws IllegalArgumentException if the input is malformed or the destination too small. */
+	public int decode (byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+		int out = decodedLength(src, offset, length);
+		if (dst.length - dstOffset < out) {
+			throw new IllegalArgumentException("Output buffer too small: " + out + " bytes needed.");
+		}
+		int[] table = decodeTable;
+		int p = offset;
+		int q = dstOffset;
+		int end = dstOffset + out;
+		int full = dstOffset + (out / 3) * 3;
+		while (q < full) {
+			int b = table[src[p] & 0xff] << 18 | table[src[p + 1] & 0xff] << 12 | table[src[p + 2] & 0xff] << 6
+				| table[src[p + 3] & 0xff];
+			if (b < 0) {
+				throw invalid(p);
+			}
+			dst[q] = (byte)(b >> 16);
+			dst[q + 1] = (byte)(b >> 8);
+			dst[q + 2] = (byte)b;
+			p += 4;
+			q += 3;
+		}
+		if (q < end) {
+			int b = table[src[p] & 0xff] << 18 | table[src[p + 1] & 0xff] << 12;
+			if (end - q == 2) {
+				b |= table[src[p + 2] & 0xff] << 6;
+			}
+			if (b < 0) {
+				throw invalid(p);
+			}
+			dst[q++] = (byte)(b >> 16);
+			if (q < end) {
+				dst[q++] = (byte)(b >> 8);
+			}
+		}
+		return out;
+	}
+
+	/** Decodes the remaining ASCII characters of the source into the destination buffer. On success the source position advances
+	 * to its limit and the destination position by the number of bytes written.
+	 * 
+	 * @return The number of bytes written.
+	 * @throws IllegalArgumentException if the input is malformed or the destination too small. */
+	public int decode (ByteBuffer src, ByteBuffer dst) {
+		byte[] in;
+		int inOffset;
+		int length = src.remaining();
+		if (src.hasArray()) {
+			in = src.array();
+			inOffset = src.arrayOffset() + src.position();
+		} else {
+			in = new byte[length];
+			src.duplicate().get(in);
+			inOffset = 0;
+		}
+		int out = decodedLength(in, inOffset, length);
+		if (dst.remaining() < out) {
+			throw new IllegalArgumentException("Output buffer too small: " + out + " bytes needed.");
+		}
+		if (dst.hasArray()) {
+			decode(in, inOffset, length, dst.array(), dst.arrayOffset() + dst.position());
+			dst.position(dst.position() + out);
+		} else {
+			byte[] decoded = new byte[out];
+			decode(in, inOffset, length, decoded, 0);
+			dst.put(decoded);
+		}
+		src.position(src.limit());
+		return out;
+	}
+
+	private static int value (int[] table, char c) {
+		return c < 256 ? table[c] : -1;
+	}
+
+	private static IllegalArgumentException invalid (CharSequence src, int quantum) {
+		for (int i = quantum; i < quantum + 4 && i < src.length(); i++) {
+			char c = src.charAt(i);
+			if (c == PAD) {
+				return new IllegalArgumentException("Unexpected padding at index " + i + ".");
+			}
+		}
+		return new IllegalArgumentException("Illegal base 64 character in quantum at index " + quantum + ".");
+	}
+
+	private static IllegalArgumentException invalid (int quantum) {
+		return new IllegalArgumentException("Illegal base 64 character in quantum at index " + quantum + ".");
+	}
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Decodes a stream of base 64 encoded ASCII characters, e.g. a large receipt, without holding all of it in memory. Whitespace
+ * (space, tab, CR, LF) is skipped, so line-wrapped input is accepted. Malformed input is reported as {@link IOException}. */
+public class Base64InputStream extends FilterInputStream {
+
+	private static final int EOF = -1;
+
+	private final Base64Codec codec;
+	private final byte[] buffer = new byte[4096];
+	private int bufferPosition;
+	private int bufferLimit;
+
+	/** Decoded bytes not read yet (at most 3). */
+	private final byte[] pending = new byte[3];
+	private int pendingPosition;
+	private int pendingLimit;
+
+	/** Number of padding characters seen; after padding only more padding and whitespace may follow. */
+	private int paddingCount;
+	/** Total number of base 64 characters including padding. */
+	private long charCount;
+	private boolean finished;
+
+	public Base64InputStream (InputStream in) {
+		this(in, Base64Codec.STANDARD);
+	}
+
+	public Base64InputStream (InputStream in, Base64Codec codec) {
+		super(in);
+		this.codec = codec;
+	}
+
+	@Override
+	public int read () throws IOException {
+		if (pendingPosition == pendingLimit && !fill()) {
+			return EOF;
+		}
+		return pending[pendingPosition++] & 0xff;
+	}
+
+	@Override
+	public int read (byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		int n = 0;
+		while (n < len) {
+			if (pendingPosition == pendingLimit && !fill()) {
+				break;
+			}
+			int count = Math.min(len - n, pendingLimit - pendingPosition);
+			System.arraycopy(pending, pendingPosition, b, off + n, count);
+			pendingPosition += count;
+			n += count;
+		}
+		return n == 0 ? EOF : n;
+	}
+
+	@Override
+	public long skip (long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && read() != EOF) {
+			skipped++;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available () throws IOException {
+		return pendingLimit - pendingPosition;
+	}
+
+	@Override
+	public boolean markSupported () {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark (int readlimit) {
+		// not supported
+	}
+
+	@Override
+	public synchronized void reset () throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/** Decodes the next quantum into the pending bytes. Returns false at the end of the stream. */
+	private boolean fill () throws IOException {
+		if (finished) {
+			return false;
+		}
+		int bits = 0;
+		int count = 0;
+		while (count < 4) {
+			int c = next();
+			if (c == EOF) {
+				break;
+			}
+			charCount++;
+			if (c == '=') {
+				paddingCount++;
+				if (paddingCount > 2) {
+					throw new IOException("Too much base 64 padding.");
+				}
+				continue;
+			}
+			if (paddingCount > 0) {
+				throw new IOException("Base 64 data after padding.");
+			}
+			int value = codec.decodeValue(c);
+			if (value < 0) {
+				throw new IOException("Illegal base 64 character: " + (char)c);
+			}
+			bits = bits << 6 | value;
+			count++;
+		}
+
+		pendingPosition = 0;
+		if (count == 4) {
+			pending[0] = (byte)(bits >> 16);
+			pending[1] = (byte)(bits >> 8);
+			pending[2] = (byte)bits;
+			pendingLimit = 3;
+			return true;
+		}
+
+		// end of data: validate the final (partial) quantum
+		finished = true;
+		if ((codec.isPadding() || paddingCount > 0) && (charCount & 3) != 0) {
+			throw new IOException("Invalid base 64 length: " + charCount + ".");
+		}
+		if (count == 0) {
+			pendingLimit = 0;
+			return false;
+		} else if (count == 2) {
+			pending[0] = (byte)(bits >> 4);
+			pendingLimit = 1;
+		} else if (count == 3) {
+			pending[0] = (byte)(bits >> 10);
+			pending[1] = (byte)(bits >> 2);
+			pendingLimit = 2;
+		} else {
+			throw new IOException("Truncated base 64 data.");
+		}
+		// make sure nothing but padding and whitespace follows
+		int c;
+		while ((c = next()) != EOF) {
+			charCount++;
+			if (c != '=' || ++paddingCount > 2) {
+				throw new IOException("Base 64 data after padding.");
+			}
+		}
+		if ((codec.isPadding() || paddingCount > 0) && (charCount & 3) != 0) {
+			throw new IOException("Invalid base 64 length: " + charCount + ".");
+		}
+		return true;
+	}
+
+	/** Returns the next non-whitespace character or EOF. */
+	private int next () throws IOException {
+		while (true) {
+			if (bufferPosition == bufferLimit) {
+				int n = in.read(buffer, 0, buffer.length);
+				if (n < 0) {
+					return EOF;
+				}
+				bufferPosition = 0;
+				bufferLimit = n;
+				continue;
+			}
+			int c = buffer[bufferPosition++] & 0xff;
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+		}
+	}
+}
@@ -16,7 +16,8 @@ package com.badlogic.gdx.pay.server.util;
  * the License.
  */
 
-/** A utility to decode and encode byte arrays as Strings, using only "safe" characters. */
+/** A utility to decode and encode byte arrays as Strings, using only "safe" characters. Note the alphabet is not RFC 4648
+ * compliant: use {@link Base64Codec} for keys, signatures and receipts issued by the stores. */
 public final class Base64Util {
 
 	/** An array mapping size but values to the characters that will be used to represent them. Note that this is not identical to
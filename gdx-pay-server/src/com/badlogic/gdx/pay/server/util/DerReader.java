@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+
+/** Reads ASN.1 DER (and the BER indefinite-length and constructed-string forms found in PKCS#7 containers) element by element
+ * straight from a byte array, without copying. Call {@link #next()} to advance to the next element on the current level and
+ * {@link #contents()} to descend into a constructed element. Malformed data is reported as {@link IOException}, including
+ * elements nested deeper than {@link #MAX_DEPTH} levels, which legitimate PKCS#7 or certificate data never is.
+ * 
+ * <pre>
+ * DerReader sequence = new DerReader(bytes).expect(DerReader.SEQUENCE).contents();
+ * long version = sequence.expect(DerReader.INTEGER).longValue();
+ * </pre> */
+public final class DerReader {
+
+	public static final int INTEGER = 0x02;
+	public static final int BIT_STRING = 0x03;
+	public static final int OCTET_STRING = 0x04;
+	public static final int NULL = 0x05;
+	public static final int OBJECT_IDENTIFIER = 0x06;
+	public static final int UTF8_STRING = 0x0c;
+	public static final int PRINTABLE_STRING = 0x13;
+	public static final int IA5_STRING = 0x16;
+	public static final int UTC_TIME = 0x17;
+	public static final int SEQUENCE = 0x30;
+	public static final int SET = 0x31;
+	/** Context-specific, constructed tag [0]. */
+	public static final int CONTEXT_0 = 0xa0;
+	/** Context-specific, constructed tag [1]. */
+	public static final int CONTEXT_1 = 0xa1;
+
+	/** Maximum nesting of constructed elements. Bounds the recursion (and the rescanning) of indefinite-length elements and
+	 * constructed octet strings. */
+	public static final int MAX_DEPTH = 32;
+
+	private static final int CONSTRUCTED = 0x20;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private final byte[] data;
+	private final int end;
+	private final int depth;
+	private int position;
+
+	// the current element
+	private int tag = -1;
+	private int elementOffset;
+	private int valueOffset;
+	private int valueLength;
+	/** True if the current element used the indefinite-length form (its value is followed by two zero bytes). */
+	private boolean indefinite;
+
+	public DerReader (byte[] data) {
+		this(data, 0, data.length);
+	}
+
+	public DerReader (byte[] data, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > data.length) {
+			throw new IllegalArgumentException("Invalid range: " + offset + "+" + length);
+		}
+		this.data = data;
+		this.position = offset;
+		this.end = offset + length;
+		this.depth = 0;
+	}
+
+	/** Reader for the elements nested in an element of the given reader. */
+	private DerReader (DerReader parent, int offset, int length) throws IOException {
+		if (parent.depth >= MAX_DEPTH) {
+			throw new IOException("Elements nested too deeply at offset " + offset);
+		}
+		this.data = parent.data;
+		this.position = offset;
+		this.end = offset + length;
+		this.depth = parent.depth + 1;
+	}
+
+	/** True if there is another element on this level. */
+	public boolean hasNext () {
+		// two zero bytes terminate an indefinite-length value
+		return position < end && !(data[position] == 0 && position + 1 < end && data[position + 1] == 0);
+	}
+
+	/** Advances to the next element on this level and returns its tag. */
+	public int next () throws IOException {
+		if (!hasNext()) {
+			throw new IOException("No more elements at offset " + position);
+		}
+		elementOffset = position;
+		int p = position;
+		tag = data[p++] & 0xff;
+		if ((tag & 0x1f) == 0x1f) {
+			throw new IOException("High tag numbers not supported at offset " + elementOffset);
+		}
+		if (p >= end) {
+			throw new IOException("Truncated element at offset " + elementOffset);
+		}
+		int length = data[p++] & 0xff;
+		indefinite = false;
+		if (length == 0x80) {
+			if ((tag & CONSTRUCTED) == 0) {
+				throw new IOException("Indefinite length for primitive element at offset " + elementOffset);
+			}
+			indefinite = true;
+			valueOffset = p;
+			valueLength = indefiniteLength(p);
+			position = valueOffset + valueLength + 2;
+			return tag;
+		} else if (length > 0x80) {
+			int count = length & 0x7f;
+			if (count > 4 || p + count > end) {
+				throw new IOException("Invalid length at offset " + elementOffset);
+			}
+			length = 0;
+			for (int i = 0; i < count; i++) {
+				length = (length << 8) | (data[p++] & 0xff);
+			}
+			if (length < 0) {
+				throw new IOException("Invalid length at offset " + elementOffset);
+			}
+		}
+		if (length > end - p) {
+			throw new IOException("Element exceeds its container at offset " + elementOffset);
+		}
+		valueOffset = p;
+		valueLength = length;
+		position = p + length;
+		return tag;
+	}
+
+	/** Advances to the next element and checks its tag. Returns this for chaining. */
+	public DerReader expect (int expectedTag) throws IOException {
+		int actual = next();
+		if (actual != expectedTag) {
+			throw new IOException("Expected tag 0x" + Integer.toHexString(expectedTag) + " but was 0x" + Integer.toHexString(actual)
+				+ " at offset " + elementOffset);
+		}
+		return this;
+	}
+
+	/** Returns the length of an indefinite-length value starting at the given offset. */
+	private int indefiniteLength (int start) throws IOException {
+		DerReader nested = new DerReader(this, start, end - start);
+		while (nested.hasNext()) {
+			nested.next();
+		}
+		if (nested.position + 2 > end) {
+			throw new IOException("Unterminated indefinite-length element at offset " + elementOffset);
+		}
+		return nested.position - start;
+	}
+
+	/** The tag of the current element. */
+	public int tag () {
+		return tag;
+	}
+
+	public boolean isConstructed () {
+		return (tag & CONSTRUCTED) != 0;
+	}
+
+	/** The underlying array. */
+	public byte[] data () {
+		return data;
+	}
+
+	/** Offset of the current element's value in {@link #data()}. */
+	public int valueOffset () {
+		return valueOffset;
+	}
+
+	/** Length of the current element's value. */
+	public int valueLength () {
+		return valueLength;
+	}
+
+	/** Offset of the current element including its tag and length in {@link #data()}. */
+	public int elementOffset () {
+		return elementOffset;
+	}
+
+	/** Length of the current element including its tag and length (and end-of-contents octets, if any). */
+	public int elementLength () {
+		return valueOffset + valueLength + (indefinite ? 2 : 0) - elementOffset;
+	}
+
+	/** Returns a reader for the elements inside the current (constructed) element. */
+	public DerReader contents () throws IOException {
+		if (!isConstructed()) {
+			throw new IOException("Element is not constructed at offset " + elementOffset);
+		}
+		return new DerReader(this, valueOffset, valueLength);
+	}
+
+	/** Returns a copy of the current element's value. */
+	public byte[] valueBytes () {
+		byte[] bytes = new byte[valueLength];
+		System.arraycopy(data, valueOffset, bytes, 0, valueLength);
+		return bytes;
+	}
+
+	/** Returns a copy of the current element including tag and length. */
+	public byte[] elementBytes () {
+		int length = elementLength();
+		byte[] bytes = new byte[length];
+		System.arraycopy(data, elementOffset, bytes, 0, length);
+		return bytes;
+	}
+
+	/** Returns the octets of the current OCTET STRING, joining the segments of a constructed (BER) octet string. */
+	public byte[] octets () throws IOException {
+		if (tag == OCTET_STRING) {
+			return valueBytes();
+		}
+		if (tag != (OCTET_STRING | CONSTRUCTED)) {
+			throw new IOException("Expected octet string at offset " + elementOffset);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(valueLength);
+		DerReader segments = contents();
+		while (segments.hasNext()) {
+			segments.next();
+			byte[] segment = segments.octets();
+			out.write(segment, 0, segment.length);
+		}
+		return out.toByteArray();
+	}
+
+	/** Returns the current INTEGER, which must fit into a long. */
+	public long longValue () throws IOException {
+		if (valueLength < 1 || valueLength > 8) {
+			throw new IOException("Integer out of range at offset " + elementOffset);
+		}
+		long value = data[valueOffset]; // sign-extended
+		for (int i = 1; i < valueLength; i++) {
+			value = (value << 8) | (data[valueOffset + i] & 0xff);
+		}
+		return value;
+	}
+
+	/** Returns the current INTEGER of any size. */
+	public BigInteger bigIntegerValue () throws IOException {
+		if (valueLength < 1) {
+			throw new IOException("Empty integer at offset " + elementOffset);
+		}
+		return new BigInteger(valueBytes());
+	}
+
+	/** Returns the current OBJECT IDENTIFIER in dotted form, e.g. "1.2.840.113549.1.7.2". */
+	public String oidValue () throws IOException {
+		if (tag != OBJECT_IDENTIFIER || valueLength < 1) {
+			throw new IOException("Expected object identifier at offset " + elementOffset);
+		}
+		StringBuilder oid = new StringBuilder(32);
+		long component = 0;
+		boolean first = true;
+		for (int i = 0; i < valueLength; i++) {
+			int b = data[valueOffset + i] & 0xff;
+			component = (component << 7) | (b & 0x7f);
+			if (component > Integer.MAX_VALUE) {
+				throw new IOException("Object identifier component too large at offset " + elementOffset);
+			}
+			if ((b & 0x80) == 0) {
+				if (first) {
+					int top = component < 80 ? (int)(component / 40) : 2;
+					oid.append(top).append('.').append(component - top * 40);
+					first = false;
+				} else {
+					oid.append('.').append(component);
+				}
+				component = 0;
+			}
+		}
+		return oid.toString();
+	}
+
+	/** Returns the current UTF8String, IA5String or PrintableString. */
+	public String stringValue () throws IOException {
+		switch (tag) {
+		case UTF8_STRING:
+			return new String(data, valueOffset, valueLength, UTF_8);
+		case IA5_STRING:
+		case PRINTABLE_STRING:
+			return new String(data, valueOffset, valueLength, ISO_8859_1);
+		default:
+			throw new IOException("Expected string at offset " + elementOffset);
+		}
+	}
+}
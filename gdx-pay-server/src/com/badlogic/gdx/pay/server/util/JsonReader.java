@@ -0,0 +1,535 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.server.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/** Minimal single-pass JSON pull parser for store responses. Reads through a fixed-size buffer, so memory use is bounded
+ * regardless of document size, and values that aren't needed can be skipped via {@link #skipValue()} without creating strings.
+ * 
+ * <pre>
+ * JsonReader reader = new JsonReader(inputStream);
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *   switch (reader.nextName(NAMES)) {
+ *     case 0: status = reader.nextInt(); break;
+ *     default: reader.skipValue(); break;
+ *   }
+ * }
+ * reader.endObject();
+ * </pre>
+ * 
+ * Syntax errors are reported as {@link IOException}. Not thread-safe. */
+public class JsonReader implements Closeable {
+
+	/** The kinds of tokens returned by {@link JsonReader#peek()}. */
+	public enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int EOF = -1;
+
+	// scopes on the stack
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_OBJECT = 2;
+	private static final int DANGLING_NAME = 3;
+	private static final int NONEMPTY_OBJECT = 4;
+	private static final int EMPTY_ARRAY = 5;
+	private static final int NONEMPTY_ARRAY = 6;
+
+	private final Reader reader;
+	private final char[] buffer = new char[1024];
+	private int position;
+	private int limit;
+	/** Characters consumed before the current buffer, for error messages. */
+	private long offset;
+
+	private int[] stack = new int[16];
+	private int stackSize;
+
+	/** The next token if peeked already, null otherwise. For NAME and STRING the opening quote was consumed. */
+	private Token peeked;
+
+	/** Reused for strings, names and literals. */
+	private final StringBuilder text = new StringBuilder(64);
+
+	/** Reads UTF-8 encoded JSON from the stream. */
+	public JsonReader (InputStream in) {
+		this(new InputStreamReader(in, UTF_8));
+	}
+
+	public JsonReader (Reader reader) {
+		this.reader = reader;
+		stack[stackSize++] = EMPTY_DOCUMENT;
+	}
+
+	/** Returns the type of the next token without consuming it. */
+	public Token peek () throws IOException {
+		if (peeked != null) {
+			return peeked;
+		}
+		int c;
+		switch (stack[stackSize - 1]) {
+		case EMPTY_ARRAY:
+			stack[stackSize - 1] = NONEMPTY_ARRAY;
+			c = nextNonWhitespace();
+			if (c == ']') {
+				return peeked = Token.END_ARRAY;
+			} else if (c == EOF) {
+				throw syntaxError("Unterminated array");
+			}
+			position--;
+			return peeked = peekValue();
+		case NONEMPTY_ARRAY:
+			c = nextNonWhitespace();
+			if (c == ']') {
+				return peeked = Token.END_ARRAY;
+			} else if (c != ',') {
+				throw syntaxError("Expected ',' or ']'");
+			}
+			return peeked = peekValue();
+		case EMPTY_OBJECT:
+		case NONEMPTY_OBJECT:
+			c = nextNonWhitespace();
+			if (c == '}') {
+				return peeked = Token.END_OBJECT;
+			}
+			if (stack[stackSize - 1] == NONEMPTY_OBJECT) {
+				if (c != ',') {
+					throw syntaxError("Expected ',' or '}'");
+				}
+				c = nextNonWhitespace();
+			}
+			if (c != '"') {
+				throw syntaxError("Expected name");
+			}
+			stack[stackSize - 1] = DANGLING_NAME;
+			return peeked = Token.NAME;
+		case DANGLING_NAME:
+			if (nextNonWhitespace() != ':') {
+				throw syntaxError("Expected ':'");
+			}
+			stack[stackSize - 1] = NONEMPTY_OBJECT;
+			return peeked = peekValue();
+		case EMPTY_DOCUMENT:
+			stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+			return peeked = peekValue();
+		default:
+			if (nextNonWhitespace() != EOF) {
+				throw syntaxError("Expected end of document");
+			}
+			return peeked = Token.END_DOCUMENT;
+		}
+	}
+
+	private Token peekValue () throws IOException {
+		int c = nextNonWhitespace();
+		switch (c) {
+		case '{':
+			return Token.BEGIN_OBJECT;
+		case '[':
+			return Token.BEGIN_ARRAY;
+		case '"':
+			return Token.STRING;
+		case 't':
+		case 'f':
+			position--;
+			return Token.BOOLEAN;
+		case 'n':
+			position--;
+			return Token.NULL;
+		case EOF:
+			throw syntaxError("Unexpected end of document");
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				position--;
+				return Token.NUMBER;
+			}
+			throw syntaxError("Unexpected character '" + (char)c + "'");
+		}
+	}
+
+	public void beginObject () throws IOException {
+		expect(Token.BEGIN_OBJECT);
+		push(EMPTY_OBJECT);
+	}
+
+	public void endObject () throws IOException {
+		expect(Token.END_OBJECT);
+		stackSize--;
+	}
+
+	public void beginArray () throws IOException {
+		expect(Token.BEGIN_ARRAY);
+		push(EMPTY_ARRAY);
+	}
+
+	public void endArray () throws IOException {
+		expect(Token.END_ARRAY);
+		stackSize--;
+	}
+
+	/** Returns true if the current object or array has more elements. */
+	public boolean hasNext () throws IOException {
+		Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+	}
+
+	/** Returns the next property name. */
+	public String nextName () throws IOException {
+		expect(Token.NAME);
+		readString(true);
+		return text.toString();
+	}
+
+	/** Consumes the next property name and returns its index in the candidates or -1 if it's none of them. Doesn't allocate. */
+	public int nextName (String[] candidates) throws IOException {
+		expect(Token.NAME);
+		readString(true);
+		int length = text.length();
+		for (int i = 0; i < candidates.length; i++) {
+			String candidate = candidates[i];
+			if (candidate.length() == length && contentEquals(candidate)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean contentEquals (String candidate) {
+		for (int i = candidate.length() - 1; i >= 0; i--) {
+			if (text.charAt(i) != candidate.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Returns the next string; numbers are returned in their literal form. */
+	public String nextString () throws IOException {
+		Token token = peek();
+		if (token == Token.STRING) {
+			peeked = null;
+			readString(true);
+		} else if (token == Token.NUMBER) {
+			peeked = null;
+			readLiteral();
+		} else {
+			throw syntaxError("Expected string but was " + token);
+		}
+		return text.toString();
+	}
+
+	/** Returns the next string or null if the value is null. */
+	public String nextStringOrNull () throws IOException {
+		if (peek() == Token.NULL) {
+			nextNull();
+			return null;
+		}
+		return nextString();
+	}
+
+	/** Returns the next integral number. Strings containing a number (e.g. "1500000000000") are accepted too, as stores return
+	 * many numbers as strings. */
+	public long nextLong () throws IOException {
+		Token token = peek();
+		if (token == Token.STRING) {
+			peeked = null;
+			readString(true);
+		} else if (token == Token.NUMBER) {
+			peeked = null;
+			readLiteral();
+		} else {
+			throw syntaxError("Expected number but was " + token);
+		}
+		return parseLong();
+	}
+
+	/** Returns the next integral number, see {@link #nextLong()}. */
+	public int nextInt () throws IOException {
+		long value = nextLong();
+		if ((int)value != value) {
+			throw syntaxError("Number out of int range: " + value);
+		}
+		return (int)value;
+	}
+
+	/** Returns the next boolean. The strings "true" and "false" are accepted too. */
+	public boolean nextBoolean () throws IOException {
+		Token token = peek();
+		if (token == Token.BOOLEAN) {
+			peeked = null;
+			readLiteral();
+		} else if (token == Token.STRING) {
+			peeked = null;
+			readString(true);
+		} else {
+			throw syntaxError("Expected boolean but was " + token);
+		}
+		if (contentIs("true")) {
+			return true;
+		} else if (contentIs("false")) {
+			return false;
+		}
+		throw syntaxError("Expected boolean but was '" + text + "'");
+	}
+
+	public void nextNull () throws IOException {
+		expect(Token.NULL);
+		readLiteral();
+		if (!contentIs("null")) {
+			throw syntaxError("Expected null but was '" + text + "'");
+		}
+	}
+
+	/** Skips the next value including nested objects and arrays, without creating strings for it. */
+	public void skipValue () throws IOException {
+		int depth = 0;
+		do {
+			Token token = peek();
+			peeked = null;
+			switch (token) {
+			case BEGIN_OBJECT:
+				push(EMPTY_OBJECT);
+				depth++;
+				break;
+			case BEGIN_ARRAY:
+				push(EMPTY_ARRAY);
+				depth++;
+				break;
+			case END_OBJECT:
+			case END_ARRAY:
+				if (depth == 0) {
+					throw syntaxError("Expected value but was " + token);
+				}
+				stackSize--;
+				depth--;
+				break;
+			case NAME:
+			case STRING:
+				readString(false);
+				break;
+			case NUMBER:
+				skipLiteral();
+				break;
+			case BOOLEAN:
+			case NULL:
+				readLiteral();
+				if (!contentIs("true") && !contentIs("false") && !contentIs("null")) {
+					throw syntaxError("Unexpected literal '" + text + "'");
+				}
+				break;
+			default:
+				throw syntaxError("Expected value but was " + token);
+			}
+		} while (depth != 0);
+	}
+
+	@Override
+	public void close () throws IOException {
+		reader.close();
+	}
+
+	private void expect (Token expected) throws IOException {
+		Token token = peek();
+		if (token != expected) {
+			throw syntaxError("Expected " + expected + " but was " + token);
+		}
+		peeked = null;
+	}
+
+	private void push (int scope) {
+		if (stackSize == stack.length) {
+			int[] grown = new int[stack.length * 2];
+			System.arraycopy(stack, 0, grown, 0, stackSize);
+			stack = grown;
+		}
+		stack[stackSize++] = scope;
+	}
+
+	private boolean contentIs (String value) {
+		return text.length() == value.length() && contentEquals(value);
+	}
+
+	private long parseLong () throws IOException {
+		int length = text.length();
+		if (length == 0 || length > 20) {
+			throw syntaxError("Expected integral number but was '" + text + "'");
+		}
+		int i = 0;
+		boolean negative = text.charAt(0) == '-';
+		if (negative) {
+			i++;
+		}
+		if (i == length) {
+			throw syntaxError("Expected integral number but was '" + text + "'");
+		}
+		long value = 0;
+		for (; i < length; i++) {
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw syntaxError("Expected integral number but was '" + text + "'");
+			}
+			if (value < Long.MIN_VALUE / 10 || (value == Long.MIN_VALUE / 10 && digit > 8)) {
+				throw syntaxError("Number out of range: " + text);
+			}
+			// accumulate negatively to cover Long.MIN_VALUE
+			value = value * 10 - digit;
+		}
+		if (!negative) {
+			if (value == Long.MIN_VALUE) {
+				throw syntaxError("Number out of range: " + text);
+			}
+			value = -value;
+		}
+		return value;
+	}
+
+	/** Reads a string whose opening quote was consumed. Stores it in {@link #text} if requested, skips it otherwise. */
+	private void readString (boolean keep) throws IOException {
+		text.setLength(0);
+		while (true) {
+			int start = position;
+			while (position < limit) {
+				char c = buffer[position++];
+				if (c == '"') {
+					if (keep) {
+						text.append(buffer, start, position - start - 1);
+					}
+					return;
+				} else if (c == '\\') {
+					if (keep) {
+						text.append(buffer, start, position - start - 1);
+					}
+					char escaped = readEscape();
+					if (keep) {
+						text.append(escaped);
+					}
+					start = position;
+				}
+			}
+			if (keep) {
+				text.append(buffer, start, position - start);
+			}
+			if (!fill()) {
+				throw syntaxError("Unterminated string");
+			}
+		}
+	}
+
+	private char readEscape () throws IOException {
+		int c = nextChar();
+		switch (c) {
+		case 'u':
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(nextChar(), 16);
+				if (digit < 0) {
+					throw syntaxError("Invalid unicode escape");
+				}
+				value = (value << 4) | digit;
+			}
+			return (char)value;
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case '"':
+		case '\\':
+		case '/':
+			return (char)c;
+		default:
+			throw syntaxError("Invalid escape sequence");
+		}
+	}
+
+	/** Reads an unquoted literal (number, true, false, null) into {@link #text}. */
+	private void readLiteral () throws IOException {
+		text.setLength(0);
+		int c;
+		while ((c = nextChar()) != EOF) {
+			if (isDelimiter(c)) {
+				position--;
+				break;
+			}
+			text.append((char)c);
+		}
+	}
+
+	private void skipLiteral () throws IOException {
+		int c;
+		while ((c = nextChar()) != EOF) {
+			if (isDelimiter(c)) {
+				position--;
+				break;
+			}
+		}
+	}
+
+	private static boolean isDelimiter (int c) {
+		return c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+
+	private int nextNonWhitespace () throws IOException {
+		while (true) {
+			int c = nextChar();
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+		}
+	}
+
+	private int nextChar () throws IOException {
+		if (position == limit && !fill()) {
+			return EOF;
+		}
+		return buffer[position++];
+	}
+
+	/** Refills the buffer. Returns false at the end of the input. */
+	private boolean fill () throws IOException {
+		offset += limit;
+		position = 0;
+		limit = 0;
+		int n;
+		while ((n = reader.read(buffer, 0, buffer.length)) == 0) {
+			// try again
+		}
+		if (n < 0) {
+			return false;
+		}
+		limit = n;
+		return true;
+	}
+
+	private IOException syntaxError (String message) {
+		return new IOException(message + " at offset " + (offset + position));
+	}
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.badlogic.gdx.pay.server.util;
+
+import java.io.IOException;
+import java.util.Date;
+
+import com.badlogic.gdx.pay.Transaction;
+
+/** Reads transactions from JSON objects with the {@link Transaction} property names, e.g.
+ * {"storeName":"AppleiOS","identifier":"coins_100","orderId":"...","purchaseTime":1500000000000,"transactionData":"..."}. */
+public final class TransactionJson {
+
+	private static final String[] NAMES = {"identifier", "storeName", "orderId", "requestId", "userId", "purchaseTime",
+		"purchaseText", "purchaseCost", "purchaseCostCurrency", "reversalTime", "reversalText", "transactionData",
+		"transactionDataSignature"};
+
+	private TransactionJson () {
+		// not used
+	}
+
+	/** Reads a transaction object; unknown fields are skipped. Times are in milliseconds since the epoch. */
+	public static Transaction read (JsonReader reader) throws IOException {
+		Transaction transaction = new Transaction();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			int name = reader.nextName(NAMES);
+			if (name >= 0 && reader.peek() == JsonReader.Token.NULL) {
+				reader.nextNull();
+				continue;
+			}
+			switch (name) {
+			case 0:
+				transaction.setIdentifier(reader.nextString());
+				break;
+			case 1:
+				transaction.setStoreName(reader.nextString());
+				break;
+			case 2:
+				transaction.setOrderId(reader.nextString());
+				break;
+			case 3:
+				transaction.setRequestId(reader.nextString());
+				break;
+			case 4:
+				transaction.setUserId(reader.nextString());
+				break;
+			case 5:
+				transaction.setPurchaseTime(new Date(reader.nextLong()));
+				break;
+			case 6:
+				transaction.setPurchaseText(reader.nextString());
+				break;
+			case 7:
+				transaction.setPurchaseCost(reader.nextInt());
+				break;
+			case 8:
+				transaction.setPurchaseCostCurrency(reader.nextString());
+				break;
+			case 9:
+				transaction.setReversalTime(new Date(reader.nextLong()));
+				break;
+			case 10:
+				transaction.setReversalText(reader.nextString());
+				break;
+			case 11:
+				transaction.setTransactionData(reader.nextString());
+				break;
+			case 12:
+				transaction.setTransactionDataSignature(reader.nextString());
+				break;
+			default:
+				reader.skipValue();
+				break;
+			}
+		}
+		reader.endObject();
+		return transaction;
+	}
+
+	/** Returns the string as JSON string literal, or null as JSON null. */
+	public static String quote (String value) {
+		if (value == null) {
+			return "null";
+		}
+		StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0, n = value.length(); i < n; i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			} else if (c < ' ') {
+				String hex = Integer.toHexString(c);
+				builder.append("\\u0000", 0, 6 - hex.length()).append(hex);
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.append('"').toString();
+	}
+}
@@ -0,0 +1,169 @@
+package com.badlogic.gdx.pay.server;
+
+import com.badlogic.gdx.pay.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BulkVerifierTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Set<String> verified = Collections.synchronizedSet(new HashSet<String>());
+    private PurchaseVerifierManager manager;
+    private BulkVerifier bulkVerifier;
+    private File input, output, checkpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        manager = new PurchaseVerifierManager(false);
+        manager.addVerifier(new TestVerifier());
+        bulkVerifier = new BulkVerifier(manager);
+        bulkVerifier.setProgressListener(null);
+        input = File.createTempFile("bulk", ".in");
+        output = File.createTempFile("bulk", ".out");
+        checkpoint = new File(output.getPath() + ".checkpoint");
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+        input.delete();
+        output.delete();
+        checkpoint.delete();
+    }
+
+    @Test
+    public void everyLineShouldBeAnsweredInOrder() throws Exception {
+        write(input, transaction("ok", "1") + "\n\n" + transaction("bad", "2") + "\r\n{\"storeName\":\n"
+                + transaction("down", "3"));
+
+        BulkVerifier.Progress progress = bulkVerifier.run(input, output, checkpoint);
+
+        String[] lines = read(output).split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("{\"line\":1,\"storeName\":\"Test\",\"orderId\":\"1\",\"valid\":true}", lines[0]);
+        assertEquals("{\"line\":3,\"storeName\":\"Test\",\"orderId\":\"2\",\"valid\":false}", lines[1]);
+        assertTrue(lines[2], lines[2].startsWith("{\"line\":4,\"error\":\"malformed: "));
+        assertEquals("{\"line\":5,\"storeName\":\"Test\",\"orderId\":\"3\",\"error\":\"unavailable\",\"store\":\"Test\"}", lines[3]);
+        assertEquals(4, progress.getLines());
+        assertEquals(1, progress.getValid());
+        assertEquals(1, progress.getInvalid());
+        assertEquals(2, progress.getErrors());
+        assertFalse(checkpoint.exists());
+    }
+
+    @Test
+    public void missingStoreNameAndOrderIdShouldBeWrittenAsNull() throws Exception {
+        write(input, "{\"identifier\":\"ok\"}\n{\"storeName\":\"Test\",\"identifier\":\"ok\"}\n");
+
+        bulkVerifier.run(input, output, null);
+
+        String[] lines = read(output).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("{\"line\":1,\"storeName\":null,\"orderId\":null,"));
+        assertEquals("{\"line\":2,\"storeName\":\"Test\",\"orderId\":null,\"valid\":true}", lines[1]);
+    }
+
+    @Test
+    public void errorInVerifierShouldFinishTheLine() throws Exception {
+        write(input, transaction("error", "1") + "\n" + transaction("error", "2") + "\n" + transaction("ok", "3") + "\n");
+
+        BulkVerifier.Progress progress = bulkVerifier.run(input, output, null);
+
+        String[] lines = read(output).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].contains("\"error\":\"java.lang.AssertionError: broken\""));
+        assertTrue(lines[1], lines[1].contains("\"error\":\"java.lang.AssertionError: broken\""));
+        assertTrue(lines[2], lines[2].endsWith("\"valid\":true}"));
+        assertEquals(2, progress.getErrors());
+    }
+
+    @Test
+    public void runShouldResumeAfterCheckpoint() throws Exception {
+        String first = transaction("ok", "1") + "\n" + transaction("bad", "2") + "\n";
+        write(input, first + transaction("ok", "3") + "\n" + transaction("ok", "4") + "\n");
+        String done = "{\"line\":1,\"storeName\":\"Test\",\"orderId\":\"1\",\"valid\":true}\n"
+                + "{\"line\":2,\"storeName\":\"Test\",\"orderId\":\"2\",\"valid\":false}\n";
+        // the previous run died after writing part of line 3 past its checkpoint
+        write(output, done + "{\"line\":3,\"stor");
+        write(checkpoint, "inputOffset=" + first.getBytes(UTF_8).length + "\ninputLine=2\noutputLength="
+                + done.getBytes(UTF_8).length + "\nlines=2\nvalid=1\ninvalid=1\nerrors=0\n");
+
+        BulkVerifier.Progress progress = bulkVerifier.run(input, output, checkpoint);
+
+        assertEquals(done + "{\"line\":3,\"storeName\":\"Test\",\"orderId\":\"3\",\"valid\":true}\n"
+                + "{\"line\":4,\"storeName\":\"Test\",\"orderId\":\"4\",\"valid\":true}\n", read(output));
+        assertEquals(2, verified.size());
+        assertTrue(verified.contains("3"));
+        assertEquals(4, progress.getLines());
+        assertEquals(3, progress.getValid());
+        assertEquals(1, progress.getInvalid());
+        assertFalse(checkpoint.exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void outputShorterThanCheckpointShouldBeRejected() throws Exception {
+        write(input, transaction("ok", "1") + "\n");
+        write(checkpoint, "inputOffset=0\ninputLine=0\noutputLength=100\nlines=0\nvalid=0\ninvalid=0\nerrors=0\n");
+
+        bulkVerifier.run(input, output, checkpoint);
+    }
+
+    private static String transaction(String identifier, String orderId) {
+        return "{\"storeName\":\"Test\",\"identifier\":\"" + identifier + "\",\"orderId\":\"" + orderId + "\"}";
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) != -1;) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    private class TestVerifier implements PurchaseVerifier {
+        @Override
+        public String storeName() {
+            return "Test";
+        }
+
+        @Override
+        public boolean isValid(Transaction transaction) {
+            verified.add(String.valueOf(transaction.getOrderId()));
+            String identifier = transaction.getIdentifier();
+            if ("down".equals(identifier)) throw new VerifierUnavailableException("Test", "down");
+            if ("error".equals(identifier)) throw new AssertionError("broken");
+            return !"bad".equals(identifier);
+        }
+    }
+}
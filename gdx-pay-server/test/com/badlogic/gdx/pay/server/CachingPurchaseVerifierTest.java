@@ -0,0 +1,90 @@
+package com.badlogic.gdx.pay.server;
+
+import com.badlogic.gdx.pay.Transaction;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CachingPurchaseVerifierTest {
+
+    private CountingVerifier verifier;
+    private CachingPurchaseVerifier cache;
+
+    @Before
+    public void setUp() {
+        verifier = new CountingVerifier();
+        cache = new CachingPurchaseVerifier(verifier, 100, 60000, 60000);
+        cache.setMetrics(null);
+    }
+
+    @Test
+    public void sameTransactionShouldHitTheCache() {
+        assertTrue(cache.isValid(transaction("com.x.coins", "user")));
+        assertTrue(cache.isValid(transaction("com.x.coins", "user")));
+
+        assertEquals(1, verifier.calls.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void changedIdentifierShouldMissTheCache() {
+        assertTrue(cache.isValid(transaction("com.x.coins", "user")));
+
+        // same order, data and signature, claimed for a more expensive product
+        assertFalse(cache.isValid(transaction("com.x.gems", "user")));
+
+        assertEquals(2, verifier.calls.get());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void changedUserIdShouldMissTheCache() {
+        assertTrue(cache.isValid(transaction("com.x.coins", "user")));
+
+        assertFalse(cache.isValid(transaction("com.x.coins", "other")));
+
+        assertEquals(2, verifier.calls.get());
+    }
+
+    @Test
+    public void changedSignatureShouldMissTheCache() {
+        assertTrue(cache.isValid(transaction("com.x.coins", "user")));
+        Transaction forged = transaction("com.x.coins", "user");
+        forged.setTransactionDataSignature("forged");
+
+        assertFalse(cache.isValid(forged));
+
+        assertEquals(2, verifier.calls.get());
+    }
+
+    private static Transaction transaction(String identifier, String userId) {
+        Transaction transaction = new Transaction();
+        transaction.setStoreName("Test");
+        transaction.setIdentifier(identifier);
+        transaction.setUserId(userId);
+        transaction.setOrderId("order");
+        transaction.setTransactionData("data");
+        transaction.setTransactionDataSignature("signature");
+        return transaction;
+    }
+
+    /** Accepts only the original purchase: coins for "user" with the original signature. */
+    static class CountingVerifier implements PurchaseVerifier {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String storeName() {
+            return "Test";
+        }
+
+        @Override
+        public boolean isValid(Transaction transaction) {
+            calls.incrementAndGet();
+            return "com.x.coins".equals(transaction.getIdentifier()) && "user".equals(transaction.getUserId())
+                    && "signature".equals(transaction.getTransactionDataSignature());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.badlogic.gdx.pay.server;
+
+import com.badlogic.gdx.pay.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CoalescingPurchaseVerifierTest {
+
+    private BlockingVerifier verifier;
+    private CoalescingPurchaseVerifier coalescing;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        verifier = new BlockingVerifier();
+        coalescing = new CoalescingPurchaseVerifier(verifier);
+        coalescing.setMetrics(null);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        verifier.release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void identicalVerificationsShouldShareOneCall() throws Exception {
+        Future<Boolean> first = verify(transaction("coins", "user"));
+        assertTrue(verifier.entered.tryAcquire(5, TimeUnit.SECONDS));
+        Future<Boolean> second = verify(transaction("coins", "user"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalescing.getCoalesced() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+
+        verifier.release.countDown();
+
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertTrue(second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, coalescing.getCoalesced());
+    }
+
+    @Test
+    public void verificationsOfOtherUsersShouldNotBeShared() throws Exception {
+        Future<Boolean> first = verify(transaction("coins", "user"));
+        Future<Boolean> second = verify(transaction("coins", "other"));
+
+        // both reach the store, while the other is still in flight
+        assertTrue(verifier.entered.tryAcquire(2, 5, TimeUnit.SECONDS));
+        verifier.release.countDown();
+
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertFalse(second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, coalescing.getCoalesced());
+    }
+
+    @Test
+    public void verificationsOfOtherProductsShouldNotBeShared() throws Exception {
+        Future<Boolean> first = verify(transaction("coins", "user"));
+        Future<Boolean> second = verify(transaction("gems", "user"));
+
+        assertTrue(verifier.entered.tryAcquire(2, 5, TimeUnit.SECONDS));
+        verifier.release.countDown();
+
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertFalse(second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, coalescing.getCoalesced());
+    }
+
+    private Future<Boolean> verify(final Transaction transaction) {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return coalescing.isValid(transaction);
+            }
+        });
+    }
+
+    private static Transaction transaction(String identifier, String userId) {
+        Transaction transaction = new Transaction();
+        transaction.setStoreName("Test");
+        transaction.setIdentifier(identifier);
+        transaction.setUserId(userId);
+        transaction.setOrderId("order");
+        transaction.setTransactionData("data");
+        transaction.setTransactionDataSignature("signature");
+        return transaction;
+    }
+
+    /** Blocks every call until released; accepts only coins for "user". */
+    static class BlockingVerifier implements PurchaseVerifier {
+        final Semaphore entered = new Semaphore(0);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public String storeName() {
+            return "Test";
+        }
+
+        @Override
+        public boolean isValid(Transaction transaction) {
+            entered.release();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new VerifierUnavailableException(storeName(), "Interrupted");
+            }
+            return "coins".equals(transaction.getIdentifier()) && "user".equals(transaction.getUserId());
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.badlogic.gdx.pay.server;
+
+import com.badlogic.gdx.pay.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PurchaseVerifierManagerTest {
+
+    private PurchaseVerifierManager manager;
+
+    @Before
+    public void setUp() {
+        manager = new PurchaseVerifierManager(false);
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void removingTheStoreVerifierShouldRemoveIt() {
+        TestVerifier verifier = new TestVerifier("Test", true);
+        manager.addVerifier(verifier);
+
+        manager.removeVerifier(verifier);
+
+        assertNull(manager.getVerifier("Test"));
+    }
+
+    @Test
+    public void removingAnotherVerifierOfTheStoreShouldKeepTheStoreVerifier() {
+        TestVerifier verifier = new TestVerifier("Test", true);
+        manager.addVerifier(verifier);
+
+        manager.removeVerifier(new TestVerifier("Test", true));
+
+        assertSame(verifier, manager.getVerifier("Test"));
+    }
+
+    @Test
+    public void removingAChainedVerifierShouldKeepTheOthers() {
+        TestVerifier first = new TestVerifier("Test", false);
+        TestVerifier second = new TestVerifier("Test", true);
+        TestVerifier third = new TestVerifier("Test", true);
+        manager.addVerifier(first);
+        manager.chainVerifier(second);
+        manager.chainVerifier(third);
+
+        manager.removeVerifier(second);
+        assertTrue(manager.getVerifier("Test") instanceof ChainedPurchaseVerifier);
+        manager.removeVerifier(new TestVerifier("Test", true));
+        assertEquals(2, ((ChainedPurchaseVerifier)manager.getVerifier("Test")).getVerifiers().size());
+        manager.removeVerifier(first);
+
+        assertSame(third, manager.getVerifier("Test"));
+    }
+
+    @Test
+    public void verifyAllShouldReturnAnOutcomePerTransaction() {
+        manager.addVerifier(new TestVerifier("Valid", true));
+        manager.addVerifier(new TestVerifier("Invalid", false));
+        manager.addVerifier(new FailingVerifier("Unavailable", new VerifierUnavailableException("Unavailable", "down")));
+        manager.addVerifier(new FailingVerifier("Failing", new IllegalStateException("broken")));
+
+        VerificationOutcome[] outcomes = manager.verifyAll(Arrays.asList(transaction("Unavailable"), transaction("Valid"),
+                transaction("Failing"), transaction("Invalid"), transaction("Unknown"), transaction("Valid")));
+
+        assertEquals(6, outcomes.length);
+        assertEquals(VerificationOutcome.UNAVAILABLE, outcomes[0]);
+        assertEquals(VerificationOutcome.VALID, outcomes[1]);
+        assertEquals(VerificationOutcome.FAILED, outcomes[2]);
+        assertEquals(VerificationOutcome.INVALID, outcomes[3]);
+        assertEquals(VerificationOutcome.INVALID, outcomes[4]);
+        assertEquals(VerificationOutcome.VALID, outcomes[5]);
+    }
+
+    @Test
+    public void verifyAllOnASaturatedExecutorShouldNotWaitForQueuedLanes() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            manager.setExecutor(executor);
+            manager.addVerifier(new TestVerifier("First", true));
+            manager.addVerifier(new TestVerifier("Second", false));
+
+            // the only executor thread calls verifyAll: the lane it queues can't start until verifyAll returns
+            Future<VerificationOutcome[]> outcomes = executor.submit(new Callable<VerificationOutcome[]>() {
+                @Override
+                public VerificationOutcome[] call() {
+                    return manager.verifyAll(Arrays.asList(transaction("First"), transaction("Second")));
+                }
+            });
+
+            VerificationOutcome[] result = outcomes.get(10, TimeUnit.SECONDS);
+            assertEquals(VerificationOutcome.VALID, result[0]);
+            assertEquals(VerificationOutcome.INVALID, result[1]);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void errorOfAProbeShouldReleaseTheHalfOpenBreaker() {
+        FailingVerifier verifier = new FailingVerifier("Test", new IllegalStateException("broken"));
+        CircuitBreaker breaker = new CircuitBreaker(1, 1, 0.5f, 10000, 0, 1);
+        manager.addVerifier(verifier);
+        manager.setCircuitBreaker("Test", breaker);
+        try {
+            manager.isValid(transaction("Test"));
+            fail();
+        } catch (IllegalStateException e) {
+            // opens the breaker
+        }
+
+        verifier.failure = new Error("probe failed");
+        try {
+            manager.isValid(transaction("Test"));
+            fail();
+        } catch (Error e) {
+            assertEquals("probe failed", e.getMessage());
+        }
+
+        verifier.failure = null;
+        assertTrue(manager.isValid(transaction("Test")));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void asyncVerifierThrowingShouldReleaseTheBulkheadSlot() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(1, 0, 0);
+        manager.addVerifier(new ThrowingAsyncVerifier("Test"));
+        manager.setBulkhead("Test", bulkhead);
+
+        for (int i = 0; i < 3; i++) {
+            VerificationFuture future = manager.verifyAsync(transaction("Test"), null);
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        assertEquals(0, bulkhead.getActiveCalls());
+    }
+
+    private static Transaction transaction(String storeName) {
+        Transaction transaction = new Transaction();
+        transaction.setStoreName(storeName);
+        transaction.setIdentifier("product");
+        transaction.setOrderId("order");
+        return transaction;
+    }
+
+    static class FailingVerifier implements PurchaseVerifier {
+        private final String storeName;
+        /** Thrown by {@link #isValid(Transaction)}; valid if null. */
+        volatile Throwable failure;
+
+        FailingVerifier(String storeName, Throwable failure) {
+            this.storeName = storeName;
+            this.failure = failure;
+        }
+
+        @Override
+        public String storeName() {
+            return storeName;
+        }
+
+        @Override
+        public boolean isValid(Transaction transaction) {
+            Throwable failure = this.failure;
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            return true;
+        }
+    }
+
+    static class ThrowingAsyncVerifier implements AsyncPurchaseVerifier {
+        private final String storeName;
+
+        ThrowingAsyncVerifier(String storeName) {
+            this.storeName = storeName;
+        }
+
+        @Override
+        public String storeName() {
+            return storeName;
+        }
+
+        @Override
+        public boolean isValid(Transaction transaction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public VerificationFuture verifyAsync(Transaction transaction, VerificationCallback callback) {
+            throw new IllegalStateException("not started");
+        }
+    }
+
+    static class TestVerifier implements PurchaseVerifier {
+        private final String storeName;
+        private final boolean valid;
+
+        TestVerifier(String storeName, boolean valid) {
+            this.storeName = storeName;
+            this.valid = valid;
+        }
+
+        @Override
+        public String storeName() {
+            return storeName;
+        }
+
+        @Override
+        public boolean isValid(Transaction transaction) {
+            return valid;
+        }
+    }
+}
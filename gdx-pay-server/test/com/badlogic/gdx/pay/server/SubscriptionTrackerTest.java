@@ -0,0 +1,117 @@
+package com.badlogic.gdx.pay.server;
+
+import com.badlogic.gdx.pay.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SubscriptionTrackerTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private final AtomicLong storeExpiry = new AtomicLong();
+    private final AtomicLong renewedExpiry = new AtomicLong(-1);
+    private final AtomicLong expiredExpiry = new AtomicLong(-1);
+    private final CountDownLatch checked = new CountDownLatch(1);
+    private PurchaseVerifierManager manager;
+    private SubscriptionTracker tracker;
+    private long now;
+
+    @Before
+    public void setUp() {
+        manager = new PurchaseVerifierManager(false);
+        tracker = new SubscriptionTracker(manager, 1000, 64);
+        tracker.setCheckOffsetMillis(0);
+        tracker.setListener(new SubscriptionTracker.Listener() {
+            @Override
+            public void renewed(Transaction transaction, long expiryMillis) {
+                renewedExpiry.set(expiryMillis);
+                checked.countDown();
+            }
+
+            @Override
+            public void expired(Transaction transaction, long expiryMillis) {
+                expiredExpiry.set(expiryMillis);
+                checked.countDown();
+            }
+        });
+        now = System.currentTimeMillis();
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void renewalShouldBeFoundBehindCache() throws Exception {
+        manager.addVerifier(new CachingPurchaseVerifier(new StoreVerifier(), 100, DAY, 60000));
+        assertRenewalFound();
+    }
+
+    @Test
+    public void renewalShouldBeFoundBehindCacheInChain() throws Exception {
+        manager.addVerifier(new CachingPurchaseVerifier(new StoreVerifier(), 100, DAY, 60000));
+        manager.chainVerifier(new CachingPurchaseVerifier(new StoreVerifier(), 100, DAY, 60000));
+        assertRenewalFound();
+    }
+
+    @Test
+    public void lapseShouldBeReported() throws Exception {
+        manager.addVerifier(new CachingPurchaseVerifier(new StoreVerifier(), 100, DAY, 60000));
+        storeExpiry.set(now - 1000);
+        assertFalse(manager.isValid(transaction()));
+
+        tracker.advance(now + 10000);
+
+        assertTrue(checked.await(10, TimeUnit.SECONDS));
+        assertEquals(now - 1000, expiredExpiry.get());
+        assertEquals(-1, renewedExpiry.get());
+        assertEquals(0, tracker.size());
+    }
+
+    private void assertRenewalFound() throws Exception {
+        storeExpiry.set(now + 5000);
+        assertTrue(manager.isValid(transaction()));
+        assertEquals(now + 5000, tracker.getExpiryMillis(transaction()));
+
+        // renewed at the store, while the cache still holds the verdict for the old period
+        storeExpiry.set(now + 5000 + 30 * DAY);
+        tracker.advance(now + 10000);
+
+        assertTrue(checked.await(10, TimeUnit.SECONDS));
+        assertEquals(now + 5000 + 30 * DAY, renewedExpiry.get());
+        assertEquals(-1, expiredExpiry.get());
+        assertEquals(1, tracker.size());
+    }
+
+    private static Transaction transaction() {
+        Transaction transaction = new Transaction();
+        transaction.setStoreName("Test");
+        transaction.setIdentifier("sub");
+        transaction.setOrderId("1000");
+        transaction.setTransactionData("receipt");
+        return transaction;
+    }
+
+    /** A store that reports the current expiry to the tracker, like the verifiers asking Apple or Google. */
+    private class StoreVerifier implements PurchaseVerifier {
+        @Override
+        public String storeName() {
+            return "Test";
+        }
+
+        @Override
+        public boolean isValid(Transaction transaction) {
+            long expiry = storeExpiry.get();
+            tracker.subscriptionVerified(transaction, expiry);
+            return expiry > System.currentTimeMillis();
+        }
+    }
+}
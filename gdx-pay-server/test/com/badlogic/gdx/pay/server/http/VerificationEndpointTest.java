@@ -0,0 +1,131 @@
+package com.badlogic.gdx.pay.server.http;
+
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.PurchaseVerifier;
+import com.badlogic.gdx.pay.server.PurchaseVerifierAsyncAdapter;
+import com.badlogic.gdx.pay.server.PurchaseVerifierManager;
+import com.badlogic.gdx.pay.server.VerifierUnavailableException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class VerificationEndpointTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private PurchaseVerifierManager manager;
+    private VerificationEndpoint endpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        manager = new PurchaseVerifierManager(false);
+        manager.addVerifier(new TestVerifier());
+        // one thread for exchanges: a batch must not need it for its verifications
+        endpoint = new VerificationEndpoint(manager, PurchaseVerifierAsyncAdapter.newBoundedExecutor(1, 10));
+        endpoint.start(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        endpoint.stop(0);
+        endpoint.getExecutor().shutdown();
+        manager.shutdown();
+    }
+
+    @Test
+    public void singleTransactionShouldBeAnswered() throws Exception {
+        assertEquals("200 {\"valid\":true}", post(transaction("ok")));
+        assertEquals("200 {\"valid\":false}", post(transaction("bad")));
+        assertEquals("503 {\"error\":\"unavailable\",\"store\":\"Test\"}", post(transaction("down")));
+    }
+
+    @Test
+    public void failureDetailsShouldNotBeReturned() throws Exception {
+        assertEquals("500 {\"error\":\"internal\"}", post(transaction("boom")));
+    }
+
+    @Test
+    public void batchShouldBeAnsweredPerTransaction() throws Exception {
+        String response = post("[" + transaction("ok") + "," + transaction("bad") + "," + transaction("boom") + "]");
+
+        assertTrue(response, response.startsWith("200 "));
+        assertTrue(response, response.contains("{\"index\":0,\"valid\":true}\n"));
+        assertTrue(response, response.contains("{\"index\":1,\"valid\":false}\n"));
+        assertTrue(response, response.contains("{\"index\":2,\"error\":\"internal\"}\n"));
+    }
+
+    @Test
+    public void pendingVerificationsShouldTimeOut() throws Exception {
+        endpoint.setBatchTimeoutMillis(200);
+
+        String response = post("[" + transaction("ok") + "," + transaction("slow") + "]");
+
+        assertTrue(response, response.contains("{\"index\":0,\"valid\":true}\n"));
+        assertTrue(response, response.contains("{\"index\":1,\"error\":\"timeout\"}\n"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void sharedExecutorShouldBeRejected() throws Exception {
+        new VerificationEndpoint(manager, manager.getExecutor()).start(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    private static String transaction(String identifier) {
+        return "{\"storeName\":\"Test\",\"identifier\":\"" + identifier + "\",\"orderId\":\"" + identifier + "-1\"}";
+    }
+
+    private String post(String json) throws IOException {
+        InetSocketAddress address = endpoint.getAddress();
+        URL url = new URL("http://127.0.0.1:" + address.getPort() + VerificationEndpoint.DEFAULT_PATH);
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        connection.setDoOutput(true);
+        connection.setReadTimeout(10000);
+        OutputStream out = connection.getOutputStream();
+        out.write(json.getBytes(UTF_8));
+        out.close();
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int n; (n = in.read(buffer)) != -1;) {
+            body.write(buffer, 0, n);
+        }
+        in.close();
+        return status + " " + new String(body.toByteArray(), UTF_8);
+    }
+
+    private class TestVerifier implements PurchaseVerifier {
+        @Override
+        public String storeName() {
+            return "Test";
+        }
+
+        @Override
+        public boolean isValid(Transaction transaction) {
+            String identifier = transaction.getIdentifier();
+            if ("down".equals(identifier)) throw new VerifierUnavailableException("Test", "down");
+            if ("boom".equals(identifier)) throw new IllegalStateException("secret detail");
+            if ("slow".equals(identifier)) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return !"bad".equals(identifier);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.badlogic.gdx.pay.server.impl;
+
+import com.badlogic.gdx.pay.server.util.Base64Codec;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.SignatureException;
+import java.security.cert.CertificateException;
+
+import static org.junit.Assert.*;
+
+/** The fixtures are signed by a test PKI whose certificates carry the same marker extensions as Apple's. */
+public class AppleReceiptDecoderTest {
+
+    private AppleReceiptDecoder decoder;
+
+    @Before
+    public void setUp() throws Exception {
+        InputStream in = getClass().getResourceAsStream("root.der");
+        try {
+            decoder = new AppleReceiptDecoder(AppleReceiptDecoder.loadCertificate(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void validReceiptShouldDecode() throws Exception {
+        AppleReceipt receipt = decoder.decode(fixture("receipt.p7"));
+
+        assertEquals("com.x.app", receipt.getBundleId());
+        assertEquals(2, receipt.getInApp().size());
+        assertEquals("com.x.coins", receipt.findPurchase("1000000001").getProductId());
+        assertTrue(receipt.findPurchase("2000000002").isCancelled());
+    }
+
+    @Test
+    public void validReceiptShouldDecodeAgainWithCachedChain() throws Exception {
+        decoder.decode(fixture("receipt.p7"));
+
+        assertEquals("com.x.app", decoder.decode(fixture("receipt.p7")).getBundleId());
+    }
+
+    @Test
+    public void berReceiptShouldDecode() throws Exception {
+        AppleReceipt receipt = decoder.decode(fixture("receipt-ber.p7"));
+
+        assertEquals("com.x.app", receipt.getBundleId());
+        assertEquals(2, receipt.getInApp().size());
+    }
+
+    @Test(expected = SignatureException.class)
+    public void tamperedReceiptShouldBeRejected() throws Exception {
+        decoder.decode(tampered(fixture("receipt.p7")));
+    }
+
+    @Test(expected = CertificateException.class)
+    public void chainWithoutAppleMarkersShouldBeRejected() throws Exception {
+        decoder.decode(fixture("receipt-no-markers.p7"));
+    }
+
+    @Test(expected = CertificateException.class)
+    public void chainWithoutAppleMarkersShouldBeRejectedAfterValidChainWasCached() throws Exception {
+        decoder.decode(fixture("receipt.p7"));
+
+        decoder.decode(fixture("receipt-no-markers.p7"));
+    }
+
+    @Test
+    public void chainEndingAtAnotherRootShouldBeRejected() throws Exception {
+        try {
+            decoder.decode(fixture("receipt-wrong-root.p7"));
+            fail();
+        } catch (GeneralSecurityException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void deeplyNestedReceiptShouldBeRejected() throws Exception {
+        decoder.decode(nestedIndefinite(100000));
+    }
+
+    @Test
+    public void bundleIdOfDeeplyNestedReceiptShouldBeNull() throws Exception {
+        assertNull(AppleReceiptDecoder.readBundleId(Base64Codec.STANDARD.encode(nestedIndefinite(100000))));
+    }
+
+    /** Changes the bundle id in the signed payload to "com.y.app". */
+    static byte[] tampered(byte[] receipt) {
+        for (int i = 0; i < receipt.length - 2; i++) {
+            if (receipt[i] == 'x' && receipt[i + 1] == '.' && receipt[i + 2] == 'a') {
+                receipt[i] = 'y';
+                return receipt;
+            }
+        }
+        throw new IllegalArgumentException("Bundle id not found");
+    }
+
+    /** SEQUENCEs of indefinite length nested the given number of levels. */
+    static byte[] nestedIndefinite(int levels) {
+        byte[] data = new byte[levels * 4];
+        for (int i = 0; i < levels; i++) {
+            data[i * 2] = 0x30;
+            data[i * 2 + 1] = (byte)0x80;
+        }
+        return data;
+    }
+
+    static byte[] fixture(String name) throws IOException {
+        InputStream in = AppleReceiptDecoderTest.class.getResourceAsStream(name);
+        if (in == null) throw new IOException("Missing fixture: " + name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) != -1;) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
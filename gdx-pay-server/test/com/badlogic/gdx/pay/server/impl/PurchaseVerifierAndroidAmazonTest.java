@@ -0,0 +1,139 @@
+package com.badlogic.gdx.pay.server.impl;
+
+import com.badlogic.gdx.pay.PurchaseManagerConfig;
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.VerifierUnavailableException;
+import com.badlogic.gdx.pay.server.http.HttpRequest;
+import com.badlogic.gdx.pay.server.http.HttpResponseHandler;
+import com.badlogic.gdx.pay.server.http.HttpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+public class PurchaseVerifierAndroidAmazonTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SECRET = "2:top-secret";
+
+    private final ByteArrayOutputStream console = new ByteArrayOutputStream();
+    private PrintStream out, err;
+    private TestTransport transport;
+    private PurchaseVerifierAndroidAmazon verifier;
+
+    @Before
+    public void setUp() {
+        out = System.out;
+        err = System.err;
+        System.setOut(new PrintStream(console, true));
+        System.setErr(new PrintStream(console, true));
+        transport = new TestTransport();
+        verifier = new PurchaseVerifierAndroidAmazon(SECRET, "http://localhost/rvs", transport);
+        verifier.setMetrics(null);
+    }
+
+    @After
+    public void tearDown() {
+        System.setOut(out);
+        System.setErr(err);
+    }
+
+    @Test
+    public void confirmedReceiptShouldBeValid() {
+        transport.status = 200;
+        transport.body = "{\"receiptId\":\"r1\",\"productId\":\"coins\",\"productType\":\"CONSUMABLE\",\"cancelDate\":null}";
+
+        assertTrue(verifier.isValid(transaction()));
+        assertEquals("http://localhost/rvs/version/1.0/verifyReceiptId/developer/2%3Atop-secret/user/u1/receiptId/r1",
+                transport.request.getUrl());
+    }
+
+    @Test
+    public void otherProductShouldBeInvalid() {
+        transport.status = 200;
+        transport.body = "{\"receiptId\":\"r1\",\"productId\":\"gems\",\"productType\":\"CONSUMABLE\",\"cancelDate\":null}";
+
+        assertFalse(verifier.isValid(transaction()));
+    }
+
+    @Test
+    public void transactionWithoutProductShouldBeInvalid() {
+        transport.status = 200;
+        transport.body = "{\"receiptId\":\"r1\",\"productId\":\"coins\",\"productType\":\"CONSUMABLE\",\"cancelDate\":null}";
+        Transaction transaction = transaction();
+        transaction.setIdentifier(null);
+
+        assertFalse(verifier.isValid(transaction));
+    }
+
+    @Test
+    public void unknownReceiptShouldBeInvalid() {
+        transport.status = 400;
+
+        assertFalse(verifier.isValid(transaction()));
+    }
+
+    @Test(expected = VerifierUnavailableException.class)
+    public void rejectedDeveloperSecretShouldMakeStoreUnavailable() {
+        transport.status = 496;
+
+        verifier.isValid(transaction());
+    }
+
+    @Test
+    public void secretShouldBeRedactedFromRequest() {
+        HttpRequest request = HttpRequest.get("http://localhost/developer/2%3Atop-secret/user/u1").redact("2%3Atop-secret");
+
+        assertEquals("GET http://localhost/developer/***/user/u1", request.toString());
+        assertEquals("GET http://127.0.0.1/developer/***/user/u1", request.withUrl("http://127.0.0.1/developer/2%3Atop-secret/user/u1")
+                .toString());
+    }
+
+    @Test
+    public void secretShouldNotLeakFromTransportErrors() {
+        transport.failure = true;
+
+        try {
+            verifier.isValid(transaction());
+            fail();
+        } catch (VerifierUnavailableException e) {
+            assertFalse(e.getMessage(), e.getMessage().contains("top-secret"));
+            assertTrue(e.getMessage(), e.getMessage().contains("/developer/***/user/"));
+        }
+        String printed = new String(console.toByteArray(), UTF_8);
+        assertFalse(printed, printed.contains("top-secret"));
+    }
+
+    private static Transaction transaction() {
+        Transaction transaction = new Transaction();
+        transaction.setStoreName(PurchaseManagerConfig.STORE_NAME_ANDROID_AMAZON);
+        transaction.setIdentifier("coins");
+        transaction.setOrderId("r1");
+        transaction.setUserId("u1");
+        return transaction;
+    }
+
+    private static class TestTransport implements HttpTransport {
+        int status;
+        String body = "";
+        boolean failure;
+        HttpRequest request;
+
+        @Override
+        public <T> T execute(HttpRequest request, HttpResponseHandler<T> handler) throws IOException {
+            this.request = request;
+            if (failure) {
+                // like PooledHttpTransport when no connection is free
+                throw new IOException("No free connection within 1000ms: " + request);
+            }
+            return handler.handle(status, new ByteArrayInputStream(body.getBytes(UTF_8)));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.badlogic.gdx.pay.server.impl;
+
+import com.badlogic.gdx.pay.PurchaseManagerConfig;
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.VerifierUnavailableException;
+import com.badlogic.gdx.pay.server.http.HttpRequest;
+import com.badlogic.gdx.pay.server.http.HttpResponseHandler;
+import com.badlogic.gdx.pay.server.http.HttpTransport;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PurchaseVerifierAndroidGooglePlayTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private TestTransport transport;
+    private TestTokenProvider tokens;
+    private PurchaseVerifierAndroidGooglePlay verifier;
+
+    @Before
+    public void setUp() {
+        transport = new TestTransport();
+        tokens = new TestTokenProvider();
+        verifier = new PurchaseVerifierAndroidGooglePlay("com.x.app", tokens, "http://localhost/api/", transport);
+        verifier.setMetrics(null);
+    }
+
+    @Test
+    public void purchasedProductShouldBeValid() {
+        transport.statuses.add(200);
+
+        assertTrue(verifier.isValid(transaction()));
+    }
+
+    @Test
+    public void unknownTokenShouldBeInvalid() {
+        transport.statuses.add(404);
+
+        assertFalse(verifier.isValid(transaction()));
+    }
+
+    @Test
+    public void rejectedTokenShouldBeRefreshedOnce() {
+        transport.statuses.add(401);
+        transport.statuses.add(200);
+
+        assertTrue(verifier.isValid(transaction()));
+        assertEquals(1, tokens.invalidated);
+        assertEquals("Bearer token-2", transport.authorizations.get(1));
+    }
+
+    @Test(expected = VerifierUnavailableException.class)
+    public void tokenRejectedAfterRefreshShouldMakeStoreUnavailable() {
+        transport.statuses.add(401);
+        transport.statuses.add(401);
+
+        verifier.isValid(transaction());
+    }
+
+    @Test(expected = VerifierUnavailableException.class)
+    public void missingPermissionShouldMakeStoreUnavailable() {
+        transport.statuses.add(403);
+
+        verifier.isValid(transaction());
+    }
+
+    private static Transaction transaction() {
+        Transaction transaction = new Transaction();
+        transaction.setStoreName(PurchaseManagerConfig.STORE_NAME_ANDROID_GOOGLE);
+        transaction.setIdentifier("coins");
+        transaction.setOrderId("GPA.1234");
+        transaction.setRequestId("purchase-token");
+        return transaction;
+    }
+
+    private static class TestTokenProvider extends GoogleAccessTokenProvider {
+        int issued = 1;
+        int invalidated;
+
+        TestTokenProvider() {
+            super("test@example.com", null, null);
+        }
+
+        @Override
+        public String getAccessToken() {
+            return "token-" + issued;
+        }
+
+        @Override
+        public void invalidate(String accessToken) {
+            invalidated++;
+            issued++;
+        }
+    }
+
+    private static class TestTransport implements HttpTransport {
+        final List<Integer> statuses = new ArrayList<Integer>();
+        final List<String> authorizations = new ArrayList<String>();
+
+        @Override
+        public <T> T execute(HttpRequest request, HttpResponseHandler<T> handler) throws IOException {
+            for (int i = 0; i < request.getHeaderCount(); i++) {
+                if (request.getHeaderName(i).equals("Authorization")) authorizations.add(request.getHeaderValue(i));
+            }
+            int status = statuses.remove(0);
+            String body = status == 200 ? "{\"orderId\":\"GPA.1234\",\"purchaseState\":0}" : "";
+            return handler.handle(status, new ByteArrayInputStream(body.getBytes(UTF_8)));
+        }
+    }
+}
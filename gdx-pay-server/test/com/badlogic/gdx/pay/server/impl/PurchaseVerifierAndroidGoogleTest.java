@@ -0,0 +1,124 @@
+package com.badlogic.gdx.pay.server.impl;
+
+import com.badlogic.gdx.pay.PurchaseManagerConfig;
+import com.badlogic.gdx.pay.Transaction;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+
+import static com.badlogic.gdx.pay.server.impl.PurchaseVerifierAndroidHuaweiTest.generateKeyPair;
+import static com.badlogic.gdx.pay.server.impl.PurchaseVerifierAndroidHuaweiTest.publicKey;
+import static com.badlogic.gdx.pay.server.impl.PurchaseVerifierAndroidHuaweiTest.sign;
+import static org.junit.Assert.*;
+
+public class PurchaseVerifierAndroidGoogleTest {
+
+    private static final KeyPair APP_KEYS = generateKeyPair();
+    private static final KeyPair OTHER_APP_KEYS = generateKeyPair();
+    private static final KeyPair ROTATED_KEYS = generateKeyPair();
+    private static final KeyPair FALLBACK_KEYS = generateKeyPair();
+
+    private PurchaseVerifierAndroidGoogle verifier;
+
+    @Before
+    public void setUp() {
+        verifier = new PurchaseVerifierAndroidGoogle();
+        verifier.setMetrics(null);
+    }
+
+    @Test
+    public void singleKeyShouldVerifyEveryApp() throws Exception {
+        verifier.setPublicKey(publicKey(APP_KEYS));
+
+        assertTrue(verifier.isValid(transaction("com.x.app", APP_KEYS)));
+        assertTrue(verifier.isValid(transaction("com.y.app", APP_KEYS)));
+        assertFalse(verifier.isValid(transaction("com.x.app", OTHER_APP_KEYS)));
+    }
+
+    @Test
+    public void purchaseShouldBeVerifiedWithTheKeyOfItsPackage() throws Exception {
+        verifier.addPublicKey("com.x.app", publicKey(APP_KEYS));
+        verifier.addPublicKey("com.y.app", publicKey(OTHER_APP_KEYS));
+
+        assertTrue(verifier.isValid(transaction("com.x.app", APP_KEYS)));
+        assertTrue(verifier.isValid(transaction("com.y.app", OTHER_APP_KEYS)));
+        // signed with the key of another app
+        assertFalse(verifier.isValid(transaction("com.x.app", OTHER_APP_KEYS)));
+        assertFalse(verifier.isValid(transaction("com.y.app", APP_KEYS)));
+    }
+
+    @Test
+    public void oldAndNewKeyShouldVerifyDuringRotation() throws Exception {
+        verifier.addPublicKey("com.x.app", publicKey(APP_KEYS));
+        verifier.addPublicKey("com.x.app", publicKey(ROTATED_KEYS));
+
+        assertTrue(verifier.isValid(transaction("com.x.app", APP_KEYS)));
+        assertTrue(verifier.isValid(transaction("com.x.app", ROTATED_KEYS)));
+        assertFalse(verifier.isValid(transaction("com.x.app", OTHER_APP_KEYS)));
+    }
+
+    @Test
+    public void removedKeyShouldNoLongerVerify() throws Exception {
+        verifier.addPublicKey("com.x.app", publicKey(APP_KEYS));
+        verifier.addPublicKey("com.x.app", publicKey(ROTATED_KEYS));
+
+        assertTrue(verifier.removePublicKey("com.x.app", publicKey(APP_KEYS)));
+        assertFalse(verifier.removePublicKey("com.x.app", publicKey(APP_KEYS)));
+
+        assertFalse(verifier.isValid(transaction("com.x.app", APP_KEYS)));
+        assertTrue(verifier.isValid(transaction("com.x.app", ROTATED_KEYS)));
+        assertTrue(verifier.getPackageNames().contains("com.x.app"));
+
+        assertTrue(verifier.removePublicKey("com.x.app", publicKey(ROTATED_KEYS)));
+        assertFalse(verifier.getPackageNames().contains("com.x.app"));
+    }
+
+    @Test
+    public void unknownPackageShouldFallBackToTheDefaultKey() throws Exception {
+        verifier.addPublicKey("com.x.app", publicKey(APP_KEYS));
+        verifier.setPublicKey(publicKey(FALLBACK_KEYS));
+
+        assertTrue(verifier.isValid(transaction("com.z.app", FALLBACK_KEYS)));
+        assertFalse(verifier.isValid(transaction("com.z.app", APP_KEYS)));
+        // a package with keys of its own doesn't accept the default key
+        assertFalse(verifier.isValid(transaction("com.x.app", FALLBACK_KEYS)));
+    }
+
+    @Test
+    public void unknownPackageWithoutDefaultKeyShouldBeInvalid() throws Exception {
+        verifier.addPublicKey("com.x.app", publicKey(APP_KEYS));
+
+        assertFalse(verifier.isValid(transaction("com.z.app", APP_KEYS)));
+        assertFalse(verifier.isValid(transaction(null, APP_KEYS)));
+    }
+
+    @Test
+    public void missingOrMalformedSignatureShouldBeInvalid() throws Exception {
+        verifier.addPublicKey("com.x.app", publicKey(APP_KEYS));
+        Transaction transaction = transaction("com.x.app", APP_KEYS);
+
+        transaction.setTransactionDataSignature("not*base64");
+        assertFalse(verifier.isValid(transaction));
+        transaction.setTransactionDataSignature(null);
+        assertFalse(verifier.isValid(transaction));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyWithoutPackageShouldBeRejected() {
+        verifier.addPublicKey(null, publicKey(APP_KEYS));
+    }
+
+    private static Transaction transaction(String packageName, KeyPair keys) throws Exception {
+        String purchaseData = "{\"orderId\":\"GPA.1234\","
+                + (packageName != null ? "\"packageName\":\"" + packageName + "\"," : "")
+                + "\"productId\":\"coins\",\"purchaseTime\":1577934245000,\"purchaseState\":0,\"purchaseToken\":\"token\"}";
+        Transaction transaction = new Transaction();
+        transaction.setStoreName(PurchaseManagerConfig.STORE_NAME_ANDROID_GOOGLE);
+        transaction.setIdentifier("coins");
+        transaction.setOrderId("GPA.1234");
+        transaction.setTransactionData(purchaseData);
+        transaction.setTransactionDataSignature(sign("SHA1withRSA", keys.getPrivate(), purchaseData));
+        return transaction;
+    }
+}
@@ -0,0 +1,153 @@
+package com.badlogic.gdx.pay.server.impl;
+
+import com.badlogic.gdx.pay.Offer;
+import com.badlogic.gdx.pay.OfferType;
+import com.badlogic.gdx.pay.PurchaseManagerConfig;
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.util.Base64Codec;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+
+import static org.junit.Assert.*;
+
+public class PurchaseVerifierAndroidHuaweiTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final KeyPair KEYS = generateKeyPair();
+    private static final KeyPair OTHER_KEYS = generateKeyPair();
+
+    private PurchaseVerifierAndroidHuawei verifier;
+
+    @Before
+    public void setUp() {
+        verifier = new PurchaseVerifierAndroidHuawei(publicKey(KEYS));
+        verifier.setMetrics(null);
+    }
+
+    @Test
+    public void signedPurchaseShouldBeValid() throws Exception {
+        assertTrue(verifier.isValid(transaction("coins", "order1", purchaseData("coins", "order1", 0, null), KEYS)));
+    }
+
+    @Test
+    public void activeSubscriptionShouldBeValid() throws Exception {
+        assertTrue(verifier.isValid(transaction("monthly", "order1", purchaseData("monthly", "order1", 0, true), KEYS)));
+    }
+
+    @Test
+    public void signatureOfOtherKeyShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction("coins", "order1", purchaseData("coins", "order1", 0, null), OTHER_KEYS)));
+    }
+
+    @Test
+    public void alteredPurchaseDataShouldBeInvalid() throws Exception {
+        Transaction transaction = transaction("coins", "order1", purchaseData("coins", "order1", 0, null), KEYS);
+        transaction.setTransactionData(purchaseData("gems", "order1", 0, null));
+        transaction.setIdentifier("gems");
+
+        assertFalse(verifier.isValid(transaction));
+    }
+
+    @Test
+    public void malformedSignatureShouldBeInvalid() throws Exception {
+        Transaction transaction = transaction("coins", "order1", purchaseData("coins", "order1", 0, null), KEYS);
+        transaction.setTransactionDataSignature("not*base64");
+
+        assertFalse(verifier.isValid(transaction));
+    }
+
+    @Test
+    public void otherProductShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction("gems", "order1", purchaseData("coins", "order1", 0, null), KEYS)));
+        assertFalse(verifier.isValid(transaction(null, "order1", purchaseData("coins", "order1", 0, null), KEYS)));
+    }
+
+    @Test
+    public void identifierMappedToProductShouldBeValid() throws Exception {
+        PurchaseManagerConfig config = new PurchaseManagerConfig();
+        config.addOffer(new Offer().setType(OfferType.CONSUMABLE).setIdentifier("coins")
+                .putIdentifierForStore(PurchaseManagerConfig.STORE_NAME_ANDROID_HUAWEI, "com.x.coins"));
+        verifier.setPurchaseManagerConfig(config);
+
+        assertTrue(verifier.isValid(transaction("coins", "order1", purchaseData("com.x.coins", "order1", 0, null), KEYS)));
+    }
+
+    @Test
+    public void otherOrderShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction("coins", "order2", purchaseData("coins", "order1", 0, null), KEYS)));
+    }
+
+    @Test
+    public void uncompletedPurchaseShouldBeInvalid() throws Exception {
+        // 1: cancelled, 2: refunded
+        assertFalse(verifier.isValid(transaction("coins", "order1", purchaseData("coins", "order1", 1, null), KEYS)));
+        assertFalse(verifier.isValid(transaction("coins", "order1", purchaseData("coins", "order1", 2, null), KEYS)));
+    }
+
+    @Test
+    public void expiredSubscriptionShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction("monthly", "order1", purchaseData("monthly", "order1", 0, false), KEYS)));
+    }
+
+    @Test
+    public void malformedPurchaseDataShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction("coins", "order1", "{\"productId\":\"coins\",", KEYS)));
+    }
+
+    @Test
+    public void verifierWithoutKeyShouldRejectEverything() throws Exception {
+        verifier = new PurchaseVerifierAndroidHuawei();
+        verifier.setMetrics(null);
+
+        assertFalse(verifier.isValid(transaction("coins", "order1", purchaseData("coins", "order1", 0, null), KEYS)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPublicKeyShouldBeRejected() {
+        verifier.setPublicKey("AAAA");
+    }
+
+    static String purchaseData(String productId, String orderId, int purchaseState, Boolean subscriptionValid) {
+        return "{\"autoRenewing\":false,\"orderId\":\"" + orderId + "\",\"packageName\":\"com.x.app\",\"productId\":\""
+                + productId + "\",\"purchaseTime\":1577934245000,\"purchaseState\":" + purchaseState
+                + (subscriptionValid != null ? ",\"subIsvalid\":" + subscriptionValid : "")
+                + ",\"purchaseToken\":\"token.1\"}";
+    }
+
+    static Transaction transaction(String identifier, String orderId, String purchaseData, KeyPair keys) throws Exception {
+        Transaction transaction = new Transaction();
+        transaction.setStoreName(PurchaseManagerConfig.STORE_NAME_ANDROID_HUAWEI);
+        transaction.setIdentifier(identifier);
+        transaction.setOrderId(orderId);
+        transaction.setTransactionData(purchaseData);
+        transaction.setTransactionDataSignature(sign("SHA256withRSA", keys.getPrivate(), purchaseData));
+        return transaction;
+    }
+
+    static String sign(String algorithm, PrivateKey key, String data) throws Exception {
+        Signature signature = Signature.getInstance(algorithm);
+        signature.initSign(key);
+        signature.update(data.getBytes(UTF_8));
+        return Base64Codec.STANDARD.encode(signature.sign());
+    }
+
+    static String publicKey(KeyPair keys) {
+        return Base64Codec.STANDARD.encode(keys.getPublic().getEncoded());
+    }
+
+    static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
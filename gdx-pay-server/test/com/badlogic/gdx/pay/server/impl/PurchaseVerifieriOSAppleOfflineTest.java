@@ -0,0 +1,137 @@
+package com.badlogic.gdx.pay.server.impl;
+
+import com.badlogic.gdx.pay.Offer;
+import com.badlogic.gdx.pay.OfferType;
+import com.badlogic.gdx.pay.PurchaseManagerConfig;
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.util.Base64Codec;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+
+import static com.badlogic.gdx.pay.server.impl.AppleReceiptDecoderTest.fixture;
+import static com.badlogic.gdx.pay.server.impl.AppleReceiptDecoderTest.tampered;
+import static org.junit.Assert.*;
+
+public class PurchaseVerifieriOSAppleOfflineTest {
+
+    private X509Certificate root;
+    private PurchaseVerifieriOSAppleOffline verifier;
+
+    @Before
+    public void setUp() throws Exception {
+        InputStream in = getClass().getResourceAsStream("root.der");
+        try {
+            root = AppleReceiptDecoder.loadCertificate(in);
+        } finally {
+            in.close();
+        }
+        verifier = new PurchaseVerifieriOSAppleOffline(root, "com.x.app");
+    }
+
+    @Test
+    public void purchaseInValidReceiptShouldBeValid() throws Exception {
+        assertTrue(verifier.isValid(transaction("com.x.coins", "1000000001", fixture("receipt.p7"))));
+        assertTrue(verifier.isValid(transaction("com.x.coins", "1000000000", fixture("receipt-ber.p7"))));
+    }
+
+    @Test
+    public void cancelledPurchaseShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction("com.x.sub", "2000000002", fixture("receipt.p7"))));
+    }
+
+    @Test
+    public void lapsedSubscriptionShouldBeInvalid() throws Exception {
+        // by the original transaction id, which the receipt lists after a renewal, and by the latest renewal
+        assertFalse(verifier.isValid(transaction("com.x.monthly", "3000000000", fixture("receipt-subscriptions.p7"))));
+        assertFalse(verifier.isValid(transaction("com.x.monthly", "3000000001", fixture("receipt-subscriptions.p7"))));
+    }
+
+    @Test
+    public void renewedSubscriptionShouldBeValid() throws Exception {
+        // the original purchase has expired, its renewal hasn't
+        assertTrue(verifier.isValid(transaction("com.x.yearly", "4000000000", fixture("receipt-subscriptions.p7"))));
+        assertTrue(verifier.isValid(transaction("com.x.yearly", "4000000001", fixture("receipt-subscriptions.p7"))));
+    }
+
+    @Test
+    public void exactTransactionIdShouldBePreferred() throws Exception {
+        AppleReceipt receipt = new AppleReceiptDecoder(root).decode(fixture("receipt-subscriptions.p7"));
+
+        assertEquals("3000000000", receipt.findPurchase("3000000000").getTransactionId());
+        assertEquals("3000000001", receipt.findPurchase("3000000001").getTransactionId());
+    }
+
+    @Test
+    public void unknownOrderShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction("com.x.coins", "1000000002", fixture("receipt.p7"))));
+    }
+
+    @Test
+    public void otherProductShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction("com.x.gems", "1000000001", fixture("receipt.p7"))));
+    }
+
+    @Test
+    public void missingIdentifierShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction(null, "1000000001", fixture("receipt.p7"))));
+    }
+
+    @Test
+    public void identifierMappedToProductShouldBeValid() throws Exception {
+        PurchaseManagerConfig config = new PurchaseManagerConfig();
+        config.addOffer(new Offer().setType(OfferType.CONSUMABLE).setIdentifier("coins")
+                .putIdentifierForStore(PurchaseManagerConfig.STORE_NAME_IOS_APPLE, "com.x.coins"));
+        verifier.setPurchaseManagerConfig(config);
+
+        assertTrue(verifier.isValid(transaction("coins", "1000000001", fixture("receipt.p7"))));
+    }
+
+    @Test
+    public void receiptOfOtherAppShouldBeInvalid() throws Exception {
+        verifier = new PurchaseVerifieriOSAppleOffline(root, "com.y.app");
+
+        assertFalse(verifier.isValid(transaction("com.x.coins", "1000000001", fixture("receipt.p7"))));
+    }
+
+    @Test
+    public void tamperedReceiptShouldBeInvalid() throws Exception {
+        verifier = new PurchaseVerifieriOSAppleOffline(root, "com.y.app");
+
+        assertFalse(verifier.isValid(transaction("com.x.coins", "1000000001", tampered(fixture("receipt.p7")))));
+    }
+
+    @Test
+    public void receiptOfWrongChainShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction("com.x.coins", "1000000001", fixture("receipt-wrong-root.p7"))));
+        assertFalse(verifier.isValid(transaction("com.x.coins", "1000000001", fixture("receipt-no-markers.p7"))));
+    }
+
+    @Test
+    public void deeplyNestedReceiptShouldBeInvalid() throws Exception {
+        byte[] receipt = AppleReceiptDecoderTest.nestedIndefinite(100000);
+
+        assertFalse(verifier.isValid(transaction("com.x.coins", "1000000001", receipt)));
+    }
+
+    @Test
+    public void missingReceiptShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction("com.x.coins", "1000000001", null)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingBundleIdShouldBeRejected() throws Exception {
+        new PurchaseVerifieriOSAppleOffline(root, null);
+    }
+
+    private static Transaction transaction(String identifier, String orderId, byte[] receipt) {
+        Transaction transaction = new Transaction();
+        transaction.setIdentifier(identifier);
+        transaction.setStoreName(PurchaseManagerConfig.STORE_NAME_IOS_APPLE);
+        transaction.setOrderId(orderId);
+        if (receipt != null) transaction.setTransactionDataSignature(Base64Codec.STANDARD.encode(receipt));
+        return transaction;
+    }
+}
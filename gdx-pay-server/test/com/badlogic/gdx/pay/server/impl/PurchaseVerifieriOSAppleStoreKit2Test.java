@@ -0,0 +1,152 @@
+package com.badlogic.gdx.pay.server.impl;
+
+import com.badlogic.gdx.pay.PurchaseManagerConfig;
+import com.badlogic.gdx.pay.Transaction;
+import com.badlogic.gdx.pay.server.util.Base64Codec;
+import com.badlogic.gdx.pay.server.util.DerReader;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+
+import static com.badlogic.gdx.pay.server.impl.AppleReceiptDecoderTest.fixture;
+import static org.junit.Assert.*;
+
+/** The signed transactions are created with a test PKI whose certificates carry the same marker extensions as Apple's. */
+public class PurchaseVerifieriOSAppleStoreKit2Test {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private X509Certificate root;
+    private PrivateKey leafKey;
+    private String header;
+    private PurchaseVerifieriOSAppleStoreKit2 verifier;
+
+    @Before
+    public void setUp() throws Exception {
+        root = AppleReceiptDecoder.loadCertificate(new ByteArrayInputStream(fixture("jws-root.der")));
+        leafKey = KeyFactory.getInstance("EC").generatePrivate(new PKCS8EncodedKeySpec(fixture("jws-leaf.pk8")));
+        header = "{\"alg\":\"ES256\",\"x5c\":[\"" + Base64Codec.STANDARD.encode(fixture("jws-leaf.der")) + "\",\""
+                + Base64Codec.STANDARD.encode(fixture("jws-inter.der")) + "\",\""
+                + Base64Codec.STANDARD.encode(fixture("jws-root.der")) + "\"]}";
+        verifier = new PurchaseVerifieriOSAppleStoreKit2(root, "com.x.app");
+    }
+
+    @Test
+    public void signedTransactionShouldBeValid() throws Exception {
+        assertTrue(verifier.isValid(transaction("com.x.coins", "3000000001", sign(payload(""), leafKey))));
+    }
+
+    @Test
+    public void otherOrderOrProductShouldBeInvalid() throws Exception {
+        String jws = sign(payload(""), leafKey);
+
+        assertFalse(verifier.isValid(transaction("com.x.coins", "3000000002", jws)));
+        assertFalse(verifier.isValid(transaction("com.x.gems", "3000000001", jws)));
+    }
+
+    @Test
+    public void missingIdentifierShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction(null, "3000000001", sign(payload(""), leafKey))));
+    }
+
+    @Test
+    public void transactionOfOtherAppShouldBeInvalid() throws Exception {
+        verifier = new PurchaseVerifieriOSAppleStoreKit2(root, "com.y.app");
+
+        assertFalse(verifier.isValid(transaction("com.x.coins", "3000000001", sign(payload(""), leafKey))));
+    }
+
+    @Test
+    public void tamperedTransactionShouldBeInvalid() throws Exception {
+        String[] parts = sign(payload(""), leafKey).split("\\.");
+        String tampered = parts[0] + "." + base64Url(payload("").replace("com.x.coins", "com.x.gems")) + "." + parts[2];
+
+        assertFalse(verifier.isValid(transaction("com.x.gems", "3000000001", tampered)));
+    }
+
+    @Test
+    public void transactionSignedWithOtherKeyShouldBeInvalid() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        PrivateKey otherKey = generator.generateKeyPair().getPrivate();
+
+        assertFalse(verifier.isValid(transaction("com.x.coins", "3000000001", sign(payload(""), otherKey))));
+    }
+
+    @Test
+    public void sandboxTransactionShouldOnlyBeValidIfAccepted() throws Exception {
+        String jws = sign(payload("").replace("Production", "Sandbox"), leafKey);
+
+        assertFalse(verifier.isValid(transaction("com.x.coins", "3000000001", jws)));
+        verifier.setAcceptSandbox(true);
+        assertTrue(verifier.isValid(transaction("com.x.coins", "3000000001", jws)));
+    }
+
+    @Test
+    public void revokedOrExpiredTransactionShouldBeInvalid() throws Exception {
+        long now = System.currentTimeMillis();
+        String revoked = sign(payload(",\"revocationDate\":" + now + ",\"revocationReason\":1"), leafKey);
+        String expired = sign(payload(",\"expiresDate\":" + (now - 1000)), leafKey);
+
+        assertFalse(verifier.isValid(transaction("com.x.coins", "3000000001", revoked)));
+        assertFalse(verifier.isValid(transaction("com.x.coins", "3000000001", expired)));
+    }
+
+    @Test
+    public void malformedTransactionShouldBeInvalid() throws Exception {
+        assertFalse(verifier.isValid(transaction("com.x.coins", "3000000001", "abc.def")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingBundleIdShouldBeRejected() throws Exception {
+        new PurchaseVerifieriOSAppleStoreKit2(root, null);
+    }
+
+    private static String payload(String extra) {
+        long now = System.currentTimeMillis();
+        return "{\"transactionId\":\"3000000001\",\"originalTransactionId\":\"3000000000\",\"bundleId\":\"com.x.app\","
+                + "\"productId\":\"com.x.coins\",\"type\":\"Consumable\",\"environment\":\"Production\",\"quantity\":1,"
+                + "\"purchaseDate\":" + (now - 1000) + ",\"signedDate\":" + now + extra + "}";
+    }
+
+    private String sign(String payload, PrivateKey key) throws Exception {
+        String input = base64Url(header) + "." + base64Url(payload);
+        Signature signature = Signature.getInstance("SHA256withECDSA");
+        signature.initSign(key);
+        signature.update(input.getBytes(UTF_8));
+        // JWS wants r and s concatenated instead of the DER sequence
+        DerReader sequence = new DerReader(signature.sign()).expect(DerReader.SEQUENCE).contents();
+        byte[] raw = new byte[64];
+        unsigned(sequence.expect(DerReader.INTEGER).bigIntegerValue(), raw, 0);
+        unsigned(sequence.expect(DerReader.INTEGER).bigIntegerValue(), raw, 32);
+        return input + "." + Base64Codec.URL_SAFE_NO_PADDING.encode(raw);
+    }
+
+    private static void unsigned(BigInteger value, byte[] dst, int offset) {
+        byte[] bytes = value.toByteArray();
+        int length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, dst, offset + 32 - length, length);
+    }
+
+    private static String base64Url(String text) {
+        return Base64Codec.URL_SAFE_NO_PADDING.encode(text.getBytes(UTF_8));
+    }
+
+    private static Transaction transaction(String identifier, String orderId, String jws) {
+        Transaction transaction = new Transaction();
+        transaction.setIdentifier(identifier);
+        transaction.setStoreName(PurchaseManagerConfig.STORE_NAME_IOS_APPLE);
+        transaction.setOrderId(orderId);
+        transaction.setTransactionDataSignature(jws);
+        return transaction;
+    }
+}
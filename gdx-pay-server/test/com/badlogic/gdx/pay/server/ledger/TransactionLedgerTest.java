@@ -0,0 +1,264 @@
+package com.badlogic.gdx.pay.server.ledger;
+
+import com.badlogic.gdx.pay.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class TransactionLedgerTest {
+
+    private static final int SEGMENT_BYTES = 1024;
+
+    private File directory;
+    private TransactionLedger ledger;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("ledger", "");
+        directory.delete();
+        ledger = new TransactionLedger(directory, SEGMENT_BYTES);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (ledger != null) {
+            ledger.close();
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void reopeningShouldRebuildTheIndex() throws Exception {
+        long first = ledger.append(transaction("1", "alice"));
+        long second = ledger.append(transaction("2", "bob"));
+        long third = ledger.append(transaction("3", "alice"));
+
+        reopen();
+
+        assertEquals(3, ledger.size());
+        assertTrue(ledger.containsOrder("Test", "1"));
+        assertEquals(second, ledger.getOrderOffset("Test", "2"));
+        assertArrayEquals(new long[] {first, third}, ledger.getUserOffsets("alice"));
+        assertEquals("3", ledger.read(third).getOrderId());
+        assertEquals(-1, ledger.appendIfAbsent(transaction("2", "bob")));
+        assertTrue(ledger.appendIfAbsent(transaction("4", "bob")) > third);
+        assertEquals(4, ledger.size());
+    }
+
+    @Test
+    public void corruptRecordAtTheTailShouldBeCutOff() throws Exception {
+        ledger.append(transaction("1", "alice"));
+        long second = ledger.append(transaction("2", "alice"));
+        ledger.close();
+        // a flipped payload byte no longer matches the checksum
+        RandomAccessFile file = new RandomAccessFile(segmentFile(0), "rw");
+        try {
+            file.seek(second + 10);
+            int value = file.read();
+            file.seek(second + 10);
+            file.write(value ^ 0xff);
+        } finally {
+            file.close();
+        }
+
+        reopen();
+
+        assertIndexHoldsOnlyTheFirstOrder(second);
+        assertEquals(second, ledger.appendIfAbsent(transaction("2", "alice")));
+        reopen();
+        assertEquals(2, ledger.size());
+        assertEquals("2", ledger.read(second).getOrderId());
+    }
+
+    @Test
+    public void truncatedSegmentShouldBeRecovered() throws Exception {
+        ledger.append(transaction("1", "alice"));
+        long second = ledger.append(transaction("2", "alice"));
+        ledger.close();
+        // the file ends within the second record
+        RandomAccessFile file = new RandomAccessFile(segmentFile(0), "rw");
+        try {
+            file.setLength(second + 12);
+        } finally {
+            file.close();
+        }
+
+        reopen();
+
+        assertIndexHoldsOnlyTheFirstOrder(second);
+        assertEquals(SEGMENT_BYTES, segmentFile(0).length());
+        assertEquals(second, ledger.appendIfAbsent(transaction("2", "alice")));
+        assertEquals(2, ledger.size());
+    }
+
+    @Test
+    public void recordWithoutLengthShouldBeErased() throws Exception {
+        ledger.append(transaction("1", "alice"));
+        long second = ledger.append(transaction("2", "alice"));
+        ledger.append(transaction("3", "alice"));
+        ledger.close();
+        // crashed before the length of the second record was written: the third must not come back either
+        RandomAccessFile file = new RandomAccessFile(segmentFile(0), "rw");
+        try {
+            file.seek(second);
+            file.writeInt(0);
+        } finally {
+            file.close();
+        }
+
+        reopen();
+
+        assertIndexHoldsOnlyTheFirstOrder(second);
+        assertFalse(ledger.containsOrder("Test", "3"));
+        ledger.append(transaction("4", "bob"));
+        reopen();
+        assertEquals(2, ledger.size());
+        assertFalse(ledger.containsOrder("Test", "3"));
+        assertEquals(second, ledger.getOrderOffset("Test", "4"));
+    }
+
+    @Test
+    public void segmentsShouldRollAndBeReplayed() throws Exception {
+        long[] offsets = new long[20];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = ledger.append(transaction(String.valueOf(i), "alice"));
+        }
+        int segments = ledger.getSegmentCount();
+        assertTrue("segments: " + segments, segments > 2);
+        assertEquals(segments, directory.list().length - 1);
+
+        reopen();
+
+        assertEquals(segments, ledger.getSegmentCount());
+        assertEquals(offsets.length, ledger.size());
+        assertArrayEquals(offsets, ledger.getUserOffsets("alice"));
+        for (int i = 0; i < offsets.length; i++) {
+            assertEquals(String.valueOf(i), ledger.read(offsets[i]).getOrderId());
+        }
+        assertEquals(-1, ledger.appendIfAbsent(transaction("0", "alice")));
+    }
+
+    @Test
+    public void corruptTailOfARolledLedgerShouldBeCutOff() throws Exception {
+        long last = -1;
+        while (ledger.getSegmentCount() < 2) {
+            last = ledger.append(transaction(String.valueOf(ledger.size()), "alice"));
+        }
+        // the last record is the first of the new segment
+        int size = ledger.size();
+        ledger.close();
+        RandomAccessFile file = new RandomAccessFile(segmentFile(last), "rw");
+        try {
+            file.seek(10);
+            file.write(0xff);
+        } finally {
+            file.close();
+        }
+
+        reopen();
+
+        assertEquals(size - 1, ledger.size());
+        assertEquals(2, ledger.getSegmentCount());
+        assertEquals(last, ledger.getEndOffset());
+        assertEquals(last, ledger.appendIfAbsent(transaction(String.valueOf(size - 1), "alice")));
+    }
+
+    @Test
+    public void lockFileShouldKeepOutASecondInstance() throws Exception {
+        assertTrue(new File(directory, "ledger.lock").exists());
+        try {
+            new TransactionLedger(directory, SEGMENT_BYTES);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Ledger is used by another process or instance"));
+        }
+        ledger.append(transaction("1", "alice"));
+
+        reopen();
+
+        assertEquals(1, ledger.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void appendingToAClosedLedgerShouldFail() throws Exception {
+        ledger.close();
+        ledger.append(transaction("1", "alice"));
+    }
+
+    @Test
+    public void fieldsShouldSurviveReopening() throws Exception {
+        Transaction transaction = transaction("1", "alice");
+        transaction.setRequestId("request");
+        // one millisecond before the epoch must not read back as a missing date
+        transaction.setPurchaseTime(new Date(-1));
+        transaction.setPurchaseCost(-199);
+        transaction.setPurchaseCostCurrency("EUR");
+        transaction.setReversalText("refunded");
+        long offset = ledger.append(transaction);
+        long second = ledger.append(transaction("2", null));
+
+        reopen();
+
+        Transaction read = ledger.read(offset);
+        assertEquals("Test", read.getStoreName());
+        assertEquals("product", read.getIdentifier());
+        assertEquals("request", read.getRequestId());
+        assertEquals("alice", read.getUserId());
+        assertEquals(new Date(-1), read.getPurchaseTime());
+        assertEquals(-199, read.getPurchaseCost());
+        assertEquals("EUR", read.getPurchaseCostCurrency());
+        assertNull(read.getReversalTime());
+        assertEquals("refunded", read.getReversalText());
+        assertEquals(transaction.getTransactionData(), read.getTransactionData());
+        assertNull(read.getTransactionDataSignature());
+        Transaction other = ledger.read(second);
+        assertNull(other.getUserId());
+        assertNull(other.getPurchaseTime());
+    }
+
+    private void assertIndexHoldsOnlyTheFirstOrder(long second) {
+        assertEquals(1, ledger.size());
+        assertTrue(ledger.containsOrder("Test", "1"));
+        assertFalse(ledger.containsOrder("Test", "2"));
+        assertEquals(1, ledger.getUserOffsets("alice").length);
+        assertEquals(second, ledger.getEndOffset());
+    }
+
+    private void reopen() throws IOException {
+        ledger.close();
+        ledger = null;
+        ledger = new TransactionLedger(directory, SEGMENT_BYTES);
+    }
+
+    private File segmentFile(long base) {
+        return new File(directory, String.format("%020d", base) + ".log");
+    }
+
+    private static Transaction transaction(String orderId, String userId) {
+        Transaction transaction = new Transaction();
+        transaction.setStoreName("Test");
+        transaction.setIdentifier("product");
+        transaction.setOrderId(orderId);
+        transaction.setUserId(userId);
+        // about 200 bytes per record, so a few fill a segment
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            data.append("transaction-").append(i);
+        }
+        transaction.setTransactionData(data.toString());
+        return transaction;
+    }
+}
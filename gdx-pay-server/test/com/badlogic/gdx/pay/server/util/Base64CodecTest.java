@@ -0,0 +1,144 @@
+package com.badlogic.gdx.pay.server.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Base64CodecTest {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    @Test
+    public void standardAlphabetShouldMatchRfc4648() {
+        // test vectors of RFC 4648 section 10
+        String[] plain = {"", "f", "fo", "foo", "foob", "fooba", "foobar"};
+        String[] encoded = {"", "Zg==", "Zm8=", "Zm9v", "Zm9vYg==", "Zm9vYmE=", "Zm9vYmFy"};
+        for (int i = 0; i < plain.length; i++) {
+            assertEquals(encoded[i], Base64Codec.STANDARD.encode(plain[i].getBytes(US_ASCII)));
+            assertEquals(plain[i], new String(Base64Codec.STANDARD.decode(encoded[i]), US_ASCII));
+        }
+    }
+
+    @Test
+    public void alphabetsShouldDifferInTheLastTwoCharacters() {
+        byte[] data = {(byte)0xfb, (byte)0xff, (byte)0xbf};
+
+        assertEquals("+/+/", Base64Codec.STANDARD.encode(data));
+        assertEquals("-_-_", Base64Codec.URL_SAFE.encode(data));
+        assertArrayEquals(data, Base64Codec.URL_SAFE.decode("-_-_"));
+    }
+
+    @Test
+    public void randomDataShouldRoundTrip() {
+        Random random = new Random(42);
+        Base64Codec[] codecs = {Base64Codec.STANDARD, Base64Codec.URL_SAFE, Base64Codec.URL_SAFE_NO_PADDING};
+        for (int length = 0; length < 100; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            for (Base64Codec codec : codecs) {
+                String encoded = codec.encode(data);
+                assertEquals(codec.encodedLength(length), encoded.length());
+                assertArrayEquals(data, codec.decode(encoded));
+
+                byte[] ascii = encoded.getBytes(US_ASCII);
+                byte[] decoded = new byte[length + 2];
+                assertEquals(length, codec.decode(ascii, 0, ascii.length, decoded, 2));
+                for (int i = 0; i < length; i++) {
+                    assertEquals(data[i], decoded[i + 2]);
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                assertEquals(length, codec.decode(ByteBuffer.wrap(ascii), buffer));
+                assertArrayEquals(data, buffer.array());
+            }
+        }
+    }
+
+    @Test
+    public void unpaddedCodecShouldAcceptInputWithAndWithoutPadding() {
+        assertEquals("Zg", Base64Codec.URL_SAFE_NO_PADDING.encode(new byte[] {'f'}));
+        assertArrayEquals(new byte[] {'f'}, Base64Codec.URL_SAFE_NO_PADDING.decode("Zg"));
+        assertArrayEquals(new byte[] {'f'}, Base64Codec.URL_SAFE_NO_PADDING.decode("Zg=="));
+        assertSame(Base64Codec.URL_SAFE_NO_PADDING, Base64Codec.URL_SAFE_NO_PADDING.withoutPadding());
+        assertFalse(Base64Codec.STANDARD.withoutPadding().isPadding());
+    }
+
+    @Test
+    public void missingPaddingShouldBeRejected() {
+        assertRejected(Base64Codec.STANDARD, "Zg");
+        assertRejected(Base64Codec.STANDARD, "Zg=");
+        assertRejected(Base64Codec.URL_SAFE, "Zm8");
+    }
+
+    @Test
+    public void badPaddingShouldBeRejected() {
+        assertRejected(Base64Codec.STANDARD, "Zg===");
+        assertRejected(Base64Codec.STANDARD, "Z===");
+        assertRejected(Base64Codec.STANDARD, "====");
+        assertRejected(Base64Codec.STANDARD, "Zm9=v");
+        assertRejected(Base64Codec.URL_SAFE_NO_PADDING, "Zg=");
+        assertRejected(Base64Codec.URL_SAFE_NO_PADDING, "Z");
+    }
+
+    @Test
+    public void badCharactersShouldBeRejected() {
+        assertRejected(Base64Codec.STANDARD, "Zm9v*mFy");
+        assertRejected(Base64Codec.STANDARD, "Zm9v Ym=");
+        assertRejected(Base64Codec.STANDARD, "Zm9v\nYmFy");
+        assertRejected(Base64Codec.STANDARD, "Zm9\u00e9");
+        assertRejected(Base64Codec.STANDARD, "Zm9\u0176");
+        // the other alphabet
+        assertRejected(Base64Codec.STANDARD, "-_-_");
+        assertRejected(Base64Codec.URL_SAFE, "+/+/");
+        assertRejected(Base64Codec.URL_SAFE_NO_PADDING, "+/+/");
+    }
+
+    @Test
+    public void trailingDataShouldBeRejected() {
+        assertRejected(Base64Codec.STANDARD, "Zg==Zm9v");
+        assertRejected(Base64Codec.STANDARD, "Zm8=Zg==");
+        assertRejected(Base64Codec.STANDARD, "Zm9vY");
+        assertRejected(Base64Codec.URL_SAFE_NO_PADDING, "Zg==Zg");
+    }
+
+    @Test
+    public void tooSmallOutputShouldBeRejected() {
+        try {
+            Base64Codec.STANDARD.decode("Zm9vYmFy", new byte[5], 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void nullShouldDecodeToNull() {
+        assertNull(Base64Codec.STANDARD.decode((CharSequence)null));
+    }
+
+    /** Asserts that every decode method rejects the input. */
+    private static void assertRejected(Base64Codec codec, String encoded) {
+        try {
+            codec.decode(encoded);
+            fail("String accepted: " + encoded);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        byte[] ascii = encoded.getBytes(Charset.forName("ISO-8859-1"));
+        try {
+            codec.decode(ascii, 0, ascii.length, new byte[ascii.length], 0);
+            fail("Bytes accepted: " + encoded);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            codec.decode(ByteBuffer.wrap(ascii), ByteBuffer.allocate(ascii.length));
+            fail("Buffer accepted: " + encoded);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
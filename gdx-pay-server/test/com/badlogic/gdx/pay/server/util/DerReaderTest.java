@@ -0,0 +1,83 @@
+package com.badlogic.gdx.pay.server.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class DerReaderTest {
+
+    @Test
+    public void definiteLengthElementsShouldBeRead() throws Exception {
+        byte[] data = {0x30, 0x06, 0x02, 0x01, 0x2a, 0x04, 0x01, 0x07};
+
+        DerReader sequence = new DerReader(data).expect(DerReader.SEQUENCE).contents();
+
+        assertEquals(42, sequence.expect(DerReader.INTEGER).longValue());
+        assertArrayEquals(new byte[] {0x07}, sequence.expect(DerReader.OCTET_STRING).octets());
+        assertFalse(sequence.hasNext());
+    }
+
+    @Test
+    public void indefiniteLengthElementsShouldBeRead() throws Exception {
+        // SEQUENCE { [0] { constructed OCTET STRING { "ab", "c" } } }, all indefinite length
+        byte[] data = {0x30, (byte)0x80, (byte)0xa0, (byte)0x80, 0x24, (byte)0x80, 0x04, 0x02, 'a', 'b', 0x04, 0x01, 'c', 0, 0, 0, 0,
+                0, 0};
+
+        DerReader reader = new DerReader(data);
+        reader.expect(DerReader.SEQUENCE);
+        assertEquals(data.length, reader.elementLength());
+        DerReader octets = reader.contents().expect(DerReader.CONTEXT_0).contents();
+        octets.next();
+
+        assertArrayEquals(new byte[] {'a', 'b', 'c'}, octets.octets());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void nestingUpToMaxDepthShouldBeRead() throws Exception {
+        DerReader reader = new DerReader(nestedIndefinite(DerReader.MAX_DEPTH));
+        for (int i = 0; i < DerReader.MAX_DEPTH; i++) {
+            reader = reader.expect(DerReader.SEQUENCE).contents();
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    @Test(expected = IOException.class)
+    public void deeplyNestedIndefiniteLengthShouldBeRejected() throws Exception {
+        new DerReader(nestedIndefinite(100000)).next();
+    }
+
+    @Test(expected = IOException.class)
+    public void deeplyNestedOctetStringShouldBeRejected() throws Exception {
+        // constructed OCTET STRINGs nested in each other with definite lengths, innermost empty
+        int levels = 100000;
+        byte[] data = new byte[levels * 6];
+        int length = 0;
+        for (int i = levels - 1; i >= 0; i--) {
+            int offset = i * 6;
+            data[offset] = 0x24;
+            data[offset + 1] = (byte)0x84;
+            data[offset + 2] = (byte)(length >>> 24);
+            data[offset + 3] = (byte)(length >>> 16);
+            data[offset + 4] = (byte)(length >>> 8);
+            data[offset + 5] = (byte)length;
+            length += 6;
+        }
+
+        DerReader reader = new DerReader(data);
+        reader.next();
+        reader.octets();
+    }
+
+    /** SEQUENCEs of indefinite length nested the given number of levels. */
+    private static byte[] nestedIndefinite(int levels) {
+        byte[] data = new byte[levels * 4];
+        for (int i = 0; i < levels; i++) {
+            data[i * 2] = 0x30;
+            data[i * 2 + 1] = (byte)0x80;
+        }
+        return data;
+    }
+}
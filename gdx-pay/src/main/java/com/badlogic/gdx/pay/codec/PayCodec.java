@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.badlogic.gdx.pay.FreeTrialPeriod;
+import com.badlogic.gdx.pay.Information;
+import com.badlogic.gdx.pay.Transaction;
+
+/** Compact, versioned binary format for {@link Transaction}s, {@link Information} and {@link FreeTrialPeriod}s, e.g. to upload
+ * transactions to a server or to store them. Sequences are written with {@link PayDataOutput} and read with
+ * {@link PayDataInput}; the methods here encode and decode single objects.
+ * <p>
+ * A stream starts with the magic bytes "GP" and the format version. Every object is a tag byte followed by a bit mask of the
+ * fields present (null and 0 are left out) and the fields:
+ * <ul>
+ * <li>integers, costs and times as variable-length integers (7 bits per byte, zigzag-encoded if signed); purchase times as
+ * difference to the previous purchase time in the stream, reversal times as difference to the purchase time,</li>
+ * <li>store names, identifiers, currency codes and reversal texts via a dictionary built up while writing: the first
+ * occurrence is written out, later ones as index,</li>
+ * <li>other strings and receipt data length-prefixed as UTF-8.</li>
+ * </ul>
+ * The format is independent of reflection and field order in the classes. */
+public final class PayCodec {
+
+	/** The current format version. */
+	public static final int VERSION = 1;
+
+	static final byte MAGIC_0 = 'G';
+	static final byte MAGIC_1 = 'P';
+
+	static final int TAG_TRANSACTION = 1;
+	static final int TAG_INFORMATION = 2;
+	static final int TAG_FREE_TRIAL_PERIOD = 3;
+
+	/** Maximum number of dictionary entries per stream; further strings are written out every time. */
+	static final int MAX_DICTIONARY_SIZE = 1024;
+
+	private PayCodec () {
+		// not used
+	}
+
+	/** Encodes a single transaction. */
+	public static byte[] encode (Transaction transaction) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		PayDataOutput out = new PayDataOutput(bytes);
+		try {
+			out.writeTransaction(transaction);
+			out.flush();
+		} catch (IOException e) {
+			// not thrown by ByteArrayOutputStream
+			throw new RuntimeException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/** Encodes a single information. */
+	public static byte[] encode (Information information) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		PayDataOutput out = new PayDataOutput(bytes);
+		try {
+			out.writeInformation(information);
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/** Decodes a transaction encoded with {@link #encode(Transaction)}.
+	 * 
+	 * @throws IOException if the data is malformed or holds something else. */
+	public static Transaction decodeTransaction (byte[] data) throws IOException {
+		PayDataInput in = new PayDataInput(new ByteArrayInputStream(data));
+		Transaction transaction = in.readTransaction();
+		if (transaction == null) {
+			throw new IOException("No transaction in data");
+		}
+		return transaction;
+	}
+
+	/** Decodes an information encoded with {@link #encode(Information)}.
+	 * 
+	 * @throws IOException if the data is malformed or holds something else. */
+	public static Information decodeInformation (byte[] data) throws IOException {
+		PayDataInput in = new PayDataInput(new ByteArrayInputStream(data));
+		Information information = in.readInformation();
+		if (information == null) {
+			throw new IOException("No information in data");
+		}
+		return information;
+	}
+}
@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.codec;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import com.badlogic.gdx.pay.FreeTrialPeriod;
+import com.badlogic.gdx.pay.Information;
+import com.badlogic.gdx.pay.Transaction;
+
+/** Reads transactions, information and free trial periods written by {@link PayDataOutput}. The read methods return null at the
+ * end of the stream, so a sequence is read with:
+ * 
+ * <pre>
+ * PayDataInput in = new PayDataInput(stream);
+ * Transaction transaction;
+ * while ((transaction = in.readTransaction()) != null) {
+ *    ...
+ * }
+ * in.close();
+ * </pre>
+ * 
+ * Input is buffered, don't read from the stream directly. Malformed data, data of another version and objects of another type
+ * than requested are reported as {@link IOException}. Not thread-safe. */
+public class PayDataInput implements Closeable {
+
+	private final InputStream in;
+	private final byte[] buffer = new byte[8192];
+	private int position;
+	private int limit;
+	private boolean headerRead;
+
+	private final List<String> dictionary = new ArrayList<String>();
+	/** Purchase time of the previous transaction, for delta decoding. */
+	private long lastPurchaseTime;
+	/** Reused for decoding strings. */
+	private char[] chars = new char[256];
+
+	public PayDataInput (InputStream in) {
+		this.in = in;
+	}
+
+	/** Reads the next transaction; null at the end of the stream. */
+	public Transaction readTransaction () throws IOException {
+		if (!begin(PayCodec.TAG_TRANSACTION)) {
+			return null;
+		}
+		int fields = readFields(13);
+		Transaction transaction = new Transaction();
+		if ((fields & 1) != 0) transaction.setIdentifier(readDictionaryString());
+		if ((fields & 1 << 1) != 0) transaction.setStoreName(readDictionaryString());
+		if ((fields & 1 << 2) != 0) transaction.setOrderId(readString());
+		if ((fields & 1 << 3) != 0) transaction.setRequestId(readString());
+		if ((fields & 1 << 4) != 0) transaction.setUserId(readString());
+		long time = lastPurchaseTime;
+		if ((fields & 1 << 5) != 0) {
+			time += readSignedVarLong();
+			lastPurchaseTime = time;
+			transaction.setPurchaseTime(new Date(time));
+		}
+		if ((fields & 1 << 6) != 0) transaction.setPurchaseText(readString());
+		if ((fields & 1 << 7) != 0) transaction.setPurchaseCost(readSignedVarInt());
+		if ((fields & 1 << 8) != 0) transaction.setPurchaseCostCurrency(readDictionaryString());
+		if ((fields & 1 << 9) != 0) transaction.setReversalTime(new Date(time + readSignedVarLong()));
+		if ((fields & 1 << 10) != 0) transaction.setReversalText(readDictionaryString());
+		if ((fields & 1 << 11) != 0) transaction.setTransactionData(readString());
+		if ((fields & 1 << 12) != 0) transaction.setTransactionDataSignature(readString());
+		return transaction;
+	}
+
+	/** Reads the next information; null at the end of the stream. */
+	@SuppressWarnings("deprecation")
+	public Information readInformation () throws IOException {
+		if (!begin(PayCodec.TAG_INFORMATION)) {
+			return null;
+		}
+		int fields = readFields(7);
+		Information.Builder builder = Information.newBuilder();
+		if ((fields & 1) != 0) builder.localName(readString());
+		if ((fields & 1 << 1) != 0) builder.localDescription(readString());
+		if ((fields & 1 << 2) != 0) builder.localPricing(readString());
+		if ((fields & 1 << 3) != 0) builder.priceInCents(Integer.valueOf(readSignedVarInt()));
+		if ((fields & 1 << 4) != 0) builder.priceAsDouble(Double.valueOf(Double.longBitsToDouble(readLong())));
+		if ((fields & 1 << 5) != 0) builder.priceCurrencyCode(readDictionaryString());
+		if ((fields & 1 << 6) != 0) builder.freeTrialPeriod(readFreeTrialPeriodFields());
+		return builder.build();
+	}
+
+	/** Reads the next free trial period; null at the end of the stream. */
+	public FreeTrialPeriod readFreeTrialPeriod () throws IOException {
+		if (!begin(PayCodec.TAG_FREE_TRIAL_PERIOD)) {
+			return null;
+		}
+		return readFreeTrialPeriodFields();
+	}
+
+	private FreeTrialPeriod readFreeTrialPeriodFields () throws IOException {
+		int numberOfUnits = readSignedVarInt();
+		char unit = (char)readByte();
+		try {
+			return new FreeTrialPeriod(numberOfUnits, FreeTrialPeriod.PeriodUnit.parse(unit));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid period unit: " + unit);
+		}
+	}
+
+	@Override
+	public void close () throws IOException {
+		in.close();
+	}
+
+	/** Reads the header if not done yet and the tag of the next object. Returns false at the end of the stream. */
+	private boolean begin (int expectedTag) throws IOException {
+		if (!headerRead) {
+			if (!fill()) {
+				return false;
+			}
+			if (readByte() != PayCodec.MAGIC_0 || readByte() != PayCodec.MAGIC_1) {
+				throw new IOException("Not a gdx-pay data stream");
+			}
+			int version = readByte();
+			if (version != PayCodec.VERSION) {
+				throw new IOException("Unsupported version: " + version);
+			}
+			headerRead = true;
+		}
+		if (position == limit && !fill()) {
+			return false;
+		}
+		int tag = readByte();
+		if (tag != expectedTag) {
+			throw new IOException("Expected tag " + expectedTag + " but was " + tag);
+		}
+		return true;
+	}
+
+	/** Reads the field bit mask; unknown bits mean the data is from a newer version. */
+	private int readFields (int count) throws IOException {
+		long fields = readVarLong();
+		if ((fields & ~((1L << count) - 1)) != 0) {
+			throw new IOException("Unknown fields: " + Long.toBinaryString(fields));
+		}
+		return (int)fields;
+	}
+
+	private String readDictionaryString () throws IOException {
+		long index = readVarLong();
+		if (index == 0) {
+			String value = readString();
+			if (dictionary.size() < PayCodec.MAX_DICTIONARY_SIZE) {
+				dictionary.add(value);
+			}
+			return value;
+		}
+		if (index > dictionary.size()) {
+			throw new IOException("Invalid dictionary index: " + index);
+		}
+		return dictionary.get((int)index - 1);
+	}
+
+	/** Reads a length-prefixed UTF-8 string, decoding directly from the buffer. */
+	private String readString () throws IOException {
+		long length = readVarLong();
+		if (length < 0 || length > Integer.MAX_VALUE) {
+			throw new IOException("Invalid string length: " + length);
+		}
+		// the length isn't trusted: grow the buffer with the bytes actually read, so a bogus length ends in an EOFException
+		int count = 0;
+		for (long remaining = length; remaining > 0;) {
+			if (count + 2 > chars.length) {
+				chars = Arrays.copyOf(chars, chars.length * 2);
+			}
+			int b = readByte();
+			remaining--;
+			if (b < 0x80) {
+				chars[count++] = (char)b;
+			} else if ((b & 0xe0) == 0xc0) {
+				chars[count++] = (char)(((b & 0x1f) << 6) | continuation());
+				remaining--;
+			} else if ((b & 0xf0) == 0xe0) {
+				chars[count++] = (char)(((b & 0x0f) << 12) | (continuation() << 6) | continuation());
+				remaining -= 2;
+			} else if ((b & 0xf8) == 0xf0) {
+				int codePoint = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation();
+				if (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT) {
+					throw new IOException("Malformed UTF-8");
+				}
+				count += Character.toChars(codePoint, chars, count);
+				remaining -= 3;
+			} else {
+				throw new IOException("Malformed UTF-8");
+			}
+			if (remaining < 0) {
+				throw new IOException("Malformed UTF-8");
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+	private int continuation () throws IOException {
+		int b = readByte();
+		if ((b & 0xc0) != 0x80) {
+			throw new IOException("Malformed UTF-8");
+		}
+		return b & 0x3f;
+	}
+
+	private int readSignedVarInt () throws IOException {
+		long value = readSignedVarLong();
+		if ((int)value != value) {
+			throw new IOException("Number out of int range: " + value);
+		}
+		return (int)value;
+	}
+
+	private long readSignedVarLong () throws IOException {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private long readVarLong () throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long)(b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+
+	private long readLong () throws IOException {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | readByte();
+		}
+		return value;
+	}
+
+	private int readByte () throws IOException {
+		if (position == limit && !fill()) {
+			throw new EOFException("Unexpected end of stream");
+		}
+		return buffer[position++] & 0xff;
+	}
+
+	/** Refills the empty buffer; returns false at the end of the stream. */
+	private boolean fill () throws IOException {
+		if (position < limit) {
+			return true;
+		}
+		int count;
+		do {
+			count = in.read(buffer, 0, buffer.length);
+		} while (count == 0);
+		if (count < 0) {
+			return false;
+		}
+		position = 0;
+		limit = count;
+		return true;
+	}
+}
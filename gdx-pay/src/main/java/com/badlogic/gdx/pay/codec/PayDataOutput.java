@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright 2011 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.badlogic.gdx.pay.codec;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.badlogic.gdx.pay.FreeTrialPeriod;
+import com.badlogic.gdx.pay.Information;
+import com.badlogic.gdx.pay.Transaction;
+
+/** Writes transactions, information and free trial periods in the format described in {@link PayCodec}. Output is buffered:
+ * call {@link #flush()} or {@link #close()} when done. Not thread-safe.
+ * 
+ * <pre>
+ * PayDataOutput out = new PayDataOutput(stream);
+ * for (Transaction transaction : transactions) {
+ *    out.writeTransaction(transaction);
+ * }
+ * out.close();
+ * </pre> */
+public class PayDataOutput implements Closeable, Flushable {
+
+	private final OutputStream out;
+	private final byte[] buffer = new byte[8192];
+	private int position;
+	private boolean headerWritten;
+
+	private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+	/** Purchase time of the previous transaction, for delta encoding. */
+	private long lastPurchaseTime;
+
+	public PayDataOutput (OutputStream out) {
+		this.out = out;
+	}
+
+	/** Writes a transaction. */
+	public void writeTransaction (Transaction transaction) throws IOException {
+		String identifier = transaction.getIdentifier();
+		String storeName = transaction.getStoreName();
+		String orderId = transaction.getOrderId();
+		String requestId = transaction.getRequestId();
+		String userId = transaction.getUserId();
+		Date purchaseTime = transaction.getPurchaseTime();
+		String purchaseText = transaction.getPurchaseText();
+		int purchaseCost = transaction.getPurchaseCost();
+		String purchaseCostCurrency = transaction.getPurchaseCostCurrency();
+		Date reversalTime = transaction.getReversalTime();
+		String reversalText = transaction.getReversalText();
+		String transactionData = transaction.getTransactionData();
+		String transactionDataSignature = transaction.getTransactionDataSignature();
+
+		int fields = (identifier != null ? 1 : 0) | (storeName != null ? 1 << 1 : 0) | (orderId != null ? 1 << 2 : 0)
+			| (requestId != null ? 1 << 3 : 0) | (userId != null ? 1 << 4 : 0) | (purchaseTime != null ? 1 << 5 : 0)
+			| (purchaseText != null ? 1 << 6 : 0) | (purchaseCost != 0 ? 1 << 7 : 0) | (purchaseCostCurrency != null ? 1 << 8 : 0)
+			| (reversalTime != null ? 1 << 9 : 0) | (reversalText != null ? 1 << 10 : 0) | (transactionData != null ? 1 << 11 : 0)
+			| (transactionDataSignature != null ? 1 << 12 : 0);
+		begin(PayCodec.TAG_TRANSACTION);
+		writeVarLong(fields);
+		if (identifier != null) writeDictionaryString(identifier);
+		if (storeName != null) writeDictionaryString(storeName);
+		if (orderId != null) writeString(orderId);
+		if (requestId != null) writeString(requestId);
+		if (userId != null) writeString(userId);
+		long time = lastPurchaseTime;
+		if (purchaseTime != null) {
+			time = purchaseTime.getTime();
+			writeSignedVarLong(time - lastPurchaseTime);
+			lastPurchaseTime = time;
+		}
+		if (purchaseText != null) writeString(purchaseText);
+		if (purchaseCost != 0) writeSignedVarLong(purchaseCost);
+		if (purchaseCostCurrency != null) writeDictionaryString(purchaseCostCurrency);
+		if (reversalTime != null) writeSignedVarLong(reversalTime.getTime() - time);
+		if (reversalText != null) writeDictionaryString(reversalText);
+		if (transactionData != null) writeString(transactionData);
+		if (transactionDataSignature != null) writeString(transactionDataSignature);
+	}
+
+	/** Writes an information (its free trial period included). */
+	@SuppressWarnings("deprecation")
+	public void writeInformation (Information information) throws IOException {
+		String localName = information.getLocalName();
+		String localDescription = information.getLocalDescription();
+		String localPricing = information.getLocalPricing();
+		Integer priceInCents = information.getPriceInCents();
+		Double priceAsDouble = information.getPriceAsDouble();
+		String priceCurrencyCode = information.getPriceCurrencyCode();
+		FreeTrialPeriod freeTrialPeriod = information.getFreeTrialPeriod();
+
+		int fields = (localName != null ? 1 : 0) | (localDescription != null ? 1 << 1 : 0) | (localPricing != null ? 1 << 2 : 0)
+			| (priceInCents != null ? 1 << 3 : 0) | (priceAsDouble != null ? 1 << 4 : 0) | (priceCurrencyCode != null ? 1 << 5 : 0)
+			| (freeTrialPeriod != null ? 1 << 6 : 0);
+		begin(PayCodec.TAG_INFORMATION);
+		writeVarLong(fields);
+		if (localName != null) writeString(localName);
+		if (localDescription != null) writeString(localDescription);
+		if (localPricing != null) writeString(localPricing);
+		if (priceInCents != null) writeSignedVarLong(priceInCents.intValue());
+		if (priceAsDouble != null) writeLong(Double.doubleToLongBits(priceAsDouble.doubleValue()));
+		if (priceCurrencyCode != null) writeDictionaryString(priceCurrencyCode);
+		if (freeTrialPeriod != null) writeFreeTrialPeriodFields(freeTrialPeriod);
+	}
+
+	/** Writes a free trial period. */
+	public void writeFreeTrialPeriod (FreeTrialPeriod period) throws IOException {
+		begin(PayCodec.TAG_FREE_TRIAL_PERIOD);
+		writeFreeTrialPeriodFields(period);
+	}
+
+	private void writeFreeTrialPeriodFields (FreeTrialPeriod period) throws IOException {
+		writeSignedVarLong(period.getNumberOfUnits());
+		// the unit's letter as in ISO 8601 durations, see FreeTrialPeriod.PeriodUnit.parse(char)
+		writeByte(period.getUnit().name().charAt(0));
+	}
+
+	/** Writes the buffered bytes to the stream and flushes it. */
+	@Override
+	public void flush () throws IOException {
+		drain();
+		out.flush();
+	}
+
+	/** Flushes and closes the stream. */
+	@Override
+	public void close () throws IOException {
+		try {
+			drain();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void begin (int tag) throws IOException {
+		if (!headerWritten) {
+			headerWritten = true;
+			writeByte(PayCodec.MAGIC_0);
+			writeByte(PayCodec.MAGIC_1);
+			writeByte(PayCodec.VERSION);
+		}
+		writeByte(tag);
+	}
+
+	/** Writes the dictionary index of a string plus one, or 0 and the string if it isn't in the dictionary yet. */
+	private void writeDictionaryString (String value) throws IOException {
+		Integer index = dictionary.get(value);
+		if (index != null) {
+			writeVarLong(index.intValue() + 1);
+			return;
+		}
+		writeVarLong(0);
+		writeString(value);
+		if (dictionary.size() < PayCodec.MAX_DICTIONARY_SIZE) {
+			dictionary.put(value, Integer.valueOf(dictionary.size()));
+		}
+	}
+
+	/** Writes the UTF-8 length and bytes of a string, encoding directly into the buffer. */
+	private void writeString (String value) throws IOException {
+		int length = value.length();
+		int utf8Length = 0;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				utf8Length++;
+			} else if (c < 0x800) {
+				utf8Length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				utf8Length += 4;
+				i++;
+			} else {
+				utf8Length += 3;
+			}
+		}
+		writeVarLong(utf8Length);
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				writeByte(c);
+			} else if (c < 0x800) {
+				writeByte(0xc0 | (c >> 6));
+				writeByte(0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				writeByte(0xf0 | (codePoint >> 18));
+				writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+				writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+				writeByte(0x80 | (codePoint & 0x3f));
+			} else {
+				// unpaired surrogates are encoded as is, like the JDK's modified UTF-8 would
+				writeByte(0xe0 | (c >> 12));
+				writeByte(0x80 | ((c >> 6) & 0x3f));
+				writeByte(0x80 | (c & 0x3f));
+			}
+		}
+	}
+
+	private void writeSignedVarLong (long value) throws IOException {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	private void writeVarLong (long value) throws IOException {
+		while ((value & ~0x7fL) != 0) {
+			writeByte((int)((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		writeByte((int)value);
+	}
+
+	private void writeLong (long value) throws IOException {
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			writeByte((int)(value >>> shift));
+		}
+	}
+
+	private void writeByte (int value) throws IOException {
+		if (position == buffer.length) {
+			drain();
+		}
+		buffer[position++] = (byte)value;
+	}
+
+	private void drain () throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.badlogic.gdx.pay.codec;
+
+import com.badlogic.gdx.pay.FreeTrialPeriod;
+import com.badlogic.gdx.pay.Information;
+import com.badlogic.gdx.pay.Transaction;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class PayCodecTest {
+
+    @Test
+    public void transactionWithAllFieldsShouldRoundTrip() throws Exception {
+        Transaction transaction = newTransaction(1);
+
+        Transaction decoded = PayCodec.decodeTransaction(PayCodec.encode(transaction));
+
+        assertTransactionEquals(transaction, decoded);
+    }
+
+    @Test
+    public void transactionWithoutFieldsShouldRoundTrip() throws Exception {
+        Transaction decoded = PayCodec.decodeTransaction(PayCodec.encode(new Transaction()));
+
+        assertNull(decoded.getIdentifier());
+        assertNull(decoded.getOrderId());
+        assertNull(decoded.getPurchaseTime());
+        assertNull(decoded.getTransactionData());
+        assertEquals(0, decoded.getPurchaseCost());
+    }
+
+    @Test
+    public void stringsOutsideBasicMultilingualPlaneShouldRoundTrip() throws Exception {
+        Transaction transaction = new Transaction();
+        transaction.setPurchaseText("€ 1.00 😀 é");
+
+        Transaction decoded = PayCodec.decodeTransaction(PayCodec.encode(transaction));
+
+        assertEquals(transaction.getPurchaseText(), decoded.getPurchaseText());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void informationShouldRoundTrip() throws Exception {
+        Information information = Information.newBuilder()
+                .localName("Full edition")
+                .localDescription("Access to all themes")
+                .localPricing("€ 1.00")
+                .priceInCents(100)
+                .priceAsDouble(1.0)
+                .priceCurrencyCode("EUR")
+                .freeTrialPeriod(new FreeTrialPeriod(7, FreeTrialPeriod.PeriodUnit.DAY))
+                .build();
+
+        Information decoded = PayCodec.decodeInformation(PayCodec.encode(information));
+
+        assertEquals(information, decoded);
+        assertEquals(Integer.valueOf(100), decoded.getPriceInCents());
+        assertEquals(Double.valueOf(1.0), decoded.getPriceAsDouble());
+        assertEquals("EUR", decoded.getPriceCurrencyCode());
+        assertEquals(information.getFreeTrialPeriod(), decoded.getFreeTrialPeriod());
+    }
+
+    @Test
+    public void sequenceShouldBeStreamedAndUseDictionary() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PayDataOutput out = new PayDataOutput(bytes);
+        for (int i = 0; i < 100; i++) {
+            out.writeTransaction(newTransaction(i));
+        }
+        out.writeFreeTrialPeriod(new FreeTrialPeriod(1, FreeTrialPeriod.PeriodUnit.MONTH));
+        out.close();
+
+        PayDataInput in = new PayDataInput(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < 100; i++) {
+            assertTransactionEquals(newTransaction(i), in.readTransaction());
+        }
+        assertEquals(new FreeTrialPeriod(1, FreeTrialPeriod.PeriodUnit.MONTH), in.readFreeTrialPeriod());
+        assertNull(in.readTransaction());
+
+        int single = PayCodec.encode(newTransaction(50)).length;
+        assertTrue("repeated store names and identifiers should be shorter", bytes.size() < 100 * single);
+    }
+
+    @Test
+    public void emptyStreamShouldHaveNoTransactions() throws Exception {
+        PayDataInput in = new PayDataInput(new ByteArrayInputStream(new byte[0]));
+
+        assertNull(in.readTransaction());
+    }
+
+    @Test(expected = IOException.class)
+    public void otherDataShouldBeRejected() throws Exception {
+        PayCodec.decodeTransaction("{\"orderId\":1}".getBytes("UTF-8"));
+    }
+
+    @Test(expected = IOException.class)
+    public void otherTypeShouldBeRejected() throws Exception {
+        PayCodec.decodeTransaction(PayCodec.encode(new Information("a", "b", "c")));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedDataShouldBeRejected() throws Exception {
+        byte[] data = PayCodec.encode(newTransaction(1));
+        byte[] truncated = new byte[data.length - 1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        PayCodec.decodeTransaction(truncated);
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedStringLengthShouldBeRejected() throws Exception {
+        // an order id claiming Integer.MAX_VALUE bytes, followed by two
+        byte[] data = {PayCodec.MAGIC_0, PayCodec.MAGIC_1, PayCodec.VERSION, PayCodec.TAG_TRANSACTION, 1 << 2,
+                (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, 0x07, 'a', 'b'};
+
+        PayCodec.decodeTransaction(data);
+    }
+
+    private static Transaction newTransaction(int index) {
+        Transaction transaction = new Transaction();
+        transaction.setIdentifier("com.example.coins_" + (index % 3));
+        transaction.setStoreName("GooglePlay");
+        transaction.setOrderId("GPA.1234-5678-9012-" + index);
+        transaction.setRequestId("token-" + index);
+        transaction.setUserId("user-" + index);
+        transaction.setPurchaseTime(new Date(1600000000000L + index * 60000L));
+        transaction.setPurchaseText("Purchased: 100 coins");
+        transaction.setPurchaseCost(199);
+        transaction.setPurchaseCostCurrency("EUR");
+        if (index % 10 == 0) {
+            transaction.setReversalTime(new Date(1600000000000L + index * 60000L + 3600000L));
+            transaction.setReversalText(Transaction.REVERSAL_TEXT_REFUNDED);
+        }
+        transaction.setTransactionData("{\"orderId\":\"GPA.1234-5678-9012-" + index + "\"}");
+        transaction.setTransactionDataSignature("c2lnbmF0dXJl" + index);
+        return transaction;
+    }
+
+    private static void assertTransactionEquals(Transaction expected, Transaction actual) {
+        assertEquals(expected.getIdentifier(), actual.getIdentifier());
+        assertEquals(expected.getStoreName(), actual.getStoreName());
+        assertEquals(expected.getOrderId(), actual.getOrderId());
+        assertEquals(expected.getRequestId(), actual.getRequestId());
+        assertEquals(expected.getUserId(), actual.getUserId());
+        assertEquals(expected.getPurchaseTime(), actual.getPurchaseTime());
+        assertEquals(expected.getPurchaseText(), actual.getPurchaseText());
+        assertEquals(expected.getPurchaseCost(), actual.getPurchaseCost());
+        assertEquals(expected.getPurchaseCostCurrency(), actual.getPurchaseCostCurrency());
+        assertEquals(expected.getReversalTime(), actual.getReversalTime());
+        assertEquals(expected.getReversalText(), actual.getReversalText());
+        assertEquals(expected.getTransactionData(), actual.getTransactionData());
+        assertEquals(expected.getTransactionDataSignature(), actual.getTransactionDataSignature());
+    }
+}